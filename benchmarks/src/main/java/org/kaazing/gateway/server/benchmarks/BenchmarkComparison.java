@@ -0,0 +1,162 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.kaazing.gateway.server.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares two JMH result files written with <code>-rf csv</code>, typically from the same benchmarks run on two commits,
+ * and prints the change of every score. Exits with status 1 when any benchmark got worse by more than the threshold
+ * percentage (default 5), so it can gate a build.
+ *
+ * <pre>
+ * java -cp benchmarks.jar org.kaazing.gateway.server.benchmarks.BenchmarkComparison baseline.csv candidate.csv [threshold]
+ * </pre>
+ */
+public final class BenchmarkComparison {
+
+    private BenchmarkComparison() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: BenchmarkComparison <baseline.csv> <candidate.csv> [threshold-percent]");
+            System.exit(2);
+        }
+        double threshold = (args.length > 2) ? Double.parseDouble(args[2]) : 5.0;
+
+        Map<String, Result> baseline = read(args[0]);
+        Map<String, Result> candidate = read(args[1]);
+
+        int regressions = 0;
+        System.out.println(String.format("%-70s %14s %14s %9s", "Benchmark", "Baseline", "Candidate", "Change"));
+        for (Map.Entry<String, Result> entry : candidate.entrySet()) {
+            Result after = entry.getValue();
+            Result before = baseline.get(entry.getKey());
+            if (before == null) {
+                System.out.println(String.format("%-70s %14s %14.3f %9s", entry.getKey(), "-", after.score, "new"));
+                continue;
+            }
+
+            double change = (after.score - before.score) / before.score * 100.0;
+            // throughput should go up, every other mode measures time and should go down
+            double improvement = "thrpt".equals(after.mode) ? change : -change;
+            boolean regression = improvement < -threshold;
+            if (regression) {
+                regressions++;
+            }
+            System.out.println(String.format("%-70s %14.3f %14.3f %+8.1f%%%s", entry.getKey(), before.score, after.score,
+                    change, regression ? "  REGRESSION" : ""));
+        }
+
+        if (regressions > 0) {
+            System.out.println(regressions + " benchmark(s) regressed by more than " + threshold + "%");
+            System.exit(1);
+        }
+    }
+
+    private static Map<String, Result> read(String fileName) throws IOException {
+        Map<String, Result> results = new LinkedHashMap<>();
+        BufferedReader reader =
+                new BufferedReader(new InputStreamReader(new FileInputStream(fileName), Charset.forName("UTF-8")));
+        try {
+            List<String> header = parseLine(reader.readLine());
+            int benchmarkColumn = header.indexOf("Benchmark");
+            int modeColumn = header.indexOf("Mode");
+            int threadsColumn = header.indexOf("Threads");
+            int scoreColumn = header.indexOf("Score");
+            if (benchmarkColumn < 0 || modeColumn < 0 || scoreColumn < 0) {
+                throw new IOException(fileName + " is not a JMH CSV result file");
+            }
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                List<String> values = parseLine(line);
+                StringBuilder key = new StringBuilder(values.get(benchmarkColumn));
+                for (int i = 0; i < header.size(); i++) {
+                    if (header.get(i).startsWith("Param: ") && i < values.size() && !values.get(i).isEmpty()) {
+                        key.append(' ').append(header.get(i).substring(7)).append('=').append(values.get(i));
+                    }
+                }
+                if (threadsColumn >= 0) {
+                    key.append(" threads=").append(values.get(threadsColumn));
+                }
+                results.put(key.toString(),
+                        new Result(values.get(modeColumn), Double.parseDouble(values.get(scoreColumn))));
+            }
+        } finally {
+            reader.close();
+        }
+        return results;
+    }
+
+    // JMH quotes text columns and leaves numbers unquoted
+    private static List<String> parseLine(String line) throws IOException {
+        if (line == null) {
+            throw new IOException("Empty result file");
+        }
+        List<String> values = new ArrayList<>();
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                if (quoted && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    value.append('"');
+                    i++;
+                } else {
+                    quoted = !quoted;
+                }
+            } else if (c == ',' && !quoted) {
+                values.add(value.toString());
+                value.setLength(0);
+            } else {
+                value.append(c);
+            }
+        }
+        values.add(value.toString());
+        return values;
+    }
+
+    private static final class Result {
+        final String mode;
+        final double score;
+
+        Result(String mode, double score) {
+            this.mode = mode;
+            this.score = score;
+        }
+    }
+
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.kaazing.gateway.server.benchmarks;
+
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import org.kaazing.gateway.server.util.collection.FixedArrayQueue;
+import org.kaazing.gateway.server.util.collection.ManyToOneConcurrentArrayQueue;
+import org.kaazing.gateway.server.util.collection.OneToOneConcurrentArrayQueue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Single threaded offer/poll cost of {@link FixedArrayQueue} and its concurrent variants with a given number of elements
+ * already queued.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FixedArrayQueueBenchmark {
+
+    private static final Integer ELEMENT = 42;
+
+    @Param({ "1024" })
+    public int capacity;
+
+    @Param({ "0", "512" })
+    public int occupancy;
+
+    @Param({ "fixed", "spsc", "mpsc" })
+    public String type;
+
+    private Queue<Integer> queue;
+
+    @Setup
+    public void setUp() {
+        switch (type) {
+        case "spsc":
+            queue = new OneToOneConcurrentArrayQueue<>(capacity);
+            break;
+        case "mpsc":
+            queue = new ManyToOneConcurrentArrayQueue<>(capacity);
+            break;
+        default:
+            queue = new FixedArrayQueue<>(capacity);
+            break;
+        }
+        for (int i = 0; i < occupancy; i++) {
+            queue.offer(ELEMENT);
+        }
+    }
+
+    @Benchmark
+    public Integer offerPoll() {
+        queue.offer(ELEMENT);
+        return queue.poll();
+    }
+
+}
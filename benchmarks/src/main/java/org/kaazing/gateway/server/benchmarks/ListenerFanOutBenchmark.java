@@ -0,0 +1,95 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.kaazing.gateway.server.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.kaazing.gateway.server.messaging.DefaultMessagingMessage;
+import org.kaazing.gateway.server.messaging.buffer.MemoryMessageBuffer;
+import org.kaazing.gateway.server.messaging.buffer.MessageBufferDispatch;
+import org.kaazing.gateway.server.messaging.buffer.MessageBufferOverflowPolicy;
+import org.kaazing.gateway.service.messaging.MessagingMessage;
+import org.kaazing.gateway.service.messaging.buffer.MessageBufferEntry;
+import org.kaazing.gateway.service.messaging.buffer.MessageBufferListener;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Publisher cost of notifying message buffer listeners (MessageBufferListenerSupport), with synchronous dispatch and
+ * with per-listener mailboxes. Each listener burns a little CPU per message to stand in for a subscriber.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ListenerFanOutBenchmark {
+
+    @Param({ "1", "16" })
+    public int listeners;
+
+    @Param({ "0", "1024" })
+    public int mailboxSize;
+
+    @Param({ "100" })
+    public int listenerWork;
+
+    private MemoryMessageBuffer buffer;
+    private MessagingMessage message;
+    private final AtomicLong delivered = new AtomicLong();
+
+    @Setup
+    public void setUp() {
+        MessageBufferDispatch dispatch = (mailboxSize > 0)
+                ? new MessageBufferDispatch(mailboxSize, MessageBufferOverflowPolicy.DROP_OLDEST)
+                : MessageBufferDispatch.SYNCHRONOUS;
+        buffer = new MemoryMessageBuffer(1024, dispatch);
+        message = new DefaultMessagingMessage();
+        for (int i = 0; i < listeners; i++) {
+            buffer.addMessageBufferListener(new MessageBufferListener() {
+                @Override
+                public void messageAdded(MessageBufferEntry newMessage) {
+                    Blackhole.consumeCPU(listenerWork);
+                    delivered.incrementAndGet();
+                }
+            });
+        }
+    }
+
+    @Benchmark
+    public MessageBufferEntry publish() {
+        return buffer.add(message);
+    }
+
+}
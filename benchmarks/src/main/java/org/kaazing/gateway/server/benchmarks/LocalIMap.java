@@ -0,0 +1,134 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.kaazing.gateway.server.benchmarks;
+
+import com.hazelcast.core.EntryEvent;
+import com.hazelcast.core.EntryListener;
+import com.hazelcast.core.IMap;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * In-process stand-in for a Hazelcast {@link IMap}, so that the collections built on top of it can be measured without
+ * starting a cluster member. Map operations go to a {@link ConcurrentHashMap} and entry listeners are notified on the
+ * calling thread; any other IMap operation is unsupported.
+ */
+public final class LocalIMap {
+
+    private LocalIMap() {
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <K, V> IMap<K, V> newMap(String name) {
+        return (IMap<K, V>) Proxy.newProxyInstance(IMap.class.getClassLoader(), new Class<?>[] { IMap.class },
+                new Handler(name));
+    }
+
+    private static final class Handler implements InvocationHandler {
+
+        private final String name;
+        private final ConcurrentMap<Object, Object> map = new ConcurrentHashMap<>();
+        private final List<EntryListener<Object, Object>> listeners = new CopyOnWriteArrayList<>();
+
+        Handler(String name) {
+            this.name = name;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String methodName = method.getName();
+            int arity = (args == null) ? 0 : args.length;
+
+            if ("getName".equals(methodName) && arity == 0) {
+                return name;
+            } else if ("addEntryListener".equals(methodName)) {
+                listeners.add((EntryListener<Object, Object>) args[0]);
+                return null;
+            } else if ("removeEntryListener".equals(methodName)) {
+                listeners.remove(args[0]);
+                return null;
+            } else if ("put".equals(methodName) && arity == 2) {
+                Object oldValue = map.put(args[0], args[1]);
+                fire((oldValue == null) ? EntryEvent.TYPE_ADDED : EntryEvent.TYPE_UPDATED, args[0], args[1]);
+                return oldValue;
+            } else if ("putIfAbsent".equals(methodName) && arity == 2) {
+                Object oldValue = map.putIfAbsent(args[0], args[1]);
+                if (oldValue == null) {
+                    fire(EntryEvent.TYPE_ADDED, args[0], args[1]);
+                }
+                return oldValue;
+            } else if ("remove".equals(methodName) && arity == 1) {
+                Object oldValue = map.remove(args[0]);
+                if (oldValue != null) {
+                    fire(EntryEvent.TYPE_REMOVED, args[0], oldValue);
+                }
+                return oldValue;
+            } else if ("equals".equals(methodName) && arity == 1) {
+                return proxy == args[0];
+            } else if ("hashCode".equals(methodName) && arity == 0) {
+                return System.identityHashCode(proxy);
+            } else if ("toString".equals(methodName) && arity == 0) {
+                return "LocalIMap[" + name + "]";
+            }
+
+            Method mapMethod;
+            try {
+                mapMethod = Map.class.getMethod(methodName, method.getParameterTypes());
+            } catch (NoSuchMethodException e) {
+                throw new UnsupportedOperationException(methodName);
+            }
+            try {
+                return mapMethod.invoke(map, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        @SuppressWarnings({ "rawtypes", "unchecked" })
+        private void fire(int eventType, Object key, Object value) {
+            EntryEvent event = new EntryEvent(name, null, eventType, key, value);
+            for (EntryListener<Object, Object> listener : listeners) {
+                switch (eventType) {
+                case EntryEvent.TYPE_ADDED:
+                    listener.entryAdded(event);
+                    break;
+                case EntryEvent.TYPE_UPDATED:
+                    listener.entryUpdated(event);
+                    break;
+                default:
+                    listener.entryRemoved(event);
+                    break;
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.kaazing.gateway.server.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.kaazing.gateway.server.messaging.DefaultMessagingMessage;
+import org.kaazing.gateway.server.messaging.buffer.MemoryMessageBuffer;
+import org.kaazing.gateway.server.messaging.buffer.RingMessageBuffer;
+import org.kaazing.gateway.service.messaging.MessagingMessage;
+import org.kaazing.gateway.service.messaging.buffer.MessageBuffer;
+import org.kaazing.gateway.service.messaging.buffer.MessageBufferEntry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Add and get throughput of the local message buffers, alone and with several readers contending with one writer.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageBufferBenchmark {
+
+    @Param({ "memory", "ring" })
+    public String type;
+
+    @Param({ "1024" })
+    public int capacity;
+
+    private MessageBuffer buffer;
+    private MessagingMessage message;
+
+    @Setup
+    public void setUp() {
+        buffer = "ring".equals(type) ? new RingMessageBuffer(capacity) : new MemoryMessageBuffer(capacity);
+        message = new DefaultMessagingMessage();
+        for (int i = 0; i < capacity; i++) {
+            buffer.add(message);
+        }
+    }
+
+    @Benchmark
+    @Group("add")
+    public MessageBufferEntry add() {
+        return buffer.add(message);
+    }
+
+    @Benchmark
+    @Group("get")
+    public MessageBufferEntry get() {
+        return buffer.get(buffer.getYoungestId());
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(1)
+    public MessageBufferEntry contendedAdd() {
+        return buffer.add(message);
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(3)
+    public MessageBufferEntry contendedGet() {
+        return buffer.get(buffer.getYoungestId());
+    }
+
+}
@@ -0,0 +1,98 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.kaazing.gateway.server.benchmarks;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.kaazing.gateway.server.util.collection.NearCacheConfig;
+import org.kaazing.gateway.server.util.collection.NearCacheEvictionPolicy;
+import org.kaazing.gateway.server.util.collection.ReplicatedIMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Read throughput of {@link ReplicatedIMap} over an in-process {@link LocalIMap}, with and without a concurrent writer
+ * (whose updates reach the local cache through the entry listener, as replicated updates would), either mirroring the
+ * whole map or through a near cache smaller than the key range.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReplicatedIMapBenchmark {
+
+    @Param({ "1000" })
+    public int size;
+
+    // 0 mirrors the whole map, otherwise the maximum size of an LRU near cache
+    @Param({ "0", "100" })
+    public int nearCacheSize;
+
+    private ReplicatedIMap<Integer, String> map;
+
+    @Setup
+    public void setUp() {
+        NearCacheConfig nearCacheConfig = (nearCacheSize > 0)
+                ? new NearCacheConfig(nearCacheSize, 0, TimeUnit.MILLISECONDS, NearCacheEvictionPolicy.LRU) : null;
+        map = new ReplicatedIMap<>(LocalIMap.<Integer, String>newMap("benchmark"), nearCacheConfig);
+        for (int i = 0; i < size; i++) {
+            map.put(i, "value-" + i);
+        }
+    }
+
+    @Benchmark
+    @Group("read")
+    @GroupThreads(4)
+    public String get() {
+        return map.get(ThreadLocalRandom.current().nextInt(size));
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(3)
+    public String readWhileWriting() {
+        return map.get(ThreadLocalRandom.current().nextInt(size));
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(1)
+    public String write() {
+        int key = ThreadLocalRandom.current().nextInt(size);
+        return map.put(key, "value-" + key);
+    }
+
+}
@@ -23,6 +23,7 @@ package org.kaazing.gateway.server;
 
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -34,14 +35,29 @@ import static java.util.Collections.synchronizedSet;
 import static java.util.Collections.unmodifiableList;
 import static java.util.ServiceLoader.load;
 
-public final class GatewayListener implements GatewayListenerApi {
-    private final List<GatewayListenerFactorySpi> gatewayListenerSpi;
+/**
+ * Dispatches gateway and service lifecycle callbacks to the discovered {@link GatewayListenerFactorySpi}s. Services may
+ * be inited, started and stopped concurrently, so service callbacks are dispatched one at a time; the callbacks of a
+ * given service always arrive in lifecycle order. Startup phases are only dispatched to the listeners implementing
+ * {@link GatewayStartupListenerApi}.
+ */
+public final class GatewayListener implements GatewayStartupListenerApi {
+    private final List<GatewayListenerApi> gatewayListenerSpi;
 
-    private GatewayListener(Set<GatewayListenerFactorySpi> gatewayListenerSpis) {
-        List<GatewayListenerFactorySpi> list = new ArrayList<>(gatewayListenerSpis);
+    private GatewayListener(Collection<? extends GatewayListenerApi> gatewayListenerSpis) {
+        List<GatewayListenerApi> list = new ArrayList<>(gatewayListenerSpis);
         this.gatewayListenerSpi = unmodifiableList(list);
     }
 
+    /**
+     * @return a listener that also dispatches the callbacks to the given listener, after the discovered ones
+     */
+    public GatewayListener withListener(GatewayListenerApi gatewayListener) {
+        List<GatewayListenerApi> list = new ArrayList<>(gatewayListenerSpi);
+        list.add(gatewayListener);
+        return new GatewayListener(list);
+    }
+
     public static GatewayListener newInstance(Map<String, Object> injectables) {
         return newInstance(load(GatewayListenerFactorySpi.class), injectables);
     }
@@ -85,70 +101,70 @@ public final class GatewayListener implements GatewayListenerApi {
     }
 
     @Override
-    public void initingService(ServiceContext serviceContext) {
+    public synchronized void initingService(ServiceContext serviceContext) {
         for (GatewayListenerApi gatewayListener : gatewayListenerSpi) {
             gatewayListener.initingService(serviceContext);
         }
     }
 
     @Override
-    public void initedService(ServiceContext serviceContext) {
+    public synchronized void initedService(ServiceContext serviceContext) {
         for (GatewayListenerApi gatewayListener : gatewayListenerSpi) {
             gatewayListener.initedService(serviceContext);
         }
     }
 
     @Override
-    public void startingService(ServiceContext serviceContext) {
+    public synchronized void startingService(ServiceContext serviceContext) {
         for (GatewayListenerApi gatewayListener : gatewayListenerSpi) {
             gatewayListener.startingService(serviceContext);
         }
     }
 
     @Override
-    public void startedService(ServiceContext serviceContext) {
+    public synchronized void startedService(ServiceContext serviceContext) {
         for (GatewayListenerApi gatewayListener : gatewayListenerSpi) {
             gatewayListener.startedService(serviceContext);
         }
     }
 
     @Override
-    public void stopingService(ServiceContext serviceContext) {
+    public synchronized void stopingService(ServiceContext serviceContext) {
         for (GatewayListenerApi gatewayListener : gatewayListenerSpi) {
             gatewayListener.stopingService(serviceContext);
         }
     }
 
     @Override
-    public void stoppedService(ServiceContext serviceContext) {
+    public synchronized void stoppedService(ServiceContext serviceContext) {
         for (GatewayListenerApi gatewayListener : gatewayListenerSpi) {
             gatewayListener.stoppedService(serviceContext);
         }
     }
 
     @Override
-    public void quiesceingService(ServiceContext serviceContext) {
+    public synchronized void quiesceingService(ServiceContext serviceContext) {
         for (GatewayListenerApi gatewayListener : gatewayListenerSpi) {
             gatewayListener.quiesceingService(serviceContext);
         }
     }
 
     @Override
-    public void quiescedService(ServiceContext serviceContext) {
+    public synchronized void quiescedService(ServiceContext serviceContext) {
         for (GatewayListenerApi gatewayListener : gatewayListenerSpi) {
             gatewayListener.quiescedService(serviceContext);
         }
     }
 
     @Override
-    public void destroyingService(ServiceContext serviceContext) {
+    public synchronized void destroyingService(ServiceContext serviceContext) {
         for (GatewayListenerApi gatewayListener : gatewayListenerSpi) {
             gatewayListener.destroyingService(serviceContext);
         }
     }
 
     @Override
-    public void destroyedService(ServiceContext serviceContext) {
+    public synchronized void destroyedService(ServiceContext serviceContext) {
         for (GatewayListenerApi gatewayListener : gatewayListenerSpi) {
             gatewayListener.destroyedService(serviceContext);
         }
@@ -160,4 +176,31 @@ public final class GatewayListener implements GatewayListenerApi {
             gatewayListener.startingGateway();
         }
     }
+
+    @Override
+    public synchronized void startingPhase(String phase) {
+        for (GatewayListenerApi gatewayListener : gatewayListenerSpi) {
+            if (gatewayListener instanceof GatewayStartupListenerApi) {
+                ((GatewayStartupListenerApi) gatewayListener).startingPhase(phase);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void completedPhase(String phase) {
+        for (GatewayListenerApi gatewayListener : gatewayListenerSpi) {
+            if (gatewayListener instanceof GatewayStartupListenerApi) {
+                ((GatewayStartupListenerApi) gatewayListener).completedPhase(phase);
+            }
+        }
+    }
+
+    @Override
+    public void startedGateway() {
+        for (GatewayListenerApi gatewayListener : gatewayListenerSpi) {
+            if (gatewayListener instanceof GatewayStartupListenerApi) {
+                ((GatewayStartupListenerApi) gatewayListener).startedGateway();
+            }
+        }
+    }
 }
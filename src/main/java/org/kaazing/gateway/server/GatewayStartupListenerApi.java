@@ -0,0 +1,40 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.kaazing.gateway.server;
+
+/**
+ * Gateway listener that is also told about the phases of the gateway startup. Listeners discovered as
+ * {@link GatewayListenerFactorySpi}s receive these callbacks when they implement this interface as well.
+ */
+public interface GatewayStartupListenerApi extends GatewayListenerApi {
+
+    /**
+     * A named step of the gateway startup, such as parsing the configuration, joining the cluster or binding an accept
+     * URI, has begun. Steps of different services may be in progress at the same time.
+     */
+    void startingPhase(String phase);
+
+    void completedPhase(String phase);
+
+    void startedGateway();
+
+}
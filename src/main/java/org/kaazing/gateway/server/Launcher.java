@@ -22,15 +22,30 @@
 package org.kaazing.gateway.server;
 
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
 import java.util.Set;
 import java.util.TreeSet;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import org.kaazing.gateway.server.context.GatewayContext;
+import org.kaazing.gateway.server.context.resolve.DefaultGatewayContext;
+import org.kaazing.gateway.server.context.resolve.DefaultServiceContext;
+import org.kaazing.gateway.server.service.ServiceAuthority;
+import org.kaazing.gateway.server.service.ServiceRegistry;
 import org.kaazing.gateway.service.AcceptOptionsContext;
 import org.kaazing.gateway.service.ServiceContext;
+import org.kaazing.gateway.service.ServiceRegistration;
 import org.kaazing.gateway.service.cluster.ClusterContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import static org.kaazing.gateway.server.ServerSystemProperty.SERVICE_LIFECYCLE_THREADS;
 
 public class Launcher {
 
@@ -39,16 +54,66 @@ public class Launcher {
     // from the log4j-config.xml except for debugging/tracing information).
     private static final Logger LOGGER = LoggerFactory.getLogger(Gateway.class);
 
+    private static final String STARTUP_TIMELINE_MBEAN_NAME = "org.kaazing.gateway.server:type=StartupTimeline";
+
     private GatewayContext context;
 
     private GatewayListener gatewayListener;
 
+    private StartupTimeline startupTimeline;
+
+    private ObjectName startupTimelineName;
+
+    private final ServiceLifecycleScheduler.Phase initPhase = new ServiceLifecycleScheduler.Phase() {
+        @Override
+        public void run(ServiceContext serviceContext) throws Exception {
+            gatewayListener.initingService(serviceContext);
+            serviceContext.init();
+            gatewayListener.initedService(serviceContext);
+        }
+    };
+
+    private final ServiceLifecycleScheduler.Phase startPhase = new ServiceLifecycleScheduler.Phase() {
+        @Override
+        public void run(ServiceContext serviceContext) throws Exception {
+            gatewayListener.startingService(serviceContext);
+            serviceContext.start();
+            gatewayListener.startedService(serviceContext);
+        }
+    };
+
+    private final ServiceLifecycleScheduler.Phase stopPhase = new ServiceLifecycleScheduler.Phase() {
+        @Override
+        public void run(ServiceContext serviceContext) throws Exception {
+            try {
+                gatewayListener.stopingService(serviceContext);
+                serviceContext.stop();
+                gatewayListener.stoppedService(serviceContext);
+                gatewayListener.destroyingService(serviceContext);
+                serviceContext.destroy();
+                gatewayListener.destroyedService(serviceContext);
+            } catch (Exception e) {
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("Failed to stop service", e);
+                }
+            }
+        }
+    };
+
     public Launcher() {
 
     }
 
     public void init(GatewayContext context) throws Exception {
-        gatewayListener = GatewayListener.newInstance(context.getInjectables());
+        init(context, new StartupTimeline());
+    }
+
+    /**
+     * @param startupTimeline the timeline of the startup phases that happened before the gateway context was resolved
+     */
+    public void init(GatewayContext context, StartupTimeline startupTimeline) throws Exception {
+        this.startupTimeline = startupTimeline;
+        gatewayListener = GatewayListener.newInstance(context.getInjectables()).withListener(startupTimeline);
         gatewayListener.startingGateway();
         try {
             initInternal(context);
@@ -66,23 +131,23 @@ public class Launcher {
 
         ClusterContext cluster = context.getCluster();
         if (cluster != null) {
+            gatewayListener.startingPhase(StartupTimeline.CLUSTER_JOIN);
             cluster.start();
+            gatewayListener.completedPhase(StartupTimeline.CLUSTER_JOIN);
         }
 
+        setGatewayListener(context.getServices());
+
         Set<String> mappedURIs = new TreeSet<String>();
 
         // Initialize all services (so we're in a known state), then start
-        // all services.
-        for (ServiceContext serviceContext : context.getServices()) {
-            gatewayListener.initingService(serviceContext);
-            serviceContext.init();
-            gatewayListener.initedService(serviceContext);
-        }
+        // all services. Independent services are handled concurrently when
+        // SERVICE_LIFECYCLE_THREADS allows it.
+        ServiceLifecycleScheduler scheduler = newServiceLifecycleScheduler(context.getServices());
+        Map<ServiceContext, Long> initTimes = scheduler.runInDependencyOrder(initPhase);
+        Map<ServiceContext, Long> startTimes = scheduler.runInDependencyOrder(startPhase);
 
         for (ServiceContext serviceContext : context.getServices()) {
-            gatewayListener.startingService(serviceContext);
-            serviceContext.start();
-            gatewayListener.startedService(serviceContext);
             AcceptOptionsContext ctx = serviceContext.getAcceptOptionsContext();
             Collection<URI> serviceAccepts = serviceContext.getAccepts();
             for (URI serviceAccept : serviceAccepts) {
@@ -96,6 +161,8 @@ public class Launcher {
         }
 
         long startedAt = System.currentTimeMillis();
+        gatewayListener.startedGateway();
+        registerStartupTimeline();
 
         // LOGGER.info("Starting server at " + String.format("%1$tF %1$tT", startAt));
         LOGGER.info("Starting server");
@@ -106,6 +173,13 @@ public class Launcher {
             }
             LOGGER.info("Started services");
         }
+        if (LOGGER.isDebugEnabled()) {
+            for (ServiceContext serviceContext : context.getServices()) {
+                LOGGER.debug(String.format("Service %s inited in %d ms, started in %d ms",
+                        getServiceLabel(serviceContext), initTimes.get(serviceContext), startTimes.get(serviceContext)));
+            }
+            LOGGER.debug("Startup timeline: " + startupTimeline.getReport());
+        }
         LOGGER.info("Started server successfully in " + String.format("%1$.3f secs", (startedAt - startAt) / 1000f)
                 + " at " + String.format("%1$tF %1$tT", startAt));
 
@@ -115,26 +189,138 @@ public class Launcher {
         }
     }
 
+    /**
+     * Replace the running services by those resolved from a reloaded gateway configuration. Only the services that were
+     * removed, added or whose configuration changed are stopped or started, the other services and their sessions keep
+     * running.
+     * <p>
+     * An added or changed service that accepts a URI an unchanged service accepts is rejected before any service is
+     * stopped. If a service fails to init or start, the services that began to init are stopped and removed again, and
+     * the failure is thrown. The gateway then only runs the unchanged services, and the services the reload stopped stay
+     * down until the previous configuration is reloaded.
+     *
+     * @param services        the services resolved from the reloaded configuration
+     * @param serviceRegistry the registry the accept URIs of those services were registered in when resolved
+     */
+    public synchronized void reload(Collection<? extends ServiceContext> services, ServiceRegistry serviceRegistry)
+            throws Exception {
+        if (!(context instanceof DefaultGatewayContext)) {
+            throw new UnsupportedOperationException("Services can only be reloaded in a resolved gateway context");
+        }
+
+        ServiceContextDiff diff = new ServiceContextDiff(context.getServices(), services);
+        if (diff.isEmpty()) {
+            LOGGER.info("Reloaded configuration has no service changes");
+            return;
+        }
+
+        long reloadAt = System.currentTimeMillis();
+        LOGGER.info("Reloading services");
+        logServices("  Removed ", diff.getRemoved());
+        logServices("  Changed ", diff.getChangedRunning());
+        logServices("  Added ", diff.getAdded());
+
+        // services are stopped before the services they depend on, and started after them
+        List<ServiceContext> stopped = diff.getStopped();
+        List<ServiceContext> started = diff.getStarted();
+        checkAccepts(diff.getUnchanged(), started, serviceRegistry);
+        newServiceLifecycleScheduler(stopped).runInReverseDependencyOrder(stopPhase);
+        ((DefaultGatewayContext) context).replaceServices(stopped, started, serviceRegistry);
+
+        setGatewayListener(started);
+        final Set<ServiceContext> inited =
+                Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<ServiceContext, Boolean>()));
+        ServiceLifecycleScheduler scheduler = newServiceLifecycleScheduler(started);
+        try {
+            scheduler.runInDependencyOrder(new ServiceLifecycleScheduler.Phase() {
+                @Override
+                public void run(ServiceContext serviceContext) throws Exception {
+                    // a service whose init fails may hold resources from the part that ran, so it is stopped as well
+                    inited.add(serviceContext);
+                    initPhase.run(serviceContext);
+                }
+            });
+            scheduler.runInDependencyOrder(startPhase);
+        } catch (Exception e) {
+            // services that were never inited, those depending on the service that failed, are not stopped
+            List<ServiceContext> rollback = new ArrayList<ServiceContext>();
+            for (ServiceContext serviceContext : started) {
+                if (inited.contains(serviceContext)) {
+                    rollback.add(serviceContext);
+                }
+            }
+            newServiceLifecycleScheduler(rollback).runInReverseDependencyOrder(stopPhase);
+            ((DefaultGatewayContext) context).replaceServices(started, Collections.<ServiceContext>emptyList(),
+                    new ServiceRegistry());
+            LOGGER.error("Failed to reload services, the following services are down");
+            logServices("  ", stopped);
+            throw e;
+        }
+
+        long reloadedAt = System.currentTimeMillis();
+        LOGGER.info("Reloaded services successfully in " + String.format("%1$.3f secs", (reloadedAt - reloadAt) / 1000f)
+                + ", " + diff.getUnchanged().size() + " unchanged services kept running");
+    }
+
+    // rejects the started services accepting a URI that a service which keeps running is registered for, since
+    // registering them would silently replace its registration
+    private void checkAccepts(Collection<ServiceContext> unchanged,
+                              Collection<ServiceContext> started,
+                              ServiceRegistry serviceRegistry) {
+        ServiceRegistry reloadRegistry = new ServiceRegistry();
+        register(reloadRegistry, context.getServiceRegistry(), unchanged);
+        register(reloadRegistry, serviceRegistry, started);
+    }
+
+    private static void register(ServiceRegistry target,
+                                 ServiceRegistry source,
+                                 Collection<ServiceContext> services) {
+        Set<ServiceContext> serviceSet = Collections.newSetFromMap(new IdentityHashMap<ServiceContext, Boolean>());
+        serviceSet.addAll(services);
+        for (ServiceAuthority serviceAuthority : source.values()) {
+            for (ServiceRegistration serviceRegistration : serviceAuthority.values()) {
+                ServiceContext serviceContext = serviceRegistration.getServiceContext();
+                if (serviceSet.contains(serviceContext)) {
+                    URI serviceURI = serviceRegistration.getURI();
+                    ServiceContext registered = target.register(serviceURI, serviceContext);
+                    if (registered != null && registered != serviceContext) {
+                        throw new IllegalArgumentException(String.format("Service %s cannot accept %s, service %s " +
+                                "already accepts it", getServiceLabel(serviceContext), serviceURI,
+                                getServiceLabel(registered)));
+                    }
+                }
+            }
+        }
+    }
+
+    private void logServices(String prefix, Collection<ServiceContext> services) {
+        for (ServiceContext serviceContext : services) {
+            LOGGER.info(prefix + getServiceLabel(serviceContext));
+        }
+    }
+
+    // services report the binding of their accept URIs as startup phases
+    private void setGatewayListener(Collection<? extends ServiceContext> services) {
+        for (ServiceContext serviceContext : services) {
+            if (serviceContext instanceof DefaultServiceContext) {
+                ((DefaultServiceContext) serviceContext).setGatewayListener(gatewayListener);
+            }
+        }
+    }
+
     public void destroy() throws Exception {
         long stopAt = System.currentTimeMillis();
 
         Set<URI> boundURIs = new TreeSet<URI>();
         for (ServiceContext serviceContext : context.getServices()) {
             boundURIs.addAll(serviceContext.getAccepts());
-            try {
-                gatewayListener.stopingService(serviceContext);
-                serviceContext.stop();
-                gatewayListener.stoppedService(serviceContext);
-                gatewayListener.destroyingService(serviceContext);
-                serviceContext.destroy();
-                gatewayListener.destroyedService(serviceContext);
-            } catch (Exception e) {
-                if (LOGGER.isDebugEnabled()) {
-                    LOGGER.debug("Failed to stop service", e);
-                }
-            }
         }
 
+        // services are stopped before the services they depend on
+        Map<ServiceContext, Long> stopTimes =
+                newServiceLifecycleScheduler(context.getServices()).runInReverseDependencyOrder(stopPhase);
+
+        unregisterStartupTimeline();
         context.dispose();
 
         long stoppedAt = System.currentTimeMillis();
@@ -147,10 +333,74 @@ public class Launcher {
             }
             LOGGER.info("Stopped services");
         }
+        if (LOGGER.isDebugEnabled()) {
+            for (Map.Entry<ServiceContext, Long> entry : stopTimes.entrySet()) {
+                LOGGER.debug(String.format("Service %s stopped in %d ms", getServiceLabel(entry.getKey()),
+                        entry.getValue()));
+            }
+        }
         LOGGER.info("Stopped server successfully in " + String.format("%1$.3f secs", (stoppedAt - stopAt) / 1000f)
                 + " at " + String.format("%1$tF %1$tT", stopAt));
     }
 
+    private ServiceLifecycleScheduler newServiceLifecycleScheduler(Collection<? extends ServiceContext> services) {
+        Properties configuration = (Properties) context.getInjectables().get("configuration");
+        if (configuration == null) {
+            configuration = new Properties();
+        }
+        int threads = SERVICE_LIFECYCLE_THREADS.getIntProperty(configuration);
+        if (threads <= 0) {
+            threads = Runtime.getRuntime().availableProcessors();
+        }
+        return new ServiceLifecycleScheduler(services, threads);
+    }
+
+    public StartupTimeline getStartupTimeline() {
+        return startupTimeline;
+    }
+
+    private void registerStartupTimeline() {
+        MBeanServer mbeanServer = (MBeanServer) context.getInjectables().get("mbeanServer");
+        if (mbeanServer == null) {
+            return;
+        }
+
+        try {
+            ObjectName name = new ObjectName(STARTUP_TIMELINE_MBEAN_NAME);
+            mbeanServer.registerMBean(startupTimeline, name);
+            startupTimelineName = name;
+        } catch (JMException e) {
+            // typically another gateway in the same process registered its timeline first
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Unable to register the startup timeline MBean", e);
+            }
+        }
+    }
+
+    private void unregisterStartupTimeline() {
+        if (startupTimelineName == null) {
+            return;
+        }
+
+        try {
+            MBeanServer mbeanServer = (MBeanServer) context.getInjectables().get("mbeanServer");
+            mbeanServer.unregisterMBean(startupTimelineName);
+        } catch (JMException e) {
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Unable to unregister the startup timeline MBean", e);
+            }
+        }
+        startupTimelineName = null;
+    }
+
+    static String getServiceLabel(ServiceContext serviceContext) {
+        String serviceName = serviceContext.getServiceName();
+        if (serviceName != null) {
+            return serviceName;
+        }
+        return serviceContext.getServiceType() + " " + serviceContext.getAccepts();
+    }
+
     public static Logger getGatewayStartupLogger() {
         return LOGGER;
     }
@@ -0,0 +1,118 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.kaazing.gateway.server;
+
+import java.util.Properties;
+
+/**
+ * Gateway configuration properties that tune the server internals. Values are read from the gateway configuration
+ * {@link Properties} (normally the system properties), falling back to the listed default.
+ */
+public enum ServerSystemProperty {
+
+    // services inited, started and stopped concurrently, 1 (the default) handles them one after another, 0 uses one per
+    // processor; services that accept on the same port then bind at the same time, so only raise this when they do not
+    SERVICE_LIFECYCLE_THREADS("org.kaazing.gateway.server.SERVICE_LIFECYCLE_THREADS", "1"),
+
+    // seconds between checks of the gateway config file for service changes to apply while running, 0 disables reloads
+    CONFIG_RELOAD_INTERVAL("org.kaazing.gateway.server.CONFIG_RELOAD_INTERVAL", "0"),
+
+    // type of the local message buffer used for messaging services: "memory" (locked), "ring" (lock-free)
+    // or "mapped" (off-heap in memory-mapped files, discarded on restart)
+    MESSAGE_BUFFER_TYPE("org.kaazing.gateway.server.messaging.MESSAGE_BUFFER_TYPE", "memory"),
+
+    // directory of the "mapped" message buffer files, defaults to message-buffers in the gateway temp directory
+    MESSAGE_BUFFER_DIRECTORY("org.kaazing.gateway.server.messaging.MESSAGE_BUFFER_DIRECTORY", null),
+
+    // bytes reserved per message in "mapped" message buffers, larger messages are kept on the heap
+    MESSAGE_BUFFER_SLOT_SIZE("org.kaazing.gateway.server.messaging.MESSAGE_BUFFER_SLOT_SIZE", "4096"),
+
+    // messages queued per message buffer listener, 0 delivers to listeners synchronously on the publishing thread
+    MESSAGE_BUFFER_LISTENER_MAILBOX_SIZE("org.kaazing.gateway.server.messaging.MESSAGE_BUFFER_LISTENER_MAILBOX_SIZE", "0"),
+
+    // threads delivering queued messages to message buffer listeners, shared by the message buffers; 0 (the default)
+    // uses one per available processor
+    MESSAGE_BUFFER_DISPATCH_THREADS("org.kaazing.gateway.server.messaging.MESSAGE_BUFFER_DISPATCH_THREADS", "0"),
+
+    // entries per replication batch for cluster message buffers, 1 publishes every entry on its own; batches are not
+    // understood by members of earlier versions, so only raise this once every member is upgraded
+    CLUSTER_REPLICATION_BATCH_SIZE("org.kaazing.gateway.server.messaging.CLUSTER_REPLICATION_BATCH_SIZE", "1"),
+
+    // milliseconds a replication batch may wait for more entries before it is published
+    CLUSTER_REPLICATION_BATCH_DELAY("org.kaazing.gateway.server.messaging.CLUSTER_REPLICATION_BATCH_DELAY", "5"),
+
+    // milliseconds a replica waits for missing ids to be resynced before skipping them, 0 disables gap detection
+    CLUSTER_REPLICATION_RESYNC_TIMEOUT("org.kaazing.gateway.server.messaging.CLUSTER_REPLICATION_RESYNC_TIMEOUT", "1000"),
+
+    // what a full listener mailbox does: "drop_oldest" or "disconnect"
+    MESSAGE_BUFFER_LISTENER_OVERFLOW_POLICY("org.kaazing.gateway.server.messaging.MESSAGE_BUFFER_LISTENER_OVERFLOW_POLICY",
+            "drop_oldest"),
+
+    // milliseconds between reports of the member load to memberLoadMap, 0 (the default) disables load reporting; only
+    // worth enabling for balancer services that read that map
+    CLUSTER_LOAD_REPORT_INTERVAL("org.kaazing.gateway.server.messaging.CLUSTER_LOAD_REPORT_INTERVAL", "0"),
+
+    // maximum requests awaiting a response from one member on the cluster channel, further requests are queued
+    CLUSTER_CHANNEL_MAX_IN_FLIGHT("org.kaazing.gateway.server.messaging.CLUSTER_CHANNEL_MAX_IN_FLIGHT", "64"),
+
+    // maximum messages sent to a member in one cluster channel batch
+    CLUSTER_CHANNEL_MAX_BATCH_SIZE("org.kaazing.gateway.server.messaging.CLUSTER_CHANNEL_MAX_BATCH_SIZE", "32"),
+
+    // milliseconds before a cluster channel request without a response fails
+    CLUSTER_CHANNEL_REQUEST_TIMEOUT("org.kaazing.gateway.server.messaging.CLUSTER_CHANNEL_REQUEST_TIMEOUT", "30000"),
+
+    // milliseconds to wait after a cluster member goes down, so that members going down together are cleaned up together
+    CLUSTER_MEMBER_REMOVAL_DELAY("org.kaazing.gateway.server.messaging.CLUSTER_MEMBER_REMOVAL_DELAY", "0"),
+
+    // cluster backend, hazelcast or the name of a ClusterBackendFactorySpi such as in-process
+    CLUSTER_BACKEND("org.kaazing.gateway.server.messaging.CLUSTER_BACKEND", "hazelcast");
+
+    private final String name;
+    private final String defaultValue;
+
+    private ServerSystemProperty(String name, String defaultValue) {
+        this.name = name;
+        this.defaultValue = defaultValue;
+    }
+
+    public String getPropertyName() {
+        return name;
+    }
+
+    public String getProperty(Properties configuration) {
+        return configuration.getProperty(name, defaultValue);
+    }
+
+    public boolean getBooleanProperty(Properties configuration) {
+        return Boolean.valueOf(getProperty(configuration));
+    }
+
+    public int getIntProperty(Properties configuration) {
+        return Integer.parseInt(getProperty(configuration));
+    }
+
+    public long getLongProperty(Properties configuration) {
+        return Long.parseLong(getProperty(configuration));
+    }
+
+}
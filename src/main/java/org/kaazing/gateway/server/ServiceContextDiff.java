@@ -0,0 +1,247 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.kaazing.gateway.server;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.kaazing.gateway.security.RealmContext;
+import org.kaazing.gateway.server.context.resolve.DefaultAcceptOptionsContext;
+import org.kaazing.gateway.server.context.resolve.DefaultConnectOptionsContext;
+import org.kaazing.gateway.service.CrossSiteConstraintContext;
+import org.kaazing.gateway.service.ServiceContext;
+
+/**
+ * Difference between the running services and the services resolved from a reloaded gateway config. Services are
+ * matched by name (or by type and accepts when unnamed). A matched service is unchanged when its type, accepts,
+ * balances, connects, properties, accept and connect options, realm, required roles, mime mappings and cross-site
+ * constraints are all the same. Services are told apart by identity.
+ */
+final class ServiceContextDiff {
+
+    private final List<ServiceContext> removed = new ArrayList<ServiceContext>();
+    private final List<ServiceContext> added = new ArrayList<ServiceContext>();
+    private final List<ServiceContext> changedRunning = new ArrayList<ServiceContext>();
+    private final List<ServiceContext> changedResolved = new ArrayList<ServiceContext>();
+    private final List<ServiceContext> unchanged = new ArrayList<ServiceContext>();
+
+    ServiceContextDiff(Collection<? extends ServiceContext> running, Collection<? extends ServiceContext> resolved) {
+        Map<String, ServiceContext> runningByKey = new LinkedHashMap<String, ServiceContext>();
+        for (ServiceContext serviceContext : running) {
+            String key = getKey(serviceContext);
+            if (runningByKey.containsKey(key)) {
+                // unnamed services that cannot be told apart are replaced
+                removed.add(serviceContext);
+            } else {
+                runningByKey.put(key, serviceContext);
+            }
+        }
+
+        for (ServiceContext serviceContext : resolved) {
+            ServiceContext runningContext = runningByKey.remove(getKey(serviceContext));
+            if (runningContext == null) {
+                added.add(serviceContext);
+            } else if (isSameConfiguration(runningContext, serviceContext)) {
+                unchanged.add(runningContext);
+            } else {
+                changedRunning.add(runningContext);
+                changedResolved.add(serviceContext);
+            }
+        }
+
+        removed.addAll(runningByKey.values());
+    }
+
+    /**
+     * @return whether the services are the same, so nothing needs to be stopped or started
+     */
+    boolean isEmpty() {
+        return removed.isEmpty() && added.isEmpty() && changedRunning.isEmpty();
+    }
+
+    /**
+     * @return the running services no longer in the config
+     */
+    List<ServiceContext> getRemoved() {
+        return removed;
+    }
+
+    /**
+     * @return the resolved services new to the config
+     */
+    List<ServiceContext> getAdded() {
+        return added;
+    }
+
+    /**
+     * @return the running services whose configuration changed, in the order of {@link #getChangedResolved()}
+     */
+    List<ServiceContext> getChangedRunning() {
+        return changedRunning;
+    }
+
+    /**
+     * @return the resolved services replacing those of {@link #getChangedRunning()}
+     */
+    List<ServiceContext> getChangedResolved() {
+        return changedResolved;
+    }
+
+    /**
+     * @return the running services whose configuration is the same, which keep running
+     */
+    List<ServiceContext> getUnchanged() {
+        return unchanged;
+    }
+
+    /**
+     * @return the running services to stop, those removed or changed
+     */
+    List<ServiceContext> getStopped() {
+        List<ServiceContext> stopped = new ArrayList<ServiceContext>(removed);
+        stopped.addAll(changedRunning);
+        return stopped;
+    }
+
+    /**
+     * @return the resolved services to start, those added or changed
+     */
+    List<ServiceContext> getStarted() {
+        List<ServiceContext> started = new ArrayList<ServiceContext>(changedResolved);
+        started.addAll(added);
+        return started;
+    }
+
+    private static String getKey(ServiceContext serviceContext) {
+        String serviceName = serviceContext.getServiceName();
+        if (serviceName != null) {
+            return "service " + serviceName;
+        }
+        return "unnamed " + serviceContext.getServiceType() + " service accepting " + serviceContext.getAccepts();
+    }
+
+    private static boolean isSameConfiguration(ServiceContext running, ServiceContext resolved) {
+        return equal(running.getServiceType(), resolved.getServiceType()) &&
+                equal(running.getServiceName(), resolved.getServiceName()) &&
+                sameElements(running.getAccepts(), resolved.getAccepts()) &&
+                sameElements(running.getBalances(), resolved.getBalances()) &&
+                sameOrder(running.getConnects(), resolved.getConnects()) &&
+                equal(running.getProperties(), resolved.getProperties()) &&
+                equal(getOptions(running.getAcceptOptionsContext()),
+                        getOptions(resolved.getAcceptOptionsContext())) &&
+                equal(getOptions(running.getConnectOptionsContext()),
+                        getOptions(resolved.getConnectOptionsContext())) &&
+                equal(getRealmName(running), getRealmName(resolved)) &&
+                sameElements(asList(running.getRequireRoles()), asList(resolved.getRequireRoles())) &&
+                equal(running.getMimeMappings(), resolved.getMimeMappings()) &&
+                sameCrossSiteConstraints(running.getCrossSiteConstraints(), resolved.getCrossSiteConstraints());
+    }
+
+    /**
+     * Options contexts do not implement equals, so compare the options they apply instead. Options values can be
+     * arrays, which are compared by content.
+     */
+    private static Object getOptions(Object optionsContext) {
+        Map<String, Object> options = null;
+        if (optionsContext instanceof DefaultAcceptOptionsContext) {
+            options = ((DefaultAcceptOptionsContext) optionsContext).asOptionsMap();
+        } else if (optionsContext instanceof DefaultConnectOptionsContext) {
+            options = ((DefaultConnectOptionsContext) optionsContext).asOptionsMap();
+        }
+        if (options == null) {
+            return optionsContext;
+        }
+
+        Map<String, Object> comparableOptions = new LinkedHashMap<String, Object>();
+        for (Map.Entry<String, Object> entry : options.entrySet()) {
+            Object value = entry.getValue();
+            if (value instanceof Object[]) {
+                value = Arrays.asList((Object[]) value);
+            }
+            comparableOptions.put(entry.getKey(), value);
+        }
+        return comparableOptions;
+    }
+
+    private static String getRealmName(ServiceContext serviceContext) {
+        RealmContext realmContext = serviceContext.getServiceRealm();
+        return (realmContext != null) ? realmContext.getName() : null;
+    }
+
+    private static boolean sameCrossSiteConstraints(
+            Map<URI, ? extends Map<String, ? extends CrossSiteConstraintContext>> running,
+            Map<URI, ? extends Map<String, ? extends CrossSiteConstraintContext>> resolved) {
+        if (running == null || resolved == null) {
+            return running == resolved;
+        }
+        if (!running.keySet().equals(resolved.keySet())) {
+            return false;
+        }
+        for (Map.Entry<URI, ? extends Map<String, ? extends CrossSiteConstraintContext>> entry : running.entrySet()) {
+            Map<String, ? extends CrossSiteConstraintContext> runningConstraints = entry.getValue();
+            Map<String, ? extends CrossSiteConstraintContext> resolvedConstraints = resolved.get(entry.getKey());
+            if (!runningConstraints.keySet().equals(resolvedConstraints.keySet())) {
+                return false;
+            }
+            for (Map.Entry<String, ? extends CrossSiteConstraintContext> constraint : runningConstraints.entrySet()) {
+                CrossSiteConstraintContext runningConstraint = constraint.getValue();
+                CrossSiteConstraintContext resolvedConstraint = resolvedConstraints.get(constraint.getKey());
+                if (!equal(runningConstraint.getAllowOrigin(), resolvedConstraint.getAllowOrigin()) ||
+                        !equal(runningConstraint.getAllowMethods(), resolvedConstraint.getAllowMethods()) ||
+                        !equal(runningConstraint.getAllowHeaders(), resolvedConstraint.getAllowHeaders()) ||
+                        !equal(runningConstraint.getMaximumAge(), resolvedConstraint.getMaximumAge())) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static <T> List<T> asList(T[] elements) {
+        return (elements != null) ? Arrays.asList(elements) : Collections.<T>emptyList();
+    }
+
+    private static boolean sameElements(Collection<?> running, Collection<?> resolved) {
+        if (running == null || resolved == null) {
+            return running == resolved;
+        }
+        return new HashSet<Object>(running).equals(new HashSet<Object>(resolved));
+    }
+
+    private static boolean sameOrder(Collection<?> running, Collection<?> resolved) {
+        if (running == null || resolved == null) {
+            return running == resolved;
+        }
+        return new ArrayList<Object>(running).equals(new ArrayList<Object>(resolved));
+    }
+
+    private static boolean equal(Object running, Object resolved) {
+        return (running == null) ? resolved == null : running.equals(resolved);
+    }
+}
@@ -0,0 +1,279 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+
+package org.kaazing.gateway.server;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.kaazing.gateway.service.ServiceContext;
+import org.slf4j.Logger;
+
+/**
+ * Runs a lifecycle phase of the gateway services on a pool of threads, so that independent services are inited,
+ * started or stopped concurrently. A service that balances or connects to a URI accepted by another service depends on
+ * that service: it only runs a phase once the service it depends on has completed it, and stops before it. Dependencies
+ * that form a cycle are reduced to those on services declared earlier in the configuration. Every phase of one service
+ * runs on a single thread, so its callbacks stay in lifecycle order. Services are told apart by identity.
+ */
+final class ServiceLifecycleScheduler {
+
+    interface Phase {
+
+        void run(ServiceContext serviceContext) throws Exception;
+
+    }
+
+    private static final Logger LOGGER = Launcher.getGatewayStartupLogger();
+
+    private final List<ServiceContext> services;
+    private final Map<ServiceContext, List<ServiceContext>> dependencies;
+    private final Map<ServiceContext, List<ServiceContext>> dependents;
+    private final int threads;
+
+    /**
+     * @param threads number of services that run a phase at the same time, 1 runs them one after another in the order
+     *                of the configuration
+     */
+    ServiceLifecycleScheduler(Collection<? extends ServiceContext> services, int threads) {
+        this.services = new ArrayList<ServiceContext>(services);
+        this.threads = Math.max(1, threads);
+        this.dependencies = resolveDependencies(this.services);
+        this.dependents = invert(this.services, dependencies);
+    }
+
+    List<ServiceContext> getDependencies(ServiceContext serviceContext) {
+        return dependencies.get(serviceContext);
+    }
+
+    /**
+     * Runs the phase on every service, each one after the services it depends on. Once the phase fails for a service,
+     * no further service is scheduled and the first failure is thrown when the running ones have completed.
+     *
+     * @return the milliseconds spent in the phase by each service, in the order of the configuration
+     */
+    Map<ServiceContext, Long> runInDependencyOrder(Phase phase) throws Exception {
+        return run(phase, dependencies, dependents);
+    }
+
+    /**
+     * Runs the phase on every service, each one before the services it depends on.
+     *
+     * @return the milliseconds spent in the phase by each service, in the order of the configuration
+     */
+    Map<ServiceContext, Long> runInReverseDependencyOrder(Phase phase) throws Exception {
+        return run(phase, dependents, dependencies);
+    }
+
+    private Map<ServiceContext, Long> run(final Phase phase,
+                                          Map<ServiceContext, List<ServiceContext>> before,
+                                          Map<ServiceContext, List<ServiceContext>> after) throws Exception {
+        final Map<ServiceContext, Long> durations =
+                Collections.synchronizedMap(new IdentityHashMap<ServiceContext, Long>());
+        ExecutorService executor = newExecutor();
+        try {
+            CompletionService<ServiceContext> completionService =
+                    new ExecutorCompletionService<ServiceContext>(executor);
+            Map<ServiceContext, Integer> remaining = new IdentityHashMap<ServiceContext, Integer>();
+            int running = 0;
+            for (ServiceContext serviceContext : services) {
+                int count = before.get(serviceContext).size();
+                remaining.put(serviceContext, count);
+                if (count == 0) {
+                    submit(completionService, phase, serviceContext, durations);
+                    running++;
+                }
+            }
+
+            Exception failure = null;
+            while (running > 0) {
+                Future<ServiceContext> completed = completionService.take();
+                running--;
+
+                ServiceContext serviceContext;
+                try {
+                    serviceContext = completed.get();
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = (e.getCause() instanceof Exception) ? (Exception) e.getCause() : e;
+                    }
+                    continue;
+                }
+
+                if (failure == null) {
+                    for (ServiceContext next : after.get(serviceContext)) {
+                        int count = remaining.get(next) - 1;
+                        remaining.put(next, count);
+                        if (count == 0) {
+                            submit(completionService, phase, next, durations);
+                            running++;
+                        }
+                    }
+                }
+            }
+
+            if (failure != null) {
+                throw failure;
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        Map<ServiceContext, Long> orderedDurations = new LinkedHashMap<ServiceContext, Long>();
+        for (ServiceContext serviceContext : services) {
+            Long duration = durations.get(serviceContext);
+            if (duration != null) {
+                orderedDurations.put(serviceContext, duration);
+            }
+        }
+        return orderedDurations;
+    }
+
+    private static void submit(CompletionService<ServiceContext> completionService,
+                               final Phase phase,
+                               final ServiceContext serviceContext,
+                               final Map<ServiceContext, Long> durations) {
+        completionService.submit(new Callable<ServiceContext>() {
+            @Override
+            public ServiceContext call() throws Exception {
+                long startedAt = System.nanoTime();
+                try {
+                    phase.run(serviceContext);
+                } finally {
+                    durations.put(serviceContext, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt));
+                }
+                return serviceContext;
+            }
+        });
+    }
+
+    private ExecutorService newExecutor() {
+        final AtomicInteger threadCount = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "service-lifecycle-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    private static Map<ServiceContext, List<ServiceContext>> resolveDependencies(List<ServiceContext> services) {
+        Map<URI, ServiceContext> acceptingServices = new HashMap<URI, ServiceContext>();
+        for (ServiceContext serviceContext : services) {
+            for (URI accept : nonNull(serviceContext.getAccepts())) {
+                if (!acceptingServices.containsKey(accept)) {
+                    acceptingServices.put(accept, serviceContext);
+                }
+            }
+        }
+
+        Map<ServiceContext, List<ServiceContext>> dependencies =
+                new IdentityHashMap<ServiceContext, List<ServiceContext>>();
+        for (ServiceContext serviceContext : services) {
+            List<ServiceContext> serviceDependencies = new ArrayList<ServiceContext>();
+            List<URI> uris = new ArrayList<URI>(nonNull(serviceContext.getBalances()));
+            uris.addAll(nonNull(serviceContext.getConnects()));
+            for (URI uri : uris) {
+                ServiceContext dependency = acceptingServices.get(uri);
+                if (dependency != null && dependency != serviceContext && !serviceDependencies.contains(dependency)) {
+                    serviceDependencies.add(dependency);
+                }
+            }
+            dependencies.put(serviceContext, serviceDependencies);
+        }
+
+        if (hasCycle(services, dependencies)) {
+            LOGGER.warn("Services depend on each other, only dependencies on services declared earlier are kept");
+            for (int i = 0; i < services.size(); i++) {
+                dependencies.get(services.get(i)).retainAll(services.subList(0, i));
+            }
+        }
+        return dependencies;
+    }
+
+    private static boolean hasCycle(List<ServiceContext> services,
+                                    Map<ServiceContext, List<ServiceContext>> dependencies) {
+        Map<ServiceContext, List<ServiceContext>> dependents = invert(services, dependencies);
+        Map<ServiceContext, Integer> remaining = new IdentityHashMap<ServiceContext, Integer>();
+        List<ServiceContext> ready = new ArrayList<ServiceContext>();
+        for (ServiceContext serviceContext : services) {
+            int count = dependencies.get(serviceContext).size();
+            remaining.put(serviceContext, count);
+            if (count == 0) {
+                ready.add(serviceContext);
+            }
+        }
+
+        int visited = 0;
+        while (!ready.isEmpty()) {
+            ServiceContext serviceContext = ready.remove(ready.size() - 1);
+            visited++;
+            for (ServiceContext dependent : dependents.get(serviceContext)) {
+                int count = remaining.get(dependent) - 1;
+                remaining.put(dependent, count);
+                if (count == 0) {
+                    ready.add(dependent);
+                }
+            }
+        }
+        return visited < services.size();
+    }
+
+    private static Map<ServiceContext, List<ServiceContext>> invert(
+            List<ServiceContext> services, Map<ServiceContext, List<ServiceContext>> dependencies) {
+        Map<ServiceContext, List<ServiceContext>> dependents =
+                new IdentityHashMap<ServiceContext, List<ServiceContext>>();
+        for (ServiceContext serviceContext : services) {
+            dependents.put(serviceContext, new ArrayList<ServiceContext>());
+        }
+        for (ServiceContext serviceContext : services) {
+            for (ServiceContext dependency : dependencies.get(serviceContext)) {
+                dependents.get(dependency).add(serviceContext);
+            }
+        }
+        return dependents;
+    }
+
+    private static Collection<URI> nonNull(Collection<URI> uris) {
+        return (uris != null) ? uris : Collections.<URI>emptyList();
+    }
+
+}
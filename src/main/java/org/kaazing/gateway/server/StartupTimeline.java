@@ -0,0 +1,228 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.kaazing.gateway.server;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import org.kaazing.gateway.service.ServiceContext;
+
+/**
+ * Records when each phase of the gateway startup began and how long it took, from parsing the configuration to starting
+ * the last service. Phases are reported through the {@link GatewayStartupListenerApi} callbacks, so the timeline can be
+ * told about them from any thread, and the result is available as a JSON report and as JMX attributes. Recording stops
+ * once the gateway has started, so services started when the configuration is reloaded do not change the timeline.
+ */
+public final class StartupTimeline implements GatewayStartupListenerApi, StartupTimelineMXBean {
+
+    public static final String CONFIG_PARSE = "config.parse";
+    public static final String CONFIG_TRANSLATE = "config.translate";
+    public static final String CONFIG_TRANSFORM = "config.transform";
+    public static final String CONFIG_VALIDATE = "config.validate";
+    public static final String CONTEXT_RESOLVE = "context.resolve";
+    public static final String CLUSTER_JOIN = "cluster.join";
+
+    // followed by the accept URI
+    public static final String TRANSPORT_BIND = "transport.bind ";
+
+    // followed by the service name, or its type and accepts
+    public static final String SERVICE_INIT = "service.init ";
+    public static final String SERVICE_START = "service.start ";
+
+    private static final class Phase {
+        final String name;
+        final String thread;
+        final long startedAt;
+        volatile long completedAt = -1;
+
+        Phase(String name, long startedAt) {
+            this.name = name;
+            this.thread = Thread.currentThread().getName();
+            this.startedAt = startedAt;
+        }
+    }
+
+    private static final Comparator<Phase> START_ORDER = new Comparator<Phase>() {
+        @Override
+        public int compare(Phase phase1, Phase phase2) {
+            return (phase1.startedAt < phase2.startedAt) ? -1 : ((phase1.startedAt == phase2.startedAt) ? 0 : 1);
+        }
+    };
+
+    private final long launchTime = System.currentTimeMillis();
+    private final long launchedAt = System.nanoTime();
+    private final ConcurrentMap<String, Phase> phases = new ConcurrentHashMap<String, Phase>();
+    private volatile long startedAt = -1;
+
+    @Override
+    public void startingPhase(String phase) {
+        if (startedAt == -1) {
+            phases.put(phase, new Phase(phase, System.nanoTime()));
+        }
+    }
+
+    @Override
+    public void completedPhase(String phase) {
+        if (startedAt != -1) {
+            return;
+        }
+        Phase startedPhase = phases.get(phase);
+        if (startedPhase != null && startedPhase.completedAt == -1) {
+            startedPhase.completedAt = System.nanoTime();
+        }
+    }
+
+    @Override
+    public void startingGateway() {
+        // the timeline starts when it is created, before the configuration is parsed
+    }
+
+    @Override
+    public void startedGateway() {
+        if (startedAt == -1) {
+            startedAt = System.nanoTime();
+        }
+    }
+
+    @Override
+    public void initingService(ServiceContext serviceContext) {
+        startingPhase(SERVICE_INIT + Launcher.getServiceLabel(serviceContext));
+    }
+
+    @Override
+    public void initedService(ServiceContext serviceContext) {
+        completedPhase(SERVICE_INIT + Launcher.getServiceLabel(serviceContext));
+    }
+
+    @Override
+    public void startingService(ServiceContext serviceContext) {
+        startingPhase(SERVICE_START + Launcher.getServiceLabel(serviceContext));
+    }
+
+    @Override
+    public void startedService(ServiceContext serviceContext) {
+        completedPhase(SERVICE_START + Launcher.getServiceLabel(serviceContext));
+    }
+
+    @Override
+    public void stopingService(ServiceContext serviceContext) {
+    }
+
+    @Override
+    public void stoppedService(ServiceContext serviceContext) {
+    }
+
+    @Override
+    public void quiesceingService(ServiceContext serviceContext) {
+    }
+
+    @Override
+    public void quiescedService(ServiceContext serviceContext) {
+    }
+
+    @Override
+    public void destroyingService(ServiceContext serviceContext) {
+    }
+
+    @Override
+    public void destroyedService(ServiceContext serviceContext) {
+    }
+
+    @Override
+    public long getStartupTime() {
+        long started = startedAt;
+        return (started == -1) ? -1 : TimeUnit.NANOSECONDS.toMillis(started - launchedAt);
+    }
+
+    @Override
+    public Map<String, Long> getPhaseDurations() {
+        Map<String, Long> durations = new LinkedHashMap<String, Long>();
+        for (Phase phase : getPhases()) {
+            if (phase.completedAt != -1) {
+                durations.put(phase.name, TimeUnit.NANOSECONDS.toMillis(phase.completedAt - phase.startedAt));
+            }
+        }
+        return durations;
+    }
+
+    /**
+     * Phases that have not completed, typically because they failed, are reported without a duration.
+     */
+    @Override
+    public String getReport() {
+        StringBuilder report = new StringBuilder();
+        report.append("{\"launchTime\":").append(launchTime);
+        report.append(",\"startupTime\":").append(getStartupTime());
+        report.append(",\"phases\":[");
+        String separator = "";
+        for (Phase phase : getPhases()) {
+            report.append(separator);
+            report.append("{\"name\":");
+            appendString(report, phase.name);
+            report.append(",\"thread\":");
+            appendString(report, phase.thread);
+            report.append(",\"start\":").append(TimeUnit.NANOSECONDS.toMillis(phase.startedAt - launchedAt));
+            long completedAt = phase.completedAt;
+            if (completedAt != -1) {
+                report.append(",\"duration\":").append(TimeUnit.NANOSECONDS.toMillis(completedAt - phase.startedAt));
+            }
+            report.append('}');
+            separator = ",";
+        }
+        report.append("]}");
+        return report.toString();
+    }
+
+    @Override
+    public String toString() {
+        return getReport();
+    }
+
+    private List<Phase> getPhases() {
+        List<Phase> orderedPhases = new ArrayList<Phase>(phases.values());
+        Collections.sort(orderedPhases, START_ORDER);
+        return orderedPhases;
+    }
+
+    private static void appendString(StringBuilder report, String value) {
+        report.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                report.append('\\').append(c);
+            } else if (c < ' ') {
+                report.append(String.format("\\u%04x", (int) c));
+            } else {
+                report.append(c);
+            }
+        }
+        report.append('"');
+    }
+
+}
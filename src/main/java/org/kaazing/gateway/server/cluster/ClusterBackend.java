@@ -0,0 +1,76 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.kaazing.gateway.server.cluster;
+
+import com.hazelcast.core.AtomicNumber;
+import com.hazelcast.core.IList;
+import com.hazelcast.core.ILock;
+import com.hazelcast.core.IMap;
+import com.hazelcast.core.IQueue;
+import com.hazelcast.core.ITopic;
+import com.hazelcast.core.IdGenerator;
+import java.util.List;
+import org.kaazing.gateway.service.cluster.MemberId;
+
+/**
+ * The distributed data structures and membership a cluster context runs on. The gateway uses Hazelcast by default,
+ * other implementations are provided by a {@link ClusterBackendFactorySpi}. The data structures keep the Hazelcast
+ * interfaces, which the gateway already exposes through its collections factories.
+ */
+public interface ClusterBackend {
+
+    /**
+     * Joins the cluster. Joining an already joined cluster is a no-op.
+     */
+    void start();
+
+    /**
+     * Leaves the cluster, the other members see the local member removed.
+     */
+    void shutdown();
+
+    MemberId getLocalMember();
+
+    /**
+     * @return the current members, including the local member, the oldest first
+     */
+    List<MemberId> getMembers();
+
+    void addMembershipListener(ClusterBackendListener listener);
+
+    void removeMembershipListener(ClusterBackendListener listener);
+
+    <K, V> IMap<K, V> getMap(String name);
+
+    <E> IList<E> getList(String name);
+
+    <E> IQueue<E> getQueue(String name);
+
+    <E> ITopic<E> getTopic(String name);
+
+    ILock getLock(Object key);
+
+    IdGenerator getIdGenerator(String name);
+
+    AtomicNumber getAtomicNumber(String name);
+
+}
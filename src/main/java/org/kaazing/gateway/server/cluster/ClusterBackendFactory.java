@@ -0,0 +1,73 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.kaazing.gateway.server.cluster;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import org.kaazing.gateway.service.cluster.MemberId;
+import static java.util.Collections.unmodifiableMap;
+import static java.util.ServiceLoader.load;
+
+/**
+ * Creates cluster backends with the {@link ClusterBackendFactorySpi} implementations available on the class path.
+ */
+public final class ClusterBackendFactory {
+
+    private final Map<String, ClusterBackendFactorySpi> factoriesByName;
+
+    private ClusterBackendFactory(Map<String, ClusterBackendFactorySpi> factoriesByName) {
+        this.factoriesByName = factoriesByName;
+    }
+
+    public static ClusterBackendFactory newClusterBackendFactory() {
+        return newClusterBackendFactory(load(ClusterBackendFactorySpi.class));
+    }
+
+    public static ClusterBackendFactory newClusterBackendFactory(ClassLoader loader) {
+        return newClusterBackendFactory(load(ClusterBackendFactorySpi.class, loader));
+    }
+
+    private static ClusterBackendFactory newClusterBackendFactory(ServiceLoader<ClusterBackendFactorySpi> factories) {
+        Map<String, ClusterBackendFactorySpi> factoriesByName = new HashMap<>();
+        for (ClusterBackendFactorySpi factory : factories) {
+            factoriesByName.put(factory.getName(), factory);
+        }
+        return new ClusterBackendFactory(unmodifiableMap(factoriesByName));
+    }
+
+    public ClusterBackendFactorySpi getFactory(String name) {
+        return factoriesByName.get(name);
+    }
+
+    public ClusterBackend newClusterBackend(String name, String clusterName, List<MemberId> accepts,
+                                            List<MemberId> connects) {
+        ClusterBackendFactorySpi factory = factoriesByName.get(name);
+        if (factory == null) {
+            throw new IllegalArgumentException("Unknown cluster backend \"" + name + "\", available backends: "
+                    + factoriesByName.keySet());
+        }
+        return factory.newClusterBackend(clusterName, accepts, connects);
+    }
+
+}
@@ -0,0 +1,46 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.kaazing.gateway.server.cluster;
+
+import java.util.List;
+import org.kaazing.gateway.service.cluster.MemberId;
+
+/**
+ * Provides a {@link ClusterBackend} by name, implementations are found with the {@link java.util.ServiceLoader}.
+ */
+public abstract class ClusterBackendFactorySpi {
+
+    /**
+     * @return the name the backend is selected with
+     */
+    public abstract String getName();
+
+    /**
+     * Creates the backend of one cluster member, which joins the cluster when started.
+     *
+     * @param clusterName  the name of the cluster
+     * @param accepts      the addresses the member accepts cluster connections on, may be empty
+     * @param connects     the addresses of the other members, may be empty
+     */
+    public abstract ClusterBackend newClusterBackend(String clusterName, List<MemberId> accepts, List<MemberId> connects);
+
+}
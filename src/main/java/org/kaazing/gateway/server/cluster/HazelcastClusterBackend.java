@@ -0,0 +1,165 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.kaazing.gateway.server.cluster;
+
+import com.hazelcast.core.AtomicNumber;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IList;
+import com.hazelcast.core.ILock;
+import com.hazelcast.core.IMap;
+import com.hazelcast.core.IQueue;
+import com.hazelcast.core.ITopic;
+import com.hazelcast.core.IdGenerator;
+import com.hazelcast.core.Member;
+import com.hazelcast.core.MembershipEvent;
+import com.hazelcast.core.MembershipListener;
+import java.io.Serializable;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.kaazing.gateway.service.cluster.MemberId;
+import org.kaazing.gateway.util.GL;
+
+/**
+ * The {@link ClusterBackend} of a started Hazelcast instance. It is serializable so that the objects replicated through
+ * the cluster, such as message buffers, can refer to it; Hazelcast resolves the instance of the receiving member.
+ */
+public class HazelcastClusterBackend implements ClusterBackend, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final HazelcastInstance instance;
+    private transient Map<ClusterBackendListener, MembershipListener> membershipListeners;
+
+    public HazelcastClusterBackend(HazelcastInstance instance) {
+        if (instance == null) {
+            throw new NullPointerException("instance");
+        }
+        this.instance = instance;
+    }
+
+    public HazelcastInstance getHazelcastInstance() {
+        return instance;
+    }
+
+    @Override
+    public void start() {
+        // the instance joins the cluster when it is created
+    }
+
+    @Override
+    public void shutdown() {
+        // KG-5837: do not call Hazelcast.shutdownAll() since that will hobble all in-process gateways
+        instance.getLifecycleService().shutdown();
+    }
+
+    @Override
+    public MemberId getLocalMember() {
+        return getMemberId(instance.getCluster().getLocalMember());
+    }
+
+    @Override
+    public List<MemberId> getMembers() {
+        List<MemberId> members = new ArrayList<MemberId>();
+        for (Member member : instance.getCluster().getMembers()) {
+            members.add(getMemberId(member));
+        }
+        return members;
+    }
+
+    @Override
+    public synchronized void addMembershipListener(final ClusterBackendListener listener) {
+        if (membershipListeners == null) {
+            membershipListeners = new ConcurrentHashMap<ClusterBackendListener, MembershipListener>();
+        }
+        MembershipListener membershipListener = new MembershipListener() {
+            @Override
+            public void memberAdded(MembershipEvent membershipEvent) {
+                listener.memberAdded(getMemberId(membershipEvent.getMember()));
+            }
+
+            @Override
+            public void memberRemoved(MembershipEvent membershipEvent) {
+                listener.memberRemoved(getMemberId(membershipEvent.getMember()));
+            }
+        };
+        membershipListeners.put(listener, membershipListener);
+        instance.getCluster().addMembershipListener(membershipListener);
+    }
+
+    @Override
+    public synchronized void removeMembershipListener(ClusterBackendListener listener) {
+        MembershipListener membershipListener = (membershipListeners != null) ? membershipListeners.remove(listener) : null;
+        if (membershipListener != null) {
+            instance.getCluster().removeMembershipListener(membershipListener);
+        }
+    }
+
+    @Override
+    public <K, V> IMap<K, V> getMap(String name) {
+        return instance.getMap(name);
+    }
+
+    @Override
+    public <E> IList<E> getList(String name) {
+        return instance.getList(name);
+    }
+
+    @Override
+    public <E> IQueue<E> getQueue(String name) {
+        return instance.getQueue(name);
+    }
+
+    @Override
+    public <E> ITopic<E> getTopic(String name) {
+        return instance.getTopic(name);
+    }
+
+    @Override
+    public ILock getLock(Object key) {
+        return instance.getLock(key);
+    }
+
+    @Override
+    public IdGenerator getIdGenerator(String name) {
+        return instance.getIdGenerator(name);
+    }
+
+    @Override
+    public AtomicNumber getAtomicNumber(String name) {
+        return instance.getAtomicNumber(name);
+    }
+
+    public static MemberId getMemberId(Member member) {
+        InetSocketAddress inetSocketAddress = member.getInetSocketAddress();
+        String hostname = inetSocketAddress.getHostName();
+        if (!inetSocketAddress.isUnresolved()) {
+            String ipAddr = inetSocketAddress.getAddress().getHostAddress();
+            hostname = ipAddr;
+            GL.debug("ha", "getMemberId: Hostname: {}; IP Address: {}", hostname, ipAddr);
+        }
+        return new MemberId("tcp", hostname, inetSocketAddress.getPort());
+    }
+
+}
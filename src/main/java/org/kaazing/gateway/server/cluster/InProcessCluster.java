@@ -0,0 +1,316 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.kaazing.gateway.server.cluster;
+
+import com.hazelcast.core.EntryEvent;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.kaazing.gateway.service.cluster.MemberId;
+
+/**
+ * A cluster whose members all run in the current process, to exercise and measure cluster code paths with many members on
+ * one machine. The members communicate through a simulated network:
+ * <ul>
+ * <li>operations on a map entry, lock or counter owned by another member wait for a round trip of the configured latency,
+ * and events and topic messages reach the other members after the latency</li>
+ * <li>values are serialized when stored or published and deserialized by each member reading them, unless disabled</li>
+ * <li>the cluster can be split into partitions that no longer see each other, each working on its own copy of the data,
+ * and healed again, the data of the smaller side being merged into the larger one</li>
+ * </ul>
+ * Clusters created with {@link #getCluster(String)} are shared by name within the process, which lets several gateways
+ * configured with the in-process backend form one cluster.
+ */
+public final class InProcessCluster {
+
+    private static final ConcurrentMap<String, InProcessCluster> CLUSTERS = new ConcurrentHashMap<>();
+
+    private final String name;
+    private final AtomicInteger memberCount = new AtomicInteger();
+    private final AtomicLong joinCount = new AtomicLong();
+    private final AtomicInteger pendingEvents = new AtomicInteger();
+
+    // guarded by this
+    private final List<InProcessPartition> partitions = new ArrayList<>();
+
+    private volatile long latencyNanos;
+    private volatile boolean copyValues = true;
+
+    public InProcessCluster(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return the cluster of the given name in this process, created if needed
+     */
+    public static InProcessCluster getCluster(String name) {
+        InProcessCluster cluster = CLUSTERS.get(name);
+        if (cluster == null) {
+            InProcessCluster newCluster = new InProcessCluster(name);
+            cluster = CLUSTERS.putIfAbsent(name, newCluster);
+            if (cluster == null) {
+                cluster = newCluster;
+            }
+        }
+        return cluster;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Sets the one-way delay between two members, 0 by default.
+     */
+    public void setLatency(long latency, TimeUnit unit) {
+        if (latency < 0) {
+            throw new IllegalArgumentException("latency");
+        }
+        this.latencyNanos = unit.toNanos(latency);
+    }
+
+    public long getLatency(TimeUnit unit) {
+        return unit.convert(latencyNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Sets whether map values and topic messages are copied through serialization, as they are between processes. Without
+     * copies the members share the stored objects, which is cheaper but hides serialization costs and shared state bugs.
+     */
+    public void setCopyValues(boolean copyValues) {
+        this.copyValues = copyValues;
+    }
+
+    public boolean isCopyValues() {
+        return copyValues;
+    }
+
+    /**
+     * Creates a member with a generated id, which joins the cluster when started.
+     */
+    public InProcessClusterBackend newMember() {
+        return newMember(new MemberId("tcp", name, memberCount.incrementAndGet()));
+    }
+
+    public InProcessClusterBackend newMember(MemberId memberId) {
+        return new InProcessClusterBackend(this, memberId);
+    }
+
+    /**
+     * @return the members of all partitions, the oldest first within each partition
+     */
+    public synchronized List<MemberId> getMembers() {
+        List<MemberId> members = new ArrayList<>();
+        for (InProcessPartition partition : partitions) {
+            for (InProcessClusterBackend member : partition.getMembers()) {
+                members.add(member.getLocalMember());
+            }
+        }
+        return members;
+    }
+
+    /**
+     * Splits the given members off from the members they could reach so far, into a partition of their own. Each side sees
+     * the members of the other side removed and keeps working on its own copy of the data.
+     */
+    public synchronized void partition(Collection<MemberId> memberIds) {
+        Set<MemberId> isolatedIds = new HashSet<>(memberIds);
+        for (InProcessPartition partition : new ArrayList<>(partitions)) {
+            List<InProcessClusterBackend> isolated = new ArrayList<>();
+            List<InProcessClusterBackend> remaining = new ArrayList<>();
+            for (InProcessClusterBackend member : partition.getMembers()) {
+                if (isolatedIds.remove(member.getLocalMember())) {
+                    isolated.add(member);
+                } else {
+                    remaining.add(member);
+                }
+            }
+            if (isolated.isEmpty() || remaining.isEmpty()) {
+                continue;
+            }
+
+            InProcessPartition newPartition = partition.copy();
+            newPartition.setMembers(isolated);
+            partition.setMembers(remaining);
+            partitions.add(newPartition);
+            for (InProcessClusterBackend member : isolated) {
+                member.setPartition(newPartition);
+            }
+            fireMembershipChanged(remaining, isolated, false);
+            fireMembershipChanged(isolated, remaining, false);
+        }
+        if (!isolatedIds.isEmpty()) {
+            throw new IllegalArgumentException("Not members of cluster " + name + ": " + isolatedIds);
+        }
+    }
+
+    /**
+     * Reconnects all partitions. The members of the smaller partitions rejoin the largest one, as its youngest members,
+     * and the map entries only they had are added to it.
+     */
+    public synchronized void heal() {
+        if (partitions.size() < 2) {
+            return;
+        }
+
+        final InProcessPartition target = getLargestPartition();
+        for (InProcessPartition partition : new ArrayList<>(partitions)) {
+            if (partition == target) {
+                continue;
+            }
+
+            final List<InProcessClusterBackend> targetMembers = target.getMembers();
+            target.merge(partition, new InProcessPartition.MergeListener() {
+                @Override
+                public void entryMerged(String mapName, Object key, Object storedValue) {
+                    for (InProcessClusterBackend member : targetMembers) {
+                        member.deliverEntryEvent(mapName, EntryEvent.TYPE_ADDED, key, storedValue, getLatencyNanos());
+                    }
+                }
+            });
+
+            List<InProcessClusterBackend> rejoining = partition.getMembers();
+            List<InProcessClusterBackend> members = new ArrayList<>(targetMembers);
+            members.addAll(rejoining);
+            target.setMembers(members);
+            for (InProcessClusterBackend member : rejoining) {
+                member.setJoinOrder(joinCount.incrementAndGet());
+                member.setPartition(target);
+            }
+            partitions.remove(partition);
+            fireMembershipChanged(targetMembers, rejoining, true);
+            fireMembershipChanged(rejoining, targetMembers, true);
+        }
+    }
+
+    /**
+     * Waits until the events and messages sent so far, and any sent meanwhile, have been delivered.
+     *
+     * @return false if some were still pending after the timeout
+     */
+    public boolean awaitEvents(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (pendingEvents.get() > 0) {
+            if (System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            Thread.sleep(1);
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "InProcessCluster[" + name + "]";
+    }
+
+    synchronized void join(InProcessClusterBackend member) {
+        InProcessPartition partition;
+        if (partitions.isEmpty()) {
+            partition = new InProcessPartition();
+            partitions.add(partition);
+        } else {
+            partition = getLargestPartition();
+        }
+
+        List<InProcessClusterBackend> existingMembers = partition.getMembers();
+        List<InProcessClusterBackend> members = new ArrayList<>(existingMembers);
+        members.add(member);
+        member.setJoinOrder(joinCount.incrementAndGet());
+        member.setPartition(partition);
+        partition.setMembers(members);
+
+        List<InProcessClusterBackend> joined = new ArrayList<>();
+        joined.add(member);
+        fireMembershipChanged(existingMembers, joined, true);
+    }
+
+    synchronized void leave(InProcessClusterBackend member) {
+        for (InProcessPartition partition : partitions) {
+            List<InProcessClusterBackend> members = new ArrayList<>(partition.getMembers());
+            if (members.remove(member)) {
+                partition.setMembers(members);
+                List<InProcessClusterBackend> left = new ArrayList<>();
+                left.add(member);
+                fireMembershipChanged(members, left, false);
+                if (members.isEmpty()) {
+                    partitions.remove(partition);
+                }
+                return;
+            }
+        }
+    }
+
+    long getLatencyNanos() {
+        return latencyNanos;
+    }
+
+    /**
+     * @return the value to store or send, serialized when values are copied
+     */
+    Object store(Object value) {
+        return (copyValues && value != null) ? SerializedValue.serialize(value) : value;
+    }
+
+    void eventScheduled() {
+        pendingEvents.incrementAndGet();
+    }
+
+    void eventDelivered() {
+        pendingEvents.decrementAndGet();
+    }
+
+    private InProcessPartition getLargestPartition() {
+        InProcessPartition largest = null;
+        for (InProcessPartition partition : partitions) {
+            if (largest == null || partition.getMembers().size() > largest.getMembers().size()
+                    || (partition.getMembers().size() == largest.getMembers().size()
+                    && getOldestJoinOrder(partition) < getOldestJoinOrder(largest))) {
+                largest = partition;
+            }
+        }
+        return largest;
+    }
+
+    private static long getOldestJoinOrder(InProcessPartition partition) {
+        List<InProcessClusterBackend> members = partition.getMembers();
+        return members.isEmpty() ? Long.MAX_VALUE : members.get(0).getJoinOrder();
+    }
+
+    private void fireMembershipChanged(List<InProcessClusterBackend> observers, List<InProcessClusterBackend> changed,
+                                       boolean added) {
+        long delay = latencyNanos;
+        for (InProcessClusterBackend observer : observers) {
+            for (InProcessClusterBackend member : changed) {
+                observer.deliverMembershipEvent(member.getLocalMember(), added, delay);
+            }
+        }
+    }
+
+}
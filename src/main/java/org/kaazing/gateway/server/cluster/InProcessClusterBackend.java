@@ -0,0 +1,547 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.kaazing.gateway.server.cluster;
+
+import com.hazelcast.core.AtomicNumber;
+import com.hazelcast.core.EntryEvent;
+import com.hazelcast.core.EntryListener;
+import com.hazelcast.core.IList;
+import com.hazelcast.core.ILock;
+import com.hazelcast.core.IMap;
+import com.hazelcast.core.IQueue;
+import com.hazelcast.core.ITopic;
+import com.hazelcast.core.IdGenerator;
+import com.hazelcast.core.Instance;
+import com.hazelcast.core.MessageListener;
+import java.io.InvalidObjectException;
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import org.kaazing.gateway.service.cluster.MemberId;
+import org.kaazing.gateway.util.GL;
+
+/**
+ * A member of an {@link InProcessCluster}. Events, topic messages and membership changes are delivered to the listeners of
+ * the member on a thread of its own, in the order they were sent by each other member.
+ * <p/>
+ * The member is serializable so that the objects stored in the cluster can refer to it, a deserialized reference resolves
+ * to the member reading the object.
+ */
+public final class InProcessClusterBackend implements ClusterBackend, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final ThreadLocal<InProcessClusterBackend> DESERIALIZING_MEMBER = new ThreadLocal<>();
+
+    private final InProcessCluster cluster;
+    private final MemberId memberId;
+    private final List<ClusterBackendListener> membershipListeners;
+    private final ConcurrentMap<String, List<EntryListenerRegistration>> entryListeners;
+    private final ConcurrentMap<String, List<MessageListener<Object>>> messageListeners;
+    private final ConcurrentMap<String, IMap<?, ?>> maps;
+    private final ConcurrentMap<String, ITopic<?>> topics;
+
+    private volatile InProcessPartition partition;
+    private volatile long joinOrder;
+    private volatile ScheduledExecutorService events;
+
+    InProcessClusterBackend(InProcessCluster cluster, MemberId memberId) {
+        this.cluster = cluster;
+        this.memberId = memberId;
+        this.membershipListeners = new CopyOnWriteArrayList<>();
+        this.entryListeners = new ConcurrentHashMap<>();
+        this.messageListeners = new ConcurrentHashMap<>();
+        this.maps = new ConcurrentHashMap<>();
+        this.topics = new ConcurrentHashMap<>();
+    }
+
+    public InProcessCluster getCluster() {
+        return cluster;
+    }
+
+    @Override
+    public void start() {
+        synchronized (this) {
+            if (events != null) {
+                return;
+            }
+            events = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "in-process-cluster-" + memberId);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        cluster.join(this);
+    }
+
+    @Override
+    public void shutdown() {
+        ScheduledExecutorService executor;
+        synchronized (this) {
+            executor = events;
+            events = null;
+        }
+        if (executor != null) {
+            cluster.leave(this);
+            for (int i = executor.shutdownNow().size(); i > 0; i--) {
+                cluster.eventDelivered();
+            }
+        }
+    }
+
+    @Override
+    public MemberId getLocalMember() {
+        return memberId;
+    }
+
+    @Override
+    public List<MemberId> getMembers() {
+        InProcessPartition currentPartition = partition;
+        if (events == null || currentPartition == null) {
+            return Collections.emptyList();
+        }
+        List<MemberId> members = new ArrayList<>();
+        for (InProcessClusterBackend member : currentPartition.getMembers()) {
+            members.add(member.memberId);
+        }
+        return members;
+    }
+
+    @Override
+    public void addMembershipListener(ClusterBackendListener listener) {
+        membershipListeners.add(listener);
+    }
+
+    @Override
+    public void removeMembershipListener(ClusterBackendListener listener) {
+        membershipListeners.remove(listener);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <K, V> IMap<K, V> getMap(String name) {
+        IMap<?, ?> map = maps.get(name);
+        if (map == null) {
+            IMap<?, ?> newMap = InProcessMap.newMap(this, name);
+            map = maps.putIfAbsent(name, newMap);
+            if (map == null) {
+                map = newMap;
+            }
+        }
+        return (IMap<K, V>) map;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <E> ITopic<E> getTopic(String name) {
+        ITopic<?> topic = topics.get(name);
+        if (topic == null) {
+            ITopic<?> newTopic = InProcessTopic.newTopic(this, name);
+            topic = topics.putIfAbsent(name, newTopic);
+            if (topic == null) {
+                topic = newTopic;
+            }
+        }
+        return (ITopic<E>) topic;
+    }
+
+    @Override
+    public <E> IList<E> getList(final String name) {
+        return InProcessStructure.newProxy(IList.class, new InProcessStructure(this, name, name, Instance.InstanceType.LIST) {
+            @Override
+            Object getDelegate(InProcessPartition partition) {
+                return partition.getList(name);
+            }
+        });
+    }
+
+    @Override
+    public <E> IQueue<E> getQueue(final String name) {
+        return InProcessStructure.newProxy(IQueue.class, new InProcessStructure(this, name, name, Instance.InstanceType.QUEUE) {
+            @Override
+            Object getDelegate(InProcessPartition partition) {
+                return partition.getQueue(name);
+            }
+        });
+    }
+
+    @Override
+    public ILock getLock(final Object key) {
+        return InProcessStructure.newProxy(ILock.class, new InProcessStructure(this, String.valueOf(key), key,
+                Instance.InstanceType.LOCK) {
+            @Override
+            Object getDelegate(InProcessPartition partition) {
+                return partition.getLock(key);
+            }
+        });
+    }
+
+    @Override
+    public AtomicNumber getAtomicNumber(final String name) {
+        return InProcessStructure.newProxy(AtomicNumber.class, new InProcessStructure(this, name, name,
+                Instance.InstanceType.ATOMIC_NUMBER) {
+            @Override
+            Object getDelegate(InProcessPartition partition) {
+                return partition.getAtomicNumber(name);
+            }
+        });
+    }
+
+    @Override
+    public IdGenerator getIdGenerator(String name) {
+        return new IdGeneratorImpl(name);
+    }
+
+    @Override
+    public String toString() {
+        return "InProcessClusterBackend[" + memberId + "]";
+    }
+
+    InProcessPartition getPartition() {
+        InProcessPartition currentPartition = partition;
+        if (events == null || currentPartition == null) {
+            throw new IllegalStateException("Cluster member " + memberId + " is not started");
+        }
+        return currentPartition;
+    }
+
+    void setPartition(InProcessPartition partition) {
+        this.partition = partition;
+    }
+
+    long getJoinOrder() {
+        return joinOrder;
+    }
+
+    void setJoinOrder(long joinOrder) {
+        this.joinOrder = joinOrder;
+    }
+
+    /**
+     * Waits for a round trip to the member owning the key, unless the local member owns it.
+     */
+    void roundTrip(Object key) {
+        long latency = cluster.getLatencyNanos();
+        if (latency > 0 && getPartition().getOwner(key) != this) {
+            pause(2 * latency);
+        }
+    }
+
+    /**
+     * Waits for a round trip to all the other members, for the operations spanning the whole cluster.
+     */
+    void roundTripAll() {
+        long latency = cluster.getLatencyNanos();
+        if (latency > 0 && getPartition().getMembers().size() > 1) {
+            pause(2 * latency);
+        }
+    }
+
+    Object store(Object value) {
+        return cluster.store(value);
+    }
+
+    /**
+     * @return the local copy of a stored value
+     */
+    Object load(Object storedValue) {
+        return (storedValue instanceof SerializedValue) ? ((SerializedValue) storedValue).deserialize(this) : storedValue;
+    }
+
+    void fireEntryEvent(String mapName, int eventType, Object key, Object storedValue) {
+        long latency = cluster.getLatencyNanos();
+        for (InProcessClusterBackend member : getPartition().getMembers()) {
+            member.deliverEntryEvent(mapName, eventType, key, storedValue, (member == this) ? 0 : latency);
+        }
+    }
+
+    void publish(String topicName, Object message) {
+        Object storedMessage = store(message);
+        long latency = cluster.getLatencyNanos();
+        for (InProcessClusterBackend member : getPartition().getMembers()) {
+            member.deliverMessage(topicName, storedMessage, (member == this) ? 0 : latency);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    void addEntryListener(String mapName, EntryListener<?, ?> listener, Object key, boolean includeValue,
+                          boolean localOnly) {
+        getListeners(entryListeners, mapName).add(new EntryListenerRegistration((EntryListener<Object, Object>) listener,
+                key, includeValue, localOnly));
+    }
+
+    void removeEntryListener(String mapName, EntryListener<?, ?> listener, Object key) {
+        List<EntryListenerRegistration> registrations = entryListeners.get(mapName);
+        if (registrations != null) {
+            for (EntryListenerRegistration registration : registrations) {
+                if (registration.listener == listener && equal(registration.key, key)) {
+                    registrations.remove(registration);
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    void addMessageListener(String topicName, MessageListener<?> listener) {
+        getListeners(messageListeners, topicName).add((MessageListener<Object>) listener);
+    }
+
+    void removeMessageListener(String topicName, MessageListener<?> listener) {
+        List<MessageListener<Object>> listeners = messageListeners.get(topicName);
+        if (listeners != null) {
+            listeners.remove(listener);
+        }
+    }
+
+    void deliverEntryEvent(final String mapName, final int eventType, final Object key, final Object storedValue,
+                           long delayNanos) {
+        final List<EntryListenerRegistration> registrations = entryListeners.get(mapName);
+        if (registrations == null || registrations.isEmpty()) {
+            return;
+        }
+
+        schedule(new Runnable() {
+            @Override
+            @SuppressWarnings({ "rawtypes", "unchecked" })
+            public void run() {
+                Object value = null;
+                boolean valueLoaded = false;
+                for (EntryListenerRegistration registration : registrations) {
+                    if (!registration.accepts(InProcessClusterBackend.this, key)) {
+                        continue;
+                    }
+                    if (registration.includeValue && !valueLoaded) {
+                        value = load(storedValue);
+                        valueLoaded = true;
+                    }
+                    EntryEvent event = new EntryEvent(mapName, null, eventType, key,
+                            registration.includeValue ? value : null);
+                    try {
+                        switch (eventType) {
+                        case EntryEvent.TYPE_ADDED:
+                            registration.listener.entryAdded(event);
+                            break;
+                        case EntryEvent.TYPE_UPDATED:
+                            registration.listener.entryUpdated(event);
+                            break;
+                        case EntryEvent.TYPE_EVICTED:
+                            registration.listener.entryEvicted(event);
+                            break;
+                        default:
+                            registration.listener.entryRemoved(event);
+                            break;
+                        }
+                    } catch (RuntimeException e) {
+                        GL.warn("ha", "Entry listener of map {} on member {} failed: {}", mapName, memberId, e);
+                    }
+                }
+            }
+        }, delayNanos);
+    }
+
+    void deliverMessage(final String topicName, final Object storedMessage, long delayNanos) {
+        final List<MessageListener<Object>> listeners = messageListeners.get(topicName);
+        if (listeners == null || listeners.isEmpty()) {
+            return;
+        }
+
+        schedule(new Runnable() {
+            @Override
+            public void run() {
+                Object message = load(storedMessage);
+                for (MessageListener<Object> listener : listeners) {
+                    try {
+                        listener.onMessage(message);
+                    } catch (RuntimeException e) {
+                        GL.warn("ha", "Message listener of topic {} on member {} failed: {}", topicName, memberId, e);
+                    }
+                }
+            }
+        }, delayNanos);
+    }
+
+    void deliverMembershipEvent(final MemberId member, final boolean added, long delayNanos) {
+        schedule(new Runnable() {
+            @Override
+            public void run() {
+                for (ClusterBackendListener listener : membershipListeners) {
+                    try {
+                        if (added) {
+                            listener.memberAdded(member);
+                        } else {
+                            listener.memberRemoved(member);
+                        }
+                    } catch (RuntimeException e) {
+                        GL.warn("ha", "Membership listener on member {} failed: {}", memberId, e);
+                    }
+                }
+            }
+        }, delayNanos);
+    }
+
+    static InProcessClusterBackend setDeserializingMember(InProcessClusterBackend member) {
+        InProcessClusterBackend previousMember = DESERIALIZING_MEMBER.get();
+        if (member != null) {
+            DESERIALIZING_MEMBER.set(member);
+        } else {
+            DESERIALIZING_MEMBER.remove();
+        }
+        return previousMember;
+    }
+
+    static boolean equal(Object o1, Object o2) {
+        return (o1 == null) ? o2 == null : o1.equals(o2);
+    }
+
+    // the member itself is not sent, it is resolved again by the member deserializing the reference
+    private Object writeReplace() throws ObjectStreamException {
+        return new MemberReference();
+    }
+
+    private void schedule(final Runnable task, long delayNanos) {
+        ScheduledExecutorService executor = events;
+        if (executor == null) {
+            return;
+        }
+
+        cluster.eventScheduled();
+        try {
+            executor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        task.run();
+                    } finally {
+                        cluster.eventDelivered();
+                    }
+                }
+            }, delayNanos, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            // the member is shutting down
+            cluster.eventDelivered();
+        }
+    }
+
+    private static <L> List<L> getListeners(ConcurrentMap<String, List<L>> listenersByName, String name) {
+        List<L> listeners = listenersByName.get(name);
+        if (listeners == null) {
+            List<L> newListeners = new CopyOnWriteArrayList<>();
+            listeners = listenersByName.putIfAbsent(name, newListeners);
+            if (listeners == null) {
+                listeners = newListeners;
+            }
+        }
+        return listeners;
+    }
+
+    private static void pause(long nanos) {
+        long deadline = System.nanoTime() + nanos;
+        long remaining = nanos;
+        while (remaining > 0) {
+            LockSupport.parkNanos(remaining);
+            remaining = deadline - System.nanoTime();
+        }
+    }
+
+    private static final class EntryListenerRegistration {
+        private final EntryListener<Object, Object> listener;
+        private final Object key;
+        private final boolean includeValue;
+        private final boolean localOnly;
+
+        EntryListenerRegistration(EntryListener<Object, Object> listener, Object key, boolean includeValue,
+                                  boolean localOnly) {
+            this.listener = listener;
+            this.key = key;
+            this.includeValue = includeValue;
+            this.localOnly = localOnly;
+        }
+
+        boolean accepts(InProcessClusterBackend member, Object eventKey) {
+            if (key != null && !key.equals(eventKey)) {
+                return false;
+            }
+            return !localOnly || member.partition.getOwner(eventKey) == member;
+        }
+    }
+
+    private static final class MemberReference implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private Object readResolve() throws ObjectStreamException {
+            InProcessClusterBackend member = DESERIALIZING_MEMBER.get();
+            if (member == null) {
+                throw new InvalidObjectException("An in-process cluster member can only be deserialized by the cluster");
+            }
+            return member;
+        }
+    }
+
+    private final class IdGeneratorImpl implements IdGenerator {
+        private final String name;
+
+        IdGeneratorImpl(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public long newId() {
+            roundTrip(name);
+            return getPartition().getIdGenerator(name).incrementAndGet();
+        }
+
+        @Override
+        public void destroy() {
+            getPartition().getIdGenerator(name).set(Long.MIN_VALUE);
+        }
+
+        @Override
+        public Object getId() {
+            return name;
+        }
+
+        @Override
+        public InstanceType getInstanceType() {
+            return InstanceType.ID_GENERATOR;
+        }
+    }
+
+}
@@ -0,0 +1,46 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.kaazing.gateway.server.cluster;
+
+import java.util.List;
+import org.kaazing.gateway.service.cluster.MemberId;
+
+/**
+ * Provides the "in-process" backend: the gateways of the same cluster name in the current process form an
+ * {@link InProcessCluster}, each member taking the id of its first accept address.
+ */
+public final class InProcessClusterBackendFactory extends ClusterBackendFactorySpi {
+
+    public static final String NAME = "in-process";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public ClusterBackend newClusterBackend(String clusterName, List<MemberId> accepts, List<MemberId> connects) {
+        InProcessCluster cluster = InProcessCluster.getCluster(clusterName);
+        return accepts.isEmpty() ? cluster.newMember() : cluster.newMember(accepts.get(0));
+    }
+
+}
@@ -0,0 +1,314 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.kaazing.gateway.server.cluster;
+
+import com.hazelcast.core.EntryEvent;
+import com.hazelcast.core.EntryListener;
+import com.hazelcast.core.IMap;
+import com.hazelcast.core.Instance;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import org.kaazing.gateway.server.util.collection.CompletedFuture;
+
+/**
+ * The {@link IMap} of an {@link InProcessClusterBackend}, on the entries of the partition of the member. Keys are shared
+ * by the members as they are, values are stored as given by the cluster. Operations on an entry wait for a round trip to
+ * the member owning its key, operations on the whole map for a round trip to all members, and entry events reach the
+ * other members after the cluster latency. Queries, time to live and map-wide locks are not supported.
+ */
+final class InProcessMap implements InvocationHandler {
+
+    private final InProcessClusterBackend member;
+    private final String name;
+
+    private InProcessMap(InProcessClusterBackend member, String name) {
+        this.member = member;
+        this.name = name;
+    }
+
+    static <K, V> IMap<K, V> newMap(InProcessClusterBackend member, String name) {
+        return InProcessStructure.newProxy(IMap.class, new InProcessMap(member, name));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        String methodName = method.getName();
+        int arity = (args == null) ? 0 : args.length;
+
+        switch (arity) {
+        case 0:
+            if ("size".equals(methodName)) {
+                member.roundTripAll();
+                return getEntries().size();
+            } else if ("isEmpty".equals(methodName)) {
+                member.roundTripAll();
+                return getEntries().isEmpty();
+            } else if ("keySet".equals(methodName)) {
+                member.roundTripAll();
+                return new HashSet<>(getEntries().keySet());
+            } else if ("localKeySet".equals(methodName)) {
+                return localKeySet();
+            } else if ("values".equals(methodName)) {
+                member.roundTripAll();
+                return values();
+            } else if ("entrySet".equals(methodName)) {
+                member.roundTripAll();
+                return entrySet();
+            } else if ("clear".equals(methodName) || "destroy".equals(methodName)) {
+                member.roundTripAll();
+                clear();
+                return null;
+            } else if ("flush".equals(methodName)) {
+                return null;
+            } else if ("getName".equals(methodName) || "getId".equals(methodName)) {
+                return name;
+            } else if ("getInstanceType".equals(methodName)) {
+                return Instance.InstanceType.MAP;
+            } else if ("hashCode".equals(methodName)) {
+                return System.identityHashCode(proxy);
+            } else if ("toString".equals(methodName)) {
+                return "InProcessMap[" + name + "]";
+            }
+            break;
+        case 1:
+            if ("get".equals(methodName) || "getAsync".equals(methodName)) {
+                member.roundTrip(args[0]);
+                Object value = member.load(getEntries().get(args[0]));
+                return "get".equals(methodName) ? value : new CompletedFuture<>(value);
+            } else if ("containsKey".equals(methodName)) {
+                member.roundTrip(args[0]);
+                return getEntries().containsKey(args[0]);
+            } else if ("containsValue".equals(methodName)) {
+                member.roundTripAll();
+                return values().contains(args[0]);
+            } else if ("remove".equals(methodName) || "removeAsync".equals(methodName)) {
+                member.roundTrip(args[0]);
+                Object oldValue = remove(args[0], EntryEvent.TYPE_REMOVED);
+                return "remove".equals(methodName) ? oldValue : new CompletedFuture<>(oldValue);
+            } else if ("evict".equals(methodName)) {
+                member.roundTrip(args[0]);
+                return remove(args[0], EntryEvent.TYPE_EVICTED) != null;
+            } else if ("getAll".equals(methodName)) {
+                member.roundTripAll();
+                return getAll((Set<Object>) args[0]);
+            } else if ("putAll".equals(methodName)) {
+                for (Map.Entry<Object, Object> entry : ((Map<Object, Object>) args[0]).entrySet()) {
+                    member.roundTrip(entry.getKey());
+                    put(entry.getKey(), entry.getValue());
+                }
+                return null;
+            } else if ("lock".equals(methodName)) {
+                getLock(args[0]).lock();
+                return null;
+            } else if ("tryLock".equals(methodName)) {
+                return getLock(args[0]).tryLock();
+            } else if ("unlock".equals(methodName)) {
+                getLock(args[0]).unlock();
+                return null;
+            } else if ("addLocalEntryListener".equals(methodName)) {
+                member.addEntryListener(name, (EntryListener<?, ?>) args[0], null, true, true);
+                return null;
+            } else if ("removeEntryListener".equals(methodName)) {
+                member.removeEntryListener(name, (EntryListener<?, ?>) args[0], null);
+                return null;
+            } else if ("equals".equals(methodName)) {
+                return proxy == args[0];
+            }
+            break;
+        case 2:
+            if ("put".equals(methodName) || "putAsync".equals(methodName)) {
+                member.roundTrip(args[0]);
+                Object oldValue = put(args[0], args[1]);
+                return "put".equals(methodName) ? oldValue : new CompletedFuture<>(oldValue);
+            } else if ("putIfAbsent".equals(methodName)) {
+                member.roundTrip(args[0]);
+                return putIfAbsent(args[0], args[1]);
+            } else if ("remove".equals(methodName)) {
+                member.roundTrip(args[0]);
+                return remove(args[0], args[1]);
+            } else if ("replace".equals(methodName)) {
+                member.roundTrip(args[0]);
+                return replace(args[0], args[1]);
+            } else if ("addEntryListener".equals(methodName)) {
+                member.addEntryListener(name, (EntryListener<?, ?>) args[0], null, (Boolean) args[1], false);
+                return null;
+            } else if ("removeEntryListener".equals(methodName)) {
+                member.removeEntryListener(name, (EntryListener<?, ?>) args[0], args[1]);
+                return null;
+            }
+            break;
+        case 3:
+            if ("replace".equals(methodName)) {
+                member.roundTrip(args[0]);
+                return replace(args[0], args[1], args[2]);
+            } else if ("tryLock".equals(methodName)) {
+                return getLock(args[0]).tryLock((Long) args[1], (TimeUnit) args[2]);
+            } else if ("addEntryListener".equals(methodName)) {
+                member.addEntryListener(name, (EntryListener<?, ?>) args[0], args[1], (Boolean) args[2], false);
+                return null;
+            }
+            break;
+        default:
+            break;
+        }
+        throw new UnsupportedOperationException(methodName);
+    }
+
+    private ConcurrentMap<Object, Object> getEntries() {
+        return member.getPartition().getMap(name);
+    }
+
+    private Object put(Object key, Object value) {
+        Object storedValue = member.store(value);
+        Object oldValue = getEntries().put(key, storedValue);
+        member.fireEntryEvent(name, (oldValue == null) ? EntryEvent.TYPE_ADDED : EntryEvent.TYPE_UPDATED, key,
+                storedValue);
+        return member.load(oldValue);
+    }
+
+    private Object putIfAbsent(Object key, Object value) {
+        Object storedValue = member.store(value);
+        Object oldValue = getEntries().putIfAbsent(key, storedValue);
+        if (oldValue == null) {
+            member.fireEntryEvent(name, EntryEvent.TYPE_ADDED, key, storedValue);
+        }
+        return member.load(oldValue);
+    }
+
+    private Object remove(Object key, int eventType) {
+        Object oldValue = getEntries().remove(key);
+        if (oldValue != null) {
+            member.fireEntryEvent(name, eventType, key, oldValue);
+        }
+        return member.load(oldValue);
+    }
+
+    // the stored values are compared by identity, so that a concurrent update of the entry with an equal value is seen
+    private boolean remove(Object key, Object value) {
+        ConcurrentMap<Object, Object> entries = getEntries();
+        while (true) {
+            Object storedValue = entries.get(key);
+            if (storedValue == null || !InProcessClusterBackend.equal(member.load(storedValue), value)) {
+                return false;
+            }
+            if (entries.remove(key, storedValue)) {
+                member.fireEntryEvent(name, EntryEvent.TYPE_REMOVED, key, storedValue);
+                return true;
+            }
+        }
+    }
+
+    private Object replace(Object key, Object value) {
+        ConcurrentMap<Object, Object> entries = getEntries();
+        Object newStoredValue = member.store(value);
+        while (true) {
+            Object storedValue = entries.get(key);
+            if (storedValue == null) {
+                return null;
+            }
+            if (entries.replace(key, storedValue, newStoredValue)) {
+                member.fireEntryEvent(name, EntryEvent.TYPE_UPDATED, key, newStoredValue);
+                return member.load(storedValue);
+            }
+        }
+    }
+
+    private boolean replace(Object key, Object oldValue, Object newValue) {
+        ConcurrentMap<Object, Object> entries = getEntries();
+        Object newStoredValue = member.store(newValue);
+        while (true) {
+            Object storedValue = entries.get(key);
+            if (storedValue == null || !InProcessClusterBackend.equal(member.load(storedValue), oldValue)) {
+                return false;
+            }
+            if (entries.replace(key, storedValue, newStoredValue)) {
+                member.fireEntryEvent(name, EntryEvent.TYPE_UPDATED, key, newStoredValue);
+                return true;
+            }
+        }
+    }
+
+    private void clear() {
+        ConcurrentMap<Object, Object> entries = getEntries();
+        for (Object key : entries.keySet()) {
+            remove(key, EntryEvent.TYPE_REMOVED);
+        }
+    }
+
+    private Collection<Object> values() {
+        List<Object> values = new ArrayList<>();
+        for (Object storedValue : getEntries().values()) {
+            values.add(member.load(storedValue));
+        }
+        return values;
+    }
+
+    private Set<Map.Entry<Object, Object>> entrySet() {
+        Set<Map.Entry<Object, Object>> entries = new HashSet<>();
+        for (Map.Entry<Object, Object> entry : getEntries().entrySet()) {
+            entries.add(new SimpleImmutableEntry<>(entry.getKey(), member.load(entry.getValue())));
+        }
+        return entries;
+    }
+
+    private Map<Object, Object> getAll(Set<Object> keys) {
+        ConcurrentMap<Object, Object> entries = getEntries();
+        Map<Object, Object> values = new HashMap<>();
+        for (Object key : keys) {
+            Object storedValue = entries.get(key);
+            if (storedValue != null) {
+                values.put(key, member.load(storedValue));
+            }
+        }
+        return values;
+    }
+
+    private Set<Object> localKeySet() {
+        InProcessPartition partition = member.getPartition();
+        Set<Object> keys = new HashSet<>();
+        for (Object key : partition.getMap(name).keySet()) {
+            if (partition.getOwner(key) == member) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+    private Lock getLock(Object key) {
+        member.roundTrip(key);
+        return member.getPartition().getLock(Arrays.asList(name, key));
+    }
+
+}
@@ -0,0 +1,205 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.kaazing.gateway.server.cluster;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The members of an {@link InProcessCluster} that can reach each other, and the data they share. A cluster has a single
+ * partition until it is split, each side of a split then works on its own copy of the data.
+ */
+final class InProcessPartition {
+
+    // join order, the oldest first; replaced as a whole under the cluster lock
+    private volatile List<InProcessClusterBackend> members = Collections.emptyList();
+
+    private final ConcurrentMap<String, ConcurrentMap<Object, Object>> maps;
+    private final ConcurrentMap<String, List<Object>> lists;
+    private final ConcurrentMap<String, BlockingQueue<Object>> queues;
+    private final ConcurrentMap<String, AtomicLong> atomicNumbers;
+    private final ConcurrentMap<String, AtomicLong> idGenerators;
+    private final ConcurrentMap<Object, ReentrantLock> locks;
+
+    InProcessPartition() {
+        this.maps = new ConcurrentHashMap<>();
+        this.lists = new ConcurrentHashMap<>();
+        this.queues = new ConcurrentHashMap<>();
+        this.atomicNumbers = new ConcurrentHashMap<>();
+        this.idGenerators = new ConcurrentHashMap<>();
+        this.locks = new ConcurrentHashMap<>();
+    }
+
+    List<InProcessClusterBackend> getMembers() {
+        return members;
+    }
+
+    void setMembers(List<InProcessClusterBackend> members) {
+        this.members = Collections.unmodifiableList(new ArrayList<>(members));
+    }
+
+    /**
+     * @return the member that owns the key, whose operations on it do not cross the simulated network
+     */
+    InProcessClusterBackend getOwner(Object key) {
+        List<InProcessClusterBackend> currentMembers = members;
+        if (currentMembers.isEmpty()) {
+            return null;
+        }
+        int hash = (key != null) ? key.hashCode() : 0;
+        return currentMembers.get((hash & 0x7fffffff) % currentMembers.size());
+    }
+
+    ConcurrentMap<Object, Object> getMap(String name) {
+        ConcurrentMap<Object, Object> map = maps.get(name);
+        if (map == null) {
+            ConcurrentMap<Object, Object> newMap = new ConcurrentHashMap<>();
+            map = maps.putIfAbsent(name, newMap);
+            if (map == null) {
+                map = newMap;
+            }
+        }
+        return map;
+    }
+
+    List<Object> getList(String name) {
+        List<Object> list = lists.get(name);
+        if (list == null) {
+            List<Object> newList = new CopyOnWriteArrayList<>();
+            list = lists.putIfAbsent(name, newList);
+            if (list == null) {
+                list = newList;
+            }
+        }
+        return list;
+    }
+
+    BlockingQueue<Object> getQueue(String name) {
+        BlockingQueue<Object> queue = queues.get(name);
+        if (queue == null) {
+            BlockingQueue<Object> newQueue = new LinkedBlockingQueue<>();
+            queue = queues.putIfAbsent(name, newQueue);
+            if (queue == null) {
+                queue = newQueue;
+            }
+        }
+        return queue;
+    }
+
+    AtomicLong getAtomicNumber(String name) {
+        return getAtomicLong(atomicNumbers, name, 0L);
+    }
+
+    AtomicLong getIdGenerator(String name) {
+        return getAtomicLong(idGenerators, name, Long.MIN_VALUE);
+    }
+
+    ReentrantLock getLock(Object key) {
+        ReentrantLock lock = locks.get(key);
+        if (lock == null) {
+            ReentrantLock newLock = new ReentrantLock();
+            lock = locks.putIfAbsent(key, newLock);
+            if (lock == null) {
+                lock = newLock;
+            }
+        }
+        return lock;
+    }
+
+    /**
+     * Copies the data of this partition for the members split off from it. Locks are not copied, a lock held across a
+     * split is held on one side only.
+     */
+    InProcessPartition copy() {
+        InProcessPartition copy = new InProcessPartition();
+        for (Map.Entry<String, ConcurrentMap<Object, Object>> entry : maps.entrySet()) {
+            copy.getMap(entry.getKey()).putAll(entry.getValue());
+        }
+        for (Map.Entry<String, List<Object>> entry : lists.entrySet()) {
+            copy.getList(entry.getKey()).addAll(entry.getValue());
+        }
+        for (Map.Entry<String, BlockingQueue<Object>> entry : queues.entrySet()) {
+            copy.getQueue(entry.getKey()).addAll(entry.getValue());
+        }
+        for (Map.Entry<String, AtomicLong> entry : atomicNumbers.entrySet()) {
+            copy.getAtomicNumber(entry.getKey()).set(entry.getValue().get());
+        }
+        for (Map.Entry<String, AtomicLong> entry : idGenerators.entrySet()) {
+            copy.getIdGenerator(entry.getKey()).set(entry.getValue().get());
+        }
+        return copy;
+    }
+
+    /**
+     * Merges the data of a partition that is rejoining this one: map entries and counters this partition does not have are
+     * added, existing ones are kept, and id generators continue from the highest id either side handed out.
+     *
+     * @param listener notified of every map entry added by the merge
+     */
+    void merge(InProcessPartition other, MergeListener listener) {
+        for (Map.Entry<String, ConcurrentMap<Object, Object>> mapEntry : other.maps.entrySet()) {
+            ConcurrentMap<Object, Object> map = getMap(mapEntry.getKey());
+            for (Map.Entry<Object, Object> entry : mapEntry.getValue().entrySet()) {
+                if (map.putIfAbsent(entry.getKey(), entry.getValue()) == null) {
+                    listener.entryMerged(mapEntry.getKey(), entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        for (Map.Entry<String, AtomicLong> entry : other.atomicNumbers.entrySet()) {
+            atomicNumbers.putIfAbsent(entry.getKey(), new AtomicLong(entry.getValue().get()));
+        }
+        for (Map.Entry<String, AtomicLong> entry : other.idGenerators.entrySet()) {
+            AtomicLong idGenerator = getIdGenerator(entry.getKey());
+            long otherId = entry.getValue().get();
+            long currentId = idGenerator.get();
+            while (currentId < otherId && !idGenerator.compareAndSet(currentId, otherId)) {
+                currentId = idGenerator.get();
+            }
+        }
+    }
+
+    private static AtomicLong getAtomicLong(ConcurrentMap<String, AtomicLong> atomicLongs, String name, long initialValue) {
+        AtomicLong atomicLong = atomicLongs.get(name);
+        if (atomicLong == null) {
+            AtomicLong newAtomicLong = new AtomicLong(initialValue);
+            atomicLong = atomicLongs.putIfAbsent(name, newAtomicLong);
+            if (atomicLong == null) {
+                atomicLong = newAtomicLong;
+            }
+        }
+        return atomicLong;
+    }
+
+    interface MergeListener {
+        void entryMerged(String mapName, Object key, Object storedValue);
+    }
+
+}
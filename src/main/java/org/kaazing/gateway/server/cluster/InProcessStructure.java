@@ -0,0 +1,98 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.kaazing.gateway.server.cluster;
+
+import com.hazelcast.core.Instance;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+ * Implements a cluster data structure of an {@link InProcessClusterBackend} with the local structure of the partition of
+ * the member, such as a lock or an atomic long, whose methods have the same signatures. Each operation waits for a round
+ * trip to the member owning the structure.
+ */
+abstract class InProcessStructure implements InvocationHandler {
+
+    private final InProcessClusterBackend member;
+    private final String name;
+    private final Object key;
+    private final Instance.InstanceType instanceType;
+
+    InProcessStructure(InProcessClusterBackend member, String name, Object key, Instance.InstanceType instanceType) {
+        this.member = member;
+        this.name = name;
+        this.key = key;
+        this.instanceType = instanceType;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> T newProxy(Class<?> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, handler);
+    }
+
+    /**
+     * @return the local structure implementing the operations, the partition of the member changes when the cluster is
+     *         split or healed
+     */
+    abstract Object getDelegate(InProcessPartition partition);
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        String methodName = method.getName();
+        int arity = (args == null) ? 0 : args.length;
+
+        if (arity == 0) {
+            if ("getName".equals(methodName)) {
+                return name;
+            } else if ("getId".equals(methodName) || "getLockObject".equals(methodName)) {
+                return key;
+            } else if ("getInstanceType".equals(methodName)) {
+                return instanceType;
+            } else if ("destroy".equals(methodName)) {
+                return null;
+            } else if ("hashCode".equals(methodName)) {
+                return System.identityHashCode(proxy);
+            } else if ("toString".equals(methodName)) {
+                return instanceType + "[" + name + "]";
+            }
+        } else if (arity == 1 && "equals".equals(methodName)) {
+            return proxy == args[0];
+        }
+
+        member.roundTrip(key);
+        Object delegate = getDelegate(member.getPartition());
+        Method delegateMethod;
+        try {
+            delegateMethod = delegate.getClass().getMethod(methodName, method.getParameterTypes());
+        } catch (NoSuchMethodException e) {
+            throw new UnsupportedOperationException(methodName);
+        }
+        try {
+            return delegateMethod.invoke(delegate, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+}
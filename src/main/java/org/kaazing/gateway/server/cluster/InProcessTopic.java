@@ -0,0 +1,78 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.kaazing.gateway.server.cluster;
+
+import com.hazelcast.core.ITopic;
+import com.hazelcast.core.Instance;
+import com.hazelcast.core.MessageListener;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+
+/**
+ * The {@link ITopic} of an {@link InProcessClusterBackend}. Messages are delivered to the listeners of every member of
+ * the partition, including the publisher.
+ */
+final class InProcessTopic implements InvocationHandler {
+
+    private final InProcessClusterBackend member;
+    private final String name;
+
+    private InProcessTopic(InProcessClusterBackend member, String name) {
+        this.member = member;
+        this.name = name;
+    }
+
+    static <E> ITopic<E> newTopic(InProcessClusterBackend member, String name) {
+        return InProcessStructure.newProxy(ITopic.class, new InProcessTopic(member, name));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        String methodName = method.getName();
+        int arity = (args == null) ? 0 : args.length;
+
+        if ("publish".equals(methodName) && arity == 1) {
+            member.publish(name, args[0]);
+            return null;
+        } else if ("addMessageListener".equals(methodName) && arity == 1) {
+            member.addMessageListener(name, (MessageListener<?>) args[0]);
+            return null;
+        } else if ("removeMessageListener".equals(methodName) && arity == 1) {
+            member.removeMessageListener(name, (MessageListener<?>) args[0]);
+            return null;
+        } else if (("getName".equals(methodName) || "getId".equals(methodName)) && arity == 0) {
+            return name;
+        } else if ("getInstanceType".equals(methodName) && arity == 0) {
+            return Instance.InstanceType.TOPIC;
+        } else if ("destroy".equals(methodName) && arity == 0) {
+            return null;
+        } else if ("equals".equals(methodName) && arity == 1) {
+            return proxy == args[0];
+        } else if ("hashCode".equals(methodName) && arity == 0) {
+            return System.identityHashCode(proxy);
+        } else if ("toString".equals(methodName) && arity == 0) {
+            return "InProcessTopic[" + name + "]";
+        }
+        throw new UnsupportedOperationException(methodName);
+    }
+
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.kaazing.gateway.server.cluster;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+
+/**
+ * A value stored or sent by a member of an {@link InProcessCluster} in serialized form, so that every member reading it
+ * works on its own copy, as it would with values received from another process.
+ */
+final class SerializedValue {
+
+    private final byte[] bytes;
+
+    private SerializedValue(byte[] bytes) {
+        this.bytes = bytes;
+    }
+
+    static SerializedValue serialize(Object value) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            ObjectOutputStream out = new ObjectOutputStream(bytes);
+            out.writeObject(value);
+            out.close();
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Unable to serialize " + value.getClass().getName() + " for the cluster", e);
+        }
+        return new SerializedValue(bytes.toByteArray());
+    }
+
+    /**
+     * Deserializes a copy of the value for a member, the cluster backends referred to by the value resolve to that member.
+     */
+    Object deserialize(InProcessClusterBackend member) {
+        InProcessClusterBackend previousMember = InProcessClusterBackend.setDeserializingMember(member);
+        try {
+            ObjectInputStream in = new ContextObjectInputStream(new ByteArrayInputStream(bytes));
+            try {
+                return in.readObject();
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to deserialize a value received from the cluster", e);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("Unable to deserialize a value received from the cluster", e);
+        } finally {
+            InProcessClusterBackend.setDeserializingMember(previousMember);
+        }
+    }
+
+    private static final class ContextObjectInputStream extends ObjectInputStream {
+
+        ContextObjectInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            ClassLoader loader = Thread.currentThread().getContextClassLoader();
+            if (loader != null) {
+                try {
+                    return Class.forName(desc.getName(), false, loader);
+                } catch (ClassNotFoundException e) {
+                    // fall back to the class loader of the caller
+                }
+            }
+            return super.resolveClass(desc);
+        }
+    }
+
+}
@@ -23,7 +23,6 @@ package org.kaazing.gateway.server.config.parse;
 
 import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -32,31 +31,20 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
-import java.io.UnsupportedEncodingException;
-import java.net.URL;
+import java.io.StringReader;
+import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
-import javax.xml.transform.ErrorListener;
 import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Result;
 import javax.xml.transform.Source;
 import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.sax.SAXSource;
 import javax.xml.transform.stream.StreamResult;
-import javax.xml.transform.stream.StreamSource;
 import org.apache.xmlbeans.XmlError;
 import org.apache.xmlbeans.XmlOptions;
 import org.jdom.Document;
@@ -64,24 +52,28 @@ import org.jdom.Element;
 import org.jdom.input.SAXBuilder;
 import org.jdom.output.Format;
 import org.jdom.output.XMLOutputter;
+import org.kaazing.gateway.server.GatewayStartupListenerApi;
 import org.kaazing.gateway.server.Launcher;
+import org.kaazing.gateway.server.StartupTimeline;
 import org.kaazing.gateway.server.config.parse.translate.GatewayConfigTranslator;
 import org.kaazing.gateway.server.config.parse.translate.GatewayConfigTranslatorFactory;
 import org.kaazing.gateway.server.config.sep2014.ClusterType;
 import org.kaazing.gateway.server.config.sep2014.GatewayConfigDocument;
-import org.kaazing.gateway.server.config.sep2014.PropertiesType;
-import org.kaazing.gateway.server.config.sep2014.PropertyType;
 import org.kaazing.gateway.server.config.sep2014.SecurityType;
 import org.kaazing.gateway.server.config.sep2014.ServiceDefaultsType;
 import org.kaazing.gateway.server.config.sep2014.ServiceType;
 import org.kaazing.gateway.util.parse.ConfigParameter;
 import org.slf4j.Logger;
 import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
 import org.xml.sax.Locator;
 import org.xml.sax.SAXException;
-import org.xml.sax.ext.DefaultHandler2;
-import org.xml.sax.ext.Locator2;
-import org.xml.sax.helpers.DefaultHandler;
+import org.xml.sax.SAXNotRecognizedException;
+import org.xml.sax.SAXNotSupportedException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.ext.LexicalHandler;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.XMLFilterImpl;
 
 public class GatewayConfigParser {
     /**
@@ -89,6 +81,11 @@ public class GatewayConfigParser {
      */
     private static final String GATEWAY_CONFIG_NS = "http://xmlns.kaazing.org/2014/09/gateway";
 
+    /**
+     * Namespace of config files once translated, to which the pre-parse stylesheet is applied.
+     */
+    private static final GatewayConfigNamespace GATEWAY_CONFIG_NAMESPACE = GatewayConfigNamespace.SEPTEMBER_2014;
+
     /**
      * Namespace for 4.0 release
      */
@@ -120,16 +117,6 @@ public class GatewayConfigParser {
      */
     private static final String GATEWAY_CONFIG_UPGRADE_DRAGONFIRE_XSL = "META-INF/gateway-config-upgrade-dragonfire.xsl";
 
-    /**
-     * Charset string for XML prologue, must match {@link #CHARSET_OUTPUT}
-     */
-    private static final String CHARSET_OUTPUT_XML = "UTF-16";
-
-    /**
-     * Charset string for output stream, must match {@link #CHARSET_OUTPUT_XML}
-     */
-    private static final String CHARSET_OUTPUT = "UTF16";
-
     /**
      * Extension to add to translated/updated config files
      */
@@ -139,6 +126,8 @@ public class GatewayConfigParser {
 
     private final Properties configuration;
 
+    private GatewayStartupListenerApi gatewayListener;
+
     public GatewayConfigParser() {
         this(System.getProperties());
     }
@@ -147,6 +136,25 @@ public class GatewayConfigParser {
         this.configuration = configuration;
     }
 
+    /**
+     * Sets the listener told about the phases of parsing, such as the translation of older namespaces.
+     */
+    public void setGatewayListener(GatewayStartupListenerApi gatewayListener) {
+        this.gatewayListener = gatewayListener;
+    }
+
+    private void startingPhase(String phase) {
+        if (gatewayListener != null) {
+            gatewayListener.startingPhase(phase);
+        }
+    }
+
+    private void completedPhase(String phase) {
+        if (gatewayListener != null) {
+            gatewayListener.completedPhase(phase);
+        }
+    }
+
     private void translate(final GatewayConfigNamespace ns,
                            final Document dom,
                            final File translatedConfigFile)
@@ -220,6 +228,13 @@ public class GatewayConfigParser {
      * @throws Exception when a problem occurs
      */
     public GatewayConfigDocument parse(final File configFile) throws Exception {
+        startingPhase(StartupTimeline.CONFIG_PARSE);
+        GatewayConfigDocument config = parseConfig(configFile);
+        completedPhase(StartupTimeline.CONFIG_PARSE);
+        return config;
+    }
+
+    private GatewayConfigDocument parseConfig(final File configFile) throws Exception {
         long time = 0;
         if (LOGGER.isDebugEnabled()) {
             time = System.currentTimeMillis();
@@ -239,7 +254,9 @@ public class GatewayConfigParser {
 
         File translatedConfigFile = null;
         try {
+            startingPhase(StartupTimeline.CONFIG_TRANSLATE);
             translatedConfigFile = getTranslatedConfigFile(configFile);
+            completedPhase(StartupTimeline.CONFIG_TRANSLATE);
         } catch (Exception e) {
             Throwable rootCause = getRootCause(e);
             if (rootCause == null) {
@@ -264,74 +281,19 @@ public class GatewayConfigParser {
         }
 
         List<String> xmlParseErrors = new ArrayList<String>();
+        startingPhase(StartupTimeline.CONFIG_TRANSFORM);
         try {
-            config = GatewayConfigDocument.Factory.parse(new FileInputStream(translatedConfigFile), parseOptions);
-
+            // A single pass through the file on this thread: SAX events have the properties injected
+            // and are fed straight into the pre-parse transformer, whose output is parsed by XMLBeans
+            config = injectAndTransform(translatedConfigFile, configFileName, parseOptions, xmlParseErrors);
         } catch (Exception e) {
-
-            // track the parse error so that we don't make the 2nd pass through the file
             xmlParseErrors.add("Invalid XML: " + getRootCause(e).getMessage());
         }
+        completedPhase(StartupTimeline.CONFIG_TRANSFORM);
 
-        if (xmlParseErrors.isEmpty()) {
-            // The properties used in parameter substitution are now proper XMLBeans
-            // and should be injected after an initial parse
-            GatewayConfigDocument.GatewayConfig gatewayConfig = config.getGatewayConfig();
-            PropertiesType properties = gatewayConfig.getProperties();
-            Map<String, String> propertiesMap = new HashMap<String, String>();
-            if (properties != null) {
-                for (PropertyType propertyType : properties.getPropertyArray()) {
-                    propertiesMap.put(propertyType.getName(), propertyType.getValue());
-                }
-            }
-
-            // make a second pass through the file now, injecting the properties and performing XSL translations
-            InputStream xmlInjectedIn = new PipedInputStream();
-            OutputStream xmlInjectedOut = new PipedOutputStream((PipedInputStream) xmlInjectedIn);
-            ExecutorService xmlInjectedExecutor = Executors.newSingleThreadExecutor();
-            Future<Boolean> xmlInjectedFuture = xmlInjectedExecutor.submit(new XMLParameterInjector(new FileInputStream(
-                    translatedConfigFile), xmlInjectedOut, propertiesMap, configuration, xmlParseErrors));
-
-            // trace injected xml
-            if (LOGGER.isTraceEnabled()) {
-                xmlInjectedIn = bufferToTraceLog(xmlInjectedIn,
-                        "Gateway config file '" + configFileName + "' post parameter injection", LOGGER);
-            }
-
-            // Pass gateway-config through the pre-parse transformer
-            InputStream xmlTransformedIn = new PipedInputStream();
-            OutputStream xmlTransformedOut = new PipedOutputStream((PipedInputStream) xmlTransformedIn);
-            ExecutorService xmlTransformedExecutor = Executors.newSingleThreadExecutor();
-            Future<Boolean> xmlTransformedFuture = xmlTransformedExecutor.submit(
-                    new XSLTransformer(xmlInjectedIn, xmlTransformedOut, GATEWAY_CONFIG_ANNOTATE_TYPES_XSL));
-
-            // trace transformed xml
-            if (LOGGER.isTraceEnabled()) {
-                xmlTransformedIn = bufferToTraceLog(xmlTransformedIn,
-                        "Gateway config file '" + configFileName + "' post XSL transformation", LOGGER);
-            }
-
-            try {
-                config = GatewayConfigDocument.Factory.parse(xmlTransformedIn, parseOptions);
-            } catch (Exception e) {
-                try {
-                    if (xmlInjectedFuture.get()) {
-                        if (xmlTransformedFuture.get()) {
-                            throw e;
-                        }
-                    }
-                } catch (Exception n) {
-                    xmlParseErrors.add("Invalid XML: " + getRootCause(n).getMessage());
-                }
-            } finally {
-                xmlInjectedFuture.cancel(true);
-                xmlInjectedExecutor.shutdownNow();
-                xmlTransformedFuture.cancel(true);
-                xmlTransformedExecutor.shutdownNow();
-            }
-        }
-
+        startingPhase(StartupTimeline.CONFIG_VALIDATE);
         validateGatewayConfig(config, xmlParseErrors);
+        completedPhase(StartupTimeline.CONFIG_VALIDATE);
 
         if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("parsed " + " gateway config file '" + configFileName + "' in [" + (System.currentTimeMillis() - time) +
@@ -341,6 +303,55 @@ public class GatewayConfigParser {
         return config;
     }
 
+    /**
+     * Parse the config file once, injecting the properties it declares and passing the result through the
+     * pre-parse XSL transformation, then load the transformed document with XMLBeans.
+     *
+     * @param configFile     the (translated) configuration file
+     * @param configFileName the name of the configuration file, for logging
+     * @param parseOptions   the XMLBeans options for the final parse
+     * @param errors         collects the parameter injection errors
+     * @return the transformed gateway configuration
+     * @throws Exception when the file is not well formed or cannot be transformed
+     */
+    private GatewayConfigDocument injectAndTransform(File configFile, String configFileName, XmlOptions parseOptions,
+                                                     List<String> errors) throws Exception {
+        Transformer transformer = XSLTemplatesCache.getTemplates(GATEWAY_CONFIG_ANNOTATE_TYPES_XSL,
+                GATEWAY_CONFIG_NAMESPACE).newTransformer();
+        transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+        transformer.setErrorListener(XSLTemplatesCache.STRICT_ERROR_LISTENER);
+        StringWriter transformedOutput = new StringWriter();
+
+        SAXParserFactory parserFactory = SAXParserFactory.newInstance();
+        parserFactory.setNamespaceAware(true);
+        XMLParameterInjector injector = new XMLParameterInjector(parserFactory.newSAXParser().getXMLReader(),
+                configuration, errors);
+
+        InputStream configIn = new FileInputStream(configFile);
+        try {
+            // the transformer drives the parse, pulling the injected SAX events through the filter
+            Source injectedSource = new SAXSource(injector, new InputSource(configIn));
+            transformer.transform(injectedSource, new StreamResult(transformedOutput));
+        } finally {
+            configIn.close();
+        }
+
+        // restore the lines before the root element, so that XMLBeans reports the line numbers of the config file
+        StringBuilder transformed = new StringBuilder();
+        for (int i = 1; i < injector.getRootElementLine(); i++) {
+            transformed.append('\n');
+        }
+        transformed.append(transformedOutput.getBuffer());
+
+        // trace injected and transformed xml
+        if (LOGGER.isTraceEnabled()) {
+            LOGGER.trace("Gateway config file '" + configFileName +
+                    "' post parameter injection and XSL transformation\n\n\n" + transformed + "\n\n\n");
+        }
+
+        return GatewayConfigDocument.Factory.parse(new StringReader(transformed.toString()), parseOptions);
+    }
+
     /**
      * Validate the parsed gateway configuration file.
      *
@@ -477,31 +488,6 @@ public class GatewayConfigParser {
         return list.get(list.size() - 1);
     }
 
-    /**
-     * Buffer a stream, flushing it to <code>log</code> and returning it as input
-     *
-     * @param input
-     * @param message
-     * @param log
-     * @return
-     */
-    private static InputStream bufferToTraceLog(InputStream input, String message, Logger log) {
-        InputStream output = input;
-        try {
-            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-            int read;
-            byte[] data = new byte[16384];
-            while ((read = input.read(data, 0, data.length)) != -1) {
-                buffer.write(data, 0, read);
-            }
-            buffer.flush();
-            log.trace(message + "\n\n\n" + new String(buffer.toByteArray(), CHARSET_OUTPUT) + "\n\n\n");
-            output = new ByteArrayInputStream(buffer.toByteArray());
-        } catch (Exception e) {
-            throw new RuntimeException("could not buffer stream", e);
-        }
-        return output;
-    }
 
     /**
      * Count the number of new lines
@@ -514,208 +500,254 @@ public class GatewayConfigParser {
         int newLineCount = 0;
         // quite reliable, since only Commodore 8-bit machines, TRS-80, Apple II family, Mac OS up to version 9 and OS-9
         // use only '\r'
-        for (int i = start; i < length; i++) {
+        for (int i = start; i < start + length; i++) {
             newLineCount = newLineCount +  ((ch[i] == '\n') ? 1 : 0);
         }
         return newLineCount;
     }
 
     /**
-     * Inject resolved parameter values into XML stream
+     * Inject resolved parameter values into the SAX events of the config file. The properties are collected from
+     * the leading &lt;properties&gt; element as it is parsed, and line breaks are re-inserted where the source had
+     * them inside markup so that the downstream line numbers match the config file.
      */
-    private static final class XMLParameterInjector implements Callable<Boolean> {
-
-        private InputStream souceInput;
-        private OutputStreamWriter injectedOutput;
-        private Map<String, String> properties;
-        private Properties configuration;
-        private List<String> errors;
-        private int currentFlushedLine = 1;
-
-        public XMLParameterInjector(InputStream souceInput, OutputStream injectedOutput, Map<String, String> properties,
-                                    Properties configuration, List<String> errors)
-                throws UnsupportedEncodingException {
-            this.souceInput = souceInput;
-            this.injectedOutput = new OutputStreamWriter(injectedOutput, CHARSET_OUTPUT_XML);
-            this.properties = properties;
+    private static final class XMLParameterInjector extends XMLFilterImpl implements LexicalHandler {
+
+        private static final String LEXICAL_HANDLER_PROPERTY = "http://xml.org/sax/properties/lexical-handler";
+
+        private final Map<String, String> properties = new HashMap<String, String>();
+        private final Properties configuration;
+        private final List<String> errors;
+        private final StringBuilder text = new StringBuilder();
+
+        private LexicalHandler lexicalHandler;
+        private Locator locator;
+        private int currentFlushedLine;
+        private int rootElementLine = 1;
+        private int depth;
+
+        // state of the gateway-level <properties> element
+        private boolean inProperties;
+        private String propertyElement;
+        private String propertyName;
+        private String propertyValue;
+
+        public XMLParameterInjector(XMLReader parent, Properties configuration, List<String> errors)
+                throws SAXException {
+            super(parent);
             this.configuration = configuration;
             this.errors = errors;
+            parent.setProperty(LEXICAL_HANDLER_PROPERTY, this);
         }
 
-        private void write(char[] ch, int start, int length) {
-            try {
-                currentFlushedLine += countNewLines(ch, start, length);
-                injectedOutput.write(ch, start, length);
-                injectedOutput.flush();
-            } catch (IOException e) {
-                throw new RuntimeException(e);
+        @Override
+        public void setProperty(String name, Object value) throws SAXNotRecognizedException, SAXNotSupportedException {
+            // the lexical events pass through this filter, see the constructor
+            if (LEXICAL_HANDLER_PROPERTY.equals(name)) {
+                lexicalHandler = (LexicalHandler) value;
+            } else {
+                super.setProperty(name, value);
             }
         }
 
-        private void write(char[] ch) {
-            write(ch, 0, ch.length);
+        /**
+         * @return the line of the config file on which the root element was reported
+         */
+        public int getRootElementLine() {
+            return rootElementLine;
         }
 
-        private void write(String s) {
-            write(s.toCharArray(), 0, s.length());
+        private void write(char[] ch, int start, int length) throws SAXException {
+            currentFlushedLine += countNewLines(ch, start, length);
+            super.characters(ch, start, length);
         }
 
-        private void close() {
-            try {
-                souceInput.close();
-                injectedOutput.flush();
-                injectedOutput.close();
-            } catch (IOException e) {
-                throw new RuntimeException(e);
+        private void flushText() throws SAXException {
+            if (text.length() == 0) {
+                return;
+            }
+            char[] ch = text.toString().toCharArray();
+            text.setLength(0);
+            if (inProperties) {
+                // property values are only resolved once all of the properties are known
+                write(ch, 0, ch.length);
+            } else {
+                char[] resolved = ConfigParameter.resolveAndReplace(ch, 0, ch.length, properties, configuration, errors)
+                        .toCharArray();
+                write(resolved, 0, resolved.length);
             }
         }
 
-        /**
-         * Parse the config file, resolving and injecting parameters encountered
-         *
-         * @return <code>true</code> if processed without errors, <code>false</code> otherwise
-         */
-        public Boolean call() throws Exception {
-            try {
-                SAXParser parser = SAXParserFactory.newInstance().newSAXParser();
-                DefaultHandler handler = new DefaultHandler2() {
+        private void realignElement() throws SAXException {
+            int realignment = (locator != null) ? locator.getLineNumber() - currentFlushedLine : 0;
+            if (realignment > 0) {
+                char[] newLines = new char[realignment];
+                Arrays.fill(newLines, '\n');
+                write(newLines, 0, newLines.length);
+            }
+        }
 
-                    private Locator2 locator;
+        @Override
+        public void setDocumentLocator(Locator locator) {
+            this.locator = locator;
+            super.setDocumentLocator(locator);
+        }
 
-                    private void realignElement() {
-                        String realignment = "";
-                        for (int i = 0; i < locator.getLineNumber() - currentFlushedLine; i++) {
-                            realignment += System.getProperty("line.separator");
-                        }
-                        write(realignment);
-                    }
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes)
+                throws SAXException {
+            flushText();
+            if (depth == 0) {
+                // nothing is written before the root element, so the lines before it are restored by the caller
+                if (locator != null) {
+                    rootElementLine = locator.getLineNumber();
+                }
+                currentFlushedLine = rootElementLine;
+            } else {
+                realignElement();
+            }
+            depth++;
 
-                    @Override
-                    public void setDocumentLocator(Locator locator) {
-                        this.locator = (Locator2) locator;
-                    }
+            if (depth == 2 && "properties".equals(localName)) {
+                inProperties = true;
+            } else if (inProperties && depth == 4) {
+                propertyElement = localName;
+            }
 
-                    @Override
-                    public void startDocument() throws SAXException {
-                        write("<?xml version=\"1.0\" encoding=\"" + CHARSET_OUTPUT_XML + "\" ?>" +
-                                System.getProperty("line.separator"));
-                    }
+            AttributesImpl resolvedAttributes = new AttributesImpl(attributes);
+            for (int i = 0; i < resolvedAttributes.getLength(); i++) {
+                char[] attributeValue = resolvedAttributes.getValue(i).toCharArray();
+                resolvedAttributes.setValue(i, ConfigParameter.resolveAndReplace(attributeValue, 0,
+                        attributeValue.length, properties, configuration, errors));
+            }
+            super.startElement(uri, localName, qName, resolvedAttributes);
+        }
 
-                    @Override
-                    public void startElement(String uri, String localName, String qName, Attributes attributes)
-                            throws SAXException {
-                        realignElement();
-                        String elementName = (localName == null || localName.equals("")) ? qName : localName;
-                        write("<" + elementName);
-                        if (attributes != null) {
-                            for (int i = 0; i < attributes.getLength(); i++) {
-                                String attributeName = (attributes.getLocalName(i) == null || attributes
-                                        .getLocalName(i).equals("")) ? attributes.getQName(i) : attributes
-                                                               .getLocalName(i);
-                                write(" " + attributeName + "=\"");
-                                char[] attributeValue = attributes.getValue(i).toCharArray();
-                                write(ConfigParameter.resolveAndReplace(attributeValue, 0,
-                                        attributeValue.length, properties, configuration, errors) + "\"");
-                            }
-                        }
-                        write(new char[]{'>'});
-                    }
+        @Override
+        public void characters(char[] ch, int start, int length) throws SAXException {
+            // buffer until the next markup, so a parameter split across several events is still resolved
+            text.append(ch, start, length);
+            if (inProperties && depth == 4) {
+                String value = new String(ch, start, length);
+                if ("name".equals(propertyElement)) {
+                    propertyName = (propertyName == null) ? value : propertyName + value;
+                } else if ("value".equals(propertyElement)) {
+                    propertyValue = (propertyValue == null) ? value : propertyValue + value;
+                }
+            }
+        }
 
-                    @Override
-                    public void comment(char[] ch, int start, int length) throws SAXException {
-                        write("<!--");
-                        write(ch, start, length);
-                        write("-->");
-                    }
+        @Override
+        public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
+            flushText();
+            currentFlushedLine += countNewLines(ch, start, length);
+            super.ignorableWhitespace(ch, start, length);
+        }
 
-                    @Override
-                    public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
-                        write(ch, start, length);
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            flushText();
+            realignElement();
+
+            if (inProperties) {
+                if (depth == 4) {
+                    propertyElement = null;
+                } else if (depth == 3) {
+                    if (propertyName != null) {
+                        // name and value are CollapsedStrings, as seen by the XMLBeans properties
+                        properties.put(collapse(propertyName), collapse(propertyValue));
                     }
+                    propertyName = null;
+                    propertyValue = null;
+                } else if (depth == 2) {
+                    inProperties = false;
+                    resolvePropertyValues();
+                }
+            }
+            depth--;
+            super.endElement(uri, localName, qName);
+        }
 
-                    @Override
-                    public void characters(char[] ch, int start, int length) throws SAXException {
-                        write(ConfigParameter.resolveAndReplace(ch, start, length, properties, configuration, errors));
-                    }
+        private static String collapse(String value) {
+            return (value == null) ? null : value.trim().replaceAll("\\s+", " ");
+        }
 
-                    @Override
-                    public void endElement(String uri, String localName, String qName) throws SAXException {
-                        realignElement();
-                        String elementName = (localName == null || localName.equals("")) ? qName : localName;
-                        write("</" + elementName + ">");
-                    }
+        /**
+         * Report any unresolvable parameters in the property values, now that all of the properties are known.
+         */
+        private void resolvePropertyValues() {
+            for (String value : properties.values()) {
+                if (value != null) {
+                    char[] ch = value.toCharArray();
+                    ConfigParameter.resolveAndReplace(ch, 0, ch.length, properties, configuration, errors);
+                }
+            }
+        }
 
-                };
-                parser.getXMLReader().setProperty("http://xml.org/sax/properties/lexical-handler", handler);
-                parser.parse(souceInput, handler);
-            } finally {
-                close();
+        @Override
+        public void processingInstruction(String target, String data) throws SAXException {
+            // markup outside of the root element is dropped, as the lines before the root element are restored by
+            // the caller
+            if (depth > 0) {
+                flushText();
+                super.processingInstruction(target, data);
             }
-            return errors.size() == 0;
         }
-    }
 
-    /**
-     * XSL Transformer.
-     */
-    private static final class XSLTransformer implements Callable<Boolean> {
+        @Override
+        public void comment(char[] ch, int start, int length) throws SAXException {
+            if (depth == 0) {
+                return;
+            }
+            flushText();
+            currentFlushedLine += countNewLines(ch, start, length);
+            if (lexicalHandler != null) {
+                lexicalHandler.comment(ch, start, length);
+            }
+        }
 
-        private InputStream streamToTransform;
-        private OutputStream transformerOutput;
-        private String stylesheet;
+        @Override
+        public void startCDATA() throws SAXException {
+            flushText();
+            if (lexicalHandler != null) {
+                lexicalHandler.startCDATA();
+            }
+        }
 
-        /**
-         * Constructor.
-         *
-         * @param streamToTransform the gateway configuration file to transform
-         * @param transformerOutput the output stream to be used for transformed output
-         */
-        public XSLTransformer(InputStream streamToTransform, OutputStream transformerOutput, String stylesheet) {
-            this.streamToTransform = streamToTransform;
-            this.transformerOutput = transformerOutput;
-            this.stylesheet = stylesheet;
+        @Override
+        public void endCDATA() throws SAXException {
+            flushText();
+            if (lexicalHandler != null) {
+                lexicalHandler.endCDATA();
+            }
         }
 
-        /**
-         * Transform the gateway configuration file using the stylesheet.
-         *
-         * @return <code>true</code> if processed without errors, <code>false</code> otherwise
-         */
-        public Boolean call() throws Exception {
-            ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
-            URL resource = classLoader.getResource(stylesheet);
-            InputStream xslIn = resource.openStream();
-            try {
-                Source xmlSource = new StreamSource(streamToTransform);
-                Source xslSource = new StreamSource(xslIn);
-                Result xmlResult = new StreamResult(transformerOutput);
-                Transformer transformer = TransformerFactory.newInstance().newTransformer(xslSource);
-                transformer.setOutputProperty(OutputKeys.ENCODING, CHARSET_OUTPUT_XML);
-                transformer.setErrorListener(new ErrorListener() {
-
-                    @Override
-                    public void warning(TransformerException exception) throws TransformerException {
-                        throw exception;
-                    }
+        @Override
+        public void startDTD(String name, String publicId, String systemId) throws SAXException {
+            if (lexicalHandler != null) {
+                lexicalHandler.startDTD(name, publicId, systemId);
+            }
+        }
 
-                    @Override
-                    public void fatalError(TransformerException exception) throws TransformerException {
-                        throw exception;
-                    }
+        @Override
+        public void endDTD() throws SAXException {
+            if (lexicalHandler != null) {
+                lexicalHandler.endDTD();
+            }
+        }
 
-                    @Override
-                    public void error(TransformerException exception) throws TransformerException {
-                        throw exception;
-                    }
+        @Override
+        public void startEntity(String name) throws SAXException {
+            if (lexicalHandler != null) {
+                lexicalHandler.startEntity(name);
+            }
+        }
 
-                });
-                transformer.transform(xmlSource, xmlResult);
-            } finally {
-                transformerOutput.flush();
-                transformerOutput.close();
-                xslIn.close();
+        @Override
+        public void endEntity(String name) throws SAXException {
+            if (lexicalHandler != null) {
+                lexicalHandler.endEntity(name);
             }
-            return Boolean.TRUE;
         }
     }
 }
@@ -0,0 +1,151 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.kaazing.gateway.server.config.parse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.xml.transform.ErrorListener;
+import javax.xml.transform.Templates;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.stream.StreamSource;
+
+/**
+ * Process-wide cache of the compiled XSL stylesheets applied to gateway config files, keyed by stylesheet and by the
+ * namespace of the config files they are applied to. Compiled {@link Templates} are thread safe, so one compilation is
+ * shared by every {@link GatewayConfigParser}, including the parsers of embedded and test gateways.
+ */
+final class XSLTemplatesCache {
+
+    /**
+     * Error listener failing the compilation or transformation on any warning or error.
+     */
+    static final ErrorListener STRICT_ERROR_LISTENER = new ErrorListener() {
+
+        @Override
+        public void warning(TransformerException exception) throws TransformerException {
+            throw exception;
+        }
+
+        @Override
+        public void fatalError(TransformerException exception) throws TransformerException {
+            throw exception;
+        }
+
+        @Override
+        public void error(TransformerException exception) throws TransformerException {
+            throw exception;
+        }
+
+    };
+
+    private static final ConcurrentMap<TemplatesKey, Templates> TEMPLATES =
+            new ConcurrentHashMap<TemplatesKey, Templates>();
+
+    private XSLTemplatesCache() {
+    }
+
+    /**
+     * Get the compiled stylesheet, compiling it on first use.
+     *
+     * @param stylesheet the class path resource of the stylesheet
+     * @param namespace  the namespace of the config files the stylesheet is applied to
+     * @return the compiled stylesheet
+     * @throws IOException when the stylesheet cannot be found or read
+     * @throws TransformerConfigurationException when the stylesheet cannot be compiled
+     */
+    static Templates getTemplates(String stylesheet, GatewayConfigNamespace namespace)
+            throws IOException, TransformerConfigurationException {
+        URL resource = getResource(stylesheet);
+        TemplatesKey key = new TemplatesKey(resource.toExternalForm(), namespace);
+        Templates templates = TEMPLATES.get(key);
+        if (templates == null) {
+            // concurrent first uses may both compile, but only one of the compiled stylesheets is kept
+            templates = compile(resource);
+            Templates existing = TEMPLATES.putIfAbsent(key, templates);
+            if (existing != null) {
+                templates = existing;
+            }
+        }
+        return templates;
+    }
+
+    /**
+     * Drop all compiled stylesheets, so that they are compiled again on next use.
+     */
+    static void clear() {
+        TEMPLATES.clear();
+    }
+
+    private static URL getResource(String stylesheet) throws IOException {
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        URL resource = (classLoader != null) ? classLoader.getResource(stylesheet) : null;
+        if (resource == null) {
+            resource = XSLTemplatesCache.class.getClassLoader().getResource(stylesheet);
+        }
+        if (resource == null) {
+            throw new IOException("Unable to find stylesheet " + stylesheet);
+        }
+        return resource;
+    }
+
+    private static Templates compile(URL resource) throws IOException, TransformerConfigurationException {
+        InputStream xslIn = resource.openStream();
+        try {
+            TransformerFactory transformerFactory = TransformerFactory.newInstance();
+            transformerFactory.setErrorListener(STRICT_ERROR_LISTENER);
+            return transformerFactory.newTemplates(new StreamSource(xslIn, resource.toExternalForm()));
+        } finally {
+            xslIn.close();
+        }
+    }
+
+    private static final class TemplatesKey {
+
+        private final String stylesheet;
+        private final GatewayConfigNamespace namespace;
+
+        TemplatesKey(String stylesheet, GatewayConfigNamespace namespace) {
+            this.stylesheet = stylesheet;
+            this.namespace = namespace;
+        }
+
+        @Override
+        public int hashCode() {
+            return stylesheet.hashCode() * 31 + namespace.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof TemplatesKey)) {
+                return false;
+            }
+            TemplatesKey that = (TemplatesKey) obj;
+            return this.stylesheet.equals(that.stylesheet) && this.namespace == that.namespace;
+        }
+    }
+}
@@ -0,0 +1,228 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.kaazing.gateway.server.context.resolve;
+
+import java.net.URI;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.kaazing.gateway.service.cluster.MemberId;
+
+/**
+ * A locally materialized view of the balance targets of the whole cluster, merged from the per-member
+ * {@link BalancerMemberState} entries. States that are older than the one already applied for a member are ignored, so
+ * replayed or out of order entries cannot resurrect stale targets, and listeners are only told about a balance URI when its
+ * merged targets actually change. Reads never block and return immutable sets.
+ */
+public class BalancerMapView {
+
+    public interface Listener {
+
+        void balanceTargetsChanged(URI balanceURI, Set<URI> oldTargets, Set<URI> newTargets);
+
+    }
+
+    // states of departed members are remembered only so that their late entries are ignored, the oldest are forgotten
+    static final int MAX_REMOVED_STATES = 1024;
+
+    private final Map<MemberId, BalancerMemberState> states = new HashMap<MemberId, BalancerMemberState>();
+    private final Map<MemberId, BalancerMemberState> removedStates = new LinkedHashMap<MemberId, BalancerMemberState>() {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<MemberId, BalancerMemberState> eldest) {
+            return size() > MAX_REMOVED_STATES;
+        }
+    };
+    private final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+    private volatile Map<URI, Set<URI>> targets = Collections.emptyMap();
+
+    public void addListener(Listener listener) {
+        if (listener != null) {
+            listeners.add(listener);
+        }
+    }
+
+    public void removeListener(Listener listener) {
+        if (listener != null) {
+            listeners.remove(listener);
+        }
+    }
+
+    /**
+     * Applies the state of a member unless a newer one was already applied or removed.
+     *
+     * @return true if the state was applied
+     */
+    public synchronized boolean apply(MemberId member, BalancerMemberState state) {
+        if (!state.isNewerThan(states.get(member)) || !state.isNewerThan(removedStates.get(member))) {
+            return false;
+        }
+
+        removedStates.remove(member);
+        BalancerMemberState oldState = states.put(member, state);
+        refresh(oldState, state);
+        return true;
+    }
+
+    /**
+     * Removes the state of a member unless a newer one was applied since.
+     *
+     * @return true if the state was removed
+     */
+    public synchronized boolean remove(MemberId member, BalancerMemberState state) {
+        BalancerMemberState oldState = states.get(member);
+        if (oldState == null || oldState.isNewerThan(state)) {
+            return false;
+        }
+
+        return remove(member);
+    }
+
+    /**
+     * Removes whatever state was applied for a member, typically because the member left the cluster.
+     *
+     * @return true if there was a state to remove
+     */
+    public synchronized boolean remove(MemberId member) {
+        BalancerMemberState oldState = states.remove(member);
+        if (oldState == null) {
+            return false;
+        }
+
+        removedStates.put(member, oldState);
+        refresh(oldState, null);
+        return true;
+    }
+
+    /**
+     * Removes whatever states were applied for several members at once, so that the merged targets are recomputed and
+     * listeners are told about each changed balance URI only once, however many of the members served it.
+     *
+     * @return true if there was a state to remove for any of the members
+     */
+    public synchronized boolean removeAll(Collection<MemberId> members) {
+        boolean removed = false;
+        Set<URI> balanceURIs = new HashSet<URI>();
+        for (MemberId member : members) {
+            BalancerMemberState oldState = states.remove(member);
+            if (oldState != null) {
+                removedStates.put(member, oldState);
+                balanceURIs.addAll(oldState.getBalanceURIs());
+                removed = true;
+            }
+        }
+
+        if (removed) {
+            refresh(balanceURIs);
+        }
+        return removed;
+    }
+
+    public BalancerMemberState getMemberState(MemberId member) {
+        synchronized (this) {
+            return states.get(member);
+        }
+    }
+
+    public Set<URI> getBalanceURIs() {
+        return targets.keySet();
+    }
+
+    public Set<URI> getTargets(URI balanceURI) {
+        Set<URI> balanceTargets = targets.get(balanceURI);
+        return (balanceTargets != null) ? balanceTargets : Collections.<URI>emptySet();
+    }
+
+    public Map<URI, Set<URI>> asMap() {
+        return targets;
+    }
+
+    @Override
+    public String toString() {
+        return targets.toString();
+    }
+
+    private void refresh(BalancerMemberState oldState, BalancerMemberState newState) {
+        Set<URI> balanceURIs = new HashSet<URI>();
+        if (oldState != null) {
+            balanceURIs.addAll(oldState.getBalanceURIs());
+        }
+        if (newState != null) {
+            balanceURIs.addAll(newState.getBalanceURIs());
+        }
+        refresh(balanceURIs);
+    }
+
+    private void refresh(Set<URI> balanceURIs) {
+        Map<URI, Set<URI>> oldTargets = targets;
+        Map<URI, Set<URI>> newTargets = null;
+        for (URI balanceURI : balanceURIs) {
+            Set<URI> mergedTargets = new HashSet<URI>();
+            for (BalancerMemberState state : states.values()) {
+                mergedTargets.addAll(state.getTargets(balanceURI));
+            }
+
+            Set<URI> currentTargets = oldTargets.get(balanceURI);
+            if (currentTargets == null ? mergedTargets.isEmpty() : currentTargets.equals(mergedTargets)) {
+                continue;
+            }
+
+            if (newTargets == null) {
+                newTargets = new HashMap<URI, Set<URI>>(oldTargets);
+            }
+            if (mergedTargets.isEmpty()) {
+                newTargets.remove(balanceURI);
+            } else {
+                newTargets.put(balanceURI, Collections.unmodifiableSet(mergedTargets));
+            }
+        }
+
+        if (newTargets == null) {
+            return;
+        }
+
+        targets = Collections.unmodifiableMap(newTargets);
+
+        // listeners are notified while the view is still locked, so that they observe changes in the order they were made
+        for (URI balanceURI : balanceURIs) {
+            Set<URI> oldBalanceTargets = oldTargets.get(balanceURI);
+            Set<URI> newBalanceTargets = newTargets.get(balanceURI);
+            if (oldBalanceTargets == newBalanceTargets) {
+                continue;
+            }
+            for (Listener listener : listeners) {
+                listener.balanceTargetsChanged(balanceURI,
+                        (oldBalanceTargets != null) ? oldBalanceTargets : Collections.<URI>emptySet(),
+                        (newBalanceTargets != null) ? newBalanceTargets : Collections.<URI>emptySet());
+            }
+        }
+    }
+
+}
@@ -0,0 +1,179 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.kaazing.gateway.server.context.resolve;
+
+import java.io.Serializable;
+import java.net.URI;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The balance targets served by one cluster member, kept under that member's own key so that each member only ever writes
+ * its own entry. Every change produces a new state with a higher version, and a restarted member starts a new epoch, so that
+ * stale or replayed states can always be told apart from current ones. Instances are immutable.
+ */
+public final class BalancerMemberState implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String instanceKey;
+    private final long epoch;
+    private final long version;
+    private final Map<URI, Set<URI>> targets;
+
+    private BalancerMemberState(String instanceKey, long epoch, long version, Map<URI, Set<URI>> targets) {
+        this.instanceKey = instanceKey;
+        this.epoch = epoch;
+        this.version = version;
+        this.targets = targets;
+    }
+
+    /**
+     * Returns the current state if it was written by the given gateway instance, otherwise an empty state starting a new
+     * epoch that orders after the current one.
+     */
+    public static BalancerMemberState forInstance(BalancerMemberState current, String instanceKey) {
+        if (current != null && equals(current.instanceKey, instanceKey)) {
+            return current;
+        }
+
+        long epoch = System.currentTimeMillis();
+        if (current != null && epoch <= current.epoch) {
+            epoch = current.epoch + 1;
+        }
+        return new BalancerMemberState(instanceKey, epoch, 0L, Collections.<URI, Set<URI>>emptyMap());
+    }
+
+    public String getInstanceKey() {
+        return instanceKey;
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public Set<URI> getBalanceURIs() {
+        return Collections.unmodifiableSet(targets.keySet());
+    }
+
+    public Set<URI> getTargets(URI balanceURI) {
+        Set<URI> balanceTargets = targets.get(balanceURI);
+        return (balanceTargets != null) ? Collections.unmodifiableSet(balanceTargets) : Collections.<URI>emptySet();
+    }
+
+    public boolean isEmpty() {
+        return targets.isEmpty();
+    }
+
+    /**
+     * @return true if this state supersedes the given one, which may be null
+     */
+    public boolean isNewerThan(BalancerMemberState other) {
+        if (other == null) {
+            return true;
+        }
+        return (epoch != other.epoch) ? epoch > other.epoch : version > other.version;
+    }
+
+    /**
+     * @return a state with the targets added to each of the balance URIs, or this state if they were all present already
+     */
+    public BalancerMemberState addTargets(Collection<URI> balanceURIs, Collection<URI> newTargets) {
+        Map<URI, Set<URI>> updatedTargets = copyTargets();
+        boolean changed = false;
+        for (URI balanceURI : balanceURIs) {
+            Set<URI> balanceTargets = updatedTargets.get(balanceURI);
+            if (balanceTargets == null) {
+                balanceTargets = new HashSet<URI>();
+                updatedTargets.put(balanceURI, balanceTargets);
+            }
+            changed |= balanceTargets.addAll(newTargets);
+        }
+        return changed ? new BalancerMemberState(instanceKey, epoch, version + 1, updatedTargets) : this;
+    }
+
+    /**
+     * @return a state with the targets removed from each of the balance URIs, or this state if none of them were present
+     */
+    public BalancerMemberState removeTargets(Collection<URI> balanceURIs, Collection<URI> oldTargets) {
+        Map<URI, Set<URI>> updatedTargets = copyTargets();
+        boolean changed = false;
+        for (URI balanceURI : balanceURIs) {
+            Set<URI> balanceTargets = updatedTargets.get(balanceURI);
+            if (balanceTargets != null) {
+                changed |= balanceTargets.removeAll(oldTargets);
+                if (balanceTargets.isEmpty()) {
+                    updatedTargets.remove(balanceURI);
+                }
+            }
+        }
+        return changed ? new BalancerMemberState(instanceKey, epoch, version + 1, updatedTargets) : this;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof BalancerMemberState)) {
+            return false;
+        }
+        BalancerMemberState that = (BalancerMemberState) o;
+        return epoch == that.epoch && version == that.version && equals(instanceKey, that.instanceKey)
+                && targets.equals(that.targets);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (instanceKey != null) ? instanceKey.hashCode() : 0;
+        result = 31 * result + (int) (epoch ^ (epoch >>> 32));
+        result = 31 * result + (int) (version ^ (version >>> 32));
+        return 31 * result + targets.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("[%s epoch=%d version=%d targets=%s]", instanceKey, epoch, version, targets);
+    }
+
+    private Map<URI, Set<URI>> copyTargets() {
+        Map<URI, Set<URI>> copy = new HashMap<URI, Set<URI>>();
+        for (Map.Entry<URI, Set<URI>> entry : targets.entrySet()) {
+            copy.put(entry.getKey(), new HashSet<URI>(entry.getValue()));
+        }
+        return copy;
+    }
+
+    private static boolean equals(Object a, Object b) {
+        return (a == null) ? b == null : a.equals(b);
+    }
+
+}
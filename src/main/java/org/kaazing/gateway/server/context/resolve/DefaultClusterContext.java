@@ -28,7 +28,6 @@ import com.hazelcast.config.MapConfig;
 import com.hazelcast.config.MulticastConfig;
 import com.hazelcast.config.NetworkConfig;
 import com.hazelcast.config.TcpIpConfig;
-import com.hazelcast.core.Cluster;
 import com.hazelcast.core.EntryEvent;
 import com.hazelcast.core.EntryListener;
 import com.hazelcast.core.Hazelcast;
@@ -36,8 +35,6 @@ import com.hazelcast.core.HazelcastInstance;
 import com.hazelcast.core.IMap;
 import com.hazelcast.core.IdGenerator;
 import com.hazelcast.core.Member;
-import com.hazelcast.core.MembershipEvent;
-import com.hazelcast.core.MembershipListener;
 import com.hazelcast.impl.GroupProperties;
 import com.hazelcast.logging.LogEvent;
 import com.hazelcast.logging.LogListener;
@@ -49,16 +46,38 @@ import java.net.InetSocketAddress;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.Lock;
 import java.util.logging.Level;
 import java.util.logging.LogRecord;
+import org.kaazing.gateway.server.cluster.ClusterBackend;
+import org.kaazing.gateway.server.cluster.ClusterBackendListener;
+import org.kaazing.gateway.server.cluster.HazelcastClusterBackend;
 import org.kaazing.gateway.server.messaging.buffer.ClusterMemoryMessageBufferFactory;
+import org.kaazing.gateway.server.messaging.buffer.ClusterReplication;
+import org.kaazing.gateway.server.messaging.buffer.MappedMessageBufferFactory;
+import org.kaazing.gateway.server.messaging.buffer.MemoryMessageBufferFactory;
+import org.kaazing.gateway.server.messaging.channel.ClusterChannel;
+import org.kaazing.gateway.server.messaging.channel.ClusterChannelSettings;
+import org.kaazing.gateway.server.messaging.channel.ClusterFuture;
+import org.kaazing.gateway.server.messaging.channel.TopicChannelTransport;
+import org.kaazing.gateway.server.messaging.collections.BulkCollectionsFactory;
 import org.kaazing.gateway.server.messaging.collections.ClusterCollectionsFactory;
+import org.kaazing.gateway.server.messaging.collections.EntryUpdater;
 import org.kaazing.gateway.service.cluster.BalancerMapListener;
 import org.kaazing.gateway.service.cluster.ClusterConnectOptionsContext;
 import org.kaazing.gateway.service.cluster.ClusterContext;
@@ -69,7 +88,6 @@ import org.kaazing.gateway.service.cluster.MembershipEventListener;
 import org.kaazing.gateway.service.cluster.ReceiveListener;
 import org.kaazing.gateway.service.cluster.SendListener;
 import org.kaazing.gateway.service.messaging.buffer.MessageBufferFactory;
-import org.kaazing.gateway.service.messaging.collections.CollectionsFactory;
 import org.kaazing.gateway.util.GL;
 import org.kaazing.gateway.util.Utils;
 import org.kaazing.gateway.util.aws.AwsUtils;
@@ -78,16 +96,26 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import static org.kaazing.gateway.server.context.resolve.DefaultServiceContext.BALANCER_MAP_NAME;
 import static org.kaazing.gateway.server.context.resolve.DefaultServiceContext.MEMBERID_BALANCER_MAP_NAME;
+import static org.kaazing.gateway.server.context.resolve.DefaultServiceContext.MEMBERID_BALANCER_STATE_MAP_NAME;
 
 /**
  * ClusterContext for KEG
  * <p/>
  * <br>Balancer data<ol> <li> HttpBalancerService.MEMBERID_BALANCER_MAP_NAME: <ul><li> List of balanced URIs for one member
  * <li>Key: Cluster member id <li>Value: Map(key: balancerURI, value: acceptURIs) </ul> <li>HttpBalancerService.BALANCER_MAP_NAME
- * <ul><li> List of balanced URIs for whole cluster <li>Key: balanceURI <li>Value: acceptURIs </ul> </ol>
+ * <ul><li> List of balanced URIs for whole cluster <li>Key: balanceURI <li>Value: acceptURIs </ul>
+ * <li>DefaultServiceContext.MEMBERID_BALANCER_STATE_MAP_NAME: <ul><li> Versioned balance targets of one member, written only
+ * by that member and merged into a local {@link BalancerMapView} by every member <li>Key: Cluster member id <li>Value:
+ * {@link BalancerMemberState} </ul> </ol>
+ * The shared balancer map is kept in step with the view by the oldest cluster member only.
+ * <p/>
+ * The cluster runs on Hazelcast unless another {@link ClusterBackend} is set before the context is started.
  */
 public class DefaultClusterContext implements ClusterContext, LogListener {
 
+    // the last load published by each member, for balancer services that weigh their targets by load
+    public static final String MEMBER_LOAD_MAP = "memberLoadMap";
+
     private static final String CLUSTER_LOG_FORMAT = "HAZELCAST: [%s] - %s";
     private static final String INSTANCE_KEY_MAP = "instanceKeyMap";
 
@@ -98,16 +126,30 @@ public class DefaultClusterContext implements ClusterContext, LogListener {
     private final String localInstanceKey = Utils.randomHexString(16);
 
     private MessageBufferFactory messageBufferFactory;
-    private CollectionsFactory collectionsFactory;
+    private final MessageBufferFactory localBufferFactory;
+    private final ClusterReplication replication;
+    private ClusterCollectionsFactory collectionsFactory;
     private List<MemberId> localInterfaces = new ArrayList<MemberId>();
     private final List<MemberId> clusterMembers = new ArrayList<MemberId>();
     private final List<MembershipEventListener> membershipEventListeners = new ArrayList<MembershipEventListener>();
     private final List<InstanceKeyListener> instanceKeyListeners = new ArrayList<InstanceKeyListener>();
     private final List<BalancerMapListener> balancerMapListeners = new ArrayList<BalancerMapListener>();
+    private final BalancerMapView balancerMapView = new BalancerMapView();
+    private final ConcurrentMap<MemberId, MemberLoad> memberLoads = new ConcurrentHashMap<MemberId, MemberLoad>();
+    private volatile SharedBalancerMapWriter sharedBalancerMapWriter;
+    private ExecutorService sharedBalancerMapExecutor;
+    private MemberLoadReporter loadReporter;
+    private long loadReportInterval;
+    private ScheduledExecutorService loadReportScheduler;
+    private long memberRemovalDelay;
+    private MembershipChangeWorker membershipChangeWorker;
     private ClusterMessaging clusterMessaging;
+    private ClusterChannelSettings channelSettings = ClusterChannelSettings.DEFAULT;
+    private ClusterChannel clusterChannel;
     private MemberId localNodeId;
     private final String clusterName;
     private HazelcastInstance clusterInstance;
+    private ClusterBackend clusterBackend;
     private final SchedulerProvider schedulerProvider;
     private final ClusterConnectOptionsContext connectOptions;
     private final AtomicBoolean clusterInitialized = new AtomicBoolean(false);
@@ -124,11 +166,34 @@ public class DefaultClusterContext implements ClusterContext, LogListener {
                                  List<MemberId> members,
                                  SchedulerProvider schedulerProvider,
                                  ClusterConnectOptionsContext connectOptions) {
+        this(name, interfaces, members, schedulerProvider, connectOptions, new MemoryMessageBufferFactory());
+    }
+
+    public DefaultClusterContext(String name,
+                                 List<MemberId> interfaces,
+                                 List<MemberId> members,
+                                 SchedulerProvider schedulerProvider,
+                                 ClusterConnectOptionsContext connectOptions,
+                                 MessageBufferFactory localBufferFactory) {
+        this(name, interfaces, members, schedulerProvider, connectOptions, localBufferFactory,
+                ClusterReplication.IMMEDIATE);
+    }
+
+    public DefaultClusterContext(String name,
+                                 List<MemberId> interfaces,
+                                 List<MemberId> members,
+                                 SchedulerProvider schedulerProvider,
+                                 ClusterConnectOptionsContext connectOptions,
+                                 MessageBufferFactory localBufferFactory,
+                                 ClusterReplication replication) {
         this.clusterName = name;
         this.localInterfaces.addAll(interfaces);
         this.clusterMembers.addAll(members);
         this.schedulerProvider = schedulerProvider;
         this.connectOptions = connectOptions;
+        this.localBufferFactory = localBufferFactory;
+        this.replication = replication;
+        this.balancerMapView.addListener(balancerMapViewListener);
     }
 
     @Override
@@ -151,9 +216,10 @@ public class DefaultClusterContext implements ClusterContext, LogListener {
 
         try {
             // from ha.xml and then add members interfaces
-            Config config = initializeHazelcastConfig();
+            Config config = (clusterBackend == null) ? initializeHazelcastConfig() : null;
 
             initializeCluster(config);
+            startLoadReporting();
 
             GL.info(CLUSTER_LOGGER_NAME, "Cluster Member started: IP Address: {}; Port: {}; id: {}",
                     localNodeId.getHost(), localNodeId.getPort(), localNodeId.getId());
@@ -165,6 +231,10 @@ public class DefaultClusterContext implements ClusterContext, LogListener {
 
     @Override
     public void dispose() {
+        if (loadReportScheduler != null) {
+            loadReportScheduler.shutdownNow();
+        }
+
         // If we're in client mode, then we may not have this clusterMessaging
         // object.  So don't try to destroy it if it is not there at all
         // (KG-3496).
@@ -172,10 +242,53 @@ public class DefaultClusterContext implements ClusterContext, LogListener {
             clusterMessaging.destroy();
         }
 
-        if (clusterInstance != null) {
-            // KG-5837: do not call Hazelcast.shutdownAll() since that will hobble all in-process gateways
-            clusterInstance.getLifecycleService().shutdown();
+        if (clusterChannel != null) {
+            clusterChannel.dispose();
+        }
+
+        if (membershipChangeWorker != null) {
+            membershipChangeWorker.dispose();
+        }
+
+        if (sharedBalancerMapExecutor != null) {
+            sharedBalancerMapExecutor.shutdownNow();
         }
+
+        if (clusterBackend != null && clusterInitialized.get()) {
+            clusterBackend.removeMembershipListener(membershipListener);
+            clusterBackend.shutdown();
+        }
+
+        // unmap the local buffers of the cluster message buffers created by this member
+        if (localBufferFactory instanceof MappedMessageBufferFactory) {
+            ((MappedMessageBufferFactory) localBufferFactory).close();
+        }
+    }
+
+    /**
+     * Makes the cluster run on the given backend rather than on Hazelcast, which must be done before the cluster is
+     * started. The legacy cluster messaging is only available with Hazelcast.
+     */
+    public void setClusterBackend(ClusterBackend clusterBackend) {
+        if (clusterInitialized.get()) {
+            throw new IllegalStateException("The cluster is already started");
+        }
+        this.clusterBackend = clusterBackend;
+    }
+
+    /**
+     * Sets how many milliseconds to wait after a member goes down before cleaning up after it, so that members going down
+     * at about the same time are cleaned up as one batch. Must be called before the cluster is started.
+     */
+    public void setMemberRemovalDelay(long memberRemovalDelay) {
+        this.memberRemovalDelay = memberRemovalDelay;
+    }
+
+    /**
+     * @return the statistics of the membership changes processed so far, or null if the cluster is not started
+     */
+    public MembershipChangeMetrics getMembershipChangeMetrics() {
+        return membershipChangeWorker;
     }
 
     private Config initializeHazelcastConfig() throws Exception {
@@ -192,6 +305,9 @@ public class DefaultClusterContext implements ClusterContext, LogListener {
         sharedBalancerMapConfig.setBackupCount(Integer.MAX_VALUE);
         MapConfig memberBalancerMapConfig = hazelCastConfig.getMapConfig(MEMBERID_BALANCER_MAP_NAME);
         memberBalancerMapConfig.setBackupCount(Integer.MAX_VALUE);
+        // every member materializes the balancer state entries locally, so a single backup is enough
+        MapConfig memberBalancerStateMapConfig = hazelCastConfig.getMapConfig(MEMBERID_BALANCER_STATE_MAP_NAME);
+        memberBalancerStateMapConfig.setBackupCount(1);
 
         // disable port auto increment
         hazelCastConfig.setPortAutoIncrement(false);
@@ -459,79 +575,191 @@ public class DefaultClusterContext implements ClusterContext, LogListener {
         return instanceKeyMap.keySet();
     }
 
-    private MemberId getMemberId(Member member) {
-        InetSocketAddress inetSocketAddress = member.getInetSocketAddress();
-        String hostname = inetSocketAddress.getHostName();
-        if (!inetSocketAddress.isUnresolved()) {
-            String ipAddr = inetSocketAddress.getAddress().getHostAddress();
-            hostname = ipAddr;
-            GL.debug(CLUSTER_LOGGER_NAME, "getMemberId: Hostname: {}; IP Address: {}", hostname, ipAddr);
+    // membership changes are only queued on the thread of the cluster backend, the worker processes them in order
+    private ClusterBackendListener membershipListener = new ClusterBackendListener() {
+
+        @Override
+        public void memberAdded(MemberId newMemberId) {
+            membershipChangeWorker.memberAdded(newMemberId);
         }
-        return new MemberId("tcp", hostname, inetSocketAddress.getPort());
-    }
 
-    private MembershipListener membershipListener = new MembershipListener() {
+        @Override
+        public void memberRemoved(MemberId removedMember) {
+            membershipChangeWorker.memberRemoved(removedMember);
+        }
+    };
+
+    private MembershipChangeWorker.Handler membershipChangeHandler = new MembershipChangeWorker.Handler() {
 
         @Override
-        public void memberAdded(MembershipEvent membershipEvent) {
-            MemberId newMemberId = getMemberId(membershipEvent.getMember());
+        public void memberAdded(MemberId newMemberId) {
             GL.info(CLUSTER_LOGGER_NAME, "Cluster member {} is now online", newMemberId.getId());
+            updateSharedBalancerMapWriter();
             fireMemberAdded(newMemberId);
             logClusterMembers();
         }
 
         @Override
-        public void memberRemoved(MembershipEvent membershipEvent) {
-            MemberId removedMember = getMemberId(membershipEvent.getMember());
-            GL.info(CLUSTER_LOGGER_NAME, "Cluster member {} has gone down", removedMember);
+        public void membersRemoved(List<MemberId> removedMembers) {
+            GL.info(CLUSTER_LOGGER_NAME, "Cluster member(s) {} have gone down", removedMembers);
+
+            // drop the balance targets of the members that went down from the local view first, so that clients stop
+            // being balanced to them as soon as possible; the oldest member, which may have only just become so, also
+            // applies the change to the shared balancer map and cleans up the entries of the removed members, so that the
+            // shared entries are never updated by several members at once
+            boolean balancerMapWriter = updateSharedBalancerMapWriter();
+            balancerMapView.removeAll(removedMembers);
+            for (MemberId removedMember : removedMembers) {
+                memberLoads.remove(removedMember);
+            }
 
-            // Clean up the member's instanceKey
-            Map<MemberId, String> instanceKeyMap = getCollectionsFactory().getMap(INSTANCE_KEY_MAP);
-            instanceKeyMap.remove(removedMember);
+            // fail the outstanding requests to the members that went down rather than waiting for them to time out
+            if (clusterChannel != null) {
+                for (MemberId removedMember : removedMembers) {
+                    clusterChannel.memberRemoved(removedMember);
+                }
+            }
 
-            // cleanup balancer URIs for the member that went down
-            Map<MemberId, Map<URI, List<URI>>> memberIdBalancerUriMap =
-                    getCollectionsFactory().getMap(MEMBERID_BALANCER_MAP_NAME);
-            if (memberIdBalancerUriMap == null) {
-                throw new IllegalStateException("MemberId to BalancerMap is null");
+            // the listeners are told that the members went down even if cleaning up after them in the cluster fails
+            try {
+                // Clean up the members' instanceKeys
+                Map<MemberId, List<Future<?>>> removals = new HashMap<MemberId, List<Future<?>>>();
+                for (MemberId removedMember : removedMembers) {
+                    removeAsync(INSTANCE_KEY_MAP, removedMember, removals);
+                }
+                if (balancerMapWriter) {
+                    removeBalancerState(removedMembers, removals);
+                }
+                awaitAll(removals);
+            } finally {
+                for (MemberId removedMember : removedMembers) {
+                    fireMemberRemoved(removedMember);
+                }
+                logClusterMembers();
             }
+        }
+    };
 
-            IMap<URI, Set<URI>> sharedBalanceUriMap = getCollectionsFactory().getMap(BALANCER_MAP_NAME);
-            if (sharedBalanceUriMap == null) {
-                throw new IllegalStateException("Shared balanced URIs map is null");
+    /**
+     * Removes the balancer entries of members that left the cluster. The targets recorded in their unversioned entries are
+     * also removed from the shared balancer map, which covers members that do not publish a versioned state. Entries of all
+     * the members are removed in one batch and the shared balancer map is updated once for all of them. A member whose
+     * entries cannot be removed is logged and skipped.
+     */
+    private void removeBalancerState(List<MemberId> removedMembers, Map<MemberId, List<Future<?>>> removals) {
+        Map<MemberId, Future<Map<URI, List<URI>>>> balancedUriRemovals =
+                new HashMap<MemberId, Future<Map<URI, List<URI>>>>();
+        for (MemberId removedMember : removedMembers) {
+            removeAsync(MEMBERID_BALANCER_STATE_MAP_NAME, removedMember, removals);
+            removeAsync(MEMBER_LOAD_MAP, removedMember, removals);
+            Future<Map<URI, List<URI>>> balancedUriRemoval =
+                    removeAsync(MEMBERID_BALANCER_MAP_NAME, removedMember, removals);
+            if (balancedUriRemoval != null) {
+                balancedUriRemovals.put(removedMember, balancedUriRemoval);
             }
+        }
 
-            Map<URI, List<URI>> memberBalancedUrisMap = memberIdBalancerUriMap.remove(removedMember);
-            if (memberBalancedUrisMap != null) {
-                GL.debug(CLUSTER_LOGGER_NAME, "Cleaning up balancer cluster state for member {}", removedMember);
-                try {
-                    for (URI key : memberBalancedUrisMap.keySet()) {
-                        GL.debug(CLUSTER_LOGGER_NAME, "URI Key: {}", key);
-                        List<URI> memberBalancedUris = memberBalancedUrisMap.get(key);
-                        Set<URI> globalBalancedUris = null;
-                        Set<URI> newGlobalBalancedUris = null;
-                        do {
-                            globalBalancedUris = sharedBalanceUriMap.get(key);
-                            newGlobalBalancedUris = new HashSet<URI>(globalBalancedUris);
-                            for (URI memberBalancedUri : memberBalancedUris) {
-                                GL.debug(CLUSTER_LOGGER_NAME, "Attempting to removing Balanced URI : {}", memberBalancedUri);
-                                newGlobalBalancedUris.remove(memberBalancedUri);
+        final Map<URI, Set<URI>> removedBalancedUris = new HashMap<URI, Set<URI>>();
+        for (Map.Entry<MemberId, Future<Map<URI, List<URI>>>> balancedUriRemoval : balancedUriRemovals.entrySet()) {
+            Map<URI, List<URI>> balancedUris;
+            try {
+                balancedUris = await(balancedUriRemoval.getValue());
+            } catch (RuntimeException e) {
+                GL.warn(CLUSTER_LOGGER_NAME, "Unable to remove the balanced URIs of cluster member {}: {}",
+                        balancedUriRemoval.getKey(), e);
+                continue;
+            }
+            if (balancedUris == null) {
+                continue;
+            }
+            for (Map.Entry<URI, List<URI>> entry : balancedUris.entrySet()) {
+                Set<URI> uris = removedBalancedUris.get(entry.getKey());
+                if (uris == null) {
+                    uris = new HashSet<URI>();
+                    removedBalancedUris.put(entry.getKey(), uris);
+                }
+                uris.addAll(entry.getValue());
+            }
+        }
+
+        if (!removedBalancedUris.isEmpty()) {
+            GL.debug(CLUSTER_LOGGER_NAME, "Cleaning up balancer cluster state for members {}", removedMembers);
+            try {
+                Map<URI, Set<URI>> newGlobalBalancedUris = getCollectionsFactory().updateAll(BALANCER_MAP_NAME,
+                        removedBalancedUris.keySet(), new EntryUpdater<URI, Set<URI>>() {
+                            @Override
+                            public Set<URI> update(URI key, Set<URI> globalBalancedUris) {
+                                if (globalBalancedUris == null) {
+                                    return null;
+                                }
+                                Set<URI> updatedUris = new HashSet<URI>(globalBalancedUris);
+                                updatedUris.removeAll(removedBalancedUris.get(key));
+                                return updatedUris;
                             }
-                        } while (!sharedBalanceUriMap.replace(key, globalBalancedUris, newGlobalBalancedUris));
-
-                        GL.debug(CLUSTER_LOGGER_NAME, "Removed balanced URIs for cluster member {}, new global list: {}",
-                                removedMember, newGlobalBalancedUris);
-                    }
-                } catch (Exception e) {
-                    throw new IllegalStateException("Unable to remove the balanced URIs served by the member going down from " +
-                            "global map");
+                        });
+
+                for (URI key : removedBalancedUris.keySet()) {
+                    GL.debug(CLUSTER_LOGGER_NAME, "Removed balanced URIs {} for cluster members {}, new global list: {}",
+                            removedBalancedUris.get(key), removedMembers, newGlobalBalancedUris.get(key));
                 }
+            } catch (RuntimeException e) {
+                GL.warn(CLUSTER_LOGGER_NAME, "Unable to remove the balanced URIs of members {} from global map: {}",
+                        removedMembers, e);
             }
+        }
+    }
 
-            fireMemberRemoved(removedMember);
-            logClusterMembers();
+    /**
+     * Starts removing the entry of a member that left the cluster from a cluster map, and records the removal with the
+     * other removals for the member.
+     *
+     * @return the removal, or null if it could not be started
+     */
+    private <V> Future<V> removeAsync(String name, MemberId removedMember, Map<MemberId, List<Future<?>>> removals) {
+        Future<V> removal;
+        try {
+            removal = getCollectionsFactory().removeAsync(name, removedMember);
+        } catch (RuntimeException e) {
+            GL.warn(CLUSTER_LOGGER_NAME, "Unable to remove the {} entry of cluster member {}: {}", name, removedMember,
+                    e);
+            return null;
         }
-    };
+
+        List<Future<?>> memberRemovals = removals.get(removedMember);
+        if (memberRemovals == null) {
+            memberRemovals = new ArrayList<Future<?>>();
+            removals.put(removedMember, memberRemovals);
+        }
+        memberRemovals.add(removal);
+        return removal;
+    }
+
+    /**
+     * Waits for the removals of each member, logging the ones that failed rather than giving up on the other members.
+     */
+    private static void awaitAll(Map<MemberId, List<Future<?>>> removals) {
+        for (Map.Entry<MemberId, List<Future<?>>> entry : removals.entrySet()) {
+            for (Future<?> removal : entry.getValue()) {
+                try {
+                    await(removal);
+                } catch (RuntimeException e) {
+                    GL.warn(CLUSTER_LOGGER_NAME, "Unable to clean up after cluster member {} going down: {}",
+                            entry.getKey(), e);
+                }
+            }
+        }
+    }
+
+    private static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while cleaning up after cluster members going down", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Unable to clean up after cluster members going down", e.getCause());
+        }
+    }
 
     @Override
     public String getInstanceKey(MemberId memberId) {
@@ -574,44 +802,155 @@ public class DefaultClusterContext implements ClusterContext, LogListener {
         }
     };
 
-    private EntryListener<URI, Collection<URI>> balancerMapEntryListener = new EntryListener<URI, Collection<URI>>() {
+    private EntryListener<MemberId, BalancerMemberState> balancerStateEntryListener =
+            new EntryListener<MemberId, BalancerMemberState>() {
         @Override
-        public void entryAdded(EntryEvent<URI, Collection<URI>> newEntryEvent) {
-            GL.trace(CLUSTER_LOGGER_NAME, "New entry for balance URI: {}   value: {}", newEntryEvent.getKey(), newEntryEvent
-                    .getValue());
-            fireBalancerEntryAdded(newEntryEvent);
+        public void entryAdded(EntryEvent<MemberId, BalancerMemberState> newEntryEvent) {
+            GL.trace(CLUSTER_LOGGER_NAME, "New balancer state for member: {}   value: {}", newEntryEvent.getKey(),
+                    newEntryEvent.getValue());
+            balancerMapView.apply(newEntryEvent.getKey(), newEntryEvent.getValue());
         }
 
         @Override
-        public void entryEvicted(EntryEvent<URI, Collection<URI>> evictedEntryEvent) {
-            throw new RuntimeException("Balancer map entries should not be evicted, only added or removed.");
+        public void entryEvicted(EntryEvent<MemberId, BalancerMemberState> evictedEntryEvent) {
+            throw new RuntimeException("Balancer state entries should not be evicted, only added or removed.");
         }
 
         @Override
-        public void entryRemoved(EntryEvent<URI, Collection<URI>> removedEntryEvent) {
-            GL.trace(CLUSTER_LOGGER_NAME, "Entry removed for balance URI: {}   value: {}", removedEntryEvent
-                    .getKey(), removedEntryEvent.getValue());
-            fireBalancerEntryRemoved(removedEntryEvent);
+        public void entryRemoved(EntryEvent<MemberId, BalancerMemberState> removedEntryEvent) {
+            GL.trace(CLUSTER_LOGGER_NAME, "Balancer state removed for member: {}   value: {}", removedEntryEvent.getKey(),
+                    removedEntryEvent.getValue());
+            balancerMapView.remove(removedEntryEvent.getKey(), removedEntryEvent.getValue());
         }
 
         @Override
-        public void entryUpdated(EntryEvent<URI, Collection<URI>> updatedEntryEvent) {
-            GL.trace(CLUSTER_LOGGER_NAME, "Entry updated for balance URI: {}   value: {}", updatedEntryEvent
-                    .getKey(), updatedEntryEvent.getValue());
-            fireBalancerEntryUpdated(updatedEntryEvent);
+        public void entryUpdated(EntryEvent<MemberId, BalancerMemberState> updatedEntryEvent) {
+            GL.trace(CLUSTER_LOGGER_NAME, "Balancer state updated for member: {}   value: {}", updatedEntryEvent.getKey(),
+                    updatedEntryEvent.getValue());
+            balancerMapView.apply(updatedEntryEvent.getKey(), updatedEntryEvent.getValue());
         }
     };
 
+    private EntryListener<MemberId, MemberLoad> memberLoadEntryListener = new EntryListener<MemberId, MemberLoad>() {
+        @Override
+        public void entryAdded(EntryEvent<MemberId, MemberLoad> newEntryEvent) {
+            memberLoads.put(newEntryEvent.getKey(), newEntryEvent.getValue());
+        }
+
+        @Override
+        public void entryEvicted(EntryEvent<MemberId, MemberLoad> evictedEntryEvent) {
+            throw new RuntimeException("Member load entries should not be evicted, only added or removed.");
+        }
+
+        @Override
+        public void entryRemoved(EntryEvent<MemberId, MemberLoad> removedEntryEvent) {
+            memberLoads.remove(removedEntryEvent.getKey());
+        }
+
+        @Override
+        public void entryUpdated(EntryEvent<MemberId, MemberLoad> updatedEntryEvent) {
+            memberLoads.put(updatedEntryEvent.getKey(), updatedEntryEvent.getValue());
+        }
+    };
+
+    private BalancerMapView.Listener balancerMapViewListener = new BalancerMapView.Listener() {
+        @Override
+        public void balanceTargetsChanged(URI balanceURI, Set<URI> oldTargets, Set<URI> newTargets) {
+            if (oldTargets.isEmpty()) {
+                fireBalancerEntryAdded(balanceURI, newTargets);
+            } else if (newTargets.isEmpty()) {
+                fireBalancerEntryRemoved(balanceURI, oldTargets);
+            } else {
+                fireBalancerEntryUpdated(balanceURI, newTargets);
+            }
+        }
+    };
+
+    /**
+     * Makes the oldest cluster member the only writer of the shared balancer map.
+     *
+     * @return true if the local member is the writer
+     */
+    private boolean updateSharedBalancerMapWriter() {
+        SharedBalancerMapWriter writer = sharedBalancerMapWriter;
+        if (writer == null) {
+            // membership events may arrive before the cluster collections are initialized
+            return false;
+        }
+
+        List<MemberId> currentMembers = clusterBackend.getMembers();
+        boolean oldestMember = !currentMembers.isEmpty() && currentMembers.get(0).equals(localNodeId);
+        writer.setActive(oldestMember, balancerMapView);
+        return oldestMember;
+    }
+
+    /**
+     * @return the balance targets of the whole cluster, as materialized locally from the per-member balancer state
+     */
+    public BalancerMapView getBalancerMapView() {
+        return balancerMapView;
+    }
+
+    /**
+     * Publishes the load of the local member to the {@link #MEMBER_LOAD_MAP} map of the cluster. Publishing an unchanged
+     * load is a no-op.
+     */
+    public void publishLoad(MemberLoad load) {
+        if (load.equals(memberLoads.get(localNodeId))) {
+            return;
+        }
+
+        Map<MemberId, MemberLoad> memberLoadMap = getCollectionsFactory().getMap(MEMBER_LOAD_MAP);
+        memberLoadMap.put(localNodeId, load);
+    }
+
+    /**
+     * Makes the member publish the load measured by the reporter every interval once the cluster is started. Nothing in
+     * the gateway server reads the published loads, so reporting is off unless an interval is configured.
+     *
+     * @param interval the milliseconds between reports, 0 disables load reporting
+     */
+    public void setLoadReporter(MemberLoadReporter loadReporter, long interval) {
+        this.loadReporter = loadReporter;
+        this.loadReportInterval = interval;
+    }
+
+    private void startLoadReporting() {
+        final MemberLoadReporter reporter = loadReporter;
+        if (reporter == null || loadReportInterval <= 0) {
+            return;
+        }
+
+        loadReportScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "cluster-load-report");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        loadReportScheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    publishLoad(reporter.measure());
+                } catch (RuntimeException e) {
+                    GL.warn(CLUSTER_LOGGER_NAME, "Unable to publish the load of cluster member {}: {}", localNodeId, e);
+                }
+            }
+        }, 0, loadReportInterval, TimeUnit.MILLISECONDS);
+    }
+
     // cluster collections
 
     @Override
     public Lock getLock(Object obj) {
-        return clusterInstance.getLock(obj);
+        return clusterBackend.getLock(obj);
     }
 
     @Override
     public IdGenerator getIdGenerator(String name) {
-        return clusterInstance.getIdGenerator(name);
+        return clusterBackend.getIdGenerator(name);
     }
 
     // cluster communication
@@ -664,6 +1003,31 @@ public class DefaultClusterContext implements ClusterContext, LogListener {
         return null;
     }
 
+    /**
+     * Sends a request to a member over the pipelined cluster channel, without blocking the calling thread.
+     *
+     * @return a future completed with the member's response, see {@link ClusterChannel#request(MemberId, Object)}
+     */
+    public <T> ClusterFuture<T> sendAsync(Object msg, MemberId member) {
+        return getClusterChannel().request(member, msg);
+    }
+
+    /**
+     * Configures the cluster channel, before the cluster is started.
+     */
+    public void setChannelSettings(ClusterChannelSettings channelSettings) {
+        this.channelSettings = channelSettings;
+    }
+
+    /**
+     * @return the pipelined channel used for asynchronous requests and one-way messages between members, which starts no
+     * threads until it is first used
+     */
+    public ClusterChannel getClusterChannel() {
+        initializeCluster(null);
+        return clusterChannel;
+    }
+
     @Override
     public <T> void setReceiver(Class<T> type, ReceiveListener<T> receiveListener) {
         if (clusterMessaging != null) {
@@ -753,22 +1117,17 @@ public class DefaultClusterContext implements ClusterContext, LogListener {
 
     private void logClusterMembers() {
         // log current cluster state on TRACE level
-        if (clusterInstance != null) {
-            Cluster cluster = clusterInstance.getCluster();
-            if (cluster != null) {
-                GL.trace(CLUSTER_LOGGER_NAME, "Current cluster members:");
-                Set<Member> currentMembers = clusterInstance.getCluster().getMembers();
-                for (Member currentMember : currentMembers) {
-                    MemberId memberId = getMemberId(currentMember);
-                    GL.trace(CLUSTER_LOGGER_NAME, "      member: {}", memberId);
-                }
+        if (clusterBackend != null && clusterInitialized.get()) {
+            GL.trace(CLUSTER_LOGGER_NAME, "Current cluster members:");
+            for (MemberId memberId : clusterBackend.getMembers()) {
+                GL.trace(CLUSTER_LOGGER_NAME, "      member: {}", memberId);
             }
         }
     }
 
     private void logBalancerMap() {
         GL.trace(CLUSTER_LOGGER_NAME, "Current balancer map:");
-        Map<URI, Set<URI>> balancerMap = getCollectionsFactory().getMap(BALANCER_MAP_NAME);
+        Map<URI, Set<URI>> balancerMap = balancerMapView.asMap();
         for (URI balanceURI : balancerMap.keySet()) {
             Set<URI> balanceTargets = balancerMap.get(balanceURI);
             GL.trace(CLUSTER_LOGGER_NAME, "     balance URI: {}    target list: {}", balanceURI, balanceTargets);
@@ -834,12 +1193,11 @@ public class DefaultClusterContext implements ClusterContext, LogListener {
     /**
      * Fire balancerEntryAdded event
      */
-    private void fireBalancerEntryAdded(EntryEvent<URI, Collection<URI>> entryEvent) {
-        URI balancerURI = entryEvent.getKey();
+    private void fireBalancerEntryAdded(URI balancerURI, Collection<URI> balanceTargets) {
         GL.debug(CLUSTER_LOGGER_NAME, "Firing balancerEntryAdded for: {}", balancerURI);
         for (BalancerMapListener listener : balancerMapListeners) {
             try {
-                listener.balancerEntryAdded(balancerURI, entryEvent.getValue());
+                listener.balancerEntryAdded(balancerURI, balanceTargets);
             } catch (Throwable e) {
                 GL.error(CLUSTER_LOGGER_NAME, "Error in balancerEntryAdded event {}", e);
             }
@@ -849,12 +1207,11 @@ public class DefaultClusterContext implements ClusterContext, LogListener {
     /**
      * Fire balancerEntryRemoved event
      */
-    private void fireBalancerEntryRemoved(EntryEvent<URI, Collection<URI>> entryEvent) {
-        URI balancerURI = entryEvent.getKey();
+    private void fireBalancerEntryRemoved(URI balancerURI, Collection<URI> balanceTargets) {
         GL.debug(CLUSTER_LOGGER_NAME, "Firing balancerEntryRemoved for: {}", balancerURI);
         for (BalancerMapListener listener : balancerMapListeners) {
             try {
-                listener.balancerEntryRemoved(balancerURI, entryEvent.getValue());
+                listener.balancerEntryRemoved(balancerURI, balanceTargets);
             } catch (Throwable e) {
                 GL.error(CLUSTER_LOGGER_NAME, "Error in balancerEntryRemoved event {}", e);
             }
@@ -864,12 +1221,11 @@ public class DefaultClusterContext implements ClusterContext, LogListener {
     /**
      * Fire balancerEntryUpdated event
      */
-    private void fireBalancerEntryUpdated(EntryEvent<URI, Collection<URI>> entryEvent) {
-        URI balancerURI = entryEvent.getKey();
+    private void fireBalancerEntryUpdated(URI balancerURI, Collection<URI> balanceTargets) {
         GL.debug(CLUSTER_LOGGER_NAME, "Firing balancerEntryUpdated for: {}", balancerURI);
         for (BalancerMapListener listener : balancerMapListeners) {
             try {
-                listener.balancerEntryUpdated(balancerURI, entryEvent.getValue());
+                listener.balancerEntryUpdated(balancerURI, balanceTargets);
             } catch (Throwable e) {
                 GL.error(CLUSTER_LOGGER_NAME, "Error in balancerEntryUpdated event {}", e);
             }
@@ -877,35 +1233,66 @@ public class DefaultClusterContext implements ClusterContext, LogListener {
     }
 
     @Override
-    public CollectionsFactory getCollectionsFactory() {
+    public BulkCollectionsFactory getCollectionsFactory() {
         initializeCluster(null);
         return this.collectionsFactory;
     }
 
     private void initializeCluster(Config config) {
         if (clusterInitialized.compareAndSet(false, true)) {
-            clusterInstance = Hazelcast.newHazelcastInstance(config);
-            if (clusterInstance == null) {
-                throw new RuntimeException("Unable to initialize the cluster");
-            }
-            Cluster cluster = clusterInstance.getCluster();
-            cluster.addMembershipListener(this.membershipListener);
+            if (clusterBackend == null) {
+                clusterInstance = Hazelcast.newHazelcastInstance(config);
+                if (clusterInstance == null) {
+                    throw new RuntimeException("Unable to initialize the cluster");
+                }
 
-            // Register a listener for Hazelcast logging events
-            LoggingService loggingService = clusterInstance.getLoggingService();
-            loggingService.addLogListener(Level.FINEST, this);
+                // Register a listener for Hazelcast logging events
+                LoggingService loggingService = clusterInstance.getLoggingService();
+                loggingService.addLogListener(Level.FINEST, this);
 
-            this.collectionsFactory = new ClusterCollectionsFactory(clusterInstance);
-            this.messageBufferFactory = new ClusterMemoryMessageBufferFactory(clusterInstance);
-            localNodeId = getMemberId(cluster.getLocalMember());
-            clusterMessaging = new ClusterMessaging(this, clusterInstance, schedulerProvider);
+                clusterBackend = new HazelcastClusterBackend(clusterInstance);
+            }
+            membershipChangeWorker = new MembershipChangeWorker(membershipChangeHandler, memberRemovalDelay);
+            clusterBackend.addMembershipListener(this.membershipListener);
+            clusterBackend.start();
+
+            this.collectionsFactory = new ClusterCollectionsFactory(clusterBackend);
+            this.messageBufferFactory =
+                    new ClusterMemoryMessageBufferFactory(clusterBackend, localBufferFactory, replication);
+            localNodeId = clusterBackend.getLocalMember();
+            if (clusterInstance != null) {
+                clusterMessaging = new ClusterMessaging(this, clusterInstance, schedulerProvider);
+            }
+            clusterChannel = new ClusterChannel(localNodeId, new TopicChannelTransport(clusterBackend), channelSettings);
 
             IMap<MemberId, String> instanceKeyMap = collectionsFactory.getMap(INSTANCE_KEY_MAP);
             instanceKeyMap.put(localNodeId, localInstanceKey);
             instanceKeyMap.addEntryListener(instanceKeyEntryListener, true);
 
-            IMap<URI, Collection<URI>> balancerMap = collectionsFactory.getMap(BALANCER_MAP_NAME);
-            balancerMap.addEntryListener(balancerMapEntryListener, true);
+            // listen before reading the current entries, the view ignores any entry it sees twice
+            sharedBalancerMapExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "cluster-balancer-map-writer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            sharedBalancerMapWriter = new SharedBalancerMapWriter(collectionsFactory, sharedBalancerMapExecutor);
+            balancerMapView.addListener(sharedBalancerMapWriter);
+            IMap<MemberId, BalancerMemberState> balancerStateMap =
+                    collectionsFactory.getMap(MEMBERID_BALANCER_STATE_MAP_NAME);
+            balancerStateMap.addEntryListener(balancerStateEntryListener, true);
+            for (Map.Entry<MemberId, BalancerMemberState> entry : balancerStateMap.entrySet()) {
+                balancerMapView.apply(entry.getKey(), entry.getValue());
+            }
+
+            IMap<MemberId, MemberLoad> memberLoadMap = collectionsFactory.getMap(MEMBER_LOAD_MAP);
+            memberLoadMap.addEntryListener(memberLoadEntryListener, true);
+            for (Map.Entry<MemberId, MemberLoad> entry : memberLoadMap.entrySet()) {
+                memberLoads.put(entry.getKey(), entry.getValue());
+            }
+            updateSharedBalancerMapWriter();
         }
     }
 
@@ -25,6 +25,7 @@ import java.io.File;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import org.kaazing.gateway.resource.address.ResourceAddress;
 import org.kaazing.gateway.security.RealmContext;
@@ -32,8 +33,10 @@ import org.kaazing.gateway.server.context.GatewayContext;
 import org.kaazing.gateway.server.context.SchemeContext;
 import org.kaazing.gateway.server.context.ServiceDefaultsContext;
 import org.kaazing.gateway.server.context.TransportContext;
+import org.kaazing.gateway.server.service.ServiceAuthority;
 import org.kaazing.gateway.server.service.ServiceRegistry;
 import org.kaazing.gateway.service.ServiceContext;
+import org.kaazing.gateway.service.ServiceRegistration;
 import org.kaazing.gateway.service.cluster.ClusterContext;
 import org.kaazing.gateway.util.scheduler.SchedulerProvider;
 
@@ -84,6 +87,47 @@ public class DefaultGatewayContext implements GatewayContext {
         return services;
     }
 
+    /**
+     * Replace running services when the gateway configuration is reloaded. The accept URIs of the stopped services are
+     * unregistered, and the started services are registered for the URIs they were registered for when resolved.
+     *
+     * @param serviceRegistry the registry the started services were registered in when resolved
+     */
+    public void replaceServices(Collection<? extends ServiceContext> stopped,
+                                Collection<? extends ServiceContext> started,
+                                ServiceRegistry serviceRegistry) {
+        for (ServiceContext serviceContext : stopped) {
+            servicesByURI.unregister(serviceContext);
+            removeService(serviceContext);
+        }
+
+        for (ServiceAuthority serviceAuthority : serviceRegistry.values()) {
+            for (ServiceRegistration serviceRegistration : serviceAuthority.values()) {
+                for (ServiceContext serviceContext : started) {
+                    if (serviceRegistration.getServiceContext() == serviceContext) {
+                        servicesByURI.register(serviceRegistration.getURI(), serviceContext);
+                    }
+                }
+            }
+        }
+        services.addAll(started);
+    }
+
+    private void removeService(ServiceContext serviceContext) {
+        // service contexts are equal when their type and accepts are, so remove this one by identity
+        if (services instanceof List) {
+            List<ServiceContext> serviceList = (List<ServiceContext>) services;
+            for (int i = 0; i < serviceList.size(); i++) {
+                if (serviceList.get(i) == serviceContext) {
+                    serviceList.remove(i);
+                    return;
+                }
+            }
+        } else {
+            services.remove(serviceContext);
+        }
+    }
+
     @Override
     public DefaultSchemeContext getScheme(String name) {
         return schemes.get(name);
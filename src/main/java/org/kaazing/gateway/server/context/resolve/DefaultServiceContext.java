@@ -21,7 +21,6 @@
 
 package org.kaazing.gateway.server.context.resolve;
 
-import com.hazelcast.core.IMap;
 import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
@@ -36,11 +35,9 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -59,6 +56,9 @@ import org.kaazing.gateway.resource.address.URLUtils;
 import org.kaazing.gateway.security.AuthenticationContext;
 import org.kaazing.gateway.security.CrossSiteConstraintContext;
 import org.kaazing.gateway.security.RealmContext;
+import org.kaazing.gateway.server.GatewayStartupListenerApi;
+import org.kaazing.gateway.server.StartupTimeline;
+import org.kaazing.gateway.server.messaging.collections.EntryUpdater;
 import org.kaazing.gateway.server.service.AbstractSessionInitializer;
 import org.kaazing.gateway.service.AcceptOptionsContext;
 import org.kaazing.gateway.service.ConnectOptionsContext;
@@ -86,11 +86,13 @@ import static java.util.Arrays.asList;
 import static org.kaazing.gateway.resource.address.ResourceAddress.CONNECT_REQUIRES_INIT;
 import static org.kaazing.gateway.resource.address.ResourceAddress.TRANSPORT;
 import static org.kaazing.gateway.server.context.resolve.DefaultClusterContext.CLUSTER_LOGGER_NAME;
+import static org.kaazing.gateway.server.messaging.collections.DelegatingCollectionsFactory.asBulkCollectionsFactory;
 
 public class DefaultServiceContext implements ServiceContext {
 
     public static final String BALANCER_MAP_NAME = "balancerMap";
     public static final String MEMBERID_BALANCER_MAP_NAME = "memberIdBalancerMap";
+    public static final String MEMBERID_BALANCER_STATE_MAP_NAME = "memberIdBalancerStateMap";
 
     private static final Charset UTF_8 = Charset.forName("UTF-8");
     private static final String[] EMPTY_REQUIRE_ROLES = new String[]{};
@@ -152,6 +154,7 @@ public class DefaultServiceContext implements ServiceContext {
 
     private final AtomicBoolean started = new AtomicBoolean(false);
     private final Map<String, Object> serviceSpecificObjects;
+    private volatile GatewayStartupListenerApi gatewayListener;
 
     /**
      * Default Session Initializer
@@ -527,7 +530,15 @@ public class DefaultServiceContext implements ServiceContext {
 
                 ResourceAddress address = resourceAddressFactory.newResourceAddress(transportAccept, options);
 
+                String bindPhase = StartupTimeline.TRANSPORT_BIND + transportAccept;
+                GatewayStartupListenerApi gatewayListener = this.gatewayListener;
+                if (gatewayListener != null) {
+                    gatewayListener.startingPhase(bindPhase);
+                }
                 bindInternal(address, handler, transport, sessionInitializer, bridgeSessionInitializer);
+                if (gatewayListener != null) {
+                    gatewayListener.completedPhase(bindPhase);
+                }
                 bindings.put(transportAccept, address);
             }
         }
@@ -561,36 +572,25 @@ public class DefaultServiceContext implements ServiceContext {
                     acceptUris.addAll(accepts);
                 }
 
-                IMap<URI, Set<URI>> sharedBalanceUriMap = factory.getMap(BALANCER_MAP_NAME);
-                for (URI balanceURI : balances) {
-                    if (accepts != null) {
-                        memberBalanceUriMap.put(balanceURI, acceptUris);
-
-                        // get and add to the list here instead of overwriting it
-                        Set<URI> balanceUris = null;
-                        Set<URI> newBalanceUris = null;
-
-                        do {
-                            balanceUris = sharedBalanceUriMap.get(balanceURI);
-                            if (balanceUris == null) {
-                                newBalanceUris = new HashSet<URI>();
-                                newBalanceUris.addAll(accepts);
-                                balanceUris = sharedBalanceUriMap.putIfAbsent(balanceURI, newBalanceUris);
-                                if (balanceUris == null) {
-                                    break;
+                if (accepts != null) {
+                    // only this member writes its own versioned entry, so the update is uncontended and carries only the
+                    // targets of this member; every member merges the entries into its local view of the balancer map
+                    final String instanceKey = clusterContext.getInstanceKey(localMember);
+                    BalancerMemberState memberState = asBulkCollectionsFactory(factory).update(
+                            MEMBERID_BALANCER_STATE_MAP_NAME, localMember, new EntryUpdater<MemberId, BalancerMemberState>() {
+                                @Override
+                                public BalancerMemberState update(MemberId member, BalancerMemberState currentState) {
+                                    return BalancerMemberState.forInstance(currentState, instanceKey)
+                                            .addTargets(balances, accepts);
                                 }
-                            }
+                            });
 
-                            newBalanceUris = new HashSet<URI>(balanceUris);
-                            newBalanceUris.addAll(accepts);
-                            if (newBalanceUris.equals(balanceUris)) {
-                                break;
-                            }
-                        } while (!sharedBalanceUriMap.replace(balanceURI, balanceUris, newBalanceUris));
+                    for (URI balanceURI : balances) {
+                        memberBalanceUriMap.put(balanceURI, acceptUris);
 
                         GL.info(CLUSTER_LOGGER_NAME, "Cluster member {}: service {} bound", localMember, serviceType);
-                        GL.debug(CLUSTER_LOGGER_NAME, "Added balance URIs {}, new global list is {}",
-                                acceptUris, newBalanceUris);
+                        GL.debug(CLUSTER_LOGGER_NAME, "Added balance URIs {}, member balancer state is {}",
+                                acceptUris, memberState);
                     }
                 }
 
@@ -875,40 +875,28 @@ public class DefaultServiceContext implements ServiceContext {
                     throw new IllegalStateException("Member balancerMap is null for member " + localMember);
                 }
 
-                IMap<URI, Set<URI>> sharedBalanceUriMap = factory.getMap(BALANCER_MAP_NAME);
-                for (URI balanceURI : balances) {
-                    if (accepts != null) {
-                        memberBalanceUriMap.remove(balanceURI);
-
-                        // get and add to the list here instead of overwriting it
-                        Set<URI> balanceUris = null;
-                        Set<URI> newBalanceUris = null;
-                        do {
-                            boolean didRemove = false;
-                            balanceUris = sharedBalanceUriMap.get(balanceURI);
-                            if (balanceUris != null) {
-                                newBalanceUris = new HashSet<URI>(balanceUris);
-                                for (URI acceptUri : accepts) {
-                                    didRemove = didRemove || newBalanceUris.remove(acceptUri);
-                                }
-                            }
-
-                            if (!didRemove) {
-                                // the current balancer entries were already removed, so since no work
-                                // was done just skip the attempt to update cluster memory
-                                break;
-                            }
-                            if (newBalanceUris.isEmpty()) {
-                                if (sharedBalanceUriMap.remove(balanceURI, balanceUris)) {
-                                    break;
-                                } else {
-                                    continue; // start over to refresh the newBalanceUris
+                if (accepts != null) {
+                    // remove from this member's own versioned entry; when the targets were already removed the updater
+                    // leaves the entry unchanged, so no attempt is made to update cluster memory
+                    final String instanceKey = clusterContext.getInstanceKey(localMember);
+                    BalancerMemberState memberState = asBulkCollectionsFactory(factory).update(
+                            MEMBERID_BALANCER_STATE_MAP_NAME, localMember, new EntryUpdater<MemberId, BalancerMemberState>() {
+                                @Override
+                                public BalancerMemberState update(MemberId member, BalancerMemberState currentState) {
+                                    if (currentState == null) {
+                                        return null;
+                                    }
+                                    return BalancerMemberState.forInstance(currentState, instanceKey)
+                                            .removeTargets(balances, accepts);
                                 }
-                            }
-                        } while (!sharedBalanceUriMap.replace(balanceURI, balanceUris, newBalanceUris));
+                            });
+
+                    for (URI balanceURI : balances) {
+                        memberBalanceUriMap.remove(balanceURI);
 
                         GL.info(CLUSTER_LOGGER_NAME, "Cluster member {}: service {} unbound", localMember, serviceType);
-                        GL.debug(CLUSTER_LOGGER_NAME, "Removed balance URIs {}, new global list is {}", accepts, newBalanceUris);
+                        GL.debug(CLUSTER_LOGGER_NAME, "Removed balance URIs {}, member balancer state is {}", accepts,
+                                memberState);
                     }
                 }
                 memberIdBalancerUriMap.put(localMember, memberBalanceUriMap);
@@ -946,6 +934,13 @@ public class DefaultServiceContext implements ServiceContext {
         });
     }
 
+    /**
+     * Sets the listener told about the binding of each accept URI, so that binds show in the startup timeline.
+     */
+    public void setGatewayListener(GatewayStartupListenerApi gatewayListener) {
+        this.gatewayListener = gatewayListener;
+    }
+
     @Override
     public Collection<IoSessionEx> getActiveSessions() {
         return activeSessions.values();
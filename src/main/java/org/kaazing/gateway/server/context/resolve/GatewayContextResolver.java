@@ -39,6 +39,7 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.ServiceLoader;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
 import javax.annotation.Resource;
 import javax.management.MBeanServer;
@@ -55,6 +56,7 @@ import org.kaazing.gateway.security.auth.NegotiateLoginModule;
 import org.kaazing.gateway.security.auth.TimeoutLoginModule;
 import org.kaazing.gateway.server.Gateway;
 import org.kaazing.gateway.server.Launcher;
+import org.kaazing.gateway.server.cluster.ClusterBackendFactory;
 import org.kaazing.gateway.server.config.SchemeConfig;
 import org.kaazing.gateway.server.config.parse.DefaultSchemeConfig;
 import org.kaazing.gateway.server.config.sep2014.AuthenticationType;
@@ -75,6 +77,13 @@ import org.kaazing.gateway.server.config.sep2014.ServicePropertiesType;
 import org.kaazing.gateway.server.config.sep2014.ServiceType;
 import org.kaazing.gateway.server.context.DependencyContext;
 import org.kaazing.gateway.server.context.GatewayContext;
+import org.kaazing.gateway.server.messaging.buffer.ClusterReplication;
+import org.kaazing.gateway.server.messaging.buffer.MappedMessageBufferFactory;
+import org.kaazing.gateway.server.messaging.buffer.MemoryMessageBufferFactory;
+import org.kaazing.gateway.server.messaging.buffer.MessageBufferDispatch;
+import org.kaazing.gateway.server.messaging.buffer.MessageBufferOverflowPolicy;
+import org.kaazing.gateway.server.messaging.buffer.RingMessageBufferFactory;
+import org.kaazing.gateway.server.messaging.channel.ClusterChannelSettings;
 import org.kaazing.gateway.server.service.ServiceRegistry;
 import org.kaazing.gateway.service.AcceptOptionsContext;
 import org.kaazing.gateway.service.ConnectOptionsContext;
@@ -85,6 +94,7 @@ import org.kaazing.gateway.service.ServiceProperties;
 import org.kaazing.gateway.service.cluster.ClusterConnectOptionsContext;
 import org.kaazing.gateway.service.cluster.ClusterContext;
 import org.kaazing.gateway.service.cluster.MemberId;
+import org.kaazing.gateway.service.messaging.buffer.MessageBufferFactory;
 import org.kaazing.gateway.transport.BridgeAcceptor;
 import org.kaazing.gateway.transport.BridgeConnector;
 import org.kaazing.gateway.transport.BridgeServiceFactory;
@@ -99,6 +109,21 @@ import org.kaazing.gateway.util.ssl.SslCipherSuites;
 import org.slf4j.Logger;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
+import static org.kaazing.gateway.server.ServerSystemProperty.CLUSTER_BACKEND;
+import static org.kaazing.gateway.server.ServerSystemProperty.CLUSTER_CHANNEL_MAX_BATCH_SIZE;
+import static org.kaazing.gateway.server.ServerSystemProperty.CLUSTER_CHANNEL_MAX_IN_FLIGHT;
+import static org.kaazing.gateway.server.ServerSystemProperty.CLUSTER_CHANNEL_REQUEST_TIMEOUT;
+import static org.kaazing.gateway.server.ServerSystemProperty.CLUSTER_LOAD_REPORT_INTERVAL;
+import static org.kaazing.gateway.server.ServerSystemProperty.CLUSTER_MEMBER_REMOVAL_DELAY;
+import static org.kaazing.gateway.server.ServerSystemProperty.CLUSTER_REPLICATION_BATCH_DELAY;
+import static org.kaazing.gateway.server.ServerSystemProperty.CLUSTER_REPLICATION_BATCH_SIZE;
+import static org.kaazing.gateway.server.ServerSystemProperty.CLUSTER_REPLICATION_RESYNC_TIMEOUT;
+import static org.kaazing.gateway.server.ServerSystemProperty.MESSAGE_BUFFER_DIRECTORY;
+import static org.kaazing.gateway.server.ServerSystemProperty.MESSAGE_BUFFER_DISPATCH_THREADS;
+import static org.kaazing.gateway.server.ServerSystemProperty.MESSAGE_BUFFER_LISTENER_MAILBOX_SIZE;
+import static org.kaazing.gateway.server.ServerSystemProperty.MESSAGE_BUFFER_LISTENER_OVERFLOW_POLICY;
+import static org.kaazing.gateway.server.ServerSystemProperty.MESSAGE_BUFFER_SLOT_SIZE;
+import static org.kaazing.gateway.server.ServerSystemProperty.MESSAGE_BUFFER_TYPE;
 
 public class GatewayContextResolver {
     public static final String AUTHORIZATION_MODE_CHALLENGE = "challenge";
@@ -223,17 +248,23 @@ public class GatewayContextResolver {
         DefaultServiceDefaultsContext serviceDefaultsContext = resolveServiceDefaults(serviceDefaults);
         // Map<String, DefaultSessionContext> sessionContexts = resolveSessions(sessionConfigs, securityContext, realmsContext);
         SchedulerProvider schedulerProvider = new SchedulerProvider(configuration);
-        ClusterContext clusterContext = resolveCluster(clusterConfig, schedulerProvider);
+        ClusterContext clusterContext = resolveCluster(clusterConfig, schedulerProvider, configuration);
         ServiceRegistry servicesByURI = new ServiceRegistry();
         Map<String, Object> dependencyContexts = resolveDependencyContext();
         ResourceAddressFactory resourceAddressFactory = resolveResourceAddressFactories();
         TransportFactory transportFactory = TransportFactory.newTransportFactory((Map) configuration);
         ServiceFactory serviceFactory = ServiceFactory.newServiceFactory();
-        Collection<ServiceContext> services =
+        // services can be replaced while running, when the configuration is reloaded
+        Collection<ServiceContext> services = new CopyOnWriteArrayList<ServiceContext>(
                 resolveServices(servicesByURI, webDir, tempDir, serviceConfigs, securityContext,
                         realmsContext, clusterContext, serviceDefaults, schedulerProvider,
                         dependencyContexts,
-                        configuration, transportFactory, serviceFactory, resourceAddressFactory);
+                        configuration, transportFactory, serviceFactory, resourceAddressFactory));
+        if (clusterContext instanceof DefaultClusterContext) {
+            // members report their load once started when an interval is configured, for balancers that weight targets
+            ((DefaultClusterContext) clusterContext).setLoadReporter(new MemberLoadReporter(services),
+                    CLUSTER_LOAD_REPORT_INTERVAL.getLongProperty(configuration));
+        }
         resolveTransports(transportFactory);
 
         BridgeServiceFactory bridgeServiceFactory = resolveBridgeServiceFactory(transportFactory);
@@ -280,6 +311,61 @@ public class GatewayContextResolver {
         return gatewayContext;
     }
 
+    /**
+     * Resolve the services of a reloaded gateway configuration for a running gateway. The security, realms, cluster,
+     * scheduling and transports of the running gateway are reused rather than resolved again, so changes to the
+     * configuration outside of the services and service defaults are not taken into account.
+     *
+     * @param gatewayContext  the context of the running gateway
+     * @param serviceRegistry the registry the accept URIs of the resolved services are registered in, separate from
+     *                        that of the running gateway until the services replace the running ones
+     * @return the resolved services, which are injected but not inited
+     */
+    public Collection<ServiceContext> resolveServices(GatewayConfigDocument gatewayConfigDoc,
+                                                      Properties configuration,
+                                                      GatewayContext gatewayContext,
+                                                      ServiceRegistry serviceRegistry) throws Exception {
+        GatewayConfigDocument.GatewayConfig gatewayConfig = gatewayConfigDoc.getGatewayConfig();
+        ServiceDefaultsType[] serviceDefaultsArray = gatewayConfig.getServiceDefaultsArray();
+        ServiceDefaultsType serviceDefaults =
+                (serviceDefaultsArray.length > 0) ? serviceDefaultsArray[serviceDefaultsArray.length - 1] : null;
+
+        Map<String, Object> injectables = new HashMap<String, Object>(gatewayContext.getInjectables());
+        Map<String, Object> dependencyContexts = new HashMap<String, Object>();
+        for (Object injectable : injectables.values()) {
+            if (injectable instanceof DependencyContext) {
+                dependencyContexts.put(((DependencyContext) injectable).getName(), injectable);
+            }
+        }
+
+        TransportFactory transportFactory = (TransportFactory) injectables.get("transportFactory");
+        Collection<ServiceContext> services =
+                resolveServices(serviceRegistry, webDir, tempDir, gatewayConfig.getServiceArray(),
+                        (SecurityContext) injectables.get("securityContext"),
+                        (RealmsContext) injectables.get("realmsContext"),
+                        gatewayContext.getCluster(), serviceDefaults,
+                        (SchedulerProvider) injectables.get("schedulerProvider"),
+                        dependencyContexts,
+                        configuration, transportFactory, ServiceFactory.newServiceFactory(),
+                        (ResourceAddressFactory) injectables.get("resourceAddressFactory"));
+
+        // services are injected with the same acceptors and connectors as at startup
+        for (String transportName : transportFactory.getTransportNames()) {
+            Transport transport = transportFactory.getTransport(transportName);
+            if (transport.getAcceptor() != null) {
+                injectables.put(transportName + ".acceptor", transport.getAcceptor());
+            }
+            if (transport.getConnector() != null) {
+                injectables.put(transportName + ".connector", transport.getConnector());
+            }
+        }
+        for (ServiceContext serviceContext : services) {
+            injectResources(serviceContext.getService(), injectables);
+        }
+
+        return services;
+    }
+
     private BridgeServiceFactory resolveBridgeServiceFactory(TransportFactory transportFactory) {
         return new BridgeServiceFactory(transportFactory);
     }
@@ -662,7 +748,11 @@ public class GatewayContextResolver {
                     authority += ":" + schemeConfig.getDefaultPort();
                     acceptURI = URI.create(acceptURI.getScheme() + "://" + authority + acceptURI.getPath());
                 }
-                serviceRegistry.register(acceptURI, serviceContext);
+                ServiceContext registered = serviceRegistry.register(acceptURI, serviceContext);
+                if (registered != null && registered != serviceContext) {
+                    throw new IllegalArgumentException("Accept URI " + acceptURI + " of service " + serviceName +
+                            " is already accepted by service " + registered.getServiceName());
+                }
             }
         }
 
@@ -752,9 +842,11 @@ public class GatewayContextResolver {
     }
 
     private ClusterContext resolveCluster(ClusterType clusterConfig,
-                                          SchedulerProvider schedulerProvider) {
+                                          SchedulerProvider schedulerProvider,
+                                          Properties configuration) {
+        MessageBufferFactory messageBufferFactory = resolveMessageBufferFactory(configuration);
         if (clusterConfig == null) {
-            return new StandaloneClusterContext();
+            return new StandaloneClusterContext(messageBufferFactory);
         }
 
         String name = clusterConfig.getName();
@@ -784,11 +876,62 @@ public class GatewayContextResolver {
         List<MemberId> connects =
                 processClusterMembers(clusterConfig.getConnectArray(), "<connect>", connectOptions, clusterPort);
 
-        return new DefaultClusterContext(clusterConfig.getName(),
+        DefaultClusterContext clusterContext = new DefaultClusterContext(clusterConfig.getName(),
                 accepts,
                 connects,
                 schedulerProvider,
-                connectOptionsContext);
+                connectOptionsContext,
+                messageBufferFactory,
+                new ClusterReplication(CLUSTER_REPLICATION_BATCH_SIZE.getIntProperty(configuration),
+                        CLUSTER_REPLICATION_BATCH_DELAY.getLongProperty(configuration),
+                        CLUSTER_REPLICATION_RESYNC_TIMEOUT.getLongProperty(configuration)));
+        clusterContext.setChannelSettings(new ClusterChannelSettings(
+                CLUSTER_CHANNEL_MAX_IN_FLIGHT.getIntProperty(configuration),
+                CLUSTER_CHANNEL_MAX_BATCH_SIZE.getIntProperty(configuration),
+                CLUSTER_CHANNEL_REQUEST_TIMEOUT.getLongProperty(configuration)));
+        clusterContext.setMemberRemovalDelay(CLUSTER_MEMBER_REMOVAL_DELAY.getLongProperty(configuration));
+
+        String backendName = CLUSTER_BACKEND.getProperty(configuration);
+        if (!"hazelcast".equalsIgnoreCase(backendName)) {
+            ClusterBackendFactory backendFactory = ClusterBackendFactory.newClusterBackendFactory();
+            clusterContext.setClusterBackend(backendFactory.newClusterBackend(backendName, name, accepts, connects));
+        }
+        return clusterContext;
+    }
+
+    private MessageBufferFactory resolveMessageBufferFactory(Properties configuration) {
+        MessageBufferDispatch dispatch = resolveMessageBufferDispatch(configuration);
+        String bufferType = MESSAGE_BUFFER_TYPE.getProperty(configuration);
+        if ("memory".equalsIgnoreCase(bufferType)) {
+            return new MemoryMessageBufferFactory(dispatch);
+        } else if ("ring".equalsIgnoreCase(bufferType)) {
+            return new RingMessageBufferFactory(dispatch);
+        } else if ("mapped".equalsIgnoreCase(bufferType)) {
+            String directory = MESSAGE_BUFFER_DIRECTORY.getProperty(configuration);
+            File bufferDir = (directory != null) ? new File(directory) : new File(tempDir, "message-buffers");
+            return new MappedMessageBufferFactory(bufferDir, MESSAGE_BUFFER_SLOT_SIZE.getIntProperty(configuration),
+                    dispatch);
+        }
+        throw new IllegalArgumentException("Invalid value \"" + bufferType + "\" for property "
+                + MESSAGE_BUFFER_TYPE.getPropertyName());
+    }
+
+    private MessageBufferDispatch resolveMessageBufferDispatch(Properties configuration) {
+        int mailboxSize = MESSAGE_BUFFER_LISTENER_MAILBOX_SIZE.getIntProperty(configuration);
+        if (mailboxSize <= 0) {
+            return MessageBufferDispatch.SYNCHRONOUS;
+        }
+
+        String policy = MESSAGE_BUFFER_LISTENER_OVERFLOW_POLICY.getProperty(configuration);
+        MessageBufferOverflowPolicy overflowPolicy;
+        try {
+            overflowPolicy = MessageBufferOverflowPolicy.valueOf(policy.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid value \"" + policy + "\" for property "
+                    + MESSAGE_BUFFER_LISTENER_OVERFLOW_POLICY.getPropertyName());
+        }
+        return new MessageBufferDispatch(mailboxSize, overflowPolicy,
+                MESSAGE_BUFFER_DISPATCH_THREADS.getIntProperty(configuration));
     }
 
     private List<MemberId> processClusterMembers(String[] collection,
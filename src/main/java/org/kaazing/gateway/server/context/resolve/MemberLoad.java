@@ -0,0 +1,97 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.kaazing.gateway.server.context.resolve;
+
+import java.io.Serializable;
+
+/**
+ * A compact record of how busy one cluster member is, published to the cluster on a schedule so that balancers can steer
+ * new connections away from busy members.
+ */
+public final class MemberLoad implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long sessions;
+    private final double cpuLoad;
+    private final long queueDepth;
+
+    /**
+     * @param sessions   the number of active sessions across all services
+     * @param cpuLoad    the CPU load between 0 and 1, or a negative value when it is not available
+     * @param queueDepth the number of messages waiting to be written across all active sessions
+     */
+    public MemberLoad(long sessions, double cpuLoad, long queueDepth) {
+        this.sessions = sessions;
+        this.cpuLoad = cpuLoad;
+        this.queueDepth = queueDepth;
+    }
+
+    public long getSessions() {
+        return sessions;
+    }
+
+    public double getCpuLoad() {
+        return cpuLoad;
+    }
+
+    public long getQueueDepth() {
+        return queueDepth;
+    }
+
+    /**
+     * Combines the figures into one score used to weight balance targets: the sessions plus the queued messages, scaled by
+     * up to twice as much as the CPU gets busier.
+     */
+    public long getScore() {
+        double cpuFactor = 1.0 + Math.min(Math.max(cpuLoad, 0.0), 1.0);
+        return Math.round((sessions + queueDepth) * cpuFactor);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof MemberLoad)) {
+            return false;
+        }
+        MemberLoad that = (MemberLoad) o;
+        return sessions == that.sessions && queueDepth == that.queueDepth
+                && Double.compare(cpuLoad, that.cpuLoad) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        long cpuBits = Double.doubleToLongBits(cpuLoad);
+        int result = (int) (sessions ^ (sessions >>> 32));
+        result = 31 * result + (int) (cpuBits ^ (cpuBits >>> 32));
+        return 31 * result + (int) (queueDepth ^ (queueDepth >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("[sessions=%d cpu=%.2f queue=%d]", sessions, cpuLoad, queueDepth);
+    }
+
+}
@@ -0,0 +1,70 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.kaazing.gateway.server.context.resolve;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.Collection;
+import org.kaazing.gateway.service.ServiceContext;
+import org.kaazing.mina.core.session.IoSessionEx;
+
+/**
+ * Measures the load of the local member from the active sessions of its services and the operating system load average.
+ * The CPU figure is rounded to whole percents, so that publishing only changed records is not defeated by noise.
+ */
+public class MemberLoadReporter {
+
+    private final Collection<ServiceContext> services;
+    private final OperatingSystemMXBean operatingSystem;
+
+    public MemberLoadReporter(Collection<ServiceContext> services) {
+        this.services = services;
+        this.operatingSystem = ManagementFactory.getOperatingSystemMXBean();
+    }
+
+    public MemberLoad measure() {
+        long sessions = 0;
+        long queueDepth = 0;
+        for (ServiceContext service : services) {
+            Collection<IoSessionEx> activeSessions = service.getActiveSessions();
+            if (activeSessions == null) {
+                continue;
+            }
+            for (IoSessionEx session : activeSessions) {
+                sessions++;
+                queueDepth += session.getScheduledWriteMessages();
+            }
+        }
+        return new MemberLoad(sessions, cpuLoad(), queueDepth);
+    }
+
+    private double cpuLoad() {
+        double loadAverage = operatingSystem.getSystemLoadAverage();
+        if (loadAverage < 0) {
+            return -1.0;
+        }
+        double load = Math.min(loadAverage / operatingSystem.getAvailableProcessors(), 1.0);
+        return Math.round(load * 100) / 100.0;
+    }
+
+}
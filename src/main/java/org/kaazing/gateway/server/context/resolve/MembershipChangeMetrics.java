@@ -0,0 +1,50 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+
+package org.kaazing.gateway.server.context.resolve;
+
+/**
+ * Statistics of the membership changes processed by a cluster member. Departures that are reported close together are
+ * cleaned up as one batch, so the batch counts show how well concurrent failures were coalesced and the latencies show how
+ * long clients could still be balanced to a member that had already gone down.
+ */
+public interface MembershipChangeMetrics {
+
+    // number of membership changes received but not processed yet
+    int getPendingCount();
+
+    long getRemovedMemberCount();
+
+    long getRemovalBatchCount();
+
+    int getLargestRemovalBatch();
+
+    // milliseconds from the first departure of the last batch being reported to its cleanup completing
+    long getLastRemovalLatency();
+
+    long getMaxRemovalLatency();
+
+    // milliseconds spent cleaning up after the last batch
+    long getLastRemovalProcessingTime();
+
+}
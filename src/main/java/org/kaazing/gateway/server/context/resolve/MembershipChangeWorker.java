@@ -0,0 +1,226 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+
+package org.kaazing.gateway.server.context.resolve;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.kaazing.gateway.service.cluster.MemberId;
+import org.kaazing.gateway.util.GL;
+
+/**
+ * Processes cluster membership changes on a dedicated thread rather than on the thread of the cluster backend that reports
+ * them. Departures that are queued while a batch is being cleaned up, or within the removal delay of the first one, are
+ * handed to the handler as a single batch, so that several members going down at once cost one bulk cleanup. Changes are
+ * processed in the order they were reported: an arrival ends the current batch of departures.
+ */
+final class MembershipChangeWorker implements MembershipChangeMetrics {
+
+    interface Handler {
+
+        void memberAdded(MemberId member);
+
+        void membersRemoved(List<MemberId> members);
+
+    }
+
+    private static final class MembershipChange {
+        final MemberId member;
+        final boolean added;
+        final long reportedAt;
+
+        MembershipChange(MemberId member, boolean added) {
+            this.member = member;
+            this.added = added;
+            this.reportedAt = System.nanoTime();
+        }
+    }
+
+    private final Handler handler;
+    private final long removalDelay;
+    private final ScheduledExecutorService executor;
+    private final Queue<MembershipChange> changes = new ConcurrentLinkedQueue<MembershipChange>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    // only written by the worker thread
+    private volatile long removedMemberCount;
+    private volatile long removalBatchCount;
+    private volatile int largestRemovalBatch;
+    private volatile long lastRemovalLatency;
+    private volatile long maxRemovalLatency;
+    private volatile long lastRemovalProcessingTime;
+
+    private final Runnable processChanges = new Runnable() {
+        @Override
+        public void run() {
+            processChanges();
+        }
+    };
+
+    /**
+     * @param removalDelay milliseconds to wait after a departure before cleaning up, so that further departures can join the
+     *                     same batch
+     */
+    MembershipChangeWorker(Handler handler, long removalDelay) {
+        this.handler = handler;
+        this.removalDelay = removalDelay;
+        this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "cluster-membership-change");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    void memberAdded(MemberId member) {
+        submit(new MembershipChange(member, true), 0);
+    }
+
+    void memberRemoved(MemberId member) {
+        submit(new MembershipChange(member, false), removalDelay);
+    }
+
+    void dispose() {
+        executor.shutdownNow();
+    }
+
+    @Override
+    public int getPendingCount() {
+        return pendingCount.get();
+    }
+
+    @Override
+    public long getRemovedMemberCount() {
+        return removedMemberCount;
+    }
+
+    @Override
+    public long getRemovalBatchCount() {
+        return removalBatchCount;
+    }
+
+    @Override
+    public int getLargestRemovalBatch() {
+        return largestRemovalBatch;
+    }
+
+    @Override
+    public long getLastRemovalLatency() {
+        return lastRemovalLatency;
+    }
+
+    @Override
+    public long getMaxRemovalLatency() {
+        return maxRemovalLatency;
+    }
+
+    @Override
+    public long getLastRemovalProcessingTime() {
+        return lastRemovalProcessingTime;
+    }
+
+    private void submit(MembershipChange change, long delay) {
+        changes.add(change);
+        pendingCount.incrementAndGet();
+        if (scheduled.compareAndSet(false, true)) {
+            try {
+                executor.schedule(processChanges, delay, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // disposed, the cluster is going away
+                GL.debug(DefaultClusterContext.CLUSTER_LOGGER_NAME, "Ignoring membership change of {} after dispose",
+                        change.member);
+            }
+        }
+    }
+
+    private void processChanges() {
+        // changes queued from now on schedule another run, which finds nothing to do if this run already took them
+        scheduled.set(false);
+
+        List<MemberId> removedMembers = new ArrayList<MemberId>();
+        long firstReportedAt = 0;
+        MembershipChange change;
+        while ((change = changes.poll()) != null) {
+            pendingCount.decrementAndGet();
+            if (change.added) {
+                removeMembers(removedMembers, firstReportedAt);
+                removedMembers = new ArrayList<MemberId>();
+                addMember(change.member);
+            } else if (!removedMembers.contains(change.member)) {
+                if (removedMembers.isEmpty()) {
+                    firstReportedAt = change.reportedAt;
+                }
+                removedMembers.add(change.member);
+            }
+        }
+        removeMembers(removedMembers, firstReportedAt);
+    }
+
+    private void addMember(MemberId member) {
+        try {
+            handler.memberAdded(member);
+        } catch (RuntimeException e) {
+            GL.warn(DefaultClusterContext.CLUSTER_LOGGER_NAME, "Unable to process the arrival of cluster member {}: {}",
+                    member, e);
+        }
+    }
+
+    private void removeMembers(List<MemberId> members, long firstReportedAt) {
+        if (members.isEmpty()) {
+            return;
+        }
+
+        long startedAt = System.nanoTime();
+        try {
+            handler.membersRemoved(members);
+        } catch (RuntimeException e) {
+            GL.warn(DefaultClusterContext.CLUSTER_LOGGER_NAME, "Unable to process the departure of cluster members {}: {}",
+                    members, e);
+        }
+        long completedAt = System.nanoTime();
+
+        removedMemberCount += members.size();
+        removalBatchCount++;
+        largestRemovalBatch = Math.max(largestRemovalBatch, members.size());
+        lastRemovalProcessingTime = TimeUnit.NANOSECONDS.toMillis(completedAt - startedAt);
+        lastRemovalLatency = TimeUnit.NANOSECONDS.toMillis(completedAt - firstReportedAt);
+        maxRemovalLatency = Math.max(maxRemovalLatency, lastRemovalLatency);
+
+        GL.debug(DefaultClusterContext.CLUSTER_LOGGER_NAME,
+                "Processed the departure of {} cluster member(s) in {} ms, {} ms after the first was reported",
+                members.size(), lastRemovalProcessingTime, lastRemovalLatency);
+    }
+
+}
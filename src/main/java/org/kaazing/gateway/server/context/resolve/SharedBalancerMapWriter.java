@@ -0,0 +1,155 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.kaazing.gateway.server.context.resolve;
+
+import java.net.URI;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import org.kaazing.gateway.server.messaging.collections.BulkCollectionsFactory;
+import org.kaazing.gateway.server.messaging.collections.EntryUpdater;
+import org.kaazing.gateway.util.GL;
+
+import static org.kaazing.gateway.server.context.resolve.DefaultClusterContext.CLUSTER_LOGGER_NAME;
+import static org.kaazing.gateway.server.context.resolve.DefaultServiceContext.BALANCER_MAP_NAME;
+
+/**
+ * Keeps the shared balancer map, which balancer services still read, in step with a {@link BalancerMapView}. Only one
+ * member of the cluster is active at a time, so the shared entries have a single writer, which sets each of them to the
+ * targets of the view.
+ * <p>
+ * The view tells its listeners about changes while it is locked, so the shared map is written on an executor instead: the
+ * listener only queues the change, and slow cluster writes never hold up the view. The executor must run tasks one at a
+ * time in the order they are queued, so that the shared map ends up with the latest targets.
+ */
+class SharedBalancerMapWriter implements BalancerMapView.Listener {
+
+    // for maps held in local memory, which are cheap enough to write while the view is locked
+    static final Executor SYNCHRONOUS = new Executor() {
+        @Override
+        public void execute(Runnable task) {
+            task.run();
+        }
+    };
+
+    private final BulkCollectionsFactory factory;
+    private final Executor executor;
+    private volatile boolean active;
+
+    SharedBalancerMapWriter(BulkCollectionsFactory factory, Executor executor) {
+        this.factory = factory;
+        this.executor = executor;
+    }
+
+    boolean isActive() {
+        return active;
+    }
+
+    /**
+     * Makes this member the writer of the shared balancer map, or stops it from writing. A member that becomes the writer
+     * replaces the whole shared map with the view, since the previous writer may have gone away before applying its last
+     * changes, and removes the balance URIs the view no longer has. Writes still queued when the member stops being the
+     * writer are dropped.
+     */
+    void setActive(boolean active, BalancerMapView view) {
+        // the view notifies its listeners while locked, so holding its lock queues the sweep between its changes
+        synchronized (view) {
+            boolean wasActive = this.active;
+            this.active = active;
+            if (active && !wasActive) {
+                final Map<URI, Set<URI>> targets = view.asMap();
+                execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        replaceAll(targets);
+                    }
+                });
+            }
+        }
+    }
+
+    @Override
+    public void balanceTargetsChanged(final URI balanceURI, Set<URI> oldTargets, final Set<URI> newTargets) {
+        if (!active) {
+            return;
+        }
+
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                update(balanceURI, newTargets);
+            }
+        });
+    }
+
+    private void execute(final Runnable write) {
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (active) {
+                        write.run();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            GL.debug(CLUSTER_LOGGER_NAME, "Shared balance targets not written, the cluster context is disposed");
+        }
+    }
+    private void replaceAll(final Map<URI, Set<URI>> targets) {
+        try {
+            Map<URI, Set<URI>> sharedTargets = factory.getMap(BALANCER_MAP_NAME);
+            Set<URI> balanceURIs = new HashSet<URI>(sharedTargets.keySet());
+            balanceURIs.addAll(targets.keySet());
+            Map<URI, Set<URI>> balanceTargets = factory.updateAll(BALANCER_MAP_NAME, balanceURIs,
+                    new EntryUpdater<URI, Set<URI>>() {
+                        @Override
+                        public Set<URI> update(URI key, Set<URI> currentTargets) {
+                            Set<URI> newTargets = targets.get(key);
+                            return (newTargets != null) ? new HashSet<URI>(newTargets) : null;
+                        }
+                    });
+            GL.debug(CLUSTER_LOGGER_NAME, "Replaced shared balance targets, new global map is {}", balanceTargets);
+        } catch (RuntimeException e) {
+            GL.warn(CLUSTER_LOGGER_NAME, "Unable to replace shared balance targets: {}", e);
+        }
+    }
+
+    private void update(URI balanceURI, final Set<URI> targets) {
+        try {
+            Set<URI> balanceTargets = factory.update(BALANCER_MAP_NAME, balanceURI, new EntryUpdater<URI, Set<URI>>() {
+                @Override
+                public Set<URI> update(URI key, Set<URI> currentTargets) {
+                    return targets.isEmpty() ? null : new HashSet<URI>(targets);
+                }
+            });
+            GL.debug(CLUSTER_LOGGER_NAME, "Updated shared balance targets for {}, new global list is {}", balanceURI,
+                    balanceTargets);
+        } catch (RuntimeException e) {
+            GL.warn(CLUSTER_LOGGER_NAME, "Unable to update shared balance targets for {}: {}", balanceURI, e);
+        }
+    }
+
+}
@@ -21,6 +21,8 @@
 
 package org.kaazing.gateway.server.context.resolve;
 
+import com.hazelcast.core.EntryEvent;
+import com.hazelcast.core.EntryListener;
 import com.hazelcast.core.IdGenerator;
 import java.util.ArrayList;
 import java.util.List;
@@ -29,7 +31,10 @@ import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
+import org.kaazing.gateway.server.messaging.buffer.MappedMessageBufferFactory;
 import org.kaazing.gateway.server.messaging.buffer.MemoryMessageBufferFactory;
+import org.kaazing.gateway.server.messaging.collections.BulkCollectionsFactory;
+import org.kaazing.gateway.server.messaging.collections.DelegatingCollectionsFactory;
 import org.kaazing.gateway.service.cluster.BalancerMapListener;
 import org.kaazing.gateway.service.cluster.ClusterConnectOptionsContext;
 import org.kaazing.gateway.service.cluster.ClusterContext;
@@ -39,10 +44,11 @@ import org.kaazing.gateway.service.cluster.MembershipEventListener;
 import org.kaazing.gateway.service.cluster.ReceiveListener;
 import org.kaazing.gateway.service.cluster.SendListener;
 import org.kaazing.gateway.service.messaging.buffer.MessageBufferFactory;
-import org.kaazing.gateway.service.messaging.collections.CollectionsFactory;
 import org.kaazing.gateway.service.messaging.collections.MemoryCollectionsFactory;
 import org.kaazing.gateway.util.Utils;
 
+import static org.kaazing.gateway.server.context.resolve.DefaultServiceContext.MEMBERID_BALANCER_STATE_MAP_NAME;
+
 /**
  * This class is the standalone case where the current node is itself the master this does not have any high availability
  * functionality. The only supported method for now is the Map.
@@ -50,16 +56,48 @@ import org.kaazing.gateway.util.Utils;
 public class StandaloneClusterContext implements ClusterContext {
 
     private final MessageBufferFactory messageBufferFactory;
-    private final CollectionsFactory collectionsFactory;
+    private final BulkCollectionsFactory collectionsFactory;
     private final ConcurrentMap<Object, Lock> locks;
     private final ConcurrentMap<String, IdGeneratorImpl> idGenerators;
     private final String localInstanceKey = Utils.randomHexString(16);
+    private final BalancerMapView balancerMapView = new BalancerMapView();
 
     public StandaloneClusterContext() {
-        this.messageBufferFactory = new MemoryMessageBufferFactory();
-        this.collectionsFactory = new MemoryCollectionsFactory();
+        this(new MemoryMessageBufferFactory());
+    }
+
+    public StandaloneClusterContext(MessageBufferFactory messageBufferFactory) {
+        this.messageBufferFactory = messageBufferFactory;
+        this.collectionsFactory = new DelegatingCollectionsFactory(new MemoryCollectionsFactory());
         this.locks = new ConcurrentHashMap<Object, Lock>();
         this.idGenerators = new ConcurrentHashMap<String, IdGeneratorImpl>();
+
+        // the only member is always the writer of the shared balancer map
+        SharedBalancerMapWriter sharedBalancerMapWriter = new SharedBalancerMapWriter(collectionsFactory,
+                SharedBalancerMapWriter.SYNCHRONOUS);
+        sharedBalancerMapWriter.setActive(true, balancerMapView);
+        balancerMapView.addListener(sharedBalancerMapWriter);
+        collectionsFactory.addEntryListener(new EntryListener<MemberId, BalancerMemberState>() {
+            @Override
+            public void entryAdded(EntryEvent<MemberId, BalancerMemberState> event) {
+                balancerMapView.apply(event.getKey(), event.getValue());
+            }
+
+            @Override
+            public void entryRemoved(EntryEvent<MemberId, BalancerMemberState> event) {
+                balancerMapView.remove(event.getKey(), event.getValue());
+            }
+
+            @Override
+            public void entryUpdated(EntryEvent<MemberId, BalancerMemberState> event) {
+                balancerMapView.apply(event.getKey(), event.getValue());
+            }
+
+            @Override
+            public void entryEvicted(EntryEvent<MemberId, BalancerMemberState> event) {
+                balancerMapView.remove(event.getKey(), event.getValue());
+            }
+        }, MEMBERID_BALANCER_STATE_MAP_NAME);
     }
 
     @Override
@@ -148,6 +186,10 @@ public class StandaloneClusterContext implements ClusterContext {
         return messageBufferFactory;
     }
 
+    public BalancerMapView getBalancerMapView() {
+        return balancerMapView;
+    }
+
     @Override
     public MemberId getLocalMember() {
         return new MemberId("tcp", "standalone", 0);
@@ -208,10 +250,13 @@ public class StandaloneClusterContext implements ClusterContext {
 
     @Override
     public void dispose() {
+        if (messageBufferFactory instanceof MappedMessageBufferFactory) {
+            ((MappedMessageBufferFactory) messageBufferFactory).close();
+        }
     }
 
     @Override
-    public CollectionsFactory getCollectionsFactory() {
+    public BulkCollectionsFactory getCollectionsFactory() {
         return collectionsFactory;
     }
 
@@ -23,6 +23,7 @@ package org.kaazing.gateway.server.impl;
 
 import java.io.File;
 import java.net.MalformedURLException;
+import java.util.Collection;
 import java.util.Properties;
 import javax.management.MBeanServer;
 import org.apache.log4j.LogManager;
@@ -30,16 +31,21 @@ import org.apache.log4j.config.PropertySetter;
 import org.apache.log4j.helpers.FileWatchdog;
 import org.apache.log4j.helpers.OptionConverter;
 import org.apache.log4j.xml.DOMConfigurator;
+import org.apache.xmlbeans.XmlObject;
 import org.kaazing.gateway.server.Gateway;
 import org.kaazing.gateway.server.Launcher;
+import org.kaazing.gateway.server.StartupTimeline;
 import org.kaazing.gateway.server.api.GatewayAlreadyRunningException;
 import org.kaazing.gateway.server.config.parse.GatewayConfigParser;
 import org.kaazing.gateway.server.config.sep2014.GatewayConfigDocument;
 import org.kaazing.gateway.server.context.GatewayContext;
 import org.kaazing.gateway.server.context.resolve.GatewayContextResolver;
+import org.kaazing.gateway.server.service.ServiceRegistry;
+import org.kaazing.gateway.service.ServiceContext;
 import org.slf4j.Logger;
 import org.w3c.dom.Element;
 import static java.lang.String.format;
+import static org.kaazing.gateway.server.ServerSystemProperty.CONFIG_RELOAD_INTERVAL;
 
 /**
  * <p> Use this class to start and stop a Gateway from Java. </p>
@@ -74,6 +80,14 @@ final class GatewayImpl implements Gateway {
     private Gateway baseGateway;
     private KaazingFileWatchdog watchDog;
 
+    // state of the launched gateway, kept to reload its configuration
+    private Properties configuration;
+    private File gatewayConfigFile;
+    private GatewayConfigDocument gatewayConfig;
+    private GatewayContextResolver resolver;
+    private GatewayContext context;
+    private GatewayConfigWatchdog configWatchDog;
+
     /**
      * <p> Create a new in-process Gateway instance.
      * <p/>
@@ -120,11 +134,16 @@ final class GatewayImpl implements Gateway {
      * @throws Exception
      */
     @Override
-    public void destroy() throws Exception {
+    public synchronized void destroy() throws Exception {
         if (baseGateway != null) {
             baseGateway.destroy();
         }
 
+        if (configWatchDog != null) {
+            configWatchDog.stopWatching();
+            configWatchDog = null;
+        }
+
         if (watchDog != null) {
             watchDog.stop();
             watchDog = null;
@@ -134,6 +153,9 @@ final class GatewayImpl implements Gateway {
             gateway.destroy();
             gateway = null;
         }
+
+        gatewayConfig = null;
+        context = null;
     }
 
     /**
@@ -142,7 +164,7 @@ final class GatewayImpl implements Gateway {
      * @throws Exception
      */
     @Override
-    public void launch() throws Exception {
+    public synchronized void launch() throws Exception {
 
         if (baseGateway != null) {
             baseGateway.launch();
@@ -152,6 +174,8 @@ final class GatewayImpl implements Gateway {
             throw new GatewayAlreadyRunningException("An instance of the Gateway is already running");
         }
 
+        StartupTimeline startupTimeline = new StartupTimeline();
+
         Properties configuration = getProperties();
         if (configuration == null) {
             // Change to a public exception once all calls to System.getProperty() throughout the entire
@@ -272,19 +296,103 @@ final class GatewayImpl implements Gateway {
 
         LOGGER.info("Configuration file: " + gatewayConfigFile.getCanonicalPath());
 
+        // the watchdog records the last modification of the file before it is parsed, so no change is missed
+        long configReloadIntervalSecs = CONFIG_RELOAD_INTERVAL.getLongProperty(configuration);
+        GatewayConfigWatchdog configWatchDog =
+                (configReloadIntervalSecs > 0) ? new GatewayConfigWatchdog(gatewayConfigFile) : null;
+
         GatewayConfigParser parser = new GatewayConfigParser(configuration);
+        parser.setGatewayListener(startupTimeline);
         GatewayConfigDocument config = parser.parse(gatewayConfigFile);
+        startupTimeline.startingPhase(StartupTimeline.CONTEXT_RESOLVE);
         GatewayContextResolver resolver = new GatewayContextResolver(configDir, webRootDir, tempDir, jmxMBeanServer);
         GatewayContext context = resolver.resolve(config, configuration);
+        startupTimeline.completedPhase(StartupTimeline.CONTEXT_RESOLVE);
 
         gateway = new Launcher();
 
         try {
-            gateway.init(context);
+            gateway.init(context, startupTimeline);
         } catch (Exception e) {
             LOGGER.error(String.format("Error starting Gateway: caught exception %s", e));
             throw e;
         }
+
+        this.configuration = configuration;
+        this.gatewayConfigFile = gatewayConfigFile;
+        this.gatewayConfig = config;
+        this.resolver = resolver;
+        this.context = context;
+
+        if (configWatchDog != null) {
+            this.configWatchDog = configWatchDog;
+            configWatchDog.setDelay(configReloadIntervalSecs * 1000);
+            configWatchDog.start();
+        }
+    }
+
+    /**
+     * Reload the gateway configuration file and apply the changes to the services of the running gateway. Changes to
+     * the security or cluster configuration require a restart and are not applied, neither are configurations that
+     * fail to parse or resolve, in which case the gateway keeps running with its current configuration. When a service
+     * of the reloaded configuration fails to start, the services of the current configuration are resolved again and
+     * the ones the reload stopped are restarted.
+     */
+    synchronized void reloadConfig() {
+        if (gateway == null) {
+            return;
+        }
+
+        try {
+            LOGGER.info("Reloading configuration file: " + gatewayConfigFile.getCanonicalPath());
+            GatewayConfigParser parser = new GatewayConfigParser(configuration);
+            GatewayConfigDocument config = parser.parse(gatewayConfigFile);
+
+            GatewayConfigDocument.GatewayConfig running = gatewayConfig.getGatewayConfig();
+            GatewayConfigDocument.GatewayConfig reloaded = config.getGatewayConfig();
+            if (!getXmlText(running.getSecurityArray()).equals(getXmlText(reloaded.getSecurityArray()))
+                    || !getXmlText(running.getClusterArray()).equals(getXmlText(reloaded.getClusterArray()))) {
+                LOGGER.warn("Security or cluster configuration changed, the Gateway must be restarted to apply it");
+                return;
+            }
+
+            ServiceRegistry serviceRegistry = new ServiceRegistry();
+            Collection<ServiceContext> services =
+                    resolver.resolveServices(config, configuration, context, serviceRegistry);
+            try {
+                gateway.reload(services, serviceRegistry);
+            } catch (Exception e) {
+                LOGGER.error(String.format("Error reloading Gateway configuration: caught exception %s", e));
+                restoreServices();
+                return;
+            }
+            gatewayConfig = config;
+        } catch (Exception e) {
+            LOGGER.error(String.format("Error reloading Gateway configuration: caught exception %s", e));
+        }
+    }
+
+    // restarts the services of the running configuration that a failed reload stopped, from newly resolved contexts
+    // since stopped services are destroyed
+    private void restoreServices() {
+        try {
+            LOGGER.info("Restoring the services of the previous configuration");
+            ServiceRegistry serviceRegistry = new ServiceRegistry();
+            Collection<ServiceContext> services =
+                    resolver.resolveServices(gatewayConfig, configuration, context, serviceRegistry);
+            gateway.reload(services, serviceRegistry);
+        } catch (Exception e) {
+            LOGGER.error(String.format("Error restoring the previous Gateway configuration, the services listed above " +
+                    "remain down until the configuration is reloaded: caught exception %s", e));
+        }
+    }
+
+    private static String getXmlText(XmlObject[] elements) {
+        StringBuilder xmlText = new StringBuilder();
+        for (XmlObject element : elements) {
+            xmlText.append(element.xmlText());
+        }
+        return xmlText.toString();
     }
 
     @Override
@@ -383,6 +491,30 @@ final class GatewayImpl implements Gateway {
         }
     }
 
+    private class GatewayConfigWatchdog extends FileWatchdog {
+        private volatile boolean watching;
+
+        GatewayConfigWatchdog(File gatewayConfigFile) {
+            super(gatewayConfigFile.getAbsolutePath());
+
+            // calling super() invokes doOnChange for the configuration the Gateway is being launched with, so only
+            // changes checked from now on are reloaded
+            watching = true;
+        }
+
+        @Override
+        public void doOnChange() {
+            if (watching) {
+                reloadConfig();
+            }
+        }
+
+        void stopWatching() {
+            watching = false;
+            stop();
+        }
+    }
+
     private class KaazingFileWatchdog extends FileWatchdog {
         private File log4jConfigFile;
         private Properties properties;
@@ -21,14 +21,19 @@
 
 package org.kaazing.gateway.server.messaging;
 
-import java.io.Serializable;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 import java.util.HashMap;
 import java.util.Map;
 import org.kaazing.gateway.service.messaging.MessagingMessage;
 
-public class DefaultMessagingMessage implements MessagingMessage, Serializable {
+// Externalizable so that replicated and stored messages use the compact MessagingMessageCodec form
+public class DefaultMessagingMessage implements MessagingMessage, Externalizable {
 
-    private static final long serialVersionUID = 1L;
+    // not readable by members of earlier versions (Serializable, version 1), so upgrades need a full cluster restart
+    private static final long serialVersionUID = 2L;
 
     private String id;
     private Object payload;
@@ -86,4 +91,14 @@ public class DefaultMessagingMessage implements MessagingMessage, Serializable {
         return attributes.put(name, value);
     }
 
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        new MessagingMessageCodec().writeMessage(out, this);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException {
+        new MessagingMessageCodec().readMessage(in, this);
+    }
+
 }
@@ -0,0 +1,270 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.kaazing.gateway.server.messaging;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.kaazing.gateway.service.messaging.MessagingMessage;
+
+/**
+ * Compact binary form of {@link MessagingMessage}s, used instead of Java serialization when messages are replicated
+ * or stored. Lengths and counts are variable-length integers, payloads and attribute values carry a one byte type tag
+ * (common types are written directly, anything else falls back to Java serialization), and attribute names are interned:
+ * a codec writes each name once and refers to it by index afterwards, so a batch of messages written with the same
+ * codec carries each name only once.
+ *
+ * A codec is stateful and not thread-safe. Messages must be read back with a fresh codec in the order they were written.
+ */
+public final class MessagingMessageCodec {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final byte TYPE_NULL = 0;
+    private static final byte TYPE_STRING = 1;
+    private static final byte TYPE_BYTES = 2;
+    private static final byte TYPE_BYTE_BUFFER = 3;
+    private static final byte TYPE_INTEGER = 4;
+    private static final byte TYPE_LONG = 5;
+    private static final byte TYPE_BOOLEAN = 6;
+    private static final byte TYPE_DOUBLE = 7;
+    private static final byte TYPE_SERIALIZED = 8;
+
+    // writer state
+    private final Map<String, Integer> keyIndexes = new HashMap<>();
+
+    // reader state
+    private final List<String> keys = new ArrayList<>();
+
+    public void writeMessage(DataOutput out, MessagingMessage message) throws IOException {
+        writeString(out, message.getId());
+        writeValue(out, message.getPayload());
+
+        List<Map.Entry<String, Object>> attributes = new ArrayList<>();
+        for (Map.Entry<String, Object> attribute : message.attributes()) {
+            attributes.add(attribute);
+        }
+        writeVarInt(out, attributes.size());
+        for (Map.Entry<String, Object> attribute : attributes) {
+            writeKey(out, attribute.getKey());
+            writeValue(out, attribute.getValue());
+        }
+    }
+
+    public DefaultMessagingMessage readMessage(DataInput in) throws IOException {
+        DefaultMessagingMessage message = new DefaultMessagingMessage();
+        readMessage(in, message);
+        return message;
+    }
+
+    void readMessage(DataInput in, DefaultMessagingMessage message) throws IOException {
+        message.setId(readString(in));
+        message.setPayload(readValue(in));
+        int count = readVarInt(in);
+        for (int i = 0; i < count; i++) {
+            String key = readKey(in);
+            message.setAttribute(key, readValue(in));
+        }
+    }
+
+    // index 0 introduces a new name, otherwise the name is keys[index - 1]
+    private void writeKey(DataOutput out, String key) throws IOException {
+        Integer index = keyIndexes.get(key);
+        if (index != null) {
+            writeVarInt(out, index + 1);
+        } else {
+            keyIndexes.put(key, keyIndexes.size());
+            writeVarInt(out, 0);
+            writeString(out, key);
+        }
+    }
+
+    private String readKey(DataInput in) throws IOException {
+        int index = readVarInt(in);
+        if (index == 0) {
+            String key = readString(in);
+            keys.add(key);
+            return key;
+        }
+        if (index > keys.size()) {
+            throw new InvalidObjectException("Unknown attribute name index " + index);
+        }
+        return keys.get(index - 1);
+    }
+
+    private static void writeValue(DataOutput out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(TYPE_NULL);
+        } else if (value instanceof String) {
+            out.writeByte(TYPE_STRING);
+            writeString(out, (String) value);
+        } else if (value instanceof byte[]) {
+            out.writeByte(TYPE_BYTES);
+            writeBytes(out, (byte[]) value);
+        } else if (value instanceof ByteBuffer) {
+            ByteBuffer buf = ((ByteBuffer) value).duplicate();
+            byte[] bytes = new byte[buf.remaining()];
+            buf.get(bytes);
+            out.writeByte(TYPE_BYTE_BUFFER);
+            writeBytes(out, bytes);
+        } else if (value instanceof Integer) {
+            out.writeByte(TYPE_INTEGER);
+            writeVarLong(out, zigZag((Integer) value));
+        } else if (value instanceof Long) {
+            out.writeByte(TYPE_LONG);
+            writeVarLong(out, zigZag((Long) value));
+        } else if (value instanceof Boolean) {
+            out.writeByte(TYPE_BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof Double) {
+            out.writeByte(TYPE_DOUBLE);
+            out.writeDouble((Double) value);
+        } else {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream objectOut = new ObjectOutputStream(bytes);
+            objectOut.writeObject(value);
+            objectOut.close();
+            out.writeByte(TYPE_SERIALIZED);
+            writeBytes(out, bytes.toByteArray());
+        }
+    }
+
+    private static Object readValue(DataInput in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+        case TYPE_NULL:
+            return null;
+        case TYPE_STRING:
+            return readString(in);
+        case TYPE_BYTES:
+            return readBytes(in);
+        case TYPE_BYTE_BUFFER:
+            return ByteBuffer.wrap(readBytes(in));
+        case TYPE_INTEGER:
+            return (int) unZigZag(readVarLong(in));
+        case TYPE_LONG:
+            return unZigZag(readVarLong(in));
+        case TYPE_BOOLEAN:
+            return in.readBoolean();
+        case TYPE_DOUBLE:
+            return in.readDouble();
+        case TYPE_SERIALIZED:
+            ObjectInputStream objectIn = new ObjectInputStream(new ByteArrayInputStream(readBytes(in)));
+            try {
+                return objectIn.readObject();
+            } catch (ClassNotFoundException e) {
+                throw new InvalidObjectException("Unable to read attribute value: " + e.getMessage());
+            } finally {
+                objectIn.close();
+            }
+        default:
+            throw new InvalidObjectException("Unknown value type " + type);
+        }
+    }
+
+    // length + 1, so that 0 stands for null
+    private static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            writeVarInt(out, 0);
+            return;
+        }
+        byte[] bytes = value.getBytes(UTF_8);
+        writeVarInt(out, bytes.length + 1);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        int length = readVarInt(in);
+        if (length == 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length - 1];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private static void writeBytes(DataOutput out, byte[] bytes) throws IOException {
+        writeVarInt(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInput in) throws IOException {
+        byte[] bytes = new byte[readVarInt(in)];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    // value must not be negative
+    public static void writeVarInt(DataOutput out, int value) throws IOException {
+        writeVarLong(out, value);
+    }
+
+    public static int readVarInt(DataInput in) throws IOException {
+        long value = readVarLong(in);
+        if (value < 0 || value > Integer.MAX_VALUE) {
+            throw new InvalidObjectException("Variable-length integer out of range: " + value);
+        }
+        return (int) value;
+    }
+
+    // unsigned LEB128, 7 bits per byte with the high bit set on all but the last byte
+    public static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7fL) != 0) {
+            out.writeByte((int) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    public static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new InvalidObjectException("Malformed variable-length integer");
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+}
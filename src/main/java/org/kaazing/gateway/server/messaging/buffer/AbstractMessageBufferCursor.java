@@ -0,0 +1,86 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.kaazing.gateway.server.messaging.buffer;
+
+import java.util.NoSuchElementException;
+
+/**
+ * Base cursor serving entries out of a batch that is refilled from the buffer when exhausted.
+ */
+public abstract class AbstractMessageBufferCursor<E> implements MessageBufferCursor<E> {
+
+    protected static final int DEFAULT_BATCH_SIZE = 64;
+
+    private final E[] batch;
+    private int index;
+    private int count;
+    private long nextId;
+
+    protected AbstractMessageBufferCursor(long fromId, E[] batch) {
+        this.batch = batch;
+        this.nextId = fromId;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (index < count) {
+            return true;
+        }
+
+        index = 0;
+        count = fill(nextId, batch);
+        return count > 0;
+    }
+
+    @Override
+    public E next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        E entry = batch[index];
+        batch[index++] = null;
+        nextId = idOf(entry) + 1;
+        return entry;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("remove");
+    }
+
+    @Override
+    public long getNextId() {
+        return nextId;
+    }
+
+    /**
+     * Copy the entries starting at <code>fromId</code> into <code>batch</code>.
+     *
+     * @return the number of entries copied
+     */
+    protected abstract int fill(long fromId, E[] batch);
+
+    protected abstract long idOf(E entry);
+
+}
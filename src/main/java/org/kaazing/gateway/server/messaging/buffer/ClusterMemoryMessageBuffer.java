@@ -26,23 +26,40 @@ import com.hazelcast.core.ITopic;
 import com.hazelcast.core.MessageListener;
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import org.kaazing.gateway.server.cluster.ClusterBackend;
+import org.kaazing.gateway.server.cluster.HazelcastClusterBackend;
 import org.kaazing.gateway.service.messaging.MessagingMessage;
 import org.kaazing.gateway.service.messaging.buffer.MessageBuffer;
 import org.kaazing.gateway.service.messaging.buffer.MessageBufferEntry;
+import org.kaazing.gateway.service.messaging.buffer.MessageBufferFactory;
 import org.kaazing.gateway.service.messaging.buffer.MessageBufferListener;
 import org.kaazing.gateway.util.GL;
 import org.kaazing.gateway.util.Utils;
 
-public class ClusterMemoryMessageBuffer implements MessageBuffer, Serializable {
+public class ClusterMemoryMessageBuffer implements RangeMessageBuffer, Serializable {
 
     private static final long serialVersionUID = 1L;
 
     private String topicName;
 
     private transient MessageBuffer buffer;
-    private transient ITopic<MessageBufferEntry> topic;
+    private transient ITopic<Object> topic;
+    private transient ITopic<MessageBufferResyncRequest> resyncTopic;
+    private transient ITopic<MessageBufferResync> resyncedTopic;
+    private transient ReplicationBatcher batcher;
+    private transient ReplicaSequencer sequencer;
 
-    private HazelcastInstance cluster;
+    // only the master answers resync requests, replicas are created by deserialization
+    private transient boolean master;
+
+    private ClusterBackend cluster;
+
+    // serializable so that clone buffers use the same kind of local buffer as the master
+    private MessageBufferFactory localBufferFactory;
+
+    private ClusterReplication replication;
 
     // create clone buffer
     protected ClusterMemoryMessageBuffer() {
@@ -50,7 +67,31 @@ public class ClusterMemoryMessageBuffer implements MessageBuffer, Serializable {
 
     // create master buffer
     public ClusterMemoryMessageBuffer(HazelcastInstance cluster, int capacity) {
+        this(cluster, capacity, new MemoryMessageBufferFactory());
+    }
+
+    // create master buffer
+    public ClusterMemoryMessageBuffer(HazelcastInstance cluster, int capacity, MessageBufferFactory localBufferFactory) {
+        this(cluster, capacity, localBufferFactory, ClusterReplication.IMMEDIATE);
+    }
+
+    // create master buffer
+    public ClusterMemoryMessageBuffer(HazelcastInstance cluster,
+            int capacity,
+            MessageBufferFactory localBufferFactory,
+            ClusterReplication replication) {
+        this(new HazelcastClusterBackend(cluster), capacity, localBufferFactory, replication);
+    }
+
+    // create master buffer
+    public ClusterMemoryMessageBuffer(ClusterBackend cluster,
+            int capacity,
+            MessageBufferFactory localBufferFactory,
+            ClusterReplication replication) {
         this.cluster = cluster;
+        this.localBufferFactory = localBufferFactory;
+        this.replication = replication;
+        this.master = true;
         topicName = Utils.randomHexString(8);
         GL.debug("messaging", "Creating cluster message buffer {}", topicName);
         init(capacity);
@@ -68,23 +109,112 @@ public class ClusterMemoryMessageBuffer implements MessageBuffer, Serializable {
     }
 
     private void init(int capacity) {
-        buffer = new MemoryMessageBuffer(capacity);
+        if (localBufferFactory == null) {
+            localBufferFactory = new MemoryMessageBufferFactory();
+        }
+        if (replication == null) {
+            replication = ClusterReplication.IMMEDIATE;
+        }
+        buffer = localBufferFactory.createMessageBuffer(capacity);
         GL.debug("messaging", "Cluster message buffer listening on {}", topicName);
         topic = cluster.getTopic(topicName);
-        topic.addMessageListener(new MessageListener<MessageBufferEntry>() {
+        topic.addMessageListener(new MessageListener<Object>() {
             @Override
-            public void onMessage(MessageBufferEntry entry) {
-                if (entry == null) {
-                    GL.debug("messaing", "Received null entry");
-                    return;
-                }
-                int id = entry.getId();
-                if (id > buffer.getYoungestId()) {
-                    GL.debug("messaging", "Received message entry {}", entry);
-                    buffer.set(id, entry.getMessage());
+            public void onMessage(Object record) {
+                if (record instanceof LongMessageBufferBatch) {
+                    LongMessageBufferBatch batch = (LongMessageBufferBatch) record;
+                    GL.debug("messaging", "Received message batch {}", batch);
+                    for (LongMessageBufferEntry entry : batch.getEntries()) {
+                        receive(entry);
+                    }
+                } else if (record instanceof MessageBufferEntry) {
+                    MessageBufferEntry entry = (MessageBufferEntry) record;
+                    receive(new LongMessageBufferEntry(entry.getId(), entry.getMessage()));
+                } else {
+                    GL.debug("messaging", "Received unexpected record {}", record);
                 }
             }
         });
+
+        // resync traffic has topics of its own, so that members of earlier versions never see records they cannot read
+        resyncTopic = cluster.getTopic(topicName + ".resync");
+        resyncedTopic = cluster.getTopic(topicName + ".resynced");
+        if (master) {
+            resyncTopic.addMessageListener(new MessageListener<MessageBufferResyncRequest>() {
+                @Override
+                public void onMessage(MessageBufferResyncRequest request) {
+                    resync(request);
+                }
+            });
+        }
+
+        if (replication.isResyncEnabled()) {
+            sequencer = new ReplicaSequencer(replication.getResyncTimeout(), capacity) {
+                @Override
+                protected long youngestId() {
+                    return buffer.getYoungestId();
+                }
+
+                @Override
+                protected void apply(LongMessageBufferEntry entry) {
+                    GL.debug("messaging", "Received message entry {}", entry);
+                    buffer.set((int) entry.getId(), entry.getMessage());
+                }
+
+                @Override
+                protected void requestResync(long fromId, long toId) {
+                    resyncTopic.publish(new MessageBufferResyncRequest(fromId, toId));
+                }
+            };
+            resyncedTopic.addMessageListener(new MessageListener<MessageBufferResync>() {
+                @Override
+                public void onMessage(MessageBufferResync resync) {
+                    sequencer.resync(resync);
+                }
+            });
+        }
+
+        if (replication.isBatched()) {
+            batcher = new ReplicationBatcher(replication) {
+                @Override
+                protected void publish(Object record) {
+                    topic.publish(record);
+                }
+            };
+        }
+    }
+
+    private void receive(LongMessageBufferEntry entry) {
+        if (sequencer != null) {
+            sequencer.receive(entry);
+            return;
+        }
+
+        // without gap detection, entries that arrive late are dropped
+        long id = entry.getId();
+        if (id > buffer.getYoungestId()) {
+            GL.debug("messaging", "Received message entry {}", entry);
+            buffer.set((int) entry.getId(), entry.getMessage());
+        }
+    }
+
+    // answer a replica's resync request with the entries this (master) buffer still retains in the range
+    private void resync(MessageBufferResyncRequest request) {
+        final List<LongMessageBufferEntry> entries = new ArrayList<>();
+        if (request.getFromId() <= Integer.MAX_VALUE) {
+            int toId = (int) Math.min(request.getToId(), Integer.MAX_VALUE);
+            visit((int) request.getFromId(), toId, new MessageBufferVisitor<MessageBufferEntry>() {
+                @Override
+                public boolean visit(MessageBufferEntry entry) {
+                    entries.add(new LongMessageBufferEntry(entry.getId(), entry.getMessage()));
+                    return true;
+                }
+            });
+        }
+        GL.debug("messaging", "Resyncing {} entries of message buffer {} for request {}", entries.size(), topicName,
+                request);
+        resyncedTopic.publish(new MessageBufferResync(request.getFromId(), request.getToId(),
+                entries.toArray(new LongMessageBufferEntry[entries.size()])));
     }
 
     // -- delegate methods --
@@ -94,7 +224,13 @@ public class ClusterMemoryMessageBuffer implements MessageBuffer, Serializable {
         GL.debug("messaging", "Received message {}", message);
         MessageBufferEntry entry = buffer.add(message);
         if (entry != null) {
-            topic.publish(entry);
+            // entries are published as they always were, so members of earlier versions keep replicating during a
+            // rolling upgrade; only opt-in batches use the compact replication records
+            if (batcher != null) {
+                batcher.add(new LongMessageBufferEntry(entry.getId(), entry.getMessage()));
+            } else {
+                topic.publish(entry);
+            }
         } else {
             GL.debug("messaging", "Got null entry from {}", buffer);
         }
@@ -106,6 +242,48 @@ public class ClusterMemoryMessageBuffer implements MessageBuffer, Serializable {
         return buffer.get(id);
     }
 
+    @Override
+    public int get(int fromId, MessageBufferEntry[] entries, int offset, int length) {
+        if (buffer instanceof RangeMessageBuffer) {
+            return ((RangeMessageBuffer) buffer).get(fromId, entries, offset, length);
+        }
+
+        int count = 0;
+        int youngestId = buffer.getYoungestId();
+        for (int id = Math.max(fromId, buffer.getOldestId()); id <= youngestId && count < length; id++) {
+            MessageBufferEntry entry = buffer.get(id);
+            if (entry != null) {
+                entries[offset + count++] = entry;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public int visit(int fromId, int toId, MessageBufferVisitor<MessageBufferEntry> visitor) {
+        if (buffer instanceof RangeMessageBuffer) {
+            return ((RangeMessageBuffer) buffer).visit(fromId, toId, visitor);
+        }
+
+        int count = 0;
+        int lastId = Math.min(toId, buffer.getYoungestId());
+        for (int id = Math.max(fromId, buffer.getOldestId()); id <= lastId; id++) {
+            MessageBufferEntry entry = buffer.get(id);
+            if (entry != null) {
+                count++;
+                if (!visitor.visit(entry)) {
+                    break;
+                }
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public MessageBufferCursor<MessageBufferEntry> cursor(int fromId) {
+        return new RangeMessageBufferCursor(this, fromId);
+    }
+
     @Override
     public MessageBufferEntry set(int index, MessagingMessage message) {
         return buffer.set(index, message);
@@ -23,20 +23,42 @@ package org.kaazing.gateway.server.messaging.buffer;
 
 import com.hazelcast.core.HazelcastInstance;
 import java.io.Serializable;
+import org.kaazing.gateway.server.cluster.ClusterBackend;
+import org.kaazing.gateway.server.cluster.HazelcastClusterBackend;
 import org.kaazing.gateway.service.messaging.buffer.MessageBufferFactory;
 
 public class ClusterMemoryMessageBufferFactory implements MessageBufferFactory, Serializable {
 
     private static final long serialVersionUID = 1L;
-    private HazelcastInstance cluster;
+    private ClusterBackend cluster;
+    private MessageBufferFactory localBufferFactory;
+    private ClusterReplication replication;
 
     public ClusterMemoryMessageBufferFactory(HazelcastInstance cluster) {
+        this(cluster, new MemoryMessageBufferFactory());
+    }
+
+    public ClusterMemoryMessageBufferFactory(HazelcastInstance cluster, MessageBufferFactory localBufferFactory) {
+        this(cluster, localBufferFactory, ClusterReplication.IMMEDIATE);
+    }
+
+    public ClusterMemoryMessageBufferFactory(HazelcastInstance cluster,
+            MessageBufferFactory localBufferFactory,
+            ClusterReplication replication) {
+        this(new HazelcastClusterBackend(cluster), localBufferFactory, replication);
+    }
+
+    public ClusterMemoryMessageBufferFactory(ClusterBackend cluster,
+            MessageBufferFactory localBufferFactory,
+            ClusterReplication replication) {
         this.cluster = cluster;
+        this.localBufferFactory = localBufferFactory;
+        this.replication = replication;
     }
 
     @Override
     public ClusterMemoryMessageBuffer createMessageBuffer(int capacity) {
-        return new ClusterMemoryMessageBuffer(cluster, capacity);
+        return new ClusterMemoryMessageBuffer(cluster, capacity, localBufferFactory, replication);
     }
 
 }
@@ -0,0 +1,92 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.kaazing.gateway.server.messaging.buffer;
+
+import java.io.Serializable;
+
+/**
+ * How a cluster message buffer replicates new entries to the other members. By default every entry is published on its
+ * own. When batching is enabled, entries are collected for up to <code>maxBatchDelay</code> milliseconds or until
+ * <code>maxBatchSize</code> entries are pending, and then published as one {@link LongMessageBufferBatch}.
+ *
+ * Replicas apply entries in id order. When ids are missing they ask the master to resync the gap, and give up on it after
+ * <code>resyncTimeout</code> milliseconds (a timeout of 0 turns gap detection off, so late entries are simply dropped).
+ */
+public class ClusterReplication implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final long DEFAULT_RESYNC_TIMEOUT = 1000;
+
+    public static final ClusterReplication IMMEDIATE = new ClusterReplication(1, 0);
+
+    private final int maxBatchSize;
+    private final long maxBatchDelay;
+    private final long resyncTimeout;
+
+    public ClusterReplication(int maxBatchSize, long maxBatchDelay) {
+        this(maxBatchSize, maxBatchDelay, DEFAULT_RESYNC_TIMEOUT);
+    }
+
+    public ClusterReplication(int maxBatchSize, long maxBatchDelay, long resyncTimeout) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive: " + maxBatchSize);
+        }
+        if (maxBatchDelay < 0) {
+            throw new IllegalArgumentException("Batch delay must not be negative: " + maxBatchDelay);
+        }
+        if (resyncTimeout < 0) {
+            throw new IllegalArgumentException("Resync timeout must not be negative: " + resyncTimeout);
+        }
+        this.maxBatchSize = maxBatchSize;
+        this.maxBatchDelay = maxBatchDelay;
+        this.resyncTimeout = resyncTimeout;
+    }
+
+    public boolean isBatched() {
+        return maxBatchSize > 1 && maxBatchDelay > 0;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public long getMaxBatchDelay() {
+        return maxBatchDelay;
+    }
+
+    public boolean isResyncEnabled() {
+        return resyncTimeout > 0;
+    }
+
+    public long getResyncTimeout() {
+        return resyncTimeout;
+    }
+
+    @Override
+    public String toString() {
+        String mode = isBatched() ? "batched(" + maxBatchSize + ", " + maxBatchDelay + "ms)" : "immediate";
+        return isResyncEnabled() ? mode + ",resync(" + resyncTimeout + "ms)" : mode;
+    }
+
+}
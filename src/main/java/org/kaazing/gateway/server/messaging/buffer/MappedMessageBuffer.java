@@ -0,0 +1,439 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.kaazing.gateway.server.messaging.buffer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.kaazing.gateway.server.messaging.MessagingMessageCodec;
+import org.kaazing.gateway.service.messaging.MessagingMessage;
+import org.kaazing.gateway.service.messaging.buffer.MessageBufferEntry;
+import org.kaazing.gateway.service.messaging.buffer.MessageBufferListener;
+import org.kaazing.gateway.util.GL;
+
+/**
+ * Message buffer that keeps its retained messages serialized in a memory-mapped file instead of on the heap. The
+ * file is a header followed by <code>capacity</code> fixed-size slots, slot <code>id % capacity</code> holding the id, the
+ * record length and the message in {@link MessagingMessageCodec} form. Reopening an existing file with the same
+ * capacity and slot size recovers the messages written to it before. {@link MappedMessageBufferFactory} gives every
+ * buffer a new file, so only buffers created directly on a file of their own can be recovered after a restart.
+ *
+ * Messages that do not fit in a slot, or cannot be serialized, are kept on the heap instead (and are not recovered).
+ * Every read deserializes a new copy of the message. {@link #close()} unmaps the file, rather than waiting for the
+ * mapping to be garbage collected.
+ */
+public class MappedMessageBuffer implements RangeMessageBuffer {
+
+    public static final int DEFAULT_SLOT_SIZE = 4096;
+
+    private static final int MAGIC = 0x4b4d4246;
+    // version 2 records use the MessagingMessageCodec form
+    private static final int VERSION = 2;
+
+    // header: magic, version, capacity, slot size, next id
+    private static final int HEADER_SIZE = 64;
+    private static final int NEXT_ID_OFFSET = 16;
+
+    // slot: id, record length (or SPILLED), record
+    private static final int SLOT_HEADER_SIZE = 8;
+    private static final int SPILLED = -1;
+
+    private final MessageBufferListenerSupport listenerSupport;
+
+    // concurrency controls for all internal state
+    private final Lock readLock;
+    private final Lock writeLock;
+
+    private final File file;
+    private final MappedByteBuffer slots;
+    private final MessageBufferEntry[] spilled;
+    private final int capacity;
+    private final int slotSize;
+
+    private int nextId;
+    private boolean closed;
+    private boolean deleteOnClose;
+
+    public MappedMessageBuffer(File file, int capacity) throws IOException {
+        this(file, capacity, DEFAULT_SLOT_SIZE, MessageBufferDispatch.SYNCHRONOUS);
+    }
+
+    public MappedMessageBuffer(File file, int capacity, int slotSize, MessageBufferDispatch dispatch) throws IOException {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        if (slotSize <= SLOT_HEADER_SIZE) {
+            throw new IllegalArgumentException("slot size must be greater than " + SLOT_HEADER_SIZE + ": " + slotSize);
+        }
+        long size = HEADER_SIZE + (long) capacity * slotSize;
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("capacity " + capacity + " with slot size " + slotSize
+                    + " exceeds the maximum mapped file size");
+        }
+
+        listenerSupport = dispatch.newListenerSupport();
+
+        ReadWriteLock lock = new ReentrantReadWriteLock();
+        readLock = lock.readLock();
+        writeLock = lock.writeLock();
+
+        this.file = file;
+        this.capacity = capacity;
+        this.slotSize = slotSize;
+        spilled = new MessageBufferEntry[capacity];
+
+        boolean existing = file.length() == size;
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(size);
+            slots = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } finally {
+            // the mapping stays valid after the channel is closed
+            raf.close();
+        }
+
+        if (existing && slots.getInt(0) == MAGIC && slots.getInt(4) == VERSION && slots.getInt(8) == capacity
+                && slots.getInt(12) == slotSize) {
+            nextId = slots.getInt(NEXT_ID_OFFSET);
+            GL.debug("messaging", "Recovered message buffer {} up to message id {}", file, nextId - 1);
+        } else {
+            for (int index = 0; index < capacity; index++) {
+                slots.putInt(slotOffset(index), 0);
+            }
+            slots.putInt(0, MAGIC);
+            slots.putInt(4, VERSION);
+            slots.putInt(8, capacity);
+            slots.putInt(12, slotSize);
+            nextId = 1;
+            slots.putInt(NEXT_ID_OFFSET, nextId);
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    // used for buffers whose file has no stable name, and so is never reopened
+    void setDeleteOnClose(boolean deleteOnClose) {
+        this.deleteOnClose = deleteOnClose;
+    }
+
+    public boolean isClosed() {
+        readLock.lock();
+        try {
+            return closed;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Unmap the file. Messages written so far remain in the file (unless it is deleted on close), reads then find no
+     * messages and writes fail.
+     */
+    public void close() {
+        writeLock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (int index = 0; index < capacity; index++) {
+                spilled[index] = null;
+            }
+            unmap(slots);
+            if (deleteOnClose && !file.delete()) {
+                GL.debug("messaging", "Unable to delete message buffer file {}", file);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public MessageBufferEntry add(MessagingMessage message) {
+        writeLock.lock();
+        try {
+            checkOpen();
+            int id = nextId++;
+            MessageBufferEntry m = new MessageBufferEntry(id, message);
+            write(m);
+            listenerSupport.messageAdded(m);
+            return m;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public MessageBufferEntry set(int index, MessagingMessage message) {
+        writeLock.lock();
+        try {
+            checkOpen();
+            if (nextId <= index) {
+                nextId = index + 1;
+            }
+            MessageBufferEntry m = new MessageBufferEntry(index, message);
+            write(m);
+            listenerSupport.messageAdded(m);
+            return m;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public MessageBufferEntry get(int id) {
+        if (id < 1) {
+            return null;
+        }
+        readLock.lock();
+        try {
+            if (closed || id >= nextId || id < oldestId()) {
+                return null;
+            }
+            return read(id);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public int get(int fromId, MessageBufferEntry[] entries, int offset, int length) {
+        readLock.lock();
+        try {
+            int count = 0;
+            if (closed) {
+                return count;
+            }
+            for (int id = Math.max(fromId, oldestId()); id < nextId && count < length; id++) {
+                MessageBufferEntry message = read(id);
+                if (message != null) {
+                    entries[offset + count++] = message;
+                }
+            }
+            return count;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    // Note: the visitor is called with the read lock held, so writers wait until the visit completes
+    @Override
+    public int visit(int fromId, int toId, MessageBufferVisitor<MessageBufferEntry> visitor) {
+        readLock.lock();
+        try {
+            int count = 0;
+            if (closed) {
+                return count;
+            }
+            int lastId = Math.min(toId, nextId - 1);
+            for (int id = Math.max(fromId, oldestId()); id <= lastId; id++) {
+                MessageBufferEntry message = read(id);
+                if (message != null) {
+                    count++;
+                    if (!visitor.visit(message)) {
+                        break;
+                    }
+                }
+            }
+            return count;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public MessageBufferCursor<MessageBufferEntry> cursor(int fromId) {
+        return new RangeMessageBufferCursor(this, fromId);
+    }
+
+    @Override
+    public int getYoungestId() {
+        readLock.lock();
+        try {
+            return nextId - 1;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public int getOldestId() {
+        readLock.lock();
+        try {
+            return oldestId();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public void addMessageBufferListener(MessageBufferListener listener) {
+        listenerSupport.addMessageBufferListener(listener);
+    }
+
+    @Override
+    public void removeMessageBufferListener(MessageBufferListener listener) {
+        listenerSupport.removeMessageBufferListener(listener);
+    }
+
+    /**
+     * Returns the delivery statistics of a listener when the buffer uses asynchronous dispatch, otherwise null.
+     */
+    public MessageBufferListenerMetrics getListenerMetrics(MessageBufferListener listener) {
+        return listenerSupport.getListenerMetrics(listener);
+    }
+
+    /**
+     * Force the buffered messages out to the storage device. Without this the operating system writes them back lazily,
+     * which survives a gateway restart but not a machine crash.
+     */
+    public void flush() {
+        writeLock.lock();
+        try {
+            if (!closed) {
+                slots.force();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // must be called with the write lock held, the mapping must not be used once unmapped
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Message buffer is closed: " + file);
+        }
+    }
+
+    // must be called with the read or write lock held
+    private int oldestId() {
+        int id = nextId - capacity;
+        return (id < 1) ? 1 : id;
+    }
+
+    private int slotOffset(int index) {
+        return HEADER_SIZE + index * slotSize;
+    }
+
+    // must be called with the write lock held
+    private void write(MessageBufferEntry entry) {
+        int index = entry.getId() % capacity;
+        int offset = slotOffset(index);
+
+        // the old id is cleared first and the new id written last, so a torn write is never recovered as a valid entry
+        slots.putInt(offset, 0);
+
+        byte[] record = serialize(entry.getMessage());
+        if (record != null && record.length <= slotSize - SLOT_HEADER_SIZE) {
+            spilled[index] = null;
+            ByteBuffer slot = slots.duplicate();
+            slot.position(offset + SLOT_HEADER_SIZE);
+            slot.put(record);
+            slots.putInt(offset + 4, record.length);
+        } else {
+            spilled[index] = entry;
+            slots.putInt(offset + 4, SPILLED);
+        }
+
+        slots.putInt(offset, entry.getId());
+        slots.putInt(NEXT_ID_OFFSET, nextId);
+    }
+
+    // must be called with the read or write lock held
+    private MessageBufferEntry read(int id) {
+        int index = id % capacity;
+        int offset = slotOffset(index);
+        if (slots.getInt(offset) != id) {
+            return null;
+        }
+
+        int length = slots.getInt(offset + 4);
+        if (length == SPILLED) {
+            MessageBufferEntry entry = spilled[index];
+            return (entry != null && entry.getId() == id) ? entry : null;
+        }
+
+        byte[] record = new byte[length];
+        ByteBuffer slot = slots.duplicate();
+        slot.position(offset + SLOT_HEADER_SIZE);
+        slot.get(record);
+        MessagingMessage message = deserialize(record);
+        return (message != null) ? new MessageBufferEntry(id, message) : null;
+    }
+
+    // release the mapping now, where the JVM allows it, rather than when the buffer is garbage collected
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(buffer);
+            if (cleaner != null) {
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+            }
+        } catch (Exception e) {
+            GL.debug("messaging", "Unable to unmap message buffer, leaving it to garbage collection: {}", e);
+        }
+    }
+
+    private static byte[] serialize(MessagingMessage message) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            new MessagingMessageCodec().writeMessage(out, message);
+            out.close();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            // e.g. a payload that is not serializable, keep the message on the heap instead
+            GL.debug("messaging", "Unable to serialize message for mapped message buffer: {}", e);
+            return null;
+        }
+    }
+
+    private static MessagingMessage deserialize(byte[] record) {
+        try {
+            return new MessagingMessageCodec().readMessage(new DataInputStream(new ByteArrayInputStream(record)));
+        } catch (IOException e) {
+            GL.warn("messaging", "Unable to read message from mapped message buffer:\n{}", e);
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,122 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.kaazing.gateway.server.messaging.buffer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+import org.kaazing.gateway.service.messaging.buffer.MessageBufferFactory;
+
+/**
+ * Creates {@link MappedMessageBuffer}s backed by files in a directory, keeping retained messages off the heap. Callers of
+ * {@link MessageBufferFactory} do not name their buffers, and cluster buffers are named at random, so there is no stable
+ * name to find a buffer's file again after a restart: each buffer gets a new file that is deleted when the buffer is
+ * closed or the gateway exits, two buffers never share a file, and no messages are recovered across restarts.
+ */
+public class MappedMessageBufferFactory implements MessageBufferFactory, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final File directory;
+    private final int slotSize;
+    private final MessageBufferDispatch dispatch;
+
+    // buffers created by this instance (not by copies deserialized on other members), weakly held so that buffers
+    // dropped by their owner are unmapped when collected
+    private transient Set<MappedMessageBuffer> buffers;
+
+    public MappedMessageBufferFactory(File directory) {
+        this(directory, MappedMessageBuffer.DEFAULT_SLOT_SIZE, MessageBufferDispatch.SYNCHRONOUS);
+    }
+
+    public MappedMessageBufferFactory(File directory, int slotSize, MessageBufferDispatch dispatch) {
+        this.directory = directory;
+        this.slotSize = slotSize;
+        this.dispatch = dispatch;
+    }
+
+    @Override
+    public MappedMessageBuffer createMessageBuffer(int capacity) {
+        createDirectory();
+
+        File file;
+        try {
+            file = File.createTempFile("buffer-", ".buf", directory);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to create message buffer file in " + directory.getAbsolutePath(),
+                    e);
+        }
+        file.deleteOnExit();
+
+        MappedMessageBuffer buffer = newMessageBuffer(file, capacity);
+        buffer.setDeleteOnClose(true);
+        return buffer;
+    }
+
+    /**
+     * Close the buffers created by this factory that are still open, unmapping their files.
+     */
+    public void close() {
+        List<MappedMessageBuffer> openBuffers;
+        synchronized (this) {
+            openBuffers = new ArrayList<MappedMessageBuffer>(buffers());
+            buffers().clear();
+        }
+        for (MappedMessageBuffer buffer : openBuffers) {
+            buffer.close();
+        }
+    }
+
+    private void createDirectory() {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IllegalStateException("Unable to create message buffer directory " + directory.getAbsolutePath());
+        }
+    }
+
+    private MappedMessageBuffer newMessageBuffer(File file, int capacity) {
+        MappedMessageBuffer buffer;
+        try {
+            buffer = new MappedMessageBuffer(file, capacity, slotSize, dispatch);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to map message buffer file " + file.getAbsolutePath(), e);
+        }
+        synchronized (this) {
+            buffers().add(buffer);
+        }
+        return buffer;
+    }
+
+    // must be called while synchronized on this factory
+    private Set<MappedMessageBuffer> buffers() {
+        if (buffers == null) {
+            buffers = Collections.newSetFromMap(new WeakHashMap<MappedMessageBuffer, Boolean>());
+        }
+        return buffers;
+    }
+
+}
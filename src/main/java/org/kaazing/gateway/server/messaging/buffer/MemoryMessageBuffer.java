@@ -25,7 +25,6 @@ import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import org.kaazing.gateway.service.messaging.MessagingMessage;
-import org.kaazing.gateway.service.messaging.buffer.MessageBuffer;
 import org.kaazing.gateway.service.messaging.buffer.MessageBufferEntry;
 import org.kaazing.gateway.service.messaging.buffer.MessageBufferListener;
 
@@ -33,7 +32,7 @@ import org.kaazing.gateway.service.messaging.buffer.MessageBufferListener;
 //       might need that anyway for iteration?
 // TODO: currently can only store up to MAX_INT messages and then nextId will wrap over to negative so need to
 //       account for that
-public class MemoryMessageBuffer implements MessageBuffer {
+public class MemoryMessageBuffer implements RangeMessageBuffer {
 
     private final MessageBufferListenerSupport listenerSupport;
 
@@ -48,7 +47,11 @@ public class MemoryMessageBuffer implements MessageBuffer {
     private int nextId;
 
     public MemoryMessageBuffer(int capacity) {
-        listenerSupport = new MessageBufferListenerSupport();
+        this(capacity, MessageBufferDispatch.SYNCHRONOUS);
+    }
+
+    public MemoryMessageBuffer(int capacity, MessageBufferDispatch dispatch) {
+        listenerSupport = dispatch.newListenerSupport();
 
         ReadWriteLock lock = new ReentrantReadWriteLock();
         readLock = lock.readLock();
@@ -107,6 +110,50 @@ public class MemoryMessageBuffer implements MessageBuffer {
         }
     }
 
+    @Override
+    public int get(int fromId, MessageBufferEntry[] entries, int offset, int length) {
+        readLock.lock();
+        try {
+            int count = 0;
+            for (int id = Math.max(fromId, oldestId()); id < nextId && count < length; id++) {
+                MessageBufferEntry message = messages[id % capacity];
+                if (message != null && message.getId() == id) {
+                    entries[offset + count++] = message;
+                }
+            }
+            return count;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    // Note: the visitor is called with the read lock held, so writers wait until the visit completes
+    @Override
+    public int visit(int fromId, int toId, MessageBufferVisitor<MessageBufferEntry> visitor) {
+        readLock.lock();
+        try {
+            int count = 0;
+            int lastId = Math.min(toId, nextId - 1);
+            for (int id = Math.max(fromId, oldestId()); id <= lastId; id++) {
+                MessageBufferEntry message = messages[id % capacity];
+                if (message != null && message.getId() == id) {
+                    count++;
+                    if (!visitor.visit(message)) {
+                        break;
+                    }
+                }
+            }
+            return count;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public MessageBufferCursor<MessageBufferEntry> cursor(int fromId) {
+        return new RangeMessageBufferCursor(this, fromId);
+    }
+
     @Override
     public int getYoungestId() {
         readLock.lock();
@@ -121,13 +168,18 @@ public class MemoryMessageBuffer implements MessageBuffer {
     public int getOldestId() {
         readLock.lock();
         try {
-            int id = nextId - capacity;
-            return (id < 1) ? 1 : id;
+            return oldestId();
         } finally {
             readLock.unlock();
         }
     }
 
+    // must be called with the read or write lock held
+    private int oldestId() {
+        int id = nextId - capacity;
+        return (id < 1) ? 1 : id;
+    }
+
     @Override
     public int getCapacity() {
         return capacity;
@@ -143,4 +195,11 @@ public class MemoryMessageBuffer implements MessageBuffer {
         listenerSupport.removeMessageBufferListener(listener);
     }
 
+    /**
+     * Returns the delivery statistics of a listener when the buffer uses asynchronous dispatch, otherwise null.
+     */
+    public MessageBufferListenerMetrics getListenerMetrics(MessageBufferListener listener) {
+        return listenerSupport.getListenerMetrics(listener);
+    }
+
 }
@@ -21,13 +21,26 @@
 
 package org.kaazing.gateway.server.messaging.buffer;
 
+import java.io.Serializable;
 import org.kaazing.gateway.service.messaging.buffer.MessageBufferFactory;
 
-public class MemoryMessageBufferFactory implements MessageBufferFactory {
+public class MemoryMessageBufferFactory implements MessageBufferFactory, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final MessageBufferDispatch dispatch;
+
+    public MemoryMessageBufferFactory() {
+        this(MessageBufferDispatch.SYNCHRONOUS);
+    }
+
+    public MemoryMessageBufferFactory(MessageBufferDispatch dispatch) {
+        this.dispatch = dispatch;
+    }
 
     @Override
     public MemoryMessageBuffer createMessageBuffer(int capacity) {
-        return new MemoryMessageBuffer(capacity);
+        return new MemoryMessageBuffer(capacity, dispatch);
     }
 
 }
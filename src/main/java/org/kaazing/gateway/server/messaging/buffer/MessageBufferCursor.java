@@ -0,0 +1,41 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.kaazing.gateway.server.messaging.buffer;
+
+import java.util.Iterator;
+
+/**
+ * Forward-only iterator over the entries of a message buffer, starting at a given id. Entries are fetched from the
+ * buffer in batches, so walking the cursor does not go through the buffer bounds checks for every entry.
+ * <p/>
+ * Entries that expire from the buffer before the cursor reaches them are skipped; compare the id of each entry with the
+ * expected one to detect such gaps. {@link #remove()} is not supported.
+ */
+public interface MessageBufferCursor<E> extends Iterator<E> {
+
+    /**
+     * @return the id of the entry the cursor will look for next
+     */
+    long getNextId();
+
+}
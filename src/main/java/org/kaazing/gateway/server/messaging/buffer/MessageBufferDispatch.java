@@ -0,0 +1,143 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.kaazing.gateway.server.messaging.buffer;
+
+import java.io.Serializable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * How a message buffer notifies its listeners. Synchronous dispatch (the default) calls every listener on the publishing
+ * thread. Asynchronous dispatch gives each listener a bounded mailbox drained on a shared, fixed size pool of daemon
+ * threads, so a slow listener only falls behind (subject to the overflow policy) instead of stalling publishers. A mailbox
+ * has at most one drain task queued at a time, so the pool queues no more tasks than there are listeners.
+ *
+ * Dispatch settings are carried by the (serializable) buffer factories, so the executor itself is never serialized.
+ */
+public class MessageBufferDispatch implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final MessageBufferDispatch SYNCHRONOUS =
+            new MessageBufferDispatch(0, MessageBufferOverflowPolicy.DROP_OLDEST);
+
+    private final int mailboxCapacity;
+    private final MessageBufferOverflowPolicy overflowPolicy;
+    private final int dispatchThreads;
+
+    /**
+     * @param mailboxCapacity messages queued per listener, 0 for synchronous dispatch
+     * @param overflowPolicy  what to do when a listener mailbox is full
+     */
+    public MessageBufferDispatch(int mailboxCapacity, MessageBufferOverflowPolicy overflowPolicy) {
+        this(mailboxCapacity, overflowPolicy, 0);
+    }
+
+    /**
+     * @param mailboxCapacity messages queued per listener, 0 for synchronous dispatch
+     * @param overflowPolicy  what to do when a listener mailbox is full
+     * @param dispatchThreads threads draining the mailboxes, 0 for one per available processor
+     */
+    public MessageBufferDispatch(int mailboxCapacity, MessageBufferOverflowPolicy overflowPolicy, int dispatchThreads) {
+        if (dispatchThreads < 0) {
+            throw new IllegalArgumentException("Dispatch threads must not be negative: " + dispatchThreads);
+        }
+        if (mailboxCapacity < 0) {
+            throw new IllegalArgumentException("Mailbox capacity must not be negative: " + mailboxCapacity);
+        }
+        if (overflowPolicy == null) {
+            throw new NullPointerException("overflowPolicy");
+        }
+        this.mailboxCapacity = mailboxCapacity;
+        this.overflowPolicy = overflowPolicy;
+        this.dispatchThreads = dispatchThreads;
+    }
+
+    public boolean isAsynchronous() {
+        return mailboxCapacity > 0;
+    }
+
+    public int getMailboxCapacity() {
+        return mailboxCapacity;
+    }
+
+    public MessageBufferOverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public int getDispatchThreads() {
+        return dispatchThreads;
+    }
+
+    public MessageBufferListenerSupport newListenerSupport() {
+        if (!isAsynchronous()) {
+            return new MessageBufferListenerSupport();
+        }
+        int threads = (dispatchThreads > 0) ? dispatchThreads : Runtime.getRuntime().availableProcessors();
+        return new MessageBufferListenerSupport(DispatchExecutor.get(threads), mailboxCapacity, overflowPolicy);
+    }
+
+    @Override
+    public String toString() {
+        return isAsynchronous() ? "async(" + mailboxCapacity + ", " + overflowPolicy + ")" : "sync";
+    }
+
+    // created on first use only, so gateways using synchronous dispatch never start these threads; buffers dispatching
+    // with the same number of threads share one pool
+    private static final class DispatchExecutor {
+
+        private static final ConcurrentMap<Integer, Executor> EXECUTORS = new ConcurrentHashMap<Integer, Executor>();
+
+        static Executor get(int threads) {
+            Executor executor = EXECUTORS.get(threads);
+            if (executor == null) {
+                synchronized (EXECUTORS) {
+                    executor = EXECUTORS.get(threads);
+                    if (executor == null) {
+                        executor = newExecutor(threads);
+                        EXECUTORS.put(threads, executor);
+                    }
+                }
+            }
+            return executor;
+        }
+
+        private static ExecutorService newExecutor(int threads) {
+            final AtomicInteger threadCount = new AtomicInteger();
+            return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "message-buffer-dispatch-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+    }
+
+}
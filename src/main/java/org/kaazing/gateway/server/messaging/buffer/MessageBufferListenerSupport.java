@@ -23,6 +23,8 @@ package org.kaazing.gateway.server.messaging.buffer;
 
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
 import org.kaazing.gateway.service.messaging.buffer.MessageBufferEntry;
 import org.kaazing.gateway.service.messaging.buffer.MessageBufferListener;
 import org.kaazing.gateway.util.GL;
@@ -31,24 +33,100 @@ public class MessageBufferListenerSupport implements MessageBufferListener {
 
     private final Map<MessageBufferListener, MessageBufferListener> listeners;
 
+    // asynchronous dispatch, each listener gets its own mailbox drained on the executor (null when synchronous)
+    private final ConcurrentMap<MessageBufferListener, MessageBufferMailbox<MessageBufferEntry>> mailboxes;
+    private final Executor executor;
+    private final int mailboxCapacity;
+    private final MessageBufferOverflowPolicy overflowPolicy;
+
     public MessageBufferListenerSupport() {
         listeners = new ConcurrentHashMap<MessageBufferListener, MessageBufferListener>();
+        mailboxes = null;
+        executor = null;
+        mailboxCapacity = 0;
+        overflowPolicy = null;
     }
 
-    public void addMessageBufferListener(MessageBufferListener listener) {
-        listeners.put(listener, listener);
+    public MessageBufferListenerSupport(Executor executor, int mailboxCapacity,
+            MessageBufferOverflowPolicy overflowPolicy) {
+        if (mailboxCapacity < 1) {
+            throw new IllegalArgumentException("Mailbox capacity must be positive: " + mailboxCapacity);
+        }
+        listeners = null;
+        mailboxes = new ConcurrentHashMap<MessageBufferListener, MessageBufferMailbox<MessageBufferEntry>>();
+        this.executor = executor;
+        this.mailboxCapacity = mailboxCapacity;
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    public void addMessageBufferListener(final MessageBufferListener listener) {
+        if (mailboxes == null) {
+            listeners.put(listener, listener);
+            return;
+        }
+
+        MessageBufferMailbox<MessageBufferEntry> mailbox =
+                new MessageBufferMailbox<MessageBufferEntry>(executor, mailboxCapacity, overflowPolicy) {
+            @Override
+            protected void deliver(MessageBufferEntry entry) throws Exception {
+                listener.messageAdded(entry);
+            }
+
+            @Override
+            protected long idOf(MessageBufferEntry entry) {
+                return entry.getId();
+            }
+
+            @Override
+            protected void disconnected() throws Exception {
+                if (listener instanceof MessageBufferDisconnectListener) {
+                    ((MessageBufferDisconnectListener) listener).listenerDisconnected(this);
+                }
+            }
+        };
+        MessageBufferMailbox<MessageBufferEntry> oldMailbox = mailboxes.put(listener, mailbox);
+        if (oldMailbox != null) {
+            oldMailbox.close();
+        }
     }
 
     public void removeMessageBufferListener(MessageBufferListener listener) {
-        listeners.remove(listener);
+        if (mailboxes == null) {
+            listeners.remove(listener);
+            return;
+        }
+
+        MessageBufferMailbox<MessageBufferEntry> mailbox = mailboxes.remove(listener);
+        if (mailbox != null) {
+            mailbox.close();
+        }
+    }
+
+    /**
+     * Returns the delivery statistics of an asynchronously dispatched listener, or null if the listener is not
+     * registered or dispatch is synchronous.
+     */
+    public MessageBufferListenerMetrics getListenerMetrics(MessageBufferListener listener) {
+        return (mailboxes != null) ? mailboxes.get(listener) : null;
     }
 
     public void messageAdded(MessageBufferEntry newMessage) {
-        for (MessageBufferListener listener : listeners.keySet()) {
-            try {
-                listener.messageAdded(newMessage);
-            } catch (Exception e) {
-                GL.warn("stompservice", "Unable to process message buffer listener:\n{}", e);
+        if (mailboxes == null) {
+            for (MessageBufferListener listener : listeners.keySet()) {
+                try {
+                    listener.messageAdded(newMessage);
+                } catch (Exception e) {
+                    GL.warn("stompservice", "Unable to process message buffer listener:\n{}", e);
+                }
+            }
+            return;
+        }
+
+        for (Map.Entry<MessageBufferListener, MessageBufferMailbox<MessageBufferEntry>> entry : mailboxes.entrySet()) {
+            MessageBufferMailbox<MessageBufferEntry> mailbox = entry.getValue();
+            if (!mailbox.offer(newMessage)) {
+                GL.warn("messaging", "Disconnecting message buffer listener {} after mailbox overflow", entry.getKey());
+                mailboxes.remove(entry.getKey(), mailbox);
             }
         }
     }
@@ -0,0 +1,190 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.kaazing.gateway.server.messaging.buffer;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.kaazing.gateway.util.GL;
+
+/**
+ * Bounded queue of messages for a single listener, drained on an executor so that publishers never run listener code.
+ * At most one drain task per mailbox is scheduled at a time, so each listener still sees its messages in order.
+ */
+abstract class MessageBufferMailbox<E> implements Runnable, MessageBufferListenerMetrics {
+
+    // upper bound of messages delivered per drain task, so one busy listener cannot monopolize a shared executor
+    private static final int DRAIN_LIMIT = 256;
+
+    private final BlockingQueue<E> queue;
+    private final Executor executor;
+    private final MessageBufferOverflowPolicy overflowPolicy;
+    private final AtomicBoolean scheduled;
+    private final AtomicLong deliveredCount;
+    private final AtomicLong droppedCount;
+
+    private volatile long lastQueuedId;
+    private volatile long lastDeliveredId;
+    private volatile boolean disconnected;
+
+    MessageBufferMailbox(Executor executor, int capacity, MessageBufferOverflowPolicy overflowPolicy) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.executor = executor;
+        this.overflowPolicy = overflowPolicy;
+        this.scheduled = new AtomicBoolean();
+        this.deliveredCount = new AtomicLong();
+        this.droppedCount = new AtomicLong();
+    }
+
+    protected abstract void deliver(E entry) throws Exception;
+
+    protected abstract long idOf(E entry);
+
+    // called on the executor once the mailbox has been disconnected after an overflow
+    protected void disconnected() throws Exception {
+    }
+
+    /**
+     * Queues the entry for delivery.
+     * @return false if the listener is (or has just been) disconnected and should be removed
+     */
+    boolean offer(E entry) {
+        if (disconnected) {
+            return false;
+        }
+
+        if (lastQueuedId == 0) {
+            // listener joined mid-stream, so it is not behind on anything older than its first message
+            lastDeliveredId = idOf(entry) - 1;
+        }
+
+        if (!queue.offer(entry)) {
+            switch (overflowPolicy) {
+            case DROP_OLDEST:
+                while (!queue.offer(entry)) {
+                    if (queue.poll() != null) {
+                        droppedCount.incrementAndGet();
+                    }
+                }
+                break;
+            case DISCONNECT:
+                close();
+                scheduleDisconnected();
+                return false;
+            }
+        }
+
+        lastQueuedId = idOf(entry);
+        schedule();
+        return true;
+    }
+
+    void close() {
+        disconnected = true;
+        droppedCount.addAndGet(queue.size());
+        queue.clear();
+    }
+
+    @Override
+    public void run() {
+        try {
+            for (int i = 0; i < DRAIN_LIMIT && !disconnected; i++) {
+                E entry = queue.poll();
+                if (entry == null) {
+                    break;
+                }
+                try {
+                    deliver(entry);
+                } catch (Exception e) {
+                    GL.warn("messaging", "Unable to process message buffer listener:\n{}", e);
+                }
+                lastDeliveredId = idOf(entry);
+                deliveredCount.incrementAndGet();
+            }
+        } finally {
+            scheduled.set(false);
+            // pick up anything queued after the last poll but before the flag was cleared
+            if (!queue.isEmpty() && !disconnected) {
+                schedule();
+            }
+        }
+    }
+
+    private void scheduleDisconnected() {
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        disconnected();
+                    } catch (Exception e) {
+                        GL.warn("messaging", "Unable to notify message buffer listener of disconnection:\n{}", e);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            GL.warn("messaging", "Unable to schedule message buffer listener disconnection:\n{}", e);
+        }
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                scheduled.set(false);
+                GL.warn("messaging", "Unable to schedule message buffer listener dispatch:\n{}", e);
+            }
+        }
+    }
+
+    @Override
+    public int getPendingCount() {
+        return queue.size();
+    }
+
+    @Override
+    public long getDeliveredCount() {
+        return deliveredCount.get();
+    }
+
+    @Override
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    @Override
+    public long getLag() {
+        long lag = lastQueuedId - lastDeliveredId;
+        return (lag < 0) ? 0 : lag;
+    }
+
+    @Override
+    public boolean isDisconnected() {
+        return disconnected;
+    }
+
+}
@@ -0,0 +1,36 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.kaazing.gateway.server.messaging.buffer;
+
+/**
+ * What an asynchronous listener mailbox does when a new message arrives and the mailbox is full.
+ */
+public enum MessageBufferOverflowPolicy {
+
+    // discard the oldest undelivered message to make room (the listener will see a gap in the ids)
+    DROP_OLDEST,
+
+    // remove the listener from the buffer, it will receive no further messages (a MessageBufferDisconnectListener is told)
+    DISCONNECT
+
+}
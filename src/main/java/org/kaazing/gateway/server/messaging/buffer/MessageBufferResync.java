@@ -0,0 +1,68 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.kaazing.gateway.server.messaging.buffer;
+
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+
+/**
+ * Answer to a {@link MessageBufferResyncRequest}: the entries the master still retains in the requested range, in id
+ * order. Ids in the range without an entry are gone for good, so replicas stop waiting for them.
+ */
+public class MessageBufferResync implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long fromId;
+    private final long toId;
+    private final LongMessageBufferEntry[] entries;
+
+    public MessageBufferResync(long fromId, long toId, LongMessageBufferEntry[] entries) {
+        this.fromId = fromId;
+        this.toId = toId;
+        this.entries = entries;
+    }
+
+    public long getFromId() {
+        return fromId;
+    }
+
+    public long getToId() {
+        return toId;
+    }
+
+    public LongMessageBufferEntry[] getEntries() {
+        return entries;
+    }
+
+    // replicated in the compact ReplicationRecord form
+    private Object writeReplace() throws ObjectStreamException {
+        return new ReplicationRecord(this);
+    }
+
+    @Override
+    public String toString() {
+        return "[fromId=" + fromId + ",toId=" + toId + ",size=" + entries.length + "]";
+    }
+
+}
@@ -0,0 +1,50 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.kaazing.gateway.server.messaging.buffer;
+
+import org.kaazing.gateway.service.messaging.buffer.MessageBuffer;
+import org.kaazing.gateway.service.messaging.buffer.MessageBufferEntry;
+
+/**
+ * {@link MessageBuffer} that can read a range of ids in a single pass, used to catch up subscribers.
+ */
+public interface RangeMessageBuffer extends MessageBuffer {
+
+    /**
+     * Copy the entries with ids from <code>fromId</code> up to the youngest id into <code>entries</code>. Ids that are
+     * no longer (or not yet) in the buffer are skipped, so the copy starts at the oldest id if <code>fromId</code> is older.
+     *
+     * @return the number of entries copied, at most <code>length</code>
+     */
+    int get(int fromId, MessageBufferEntry[] entries, int offset, int length);
+
+    /**
+     * Visit, in id order, the entries with ids from <code>fromId</code> to <code>toId</code> inclusive.
+     *
+     * @return the number of entries visited
+     */
+    int visit(int fromId, int toId, MessageBufferVisitor<MessageBufferEntry> visitor);
+
+    MessageBufferCursor<MessageBufferEntry> cursor(int fromId);
+
+}
@@ -0,0 +1,174 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.kaazing.gateway.server.messaging.buffer;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.kaazing.gateway.util.GL;
+
+/**
+ * Applies replicated entries to a replica buffer strictly in id order. An entry that arrives ahead of the next expected id
+ * is held back and the missing range is requested from the master. The held entries are applied once the range has been
+ * resynced, or, if no answer arrives within the resync timeout (or too many entries are held), the gap is skipped.
+ */
+abstract class ReplicaSequencer {
+
+    private final long resyncTimeout;
+    private final int maxPending;
+    private final Runnable timeoutTask;
+
+    // guarded by this
+    private final TreeMap<Long, LongMessageBufferEntry> pending;
+    private long resyncToId;
+    private long resyncDeadline;
+    private ScheduledFuture<?> resyncTimer;
+
+    ReplicaSequencer(long resyncTimeout, int maxPending) {
+        this.resyncTimeout = resyncTimeout;
+        this.maxPending = maxPending;
+        this.pending = new TreeMap<>();
+        this.timeoutTask = new Runnable() {
+            @Override
+            public void run() {
+                checkResync();
+            }
+        };
+    }
+
+    protected abstract long youngestId();
+
+    protected abstract void apply(LongMessageBufferEntry entry);
+
+    protected abstract void requestResync(long fromId, long toId);
+
+    synchronized void receive(LongMessageBufferEntry entry) {
+        long id = entry.getId();
+        long expectedId = youngestId() + 1;
+        if (id < expectedId) {
+            // already applied (e.g. our own entry on the master)
+            return;
+        }
+
+        if (id == expectedId && pending.isEmpty()) {
+            apply(entry);
+            return;
+        }
+
+        pending.put(id, entry);
+        if (pending.size() > maxPending) {
+            skipGap("too many entries waiting");
+        } else {
+            drain(youngestId());
+        }
+    }
+
+    synchronized void resync(MessageBufferResync resync) {
+        GL.debug("messaging", "Received message buffer resync {}", resync);
+        for (LongMessageBufferEntry entry : resync.getEntries()) {
+            if (entry.getId() > youngestId()) {
+                apply(entry);
+            }
+        }
+        if (resync.getToId() >= resyncToId) {
+            resyncToId = 0;
+        }
+        drain(resync.getToId());
+    }
+
+    synchronized void checkResync() {
+        if (resyncToId == 0) {
+            return;
+        }
+
+        long remaining = resyncDeadline - System.nanoTime();
+        if (remaining > 0) {
+            // the timer fired early, so wait for the rest of the timeout
+            scheduleResyncTimer(remaining);
+        } else {
+            skipGap("resync timed out");
+        }
+    }
+
+    synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    private void skipGap(String reason) {
+        if (pending.isEmpty()) {
+            resyncToId = 0;
+            return;
+        }
+        long toId = pending.firstKey() - 1;
+        GL.warn("messaging", "Skipping message ids {} to {} in replicated message buffer, {}", youngestId() + 1, toId,
+                reason);
+        resyncToId = 0;
+        drain(toId);
+    }
+
+    // apply held entries that follow on from the youngest id (or from resolvedId, when ids up to it are known to be
+    // gone), then ask for the next gap, if any
+    private void drain(long resolvedId) {
+        while (!pending.isEmpty()) {
+            Map.Entry<Long, LongMessageBufferEntry> first = pending.firstEntry();
+            long youngestId = youngestId();
+            long id = first.getKey();
+            if (id > Math.max(youngestId, resolvedId) + 1) {
+                break;
+            }
+            pending.pollFirstEntry();
+            if (id > youngestId) {
+                apply(first.getValue());
+            }
+        }
+
+        // the requested gap may have been filled without a resync answer, e.g. by entries delivered late
+        if (resyncToId != 0 && (pending.isEmpty() || youngestId() >= resyncToId)) {
+            resyncToId = 0;
+        }
+
+        if (!pending.isEmpty() && resyncToId == 0) {
+            long fromId = Math.max(youngestId(), resolvedId) + 1;
+            resyncToId = pending.firstKey() - 1;
+            resyncDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(resyncTimeout);
+            GL.debug("messaging", "Detected gap in replicated message buffer, requesting ids {} to {}", fromId,
+                    resyncToId);
+            try {
+                requestResync(fromId, resyncToId);
+            } catch (Exception e) {
+                GL.warn("messaging", "Unable to request message buffer resync:\n{}", e);
+            }
+            scheduleResyncTimer(TimeUnit.MILLISECONDS.toNanos(resyncTimeout));
+        }
+    }
+
+    // a single timer per sequencer, for the gap currently requested
+    private void scheduleResyncTimer(long delayNanos) {
+        if (resyncTimer != null) {
+            resyncTimer.cancel(false);
+        }
+        resyncTimer = MessageBufferScheduler.INSTANCE.schedule(timeoutTask, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+}
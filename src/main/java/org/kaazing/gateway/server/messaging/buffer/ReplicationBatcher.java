@@ -0,0 +1,109 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.kaazing.gateway.server.messaging.buffer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.kaazing.gateway.util.GL;
+
+/**
+ * Collects entries to replicate and publishes them as a {@link LongMessageBufferBatch} when the batch is full or its
+ * delay expires, whichever comes first. Batches are published one at a time, each sorted by id, so receivers that apply
+ * them in order see the same sequence as the master buffer. Entries are only collected under the batcher lock, so adding
+ * an entry never waits for a batch being published unless the entry fills the next batch.
+ */
+abstract class ReplicationBatcher {
+
+    private static final Comparator<LongMessageBufferEntry> ID_ORDER = new Comparator<LongMessageBufferEntry>() {
+        @Override
+        public int compare(LongMessageBufferEntry e1, LongMessageBufferEntry e2) {
+            return (e1.getId() < e2.getId()) ? -1 : ((e1.getId() == e2.getId()) ? 0 : 1);
+        }
+    };
+
+    private final int maxBatchSize;
+    private final long maxBatchDelay;
+    private final Runnable flushTask;
+
+    // held while a batch is taken and published, so batches are published in the order they were taken
+    private final Object publishLock;
+
+    // guarded by this
+    private List<LongMessageBufferEntry> pending;
+
+    ReplicationBatcher(ClusterReplication replication) {
+        this.maxBatchSize = replication.getMaxBatchSize();
+        this.maxBatchDelay = replication.getMaxBatchDelay();
+        this.pending = new ArrayList<>(maxBatchSize);
+        this.publishLock = new Object();
+        this.flushTask = new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        };
+    }
+
+    protected abstract void publish(Object record);
+
+    void add(LongMessageBufferEntry entry) {
+        synchronized (this) {
+            pending.add(entry);
+            if (pending.size() < maxBatchSize) {
+                if (pending.size() == 1) {
+                    MessageBufferScheduler.INSTANCE.schedule(flushTask, maxBatchDelay, TimeUnit.MILLISECONDS);
+                }
+                return;
+            }
+        }
+        flush();
+    }
+
+    void flush() {
+        synchronized (publishLock) {
+            List<LongMessageBufferEntry> batch;
+            synchronized (this) {
+                if (pending.isEmpty()) {
+                    return;
+                }
+                batch = pending;
+                pending = new ArrayList<>(maxBatchSize);
+            }
+
+            try {
+                if (batch.size() == 1) {
+                    publish(batch.get(0));
+                } else {
+                    Collections.sort(batch, ID_ORDER);
+                    publish(new LongMessageBufferBatch(batch.toArray(new LongMessageBufferEntry[batch.size()])));
+                }
+            } catch (Exception e) {
+                GL.warn("messaging", "Unable to replicate message buffer entries:\n{}", e);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,132 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.kaazing.gateway.server.messaging.buffer;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.ObjectStreamException;
+import org.kaazing.gateway.server.messaging.MessagingMessageCodec;
+
+/**
+ * Serialized form of the records that cluster message buffers replicate ({@link LongMessageBufferEntry},
+ * {@link LongMessageBufferBatch} and {@link MessageBufferResync}). The records substitute this proxy when they are
+ * serialized, and it resolves back to the original record when deserialized.
+ *
+ * Messages are written with a single {@link MessagingMessageCodec} per record, so attribute names are sent once per batch,
+ * and the (ascending) ids of a batch are written as deltas.
+ */
+public final class ReplicationRecord implements Externalizable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final byte ENTRY = 1;
+    private static final byte BATCH = 2;
+    private static final byte RESYNC = 3;
+
+    private Object record;
+
+    // used by deserialization only
+    public ReplicationRecord() {
+    }
+
+    ReplicationRecord(Object record) {
+        this.record = record;
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        MessagingMessageCodec codec = new MessagingMessageCodec();
+        if (record instanceof LongMessageBufferEntry) {
+            LongMessageBufferEntry entry = (LongMessageBufferEntry) record;
+            out.writeByte(ENTRY);
+            MessagingMessageCodec.writeVarLong(out, entry.getId());
+            codec.writeMessage(out, entry.getMessage());
+        } else if (record instanceof LongMessageBufferBatch) {
+            out.writeByte(BATCH);
+            writeEntries(out, codec, ((LongMessageBufferBatch) record).getEntries());
+        } else if (record instanceof MessageBufferResync) {
+            MessageBufferResync resync = (MessageBufferResync) record;
+            out.writeByte(RESYNC);
+            MessagingMessageCodec.writeVarLong(out, resync.getFromId());
+            MessagingMessageCodec.writeVarLong(out, resync.getToId());
+            writeEntries(out, codec, resync.getEntries());
+        } else {
+            throw new InvalidObjectException("Unsupported replication record " + record);
+        }
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException {
+        MessagingMessageCodec codec = new MessagingMessageCodec();
+        byte kind = in.readByte();
+        switch (kind) {
+        case ENTRY:
+            long id = MessagingMessageCodec.readVarLong(in);
+            record = new LongMessageBufferEntry(id, codec.readMessage(in));
+            break;
+        case BATCH:
+            record = new LongMessageBufferBatch(readEntries(in, codec));
+            break;
+        case RESYNC:
+            long fromId = MessagingMessageCodec.readVarLong(in);
+            long toId = MessagingMessageCodec.readVarLong(in);
+            record = new MessageBufferResync(fromId, toId, readEntries(in, codec));
+            break;
+        default:
+            throw new InvalidObjectException("Unknown replication record kind " + kind);
+        }
+    }
+
+    private Object readResolve() throws ObjectStreamException {
+        return record;
+    }
+
+    private static void writeEntries(ObjectOutput out, MessagingMessageCodec codec, LongMessageBufferEntry[] entries)
+            throws IOException {
+        MessagingMessageCodec.writeVarInt(out, entries.length);
+        long previousId = 0;
+        for (LongMessageBufferEntry entry : entries) {
+            long delta = entry.getId() - previousId;
+            if (delta < 0) {
+                throw new InvalidObjectException("Replicated entries must be in ascending id order");
+            }
+            MessagingMessageCodec.writeVarLong(out, delta);
+            codec.writeMessage(out, entry.getMessage());
+            previousId = entry.getId();
+        }
+    }
+
+    private static LongMessageBufferEntry[] readEntries(ObjectInput in, MessagingMessageCodec codec) throws IOException {
+        LongMessageBufferEntry[] entries = new LongMessageBufferEntry[MessagingMessageCodec.readVarInt(in)];
+        long id = 0;
+        for (int i = 0; i < entries.length; i++) {
+            id += MessagingMessageCodec.readVarLong(in);
+            entries[i] = new LongMessageBufferEntry(id, codec.readMessage(in));
+        }
+        return entries;
+    }
+
+}
@@ -0,0 +1,246 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.kaazing.gateway.server.messaging.buffer;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import org.kaazing.gateway.service.messaging.MessagingMessage;
+import org.kaazing.gateway.service.messaging.buffer.MessageBufferEntry;
+import org.kaazing.gateway.service.messaging.buffer.MessageBufferListener;
+
+/**
+ * Lock-free alternative to {@link MemoryMessageBuffer}. Writers claim an id from a shared sequence, store the entry in its
+ * slot and then publish it by advancing the cursor in id order, so listeners still see messages in order. Readers never
+ * block and never write shared state: they read the published cursor, then the slot, and validate the entry against the
+ * requested id, treating a mismatch (the slot has already been reused) as an expired message. Listeners are notified in id
+ * order once the message is visible to readers.
+ * <p>
+ * With synchronous dispatch a listener must not add or set messages on the buffer notifying it: its message waits for the
+ * notification in progress to complete, so it is rejected with an {@link IllegalStateException} rather than deadlocking.
+ */
+public class RingMessageBuffer implements RangeMessageBuffer {
+
+    // writers waiting for an earlier claim spin, then yield, then park for this long between checks
+    private static final int SPIN_TRIES = 100;
+    private static final int YIELD_TRIES = 200;
+    private static final long PARK_NANOS = 1000L;
+
+    private final MessageBufferListenerSupport listenerSupport;
+
+    private final AtomicReferenceArray<MessageBufferEntry> messages;
+    private final int capacity;
+
+    // next id to be claimed by a writer
+    private final AtomicInteger nextId;
+
+    // youngest id visible to readers, always advanced in id order
+    private final AtomicInteger cursor;
+
+    // youngest id listeners were notified of, always advanced in id order after the cursor
+    private final AtomicInteger notifiedId;
+
+    // set while the current thread notifies listeners synchronously
+    private final ThreadLocal<Boolean> notifying;
+
+    public RingMessageBuffer(int capacity) {
+        this(capacity, MessageBufferDispatch.SYNCHRONOUS);
+    }
+
+    public RingMessageBuffer(int capacity, MessageBufferDispatch dispatch) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+
+        listenerSupport = dispatch.newListenerSupport();
+
+        this.capacity = capacity;
+        messages = new AtomicReferenceArray<MessageBufferEntry>(capacity);
+        nextId = new AtomicInteger(1);
+        cursor = new AtomicInteger(0);
+        notifiedId = new AtomicInteger(0);
+        notifying = new ThreadLocal<Boolean>();
+    }
+
+    @Override
+    public MessageBufferEntry add(MessagingMessage message) {
+        checkNotNotifying();
+        int id = nextId.getAndIncrement();
+        MessageBufferEntry m = new MessageBufferEntry(id, message);
+        publish(id - 1, id, m);
+        return m;
+    }
+
+    @Override
+    public MessageBufferEntry set(int index, MessagingMessage message) {
+        checkNotNotifying();
+        MessageBufferEntry m = new MessageBufferEntry(index, message);
+
+        int claimed;
+        do {
+            claimed = nextId.get();
+            if (claimed > index) {
+                // already claimed, so only overwrite the slot if it is still within the window
+                if (claimed - index <= capacity) {
+                    messages.set(index % capacity, m);
+                    listenerSupport.messageAdded(m);
+                }
+                return m;
+            }
+        } while (!nextId.compareAndSet(claimed, index + 1));
+
+        // ids between claimed and index are skipped, readers will see them as missing
+        publish(claimed - 1, index, m);
+        return m;
+    }
+
+    @Override
+    public MessageBufferEntry get(int id) {
+        if (id < 1) {
+            return null;
+        }
+
+        int youngestId = cursor.get();
+        if (id > youngestId || id <= youngestId - capacity) {
+            return null;
+        }
+
+        MessageBufferEntry message = messages.get(id % capacity);
+        return (message != null && message.getId() == id) ? message : null;
+    }
+
+    @Override
+    public int get(int fromId, MessageBufferEntry[] entries, int offset, int length) {
+        int youngestId = cursor.get();
+        int count = 0;
+        for (int id = Math.max(fromId, oldestId(youngestId)); id <= youngestId && count < length; id++) {
+            MessageBufferEntry message = messages.get(id % capacity);
+            if (message != null && message.getId() == id) {
+                entries[offset + count++] = message;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public int visit(int fromId, int toId, MessageBufferVisitor<MessageBufferEntry> visitor) {
+        int youngestId = cursor.get();
+        int lastId = Math.min(toId, youngestId);
+        int count = 0;
+        for (int id = Math.max(fromId, oldestId(youngestId)); id <= lastId; id++) {
+            MessageBufferEntry message = messages.get(id % capacity);
+            if (message != null && message.getId() == id) {
+                count++;
+                if (!visitor.visit(message)) {
+                    break;
+                }
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public MessageBufferCursor<MessageBufferEntry> cursor(int fromId) {
+        return new RangeMessageBufferCursor(this, fromId);
+    }
+
+    @Override
+    public int getYoungestId() {
+        return cursor.get();
+    }
+
+    @Override
+    public int getOldestId() {
+        return oldestId(cursor.get());
+    }
+
+    @Override
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public void addMessageBufferListener(MessageBufferListener listener) {
+        listenerSupport.addMessageBufferListener(listener);
+    }
+
+    @Override
+    public void removeMessageBufferListener(MessageBufferListener listener) {
+        listenerSupport.removeMessageBufferListener(listener);
+    }
+
+    /**
+     * Returns the delivery statistics of a listener when the buffer uses asynchronous dispatch, otherwise null.
+     */
+    public MessageBufferListenerMetrics getListenerMetrics(MessageBufferListener listener) {
+        return listenerSupport.getListenerMetrics(listener);
+    }
+
+    private int oldestId(int youngestId) {
+        int id = youngestId + 1 - capacity;
+        return (id < 1) ? 1 : id;
+    }
+
+    // checked before claiming an id, since a claim that is never published blocks every later writer
+    private void checkNotNotifying() {
+        if (notifying.get() != null) {
+            throw new IllegalStateException("Message buffer listeners must not write to the buffer notifying them");
+        }
+    }
+
+    /**
+     * Wait for all earlier claims to be published, then store the entry and advance the cursor, then notify listeners once
+     * the earlier claims have been notified. A failing listener does not keep later claims from being published.
+     */
+    private void publish(int previousId, int id, MessageBufferEntry m) {
+        await(cursor, previousId);
+
+        messages.set(id % capacity, m);
+        cursor.set(id);
+
+        await(notifiedId, previousId);
+
+        notifying.set(Boolean.TRUE);
+        try {
+            listenerSupport.messageAdded(m);
+        } finally {
+            notifying.remove();
+            notifiedId.set(id);
+        }
+    }
+
+    private static void await(AtomicInteger value, int expected) {
+        int tries = 0;
+        while (value.get() != expected) {
+            if (tries < SPIN_TRIES) {
+                tries++;
+            } else if (tries < YIELD_TRIES) {
+                tries++;
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(PARK_NANOS);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,49 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.kaazing.gateway.server.messaging.channel;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import org.kaazing.gateway.service.cluster.MemberId;
+
+/**
+ * The messages one member sends to another in a single transport operation.
+ */
+final class ChannelBatch implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    final MemberId sender;
+    final ChannelMessage[] messages;
+
+    ChannelBatch(MemberId sender, ChannelMessage[] messages) {
+        this.sender = sender;
+        this.messages = messages;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("[sender=%s messages=%s]", sender, Arrays.toString(messages));
+    }
+
+}
@@ -0,0 +1,55 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.kaazing.gateway.server.messaging.channel;
+
+import java.io.Serializable;
+
+/**
+ * One message of a {@link ChannelBatch}: a request awaiting a response, a one-way message, or the response or failure
+ * answering the request with the same correlation id.
+ */
+final class ChannelMessage implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    static final byte REQUEST = 0;
+    static final byte ONE_WAY = 1;
+    static final byte RESPONSE = 2;
+    static final byte FAILURE = 3;
+
+    final byte kind;
+    final long correlationId;
+    final Object payload;
+
+    ChannelMessage(byte kind, long correlationId, Object payload) {
+        this.kind = kind;
+        this.correlationId = correlationId;
+        this.payload = payload;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("[kind=%d id=%d payload=%s]", kind, correlationId, payload);
+    }
+
+}
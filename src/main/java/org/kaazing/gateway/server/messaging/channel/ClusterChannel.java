@@ -0,0 +1,435 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.kaazing.gateway.server.messaging.channel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.kaazing.gateway.service.cluster.MemberId;
+import org.kaazing.gateway.util.GL;
+
+/**
+ * A pipelined, asynchronous messaging channel between cluster members. Requests carry a correlation id and complete a
+ * {@link ClusterFuture} when the response arrives, so that callers never wait on a round trip. Messages for a member are
+ * queued and sent in batches, so that a burst of small messages costs one transport operation, and at most
+ * {@link ClusterChannelSettings#getMaxInFlight()} requests per member await a response while the rest stay queued.
+ * Responses and one-way messages are never held back by the in-flight limit. Each member's batches are sent by one thread
+ * at a time, but different members are sent to in parallel, so a slow member does not hold up the others.
+ * <p>
+ * A channel costs no threads and no transport subscription until it is first used: sending a request or message, or
+ * setting a handler, starts it. A member that never does either does not answer requests, which then time out.
+ */
+public class ClusterChannel {
+
+    private static final int QUEUED = 0;
+    private static final int SENT = 1;
+    private static final int COMPLETED = 2;
+
+    private final MemberId localMember;
+    private final ClusterChannelTransport transport;
+    private final ClusterChannelSettings settings;
+    private final AtomicLong correlationIds = new AtomicLong();
+    private final ConcurrentMap<Long, PendingRequest> pendingRequests = new ConcurrentHashMap<Long, PendingRequest>();
+    private final ConcurrentMap<MemberId, Outbox> outboxes = new ConcurrentHashMap<MemberId, Outbox>();
+    private final ConcurrentMap<Class<?>, ClusterChannelHandler<?>> handlers =
+            new ConcurrentHashMap<Class<?>, ClusterChannelHandler<?>>();
+    private volatile ScheduledExecutorService timer;
+    private volatile ExecutorService sender;
+    private volatile ExecutorService receiver;
+    private boolean started;
+    private boolean disposed;
+
+    public ClusterChannel(MemberId localMember, ClusterChannelTransport transport, ClusterChannelSettings settings) {
+        this.localMember = localMember;
+        this.transport = transport;
+        this.settings = settings;
+    }
+
+    public MemberId getLocalMember() {
+        return localMember;
+    }
+
+    public ClusterChannelSettings getSettings() {
+        return settings;
+    }
+
+    /**
+     * Sends a request to a member without waiting for it to be sent or answered.
+     *
+     * @return a future completed with the response of the member's handler, or failed with the handler's exception, a
+     * {@link TimeoutException} or an {@link IllegalStateException} when the member leaves the cluster
+     */
+    @SuppressWarnings("unchecked")
+    public <T> ClusterFuture<T> request(MemberId member, Object message) {
+        long correlationId = correlationIds.incrementAndGet();
+        final PendingRequest request = new PendingRequest(correlationId, member);
+        pendingRequests.put(correlationId, request);
+        try {
+            start();
+            request.timeout = timer.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    fail(request, new TimeoutException(String.format("No response from cluster member %s after %d ms",
+                            request.member, settings.getRequestTimeout())));
+                }
+            }, settings.getRequestTimeout(), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            fail(request, new IllegalStateException("Cluster channel is disposed"));
+            return (ClusterFuture<T>) request.future;
+        }
+
+        // a cancelled request gives up its place in the queue, or its in-flight slot once sent
+        request.future.addListener(new ClusterFutureListener<Object>() {
+            @Override
+            public void operationComplete(ClusterFuture<Object> future) {
+                if (future.isCancelled() && pendingRequests.remove(request.correlationId, request)) {
+                    request.finish(ClusterChannel.this);
+                }
+            }
+        });
+
+        outbox(member).enqueueRequest(new ChannelMessage(ChannelMessage.REQUEST, correlationId, message));
+        return (ClusterFuture<T>) request.future;
+    }
+
+    /**
+     * Sends a one-way message to a member, which is handled like a request but not answered.
+     */
+    public void post(MemberId member, Object message) {
+        try {
+            start();
+        } catch (RejectedExecutionException e) {
+            // disposed
+            return;
+        }
+        outbox(member).enqueue(new ChannelMessage(ChannelMessage.ONE_WAY, 0L, message));
+    }
+
+    /**
+     * Handles the messages of the type, and of its subclasses without a handler of their own, received from other members.
+     */
+    public <T> void setHandler(Class<T> type, ClusterChannelHandler<? super T> handler) {
+        handlers.put(type, handler);
+        try {
+            start();
+        } catch (RejectedExecutionException e) {
+            // disposed
+        }
+    }
+
+    public void removeHandler(Class<?> type) {
+        handlers.remove(type);
+    }
+
+    /**
+     * @return the number of requests awaiting a response, sent or still queued
+     */
+    public int getPendingRequestCount() {
+        return pendingRequests.size();
+    }
+
+    /**
+     * Fails the requests to a member that left the cluster and drops the messages still queued for it.
+     */
+    public void memberRemoved(MemberId member) {
+        Outbox outbox = outboxes.remove(member);
+        if (outbox != null) {
+            outbox.messages.clear();
+            outbox.requests.clear();
+        }
+        for (PendingRequest request : pendingRequests.values()) {
+            if (request.member.equals(member)) {
+                fail(request, new IllegalStateException("Cluster member " + member + " has left the cluster"));
+            }
+        }
+    }
+
+    public void dispose() {
+        synchronized (this) {
+            if (disposed) {
+                return;
+            }
+            disposed = true;
+            if (started) {
+                transport.unbind();
+                timer.shutdownNow();
+                sender.shutdownNow();
+                receiver.shutdownNow();
+            }
+        }
+        for (PendingRequest request : pendingRequests.values()) {
+            fail(request, new IllegalStateException("Cluster channel is disposed"));
+        }
+        outboxes.clear();
+    }
+
+    private synchronized void start() {
+        if (disposed) {
+            throw new RejectedExecutionException("Cluster channel is disposed");
+        }
+        if (started) {
+            return;
+        }
+
+        started = true;
+        timer = Executors.newSingleThreadScheduledExecutor(newThreadFactory("cluster-channel-timeout"));
+        // an outbox is run by one thread at a time, so there are never more senders than members being sent to
+        sender = Executors.newCachedThreadPool(newThreadFactory("cluster-channel-send"));
+        receiver = Executors.newSingleThreadExecutor(newThreadFactory("cluster-channel-receive"));
+        transport.bind(localMember, new ClusterChannelTransport.Receiver() {
+            @Override
+            public void receive(Object batch) {
+                ClusterChannel.this.receive((ChannelBatch) batch);
+            }
+        });
+    }
+
+    private Outbox outbox(MemberId member) {
+        Outbox outbox = outboxes.get(member);
+        if (outbox == null) {
+            Outbox newOutbox = new Outbox(member);
+            outbox = outboxes.putIfAbsent(member, newOutbox);
+            if (outbox == null) {
+                outbox = newOutbox;
+            }
+        }
+        return outbox;
+    }
+
+    private void receive(final ChannelBatch batch) {
+        for (final ChannelMessage message : batch.messages) {
+            switch (message.kind) {
+            case ChannelMessage.RESPONSE:
+                complete(message.correlationId, message.payload, null);
+                break;
+            case ChannelMessage.FAILURE:
+                complete(message.correlationId, null, (Throwable) message.payload);
+                break;
+            default:
+                try {
+                    receiver.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            handle(batch.sender, message);
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    // disposed, the sender's request times out
+                }
+                break;
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void handle(MemberId sender, ChannelMessage message) {
+        Object payload = message.payload;
+        ClusterChannelHandler<Object> handler = (ClusterChannelHandler<Object>) findHandler(payload);
+        Object response;
+        byte kind;
+        try {
+            if (handler == null) {
+                throw new IllegalStateException("No cluster channel handler for " + payload.getClass().getName());
+            }
+            response = handler.handle(sender, payload);
+            kind = ChannelMessage.RESPONSE;
+        } catch (Exception e) {
+            if (message.kind == ChannelMessage.ONE_WAY) {
+                GL.warn("ha", "Unable to handle cluster channel message from {}: {}", sender, e);
+            }
+            response = e;
+            kind = ChannelMessage.FAILURE;
+        }
+
+        if (message.kind == ChannelMessage.REQUEST) {
+            outbox(sender).enqueue(new ChannelMessage(kind, message.correlationId, response));
+        }
+    }
+
+    private ClusterChannelHandler<?> findHandler(Object payload) {
+        for (Class<?> type = payload.getClass(); type != null; type = type.getSuperclass()) {
+            ClusterChannelHandler<?> handler = handlers.get(type);
+            if (handler != null) {
+                return handler;
+            }
+        }
+        return null;
+    }
+
+    private void complete(long correlationId, Object value, Throwable cause) {
+        PendingRequest request = pendingRequests.remove(correlationId);
+        if (request == null) {
+            // already timed out or failed
+            return;
+        }
+        request.finish(this);
+        if (cause != null) {
+            request.future.setException(cause);
+        } else {
+            request.future.setValue(value);
+        }
+    }
+
+    private void fail(PendingRequest request, Throwable cause) {
+        if (pendingRequests.remove(request.correlationId, request)) {
+            request.finish(this);
+            request.future.setException(cause);
+        }
+    }
+
+    private static ThreadFactory newThreadFactory(final String name) {
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    private static final class PendingRequest {
+        private final long correlationId;
+        private final MemberId member;
+        private final ClusterFuture<Object> future = new ClusterFuture<Object>();
+        private final AtomicInteger state = new AtomicInteger(QUEUED);
+        private volatile ScheduledFuture<?> timeout;
+
+        private PendingRequest(long correlationId, MemberId member) {
+            this.correlationId = correlationId;
+            this.member = member;
+        }
+
+        private void finish(ClusterChannel channel) {
+            ScheduledFuture<?> timeoutFuture = timeout;
+            if (timeoutFuture != null) {
+                timeoutFuture.cancel(false);
+            }
+            if (state.getAndSet(COMPLETED) == SENT) {
+                Outbox outbox = channel.outboxes.get(member);
+                if (outbox != null) {
+                    outbox.requestCompleted();
+                }
+            }
+        }
+    }
+
+    private final class Outbox implements Runnable {
+        private final MemberId member;
+        private final Queue<ChannelMessage> messages = new ConcurrentLinkedQueue<ChannelMessage>();
+        private final Queue<ChannelMessage> requests = new ConcurrentLinkedQueue<ChannelMessage>();
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        private Outbox(MemberId member) {
+            this.member = member;
+        }
+
+        void enqueue(ChannelMessage message) {
+            messages.offer(message);
+            schedule();
+        }
+
+        void enqueueRequest(ChannelMessage request) {
+            requests.offer(request);
+            schedule();
+        }
+
+        void requestCompleted() {
+            inFlight.decrementAndGet();
+            if (!requests.isEmpty()) {
+                schedule();
+            }
+        }
+
+        @Override
+        public void run() {
+            scheduled.set(false);
+
+            int maxBatchSize = settings.getMaxBatchSize();
+            List<ChannelMessage> batch = new ArrayList<ChannelMessage>();
+            List<PendingRequest> sentRequests = new ArrayList<PendingRequest>();
+            while (batch.size() < maxBatchSize) {
+                ChannelMessage message = messages.poll();
+                if (message == null) {
+                    break;
+                }
+                batch.add(message);
+            }
+            while (batch.size() < maxBatchSize && inFlight.get() < settings.getMaxInFlight()) {
+                ChannelMessage request = requests.poll();
+                if (request == null) {
+                    break;
+                }
+                PendingRequest pendingRequest = pendingRequests.get(request.correlationId);
+                if (pendingRequest == null || !pendingRequest.state.compareAndSet(QUEUED, SENT)) {
+                    // timed out while queued
+                    continue;
+                }
+                inFlight.incrementAndGet();
+                batch.add(request);
+                sentRequests.add(pendingRequest);
+            }
+
+            if (!batch.isEmpty()) {
+                try {
+                    transport.send(member, new ChannelBatch(localMember, batch.toArray(new ChannelMessage[batch.size()])));
+                } catch (Exception e) {
+                    GL.warn("ha", "Unable to send {} cluster channel messages to {}: {}", batch.size(), member, e);
+                    for (PendingRequest pendingRequest : sentRequests) {
+                        fail(pendingRequest, e);
+                    }
+                }
+            }
+
+            if (!messages.isEmpty() || (!requests.isEmpty() && inFlight.get() < settings.getMaxInFlight())) {
+                schedule();
+            }
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    sender.execute(this);
+                } catch (RejectedExecutionException e) {
+                    // disposed
+                }
+            }
+        }
+    }
+
+}
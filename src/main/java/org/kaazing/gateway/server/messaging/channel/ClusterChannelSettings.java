@@ -0,0 +1,72 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.kaazing.gateway.server.messaging.channel;
+
+/**
+ * How a {@link ClusterChannel} pipelines messages to a member. At most <code>maxInFlight</code> requests await a response
+ * from one member at any time, further requests are queued without blocking the caller. Queued messages are sent in
+ * batches of up to <code>maxBatchSize</code>, and requests fail with a timeout after <code>requestTimeout</code>
+ * milliseconds.
+ */
+public class ClusterChannelSettings {
+
+    public static final ClusterChannelSettings DEFAULT = new ClusterChannelSettings(64, 32, 30000);
+
+    private final int maxInFlight;
+    private final int maxBatchSize;
+    private final long requestTimeout;
+
+    public ClusterChannelSettings(int maxInFlight, int maxBatchSize, long requestTimeout) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("In-flight limit must be positive: " + maxInFlight);
+        }
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive: " + maxBatchSize);
+        }
+        if (requestTimeout < 1) {
+            throw new IllegalArgumentException("Request timeout must be positive: " + requestTimeout);
+        }
+        this.maxInFlight = maxInFlight;
+        this.maxBatchSize = maxBatchSize;
+        this.requestTimeout = requestTimeout;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public long getRequestTimeout() {
+        return requestTimeout;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("[maxInFlight=%d maxBatchSize=%d requestTimeout=%d]", maxInFlight, maxBatchSize,
+                requestTimeout);
+    }
+
+}
@@ -0,0 +1,168 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.kaazing.gateway.server.messaging.channel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The result of an asynchronous cluster operation. Besides blocking with {@link #get()}, callers can register listeners,
+ * which run on the thread that completes the future, or immediately when the future is already done, so that IO threads
+ * never have to wait for a round trip to another member.
+ */
+public class ClusterFuture<V> implements Future<V> {
+
+    private List<ClusterFutureListener<V>> listeners;
+    private boolean done;
+    private V value;
+    private Throwable cause;
+
+    /**
+     * @return true if this call completed the future
+     */
+    public boolean setValue(V value) {
+        synchronized (this) {
+            if (done) {
+                return false;
+            }
+            this.value = value;
+            this.done = true;
+            notifyAll();
+        }
+        notifyListeners();
+        return true;
+    }
+
+    /**
+     * @return true if this call completed the future
+     */
+    public boolean setException(Throwable cause) {
+        synchronized (this) {
+            if (done) {
+                return false;
+            }
+            this.cause = cause;
+            this.done = true;
+            notifyAll();
+        }
+        notifyListeners();
+        return true;
+    }
+
+    public void addListener(ClusterFutureListener<V> listener) {
+        synchronized (this) {
+            if (!done) {
+                if (listeners == null) {
+                    listeners = new ArrayList<ClusterFutureListener<V>>(1);
+                }
+                listeners.add(listener);
+                return;
+            }
+        }
+        listener.operationComplete(this);
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return setException(new CancellationException());
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return cause instanceof CancellationException;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return done;
+    }
+
+    public synchronized boolean isSuccess() {
+        return done && cause == null;
+    }
+
+    /**
+     * @return the reason the future failed, or null if it succeeded or is not done yet
+     */
+    public synchronized Throwable getCause() {
+        return cause;
+    }
+
+    /**
+     * @return the value, or null if the future failed or is not done yet
+     */
+    public synchronized V getNow() {
+        return value;
+    }
+
+    @Override
+    public synchronized V get() throws InterruptedException, ExecutionException {
+        while (!done) {
+            wait();
+        }
+        return getValue();
+    }
+
+    @Override
+    public synchronized V get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException,
+            TimeoutException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!done) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                throw new TimeoutException();
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return getValue();
+    }
+
+    private V getValue() throws ExecutionException {
+        if (cause instanceof CancellationException) {
+            throw (CancellationException) cause;
+        }
+        if (cause != null) {
+            throw new ExecutionException(cause);
+        }
+        return value;
+    }
+
+    private void notifyListeners() {
+        List<ClusterFutureListener<V>> completedListeners;
+        synchronized (this) {
+            completedListeners = listeners;
+            listeners = null;
+        }
+        if (completedListeners != null) {
+            for (ClusterFutureListener<V> listener : completedListeners) {
+                listener.operationComplete(this);
+            }
+        }
+    }
+
+}
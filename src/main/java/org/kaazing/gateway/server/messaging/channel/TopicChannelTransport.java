@@ -0,0 +1,72 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.kaazing.gateway.server.messaging.channel;
+
+import com.hazelcast.core.ITopic;
+import com.hazelcast.core.MessageListener;
+import org.kaazing.gateway.server.cluster.ClusterBackend;
+import org.kaazing.gateway.service.cluster.MemberId;
+
+/**
+ * Sends the batches for a member on a topic of its own, so that each member only receives the traffic addressed to it.
+ */
+public class TopicChannelTransport implements ClusterChannelTransport {
+
+    private static final String TOPIC_PREFIX = "clusterChannel:";
+
+    private final ClusterBackend cluster;
+    private ITopic<Object> localTopic;
+    private MessageListener<Object> listener;
+
+    public TopicChannelTransport(ClusterBackend cluster) {
+        this.cluster = cluster;
+    }
+
+    @Override
+    public synchronized void bind(MemberId localMember, final Receiver receiver) {
+        localTopic = cluster.getTopic(TOPIC_PREFIX + localMember);
+        listener = new MessageListener<Object>() {
+            @Override
+            public void onMessage(Object batch) {
+                receiver.receive(batch);
+            }
+        };
+        localTopic.addMessageListener(listener);
+    }
+
+    @Override
+    public void send(MemberId member, Object batch) {
+        ITopic<Object> topic = cluster.getTopic(TOPIC_PREFIX + member);
+        topic.publish(batch);
+    }
+
+    @Override
+    public synchronized void unbind() {
+        if (localTopic != null) {
+            localTopic.removeMessageListener(listener);
+            localTopic = null;
+            listener = null;
+        }
+    }
+
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.kaazing.gateway.server.messaging.collections;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import org.kaazing.gateway.server.util.collection.CompletedFuture;
+
+/**
+ * Implements the bulk operations of {@link BulkCollectionsFactory} with plain {@link ConcurrentMap} operations on the maps
+ * returned by {@link #getMap(String)}. Factories whose maps support batching natively override the relevant methods.
+ */
+public abstract class AbstractBulkCollectionsFactory implements BulkCollectionsFactory {
+
+    @Override
+    public <K, V> Map<K, V> getAll(String name, Set<K> keys) {
+        ConcurrentMap<K, V> map = getMap(name);
+        Map<K, V> values = new HashMap<K, V>();
+        for (K key : keys) {
+            V value = map.get(key);
+            if (value != null) {
+                values.put(key, value);
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public <K, V> void putAll(String name, Map<? extends K, ? extends V> entries) {
+        ConcurrentMap<K, V> map = getMap(name);
+        map.putAll(entries);
+    }
+
+    @Override
+    public <K, V> Future<V> getAsync(String name, K key) {
+        ConcurrentMap<K, V> map = getMap(name);
+        return new CompletedFuture<V>(map.get(key));
+    }
+
+    @Override
+    public <K, V> Future<V> putAsync(String name, K key, V value) {
+        ConcurrentMap<K, V> map = getMap(name);
+        return new CompletedFuture<V>(map.put(key, value));
+    }
+
+    @Override
+    public <K, V> Future<V> removeAsync(String name, K key) {
+        ConcurrentMap<K, V> map = getMap(name);
+        return new CompletedFuture<V>(map.remove(key));
+    }
+
+    @Override
+    public <K, V> V update(String name, K key, EntryUpdater<K, V> updater) {
+        ConcurrentMap<K, V> map = getMap(name);
+        return update(map, key, map.get(key), updater);
+    }
+
+    @Override
+    public <K, V> Map<K, V> updateAll(String name, Set<K> keys, EntryUpdater<K, V> updater) {
+        ConcurrentMap<K, V> map = getMap(name);
+        Map<K, V> currentValues = getAll(name, keys);
+        Map<K, V> newValues = new HashMap<K, V>();
+        for (K key : keys) {
+            V newValue = update(map, key, currentValues.get(key), updater);
+            if (newValue != null) {
+                newValues.put(key, newValue);
+            }
+        }
+        return newValues;
+    }
+
+    /**
+     * Applies the updater with compare-and-set operations, starting from a value that may already be stale, and re-reading
+     * the entry only when another update got there first.
+     */
+    protected static <K, V> V update(ConcurrentMap<K, V> map, K key, V value, EntryUpdater<K, V> updater) {
+        V currentValue = value;
+        while (true) {
+            V newValue = updater.update(key, currentValue);
+            if (currentValue == null) {
+                if (newValue == null) {
+                    return null;
+                }
+                currentValue = map.putIfAbsent(key, newValue);
+                if (currentValue == null) {
+                    return newValue;
+                }
+            } else if (newValue == null) {
+                if (map.remove(key, currentValue)) {
+                    return null;
+                }
+                currentValue = map.get(key);
+            } else {
+                if (newValue.equals(currentValue) || map.replace(key, currentValue, newValue)) {
+                    return newValue;
+                }
+                currentValue = map.get(key);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,61 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.kaazing.gateway.server.messaging.collections;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Future;
+import org.kaazing.gateway.service.messaging.collections.CollectionsFactory;
+
+/**
+ * A {@link CollectionsFactory} that can also read, write and update several entries of a named map at once, so that
+ * multi-key cluster bookkeeping does not pay one network round trip per key.
+ */
+public interface BulkCollectionsFactory extends CollectionsFactory {
+
+    <K, V> Map<K, V> getAll(String name, Set<K> keys);
+
+    <K, V> void putAll(String name, Map<? extends K, ? extends V> entries);
+
+    <K, V> Future<V> getAsync(String name, K key);
+
+    <K, V> Future<V> putAsync(String name, K key, V value);
+
+    <K, V> Future<V> removeAsync(String name, K key);
+
+    /**
+     * Atomically replaces the value of the entry with the one computed by the updater.
+     *
+     * @return the new value, or null if the entry was removed
+     */
+    <K, V> V update(String name, K key, EntryUpdater<K, V> updater);
+
+    /**
+     * Atomically replaces the value of each entry with the one computed by the updater. The current values of all the keys
+     * are read in a single batch, so that uncontended updates only cost one write per changed entry.
+     *
+     * @return the new values of the entries that were not removed
+     */
+    <K, V> Map<K, V> updateAll(String name, Set<K> keys, EntryUpdater<K, V> updater);
+
+}
@@ -29,15 +29,23 @@ import com.hazelcast.core.ILock;
 import com.hazelcast.core.IMap;
 import com.hazelcast.core.IQueue;
 import com.hazelcast.core.ITopic;
-import org.kaazing.gateway.service.messaging.collections.CollectionsFactory;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Future;
+import org.kaazing.gateway.server.cluster.ClusterBackend;
+import org.kaazing.gateway.server.cluster.HazelcastClusterBackend;
 import org.kaazing.gateway.util.AtomicCounter;
 
-public class ClusterCollectionsFactory implements CollectionsFactory {
+public class ClusterCollectionsFactory extends AbstractBulkCollectionsFactory {
 
 
-    private HazelcastInstance cluster;
+    private ClusterBackend cluster;
 
     public ClusterCollectionsFactory(HazelcastInstance cluster) {
+        this(new HazelcastClusterBackend(cluster));
+    }
+
+    public ClusterCollectionsFactory(ClusterBackend cluster) {
         this.cluster = cluster;
     }
 
@@ -74,6 +82,30 @@ public class ClusterCollectionsFactory implements CollectionsFactory {
         }
     }
 
+    @Override
+    public <K, V> Map<K, V> getAll(String name, Set<K> keys) {
+        IMap<K, V> map = cluster.getMap(name);
+        return map.getAll(keys);
+    }
+
+    @Override
+    public <K, V> Future<V> getAsync(String name, K key) {
+        IMap<K, V> map = cluster.getMap(name);
+        return map.getAsync(key);
+    }
+
+    @Override
+    public <K, V> Future<V> putAsync(String name, K key, V value) {
+        IMap<K, V> map = cluster.getMap(name);
+        return map.putAsync(key, value);
+    }
+
+    @Override
+    public <K, V> Future<V> removeAsync(String name, K key) {
+        IMap<K, V> map = cluster.getMap(name);
+        return map.removeAsync(key);
+    }
+
     @Override
     public AtomicCounter getAtomicCounter(String name) {
         return new ClusterAtomicCounter(cluster.getAtomicNumber(name));
@@ -0,0 +1,94 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.kaazing.gateway.server.messaging.collections;
+
+import com.hazelcast.core.EntryListener;
+import com.hazelcast.core.IList;
+import com.hazelcast.core.ILock;
+import com.hazelcast.core.IMap;
+import com.hazelcast.core.IQueue;
+import com.hazelcast.core.ITopic;
+import org.kaazing.gateway.service.messaging.collections.CollectionsFactory;
+import org.kaazing.gateway.util.AtomicCounter;
+
+/**
+ * Adds the bulk operations of {@link BulkCollectionsFactory} to any {@link CollectionsFactory}, for example the in-memory
+ * factory of a standalone gateway, by performing them entry by entry on the delegate's maps.
+ */
+public class DelegatingCollectionsFactory extends AbstractBulkCollectionsFactory {
+
+    private final CollectionsFactory delegate;
+
+    public DelegatingCollectionsFactory(CollectionsFactory delegate) {
+        if (delegate == null) {
+            throw new NullPointerException("delegate");
+        }
+        this.delegate = delegate;
+    }
+
+    /**
+     * @return the factory itself if it already supports bulk operations, otherwise a delegating factory around it
+     */
+    public static BulkCollectionsFactory asBulkCollectionsFactory(CollectionsFactory factory) {
+        if (factory instanceof BulkCollectionsFactory) {
+            return (BulkCollectionsFactory) factory;
+        }
+        return new DelegatingCollectionsFactory(factory);
+    }
+
+    @Override
+    public <E> IList<E> getList(String name) {
+        return delegate.getList(name);
+    }
+
+    @Override
+    public <K, V> IMap<K, V> getMap(String name) {
+        return delegate.getMap(name);
+    }
+
+    @Override
+    public <E> IQueue<E> getQueue(String name) {
+        return delegate.getQueue(name);
+    }
+
+    @Override
+    public <E> ITopic<E> getTopic(String name) {
+        return delegate.getTopic(name);
+    }
+
+    @Override
+    public ILock getLock(Object obj) {
+        return delegate.getLock(obj);
+    }
+
+    @Override
+    public <K, V> void addEntryListener(EntryListener<K, V> listener, String name) {
+        delegate.addEntryListener(listener, name);
+    }
+
+    @Override
+    public AtomicCounter getAtomicCounter(String name) {
+        return delegate.getAtomicCounter(name);
+    }
+
+}
@@ -0,0 +1,38 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.kaazing.gateway.server.messaging.collections;
+
+/**
+ * Computes the new value of a map entry from its current value, in the style of an entry processor. Updates are applied
+ * optimistically, so the updater may be called more than once for the same key and must not have side effects.
+ */
+public interface EntryUpdater<K, V> {
+
+    /**
+     * @param key    the key of the entry
+     * @param value  the current value, or null if the key is not mapped
+     * @return the new value, the current value to leave the entry unchanged, or null to remove the entry
+     */
+    V update(K key, V value);
+
+}
@@ -31,6 +31,9 @@ import java.util.TreeMap;
 import org.kaazing.gateway.service.ServiceContext;
 import org.kaazing.gateway.service.ServiceRegistration;
 
+/**
+ * Services of one authority by path. Lookups may run while services are registered or unregistered.
+ */
 public class ServiceAuthority {
 
     private final List<String> index;
@@ -41,7 +44,7 @@ public class ServiceAuthority {
         entries = new TreeMap<String, ServiceRegistration>();
     }
 
-    ServiceRegistration register(URI serviceURI, ServiceContext serviceContext) {
+    synchronized ServiceRegistration register(URI serviceURI, ServiceContext serviceContext) {
         String servicePath = serviceURI.getPath();
         ServiceRegistration oldRegistration = entries.put(servicePath, new ServiceRegistration(serviceURI, serviceContext));
         if (oldRegistration != null) {
@@ -56,7 +59,7 @@ public class ServiceAuthority {
         return oldRegistration;
     }
 
-    ServiceRegistration unregister(URI serviceURI) {
+    synchronized ServiceRegistration unregister(URI serviceURI) {
         ServiceRegistration oldRegistration = entries.remove(serviceURI.getPath());
         if (oldRegistration != null) {
             URI oldServiceURI = oldRegistration.getURI();
@@ -68,7 +71,7 @@ public class ServiceAuthority {
         return oldRegistration;
     }
 
-    public ServiceRegistration lookup(URI serviceURI) {
+    public synchronized ServiceRegistration lookup(URI serviceURI) {
         String servicePath = serviceURI.getPath();
         return lookup0(servicePath, false);
     }
@@ -93,7 +96,7 @@ public class ServiceAuthority {
         return null;
     }
 
-    public Collection<ServiceRegistration> values() {
-        return entries.values();
+    public synchronized Collection<ServiceRegistration> values() {
+        return new ArrayList<ServiceRegistration>(entries.values());
     }
 }
@@ -22,18 +22,24 @@
 package org.kaazing.gateway.server.service;
 
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import org.kaazing.gateway.service.ServiceContext;
 import org.kaazing.gateway.service.ServiceRegistration;
 
+/**
+ * Services by accept URI. Services can be registered and unregistered while the gateway is running, when its
+ * configuration is reloaded.
+ */
 public class ServiceRegistry {
 
-    private final Map<String, ServiceAuthority> entries;
+    private final ConcurrentMap<String, ServiceAuthority> entries;
 
     public ServiceRegistry() {
-        entries = new HashMap<String, ServiceAuthority>();
+        entries = new ConcurrentHashMap<String, ServiceAuthority>();
     }
 
     public ServiceAuthority register(String authority, ServiceAuthority value) {
@@ -55,8 +61,11 @@ public class ServiceRegistry {
 
         ServiceAuthority serviceAuthority = entries.get(serviceURI.getAuthority());
         if (serviceAuthority == null) {
-            serviceAuthority = new ServiceAuthority();
-            entries.put(serviceURI.getAuthority(), serviceAuthority);
+            ServiceAuthority newServiceAuthority = new ServiceAuthority();
+            serviceAuthority = entries.putIfAbsent(serviceURI.getAuthority(), newServiceAuthority);
+            if (serviceAuthority == null) {
+                serviceAuthority = newServiceAuthority;
+            }
         }
 
         ServiceRegistration serviceRegistration = serviceAuthority.register(serviceURI, serviceContext);
@@ -79,6 +88,26 @@ public class ServiceRegistry {
         return (serviceRegistration != null) ? serviceRegistration.getServiceContext() : null;
     }
 
+    /**
+     * Unregister every accept URI of a service.
+     *
+     * @return the URIs the service was registered for
+     */
+    public Collection<URI> unregister(ServiceContext serviceContext) {
+        List<URI> serviceURIs = new ArrayList<URI>();
+        for (ServiceAuthority serviceAuthority : entries.values()) {
+            for (ServiceRegistration serviceRegistration : serviceAuthority.values()) {
+                if (serviceRegistration.getServiceContext() == serviceContext) {
+                    serviceURIs.add(serviceRegistration.getURI());
+                }
+            }
+        }
+        for (URI serviceURI : serviceURIs) {
+            unregister(serviceURI);
+        }
+        return serviceURIs;
+    }
+
     public ServiceRegistration lookup(URI serviceURI) {
         ServiceAuthority serviceAuthority = entries.get(serviceURI.getAuthority());
         if (serviceAuthority != null) {
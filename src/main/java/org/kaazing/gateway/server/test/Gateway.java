@@ -36,6 +36,7 @@ import java.util.Properties;
 import java.util.Set;
 import javax.management.MBeanServer;
 import org.kaazing.gateway.server.Launcher;
+import org.kaazing.gateway.server.StartupTimeline;
 import org.kaazing.gateway.server.config.sep2014.AuthenticationType;
 import org.kaazing.gateway.server.config.sep2014.AuthenticationType.AuthorizationMode;
 import org.kaazing.gateway.server.config.sep2014.AuthenticationType.HttpChallengeScheme;
@@ -99,8 +100,11 @@ public class Gateway {
 
         switch (state) {
             case STARTING:
+                StartupTimeline startupTimeline = new StartupTimeline();
+                startupTimeline.startingPhase(StartupTimeline.CONTEXT_RESOLVE);
                 GatewayContext context = createGatewayContext(configuration);
-                launcher.init(context);
+                startupTimeline.completedPhase(StartupTimeline.CONTEXT_RESOLVE);
+                launcher.init(context, startupTimeline);
                 state = State.STARTED;
                 break;
         }
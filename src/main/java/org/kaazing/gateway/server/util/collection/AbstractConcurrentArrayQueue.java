@@ -0,0 +1,332 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.kaazing.gateway.server.util.collection;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Base class for the bounded, lock-free array queues with a single consumer. Like {@link FixedArrayQueue} the ring is sized
+ * to the next power of two while the initially specified capacity is enforced. The head and tail counters are kept on
+ * separate cache lines by the padding superclasses below, and are published with ordered (lazySet) stores rather than full
+ * volatile writes.
+ * <p>
+ * A slot becomes visible to the consumer only once its element has been stored, so a null slot at the head means the queue
+ * is (momentarily) empty even if a producer has already claimed the next tail position.
+ * <p>
+ * {@link #poll()}, {@link #drain(Consumer, int)}, {@link #remove()} and {@link #clear()} must only be called from the consumer
+ * thread. Iteration is weakly consistent and may be performed from any thread. Removal of arbitrary elements is not
+ * supported.
+ */
+public abstract class AbstractConcurrentArrayQueue<E> extends AbstractConcurrentArrayQueuePadding3 implements Queue<E> {
+
+    static final AtomicLongFieldUpdater<AbstractConcurrentArrayQueueProducer> TAIL =
+            AtomicLongFieldUpdater.newUpdater(AbstractConcurrentArrayQueueProducer.class, "tail");
+    static final AtomicLongFieldUpdater<AbstractConcurrentArrayQueueConsumer> HEAD =
+            AtomicLongFieldUpdater.newUpdater(AbstractConcurrentArrayQueueConsumer.class, "head");
+
+    protected final int limit;
+    protected final int capacity;
+    protected final int mask;
+    protected final AtomicReferenceArray<E> buffer;
+
+    protected AbstractConcurrentArrayQueue(final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.limit = capacity;
+        this.capacity = FixedArrayQueue.findNextPositivePowerOfTwo(capacity);
+        this.mask = this.capacity - 1;
+        this.buffer = new AtomicReferenceArray<>(this.capacity);
+    }
+
+    public int capacity() {
+        return limit;
+    }
+
+    @Override
+    public boolean add(final E e) {
+        if (offer(e)) {
+            return true;
+        }
+
+        throw new IllegalStateException("Queue is full");
+    }
+
+    @Override
+    public E poll() {
+        final long currentHead = head;
+        final int index = (int) currentHead & mask;
+        final E e = buffer.get(index);
+        if (null == e) {
+            return null;
+        }
+
+        buffer.lazySet(index, null);
+        HEAD.lazySet(this, currentHead + 1);
+
+        return e;
+    }
+
+    /**
+     * Removes up to {@code limit} elements from the head of the queue, handing each one to the consumer in order. The head
+     * counter is published once for the whole batch.
+     *
+     * @return the number of elements drained
+     */
+    public int drain(final Consumer<E> consumer, final int limit) {
+        final long initialHead = head;
+        long currentHead = initialHead;
+        try {
+            while (currentHead - initialHead < limit) {
+                final int index = (int) currentHead & mask;
+                final E e = buffer.get(index);
+                if (null == e) {
+                    break;
+                }
+
+                buffer.lazySet(index, null);
+                currentHead++;
+                consumer.accept(e);
+            }
+        }
+        finally {
+            if (currentHead != initialHead) {
+                HEAD.lazySet(this, currentHead);
+            }
+        }
+
+        return (int) (currentHead - initialHead);
+    }
+
+    /**
+     * Removes all currently available elements, handing each one to the consumer in order.
+     *
+     * @return the number of elements drained
+     */
+    public int drain(final Consumer<E> consumer) {
+        return drain(consumer, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public E remove() {
+        final E e = poll();
+        if (null == e) {
+            throw new NoSuchElementException("Queue is empty");
+        }
+
+        return e;
+    }
+
+    @Override
+    public E element() {
+        final E e = peek();
+        if (null == e) {
+            throw new NoSuchElementException("Queue is empty");
+        }
+
+        return e;
+    }
+
+    @Override
+    public E peek() {
+        return buffer.get((int) head & mask);
+    }
+
+    @Override
+    public int size() {
+        long currentHead = head;
+        long currentTail;
+        long previousHead;
+        do {
+            previousHead = currentHead;
+            currentTail = tail;
+            currentHead = head;
+        }
+        while (currentHead != previousHead);
+
+        final long size = currentTail - currentHead;
+        return (int) Math.max(0, Math.min(size, limit));
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return peek() == null;
+    }
+
+    @Override
+    public boolean contains(final Object o) {
+        if (null == o) {
+            return false;
+        }
+
+        for (long i = head, currentTail = tail; i < currentTail; i++) {
+            if (o.equals(buffer.get((int) i & mask))) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns a weakly consistent iterator over the elements between head and tail at the time of the call. Elements
+     * consumed concurrently are skipped. The iterator does not support {@link Iterator#remove()}.
+     */
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<E>() {
+            private final long end = tail;
+            private long cursor = Math.max(head, end - limit);
+            private E next = advance();
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public E next() {
+                final E e = next;
+                if (null == e) {
+                    throw new NoSuchElementException();
+                }
+                next = advance();
+                return e;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+
+            private E advance() {
+                while (cursor < end) {
+                    final long index = cursor++;
+                    if (index < head) {
+                        cursor = head;
+                        continue;
+                    }
+                    final E e = buffer.get((int) index & mask);
+                    if (e != null) {
+                        return e;
+                    }
+                }
+                return null;
+            }
+        };
+    }
+
+    @Override
+    public Object[] toArray() {
+        return snapshot().toArray();
+    }
+
+    @Override
+    public <T> T[] toArray(final T[] a) {
+        return snapshot().toArray(a);
+    }
+
+    @Override
+    public boolean remove(final Object o) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean containsAll(final Collection<?> c) {
+        for (final Object o : c) {
+            if (!contains(o)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public boolean addAll(final Collection<? extends E> c) {
+        for (final E e : c) {
+            add(e);
+        }
+
+        return true;
+    }
+
+    @Override
+    public boolean removeAll(final Collection<?> c) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean retainAll(final Collection<?> c) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void clear() {
+        while (poll() != null) {
+            // drain
+        }
+    }
+
+    @Override
+    public String toString() {
+        return snapshot().toString();
+    }
+
+    private List<E> snapshot() {
+        final List<E> elements = new ArrayList<>(size());
+        for (final Iterator<E> i = iterator(); i.hasNext();) {
+            elements.add(i.next());
+        }
+        return elements;
+    }
+
+}
+
+abstract class AbstractConcurrentArrayQueuePadding1 {
+    protected long p1, p2, p3, p4, p5, p6, p7;
+}
+
+abstract class AbstractConcurrentArrayQueueProducer extends AbstractConcurrentArrayQueuePadding1 {
+    protected volatile long tail;
+    protected volatile long headCache;
+}
+
+abstract class AbstractConcurrentArrayQueuePadding2 extends AbstractConcurrentArrayQueueProducer {
+    protected long p8, p9, p10, p11, p12, p13, p14, p15;
+}
+
+abstract class AbstractConcurrentArrayQueueConsumer extends AbstractConcurrentArrayQueuePadding2 {
+    protected volatile long head;
+}
+
+abstract class AbstractConcurrentArrayQueuePadding3 extends AbstractConcurrentArrayQueueConsumer {
+    protected long p16, p17, p18, p19, p20, p21, p22, p23;
+}
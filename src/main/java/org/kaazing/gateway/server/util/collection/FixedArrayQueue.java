@@ -21,6 +21,7 @@
 
 package org.kaazing.gateway.server.util.collection;
 
+import java.lang.reflect.Array;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
@@ -143,16 +144,51 @@ public class FixedArrayQueue<E> implements Queue<E> {
         return false;
     }
 
+    /**
+     * Returns an iterator over the elements from head to tail. The iterator does not support {@link Iterator#remove()}.
+     */
     public Iterator<E> iterator() {
-        throw new UnsupportedOperationException();
+        return new Iterator<E>() {
+            private long cursor = head;
+
+            @Override
+            public boolean hasNext() {
+                return cursor < tail;
+            }
+
+            @Override
+            public E next() {
+                if (cursor >= tail) {
+                    throw new NoSuchElementException();
+                }
+                return buffer[(int) cursor++ & mask];
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
     }
 
     public Object[] toArray() {
-        throw new UnsupportedOperationException();
+        return toArray(new Object[size()]);
     }
 
+    @SuppressWarnings("unchecked")
     public <T> T[] toArray(final T[] a) {
-        throw new UnsupportedOperationException();
+        final int size = size();
+        final T[] array = (a.length >= size) ? a : (T[]) Array.newInstance(a.getClass().getComponentType(), size);
+
+        int i = 0;
+        for (long index = head; i < size; index++) {
+            array[i++] = (T) buffer[(int) index & mask];
+        }
+        if (array.length > size) {
+            array[size] = null;
+        }
+
+        return array;
     }
 
     public boolean remove(final Object o) {
@@ -186,7 +222,9 @@ public class FixedArrayQueue<E> implements Queue<E> {
     }
 
     public void clear() {
-        throw new UnsupportedOperationException();
+        while (poll() != null) {
+            // drain
+        }
     }
 }
 
@@ -0,0 +1,59 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.kaazing.gateway.server.util.collection;
+
+/**
+ * Bounded, lock-free queue for any number of producer threads and a single consumer thread. Producers claim a tail position
+ * with a compare-and-set and then publish the element into the claimed slot with an ordered store, so the consumer sees
+ * elements in claim order once each one has been stored.
+ */
+public class ManyToOneConcurrentArrayQueue<E> extends AbstractConcurrentArrayQueue<E> {
+
+    public ManyToOneConcurrentArrayQueue(final int capacity) {
+        super(capacity);
+    }
+
+    @Override
+    public boolean offer(final E e) {
+        if (null == e) {
+            throw new NullPointerException("item cannot be null");
+        }
+
+        long currentTail;
+        do {
+            currentTail = tail;
+            if (currentTail - headCache >= limit) {
+                headCache = head;
+                if (currentTail - headCache >= limit) {
+                    return false;
+                }
+            }
+        }
+        while (!TAIL.compareAndSet(this, currentTail, currentTail + 1));
+
+        buffer.lazySet((int) currentTail & mask, e);
+
+        return true;
+    }
+
+}
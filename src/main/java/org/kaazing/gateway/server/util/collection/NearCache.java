@@ -0,0 +1,276 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.kaazing.gateway.server.util.collection;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded local cache with per-entry time to live. Reads are lock-free: they only record the access time (LRU) or bump a
+ * hit counter (LFU) on the entry. Once a write takes the cache past its maximum size, the writer that wins the eviction
+ * lock drops expired entries and then the least valuable ones according to the eviction policy, bringing the cache back
+ * below its maximum so that the sort is amortized over many writes. Other writers do not wait for it, so the size may
+ * briefly exceed the maximum while an eviction pass is running.
+ */
+public class NearCache<K, V> {
+
+    private final ConcurrentMap<K, Entry<V>> entries;
+    private final AtomicInteger size;
+    private final AtomicLong evictions;
+    private final Lock evictionLock;
+
+    private final int maxSize;
+    private final int evictionBatch;
+    private final long timeToLive;
+    private final NearCacheEvictionPolicy evictionPolicy;
+
+    public NearCache(NearCacheConfig config) {
+        this(config.getMaxSize(), config.getTimeToLive(), config.getEvictionPolicy());
+    }
+
+    public NearCache(int maxSize, long timeToLive, NearCacheEvictionPolicy evictionPolicy) {
+        this.entries = new ConcurrentHashMap<>();
+        this.size = new AtomicInteger();
+        this.evictions = new AtomicLong();
+        this.evictionLock = new ReentrantLock();
+        this.maxSize = maxSize;
+        this.evictionBatch = Math.max(1, maxSize / 8);
+        this.timeToLive = timeToLive;
+        this.evictionPolicy = evictionPolicy;
+    }
+
+    /**
+     * @return the cached value, or null if the key is not cached or its entry has expired
+     */
+    public V get(Object key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+
+        long now = System.nanoTime();
+        if (entry.isExpired(now)) {
+            remove(key, entry);
+            return null;
+        }
+
+        entry.touch(now);
+        return entry.value;
+    }
+
+    /**
+     * Caches the value using the default time to live of this cache.
+     */
+    public void put(K key, V value) {
+        put(key, value, timeToLive, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Caches the value for at most the given time to live (0 for no expiry), capped by the time to live of this cache.
+     */
+    public void put(K key, V value, long ttl, TimeUnit unit) {
+        long ttlMillis = unit.toMillis(ttl);
+        if (timeToLive > 0 && (ttlMillis == 0 || ttlMillis > timeToLive)) {
+            ttlMillis = timeToLive;
+        }
+
+        long now = System.nanoTime();
+        long expiresAt = (ttlMillis > 0) ? now + TimeUnit.MILLISECONDS.toNanos(ttlMillis) : 0L;
+        if (entries.put(key, new Entry<>(value, expiresAt, now)) == null) {
+            if (size.incrementAndGet() > maxSize) {
+                evict();
+            }
+        }
+    }
+
+    /**
+     * Replaces the cached value if the key is currently cached, keeping its access statistics.
+     *
+     * @return true if the key was cached
+     */
+    public boolean replace(K key, V value) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            return false;
+        }
+
+        Entry<V> newEntry = new Entry<>(value, entry.expiresAt, entry.lastAccess);
+        newEntry.hits = entry.hits;
+        return entries.replace(key, entry, newEntry);
+    }
+
+    /**
+     * @return true if the key was cached
+     */
+    public boolean invalidate(Object key) {
+        Entry<V> entry = entries.remove(key);
+        if (entry != null) {
+            size.decrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    public void clear() {
+        for (K key : entries.keySet()) {
+            invalidate(key);
+        }
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    public Map<K, V> toMap() {
+        Map<K, V> values = new HashMap<>();
+        long now = System.nanoTime();
+        for (Map.Entry<K, Entry<V>> entry : entries.entrySet()) {
+            if (!entry.getValue().isExpired(now)) {
+                values.put(entry.getKey(), entry.getValue().value);
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public String toString() {
+        return toMap().toString();
+    }
+
+    private boolean remove(Object key, Entry<V> entry) {
+        if (entries.remove(key, entry)) {
+            size.decrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    private void evict() {
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+
+        try {
+            long now = System.nanoTime();
+            List<Map.Entry<K, Entry<V>>> candidates = new ArrayList<>(entries.size());
+            for (Map.Entry<K, Entry<V>> entry : entries.entrySet()) {
+                if (entry.getValue().isExpired(now)) {
+                    remove(entry.getKey(), entry.getValue());
+                } else {
+                    candidates.add(entry);
+                }
+            }
+
+            int excess = size.get() - maxSize;
+            if (excess > 0) {
+                Collections.sort(candidates, evictionPolicy == NearCacheEvictionPolicy.LFU ? LFU_ORDER : LRU_ORDER);
+                int target = excess + evictionBatch - 1;
+                for (int i = 0, evicted = 0; i < candidates.size() && evicted < target; i++) {
+                    Map.Entry<K, Entry<V>> candidate = candidates.get(i);
+                    if (remove(candidate.getKey(), candidate.getValue())) {
+                        evicted++;
+                        evictions.incrementAndGet();
+                    }
+                }
+            }
+
+            if (evictionPolicy == NearCacheEvictionPolicy.LFU) {
+                // age the hit counts so that entries that were popular long ago can eventually be evicted
+                for (Entry<V> entry : entries.values()) {
+                    entry.hits >>>= 1;
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static final Comparator<Map.Entry> LRU_ORDER = new Comparator<Map.Entry>() {
+        @Override
+        public int compare(Map.Entry o1, Map.Entry o2) {
+            long access1 = ((Entry) o1.getValue()).lastAccess;
+            long access2 = ((Entry) o2.getValue()).lastAccess;
+            return (access1 < access2) ? -1 : ((access1 == access2) ? 0 : 1);
+        }
+    };
+
+    @SuppressWarnings("rawtypes")
+    private static final Comparator<Map.Entry> LFU_ORDER = new Comparator<Map.Entry>() {
+        @Override
+        public int compare(Map.Entry o1, Map.Entry o2) {
+            int hits1 = ((Entry) o1.getValue()).hits;
+            int hits2 = ((Entry) o2.getValue()).hits;
+            return (hits1 != hits2) ? ((hits1 < hits2) ? -1 : 1) : LRU_ORDER.compare(o1, o2);
+        }
+    };
+
+    private static final class Entry<V> {
+
+        @SuppressWarnings("rawtypes")
+        private static final AtomicIntegerFieldUpdater<Entry> HITS = AtomicIntegerFieldUpdater.newUpdater(Entry.class, "hits");
+
+        final V value;
+        final long expiresAt;
+        volatile long lastAccess;
+        volatile int hits;
+
+        Entry(V value, long expiresAt, long lastAccess) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+            this.lastAccess = lastAccess;
+            // count the write as a use, otherwise LFU would always pick the newest entry as the next victim
+            this.hits = 1;
+        }
+
+        boolean isExpired(long now) {
+            return expiresAt != 0L && now - expiresAt >= 0;
+        }
+
+        void touch(long now) {
+            lastAccess = now;
+            HITS.incrementAndGet(this);
+        }
+    }
+
+}
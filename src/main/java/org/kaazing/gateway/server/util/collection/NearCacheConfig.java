@@ -0,0 +1,74 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.kaazing.gateway.server.util.collection;
+
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Settings of the near-cache mode of {@link ReplicatedIMap}. Instead of mirroring the whole cluster map, each member then
+ * keeps at most <code>maxSize</code> recently used entries, each for at most <code>timeToLive</code> milliseconds (a time to
+ * live of 0 keeps entries until they are evicted or invalidated).
+ */
+public class NearCacheConfig implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int maxSize;
+    private final long timeToLive;
+    private final NearCacheEvictionPolicy evictionPolicy;
+
+    public NearCacheConfig(int maxSize, long timeToLive, TimeUnit unit, NearCacheEvictionPolicy evictionPolicy) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Near cache size must be positive: " + maxSize);
+        }
+        if (timeToLive < 0) {
+            throw new IllegalArgumentException("Near cache time to live must not be negative: " + timeToLive);
+        }
+        if (evictionPolicy == null) {
+            throw new NullPointerException("evictionPolicy");
+        }
+        this.maxSize = maxSize;
+        this.timeToLive = unit.toMillis(timeToLive);
+        this.evictionPolicy = evictionPolicy;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getTimeToLive() {
+        return timeToLive;
+    }
+
+    public NearCacheEvictionPolicy getEvictionPolicy() {
+        return evictionPolicy;
+    }
+
+    @Override
+    public String toString() {
+        return "NearCacheConfig [maxSize=" + maxSize + ", timeToLive=" + timeToLive + ", evictionPolicy=" + evictionPolicy
+                + "]";
+    }
+
+}
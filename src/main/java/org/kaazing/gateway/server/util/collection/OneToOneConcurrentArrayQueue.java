@@ -0,0 +1,56 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.kaazing.gateway.server.util.collection;
+
+/**
+ * Bounded, lock-free queue for exactly one producer thread and one consumer thread. It is the concurrent counterpart of
+ * {@link FixedArrayQueue}: the producer publishes each element and the tail with ordered stores and only re-reads the
+ * consumer's head when its cached copy says the queue is full.
+ */
+public class OneToOneConcurrentArrayQueue<E> extends AbstractConcurrentArrayQueue<E> {
+
+    public OneToOneConcurrentArrayQueue(final int capacity) {
+        super(capacity);
+    }
+
+    @Override
+    public boolean offer(final E e) {
+        if (null == e) {
+            throw new NullPointerException("item cannot be null");
+        }
+
+        final long currentTail = tail;
+        if (currentTail - headCache >= limit) {
+            headCache = head;
+            if (currentTail - headCache >= limit) {
+                return false;
+            }
+        }
+
+        buffer.lazySet((int) currentTail & mask, e);
+        TAIL.lazySet(this, currentTail + 1);
+
+        return true;
+    }
+
+}
@@ -32,34 +32,62 @@ import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import org.kaazing.gateway.service.cluster.EntryListenerSupport;
 
+/**
+ * An {@link IMap} that answers reads from a local copy kept up to date by cluster entry events. By default every member
+ * mirrors the whole cluster map. When created with a {@link NearCacheConfig} it keeps a bounded near cache of the entries
+ * read on this member instead, loading misses from the cluster map and dropping cached entries when they expire, are
+ * evicted or are changed elsewhere in the cluster, so that local memory scales with the working set. Entries with a time
+ * to live can only be put in near cache mode, since the mirror ignores cluster evictions to keep instance equality.
+ */
 public class ReplicatedIMap<K, V> extends IMapProxy<K, V> implements Serializable {
 
     private static final long serialVersionUID = 1L;
 
+    private static final int LOCK_STRIPES = 16;
+
     private final IMap<K, V> delegate;
+    private final NearCacheConfig nearCacheConfig;
     private transient EntryListenerSupport<K, V> listenerSupport;
 
-    private transient Map<K, V> localCache;
-    private transient Lock localCacheLock;
+    // reads are lock-free, writes for a given key are serialized by its lock stripe
+    private transient ConcurrentMap<K, V> localCache;
+    private transient Lock[] localCacheLocks;
+
+    // near cache mode only, bumped under the lock stripe whenever a cluster event invalidates one of its keys
+    private transient NearCache<K, V> nearCache;
+    private transient AtomicLongArray invalidations;
 
     public ReplicatedIMap(IMap<K, V> delegate) {
+        this(delegate, null);
+    }
+
+    public ReplicatedIMap(IMap<K, V> delegate, NearCacheConfig nearCacheConfig) {
         if (delegate == null) {
             throw new NullPointerException("delegate");
         }
         this.delegate = delegate;
+        this.nearCacheConfig = nearCacheConfig;
 
         init();
     }
 
+    public NearCacheConfig getNearCacheConfig() {
+        return nearCacheConfig;
+    }
+
     @Override
     public void addEntryListener(EntryListener<K, V> listener, boolean includeValue) {
         listenerSupport.addEntryListener(listener, includeValue);
@@ -82,26 +110,76 @@ public class ReplicatedIMap<K, V> extends IMapProxy<K, V> implements Serializabl
 
     @Override
     public V putIfAbsent(K key, V value) {
-        V oldValue = super.putIfAbsent(key, value);
-        if (oldValue == null) {
-            localCache.put(key, value);
+        return putIfAbsentLocally(key, value, super.putIfAbsent(key, value), 0, TimeUnit.MILLISECONDS);
+    }
+
+    private V putIfAbsentLocally(K key, V value, V oldValue, long ttl, TimeUnit timeunit) {
+        if (nearCache != null) {
+            Lock lock = lockFor(key);
+            lock.lock();
+            try {
+                nearCache.put(key, (oldValue != null) ? oldValue : value, ttl, timeunit);
+            } finally {
+                lock.unlock();
+            }
+            return oldValue;
+        }
+
+        Lock lock = lockFor(key);
+        lock.lock();
+        try {
+            if (oldValue == null) {
+                localCache.put(key, value);
+                return null;
+            } else {
+                V localValue = localCache.get(key);
+                return (localValue != null) ? localValue : oldValue;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        if (key == null) {
             return null;
-        } else {
+        }
+        if (nearCache == null) {
             return localCache.get(key);
         }
+
+        V value = nearCache.get(key);
+        if (value != null) {
+            return value;
+        }
+
+        int stripe = stripeFor(key);
+        long version = invalidations.get(stripe);
+        value = super.get(key);
+        if (value != null) {
+            cacheIfValid((K) key, value, stripe, version);
+        }
+        return value;
     }
 
     @Override
-    public V get(Object key) {
-        return localCache.get(key);
-//        if( localValue != null ) {
-//            return localValue;
-//        }
-//        V clusterValue = super.get(key);
-//        if( clusterValue != null ) {
-//            localCache.put((K)key, clusterValue);
-//        }
-//        return clusterValue;
+    public V put(K key, V value) {
+        V oldValue = super.put(key, value);
+        if (nearCache != null) {
+            invalidate(key);
+        }
+        return oldValue;
+    }
+
+    @Override
+    public V remove(Object key) {
+        V oldValue = super.remove(key);
+        if (nearCache != null) {
+            invalidate(key);
+        }
+        return oldValue;
     }
 
     @Override
@@ -109,13 +187,49 @@ public class ReplicatedIMap<K, V> extends IMapProxy<K, V> implements Serializabl
         return delegate;
     }
 
+    // caches a value loaded from the cluster map, unless an event invalidated its lock stripe while it was being loaded
+    private void cacheIfValid(K key, V value, int stripe, long version) {
+        Lock lock = localCacheLocks[stripe];
+        lock.lock();
+        try {
+            if (invalidations.get(stripe) == version) {
+                nearCache.put(key, value);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean invalidate(Object key) {
+        int stripe = stripeFor(key);
+        Lock lock = localCacheLocks[stripe];
+        lock.lock();
+        try {
+            invalidations.incrementAndGet(stripe);
+            return nearCache.invalidate(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
     private void init() {
         this.listenerSupport = new EntryListenerSupport<K, V>();
 
+        this.localCacheLocks = new Lock[LOCK_STRIPES];
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            localCacheLocks[i] = new ReentrantLock();
+        }
+
+        if (nearCacheConfig != null) {
+            initNearCache();
+            return;
+        }
+
         // support eviction and instance equality
-        this.localCache = new HashMap<K, V>(delegate);
-        this.localCacheLock = new ReentrantLock();
+        this.localCache = new ConcurrentHashMap<K, V>(delegate);
 
+        // each cluster event updates the local cache and notifies local listeners under the lock stripe
+        // owning its key, so that listeners observe changes to a given key in the order they were applied
         delegate.addEntryListener(new EntryListener<K, V>() {
 
             @Override
@@ -124,20 +238,18 @@ public class ReplicatedIMap<K, V> extends IMapProxy<K, V> implements Serializabl
                 K key = (K) event.getKey();
                 V newValue = (V) event.getValue();
 
-                EntryEvent localEvent = event;
+                Lock lock = lockFor(key);
+                lock.lock();
                 try {
-                    localCacheLock.lock();
-                    V value = localCache.get(key);
-                    if (value == null) {
-                        localCache.put(key, newValue);
-                    } else {
+                    EntryEvent localEvent = event;
+                    V value = (newValue != null) ? localCache.putIfAbsent(key, newValue) : localCache.get(key);
+                    if (value != null) {
                         localEvent = new EntryEvent(event.getName(), null, EntryEvent.TYPE_ADDED, key, value);
                     }
+                    listenerSupport.entryAdded(localEvent);
                 } finally {
-                    localCacheLock.unlock();
+                    lock.unlock();
                 }
-
-                listenerSupport.entryAdded(localEvent);
             }
 
             @Override
@@ -149,22 +261,118 @@ public class ReplicatedIMap<K, V> extends IMapProxy<K, V> implements Serializabl
             @SuppressWarnings("unchecked")
             public void entryRemoved(EntryEvent<K, V> event) {
                 K key = (K) event.getKey();
-                V oldValue = localCache.remove(key);
-                EntryEvent localEvent = new EntryEvent(event.getName(), null, EntryEvent.TYPE_REMOVED, key, oldValue);
-                listenerSupport.entryRemoved(localEvent);
+
+                Lock lock = lockFor(key);
+                lock.lock();
+                try {
+                    V oldValue = localCache.remove(key);
+                    EntryEvent localEvent = new EntryEvent(event.getName(), null, EntryEvent.TYPE_REMOVED, key, oldValue);
+                    listenerSupport.entryRemoved(localEvent);
+                } finally {
+                    lock.unlock();
+                }
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public void entryUpdated(EntryEvent<K, V> event) {
+                K key = (K) event.getKey();
+                V newValue = (V) event.getValue();
+
+                Lock lock = lockFor(key);
+                lock.lock();
+                try {
+                    if (newValue != null) {
+                        localCache.put(key, newValue);
+                    } else {
+                        localCache.remove(key);
+                    }
+                    listenerSupport.entryUpdated(event);
+                } finally {
+                    lock.unlock();
+                }
+            }
+
+        }, true);
+    }
+
+    private void initNearCache() {
+        this.nearCache = new NearCache<K, V>(nearCacheConfig);
+        this.invalidations = new AtomicLongArray(LOCK_STRIPES);
+
+        // cluster events only invalidate (or refresh) entries that are already cached, loading happens on demand
+        delegate.addEntryListener(new EntryListener<K, V>() {
+
+            @Override
+            public void entryAdded(EntryEvent<K, V> event) {
+                Lock lock = lockFor(event.getKey());
+                lock.lock();
+                try {
+                    invalidations.incrementAndGet(stripeFor(event.getKey()));
+                    nearCache.invalidate(event.getKey());
+                    listenerSupport.entryAdded(event);
+                } finally {
+                    lock.unlock();
+                }
+            }
+
+            @Override
+            public void entryEvicted(EntryEvent<K, V> event) {
+                Lock lock = lockFor(event.getKey());
+                lock.lock();
+                try {
+                    invalidations.incrementAndGet(stripeFor(event.getKey()));
+                    nearCache.invalidate(event.getKey());
+                } finally {
+                    lock.unlock();
+                }
+            }
+
+            @Override
+            public void entryRemoved(EntryEvent<K, V> event) {
+                Lock lock = lockFor(event.getKey());
+                lock.lock();
+                try {
+                    invalidations.incrementAndGet(stripeFor(event.getKey()));
+                    nearCache.invalidate(event.getKey());
+                    listenerSupport.entryRemoved(event);
+                } finally {
+                    lock.unlock();
+                }
             }
 
             @Override
+            @SuppressWarnings("unchecked")
             public void entryUpdated(EntryEvent<K, V> event) {
                 K key = (K) event.getKey();
                 V newValue = (V) event.getValue();
-                localCache.put(key, newValue);
-                listenerSupport.entryUpdated(event);
+
+                Lock lock = lockFor(key);
+                lock.lock();
+                try {
+                    invalidations.incrementAndGet(stripeFor(key));
+                    if (newValue == null || !nearCache.replace(key, newValue)) {
+                        nearCache.invalidate(key);
+                    }
+                    listenerSupport.entryUpdated(event);
+                } finally {
+                    lock.unlock();
+                }
             }
 
         }, true);
     }
 
+    private int stripeFor(Object key) {
+        int hash = key.hashCode();
+        hash ^= (hash >>> 16);
+        return hash & (LOCK_STRIPES - 1);
+    }
+
+    private Lock lockFor(Object key) {
+        return localCacheLocks[stripeFor(key)];
+    }
+
     private void readObject(ObjectInputStream ois) throws IOException, ClassNotFoundException {
         ois.defaultReadObject();
         init();
@@ -172,22 +380,22 @@ public class ReplicatedIMap<K, V> extends IMapProxy<K, V> implements Serializabl
 
     @Override
     public Set<java.util.Map.Entry<K, V>> entrySet() {
-        return localCache.entrySet();
+        return (nearCache != null) ? delegate.entrySet() : localCache.entrySet();
     }
 
     @Override
     public Set<K> keySet() {
-        return localCache.keySet();
+        return (nearCache != null) ? delegate.keySet() : localCache.keySet();
     }
 
     @Override
     public Collection<V> values() {
-        return localCache.values();
+        return (nearCache != null) ? delegate.values() : localCache.values();
     }
 
     @Override
     public String toString() {
-        return localCache.toString();
+        return (nearCache != null) ? nearCache.toString() : localCache.toString();
     }
 
     @Override
@@ -202,11 +410,19 @@ public class ReplicatedIMap<K, V> extends IMapProxy<K, V> implements Serializabl
 
     @Override
     public boolean evict(Object key) {
-        if (localCache.containsKey(key)) {
-            localCache.remove(key);
-            return true;
+        if (key == null) {
+            return false;
+        }
+        if (nearCache != null) {
+            return invalidate(key);
+        }
+        Lock lock = lockFor(key);
+        lock.lock();
+        try {
+            return localCache.remove(key) != null;
+        } finally {
+            lock.unlock();
         }
-        return false;
     }
 
     @Override
@@ -236,12 +452,27 @@ public class ReplicatedIMap<K, V> extends IMapProxy<K, V> implements Serializabl
 
     @Override
     public V put(K key, V value, long ttl, TimeUnit timeunit) {
-        throw new UnsupportedOperationException("put");
+        if (nearCache == null) {
+            throw new UnsupportedOperationException("put");
+        }
+        V oldValue = delegate.put(key, value, ttl, timeunit);
+        Lock lock = lockFor(key);
+        lock.lock();
+        try {
+            invalidations.incrementAndGet(stripeFor(key));
+            nearCache.put(key, value, ttl, timeunit);
+        } finally {
+            lock.unlock();
+        }
+        return oldValue;
     }
 
     @Override
     public V putIfAbsent(K key, V value, long ttl, TimeUnit timeunit) {
-        throw new UnsupportedOperationException("putIfAbsent");
+        if (nearCache == null) {
+            throw new UnsupportedOperationException("putIfAbsent");
+        }
+        return putIfAbsentLocally(key, value, delegate.putIfAbsent(key, value, ttl, timeunit), ttl, timeunit);
     }
 
     @Override
@@ -261,12 +492,20 @@ public class ReplicatedIMap<K, V> extends IMapProxy<K, V> implements Serializabl
 
     @Override
     public Future<V> getAsync(K key) {
-        throw new UnsupportedOperationException("getAsync");
+        if (nearCache == null) {
+            return new CompletedFuture<V>(get(key));
+        }
+
+        V value = nearCache.get(key);
+        return (value != null) ? new CompletedFuture<V>(value) : delegate.getAsync(key);
     }
 
     @Override
     public Future<V> putAsync(K key, V value) {
-        throw new UnsupportedOperationException("putAsync");
+        if (nearCache != null) {
+            invalidate(key);
+        }
+        return delegate.putAsync(key, value);
     }
 
     @Override
@@ -285,10 +524,38 @@ public class ReplicatedIMap<K, V> extends IMapProxy<K, V> implements Serializabl
     }
 
     @Override
-    public Map<K, V> getAll(Set<K> arg0) {
-        throw new UnsupportedOperationException("getAll");
+    public Map<K, V> getAll(Set<K> keys) {
+        Map<K, V> values = new HashMap<K, V>();
+        Set<K> misses = new HashSet<K>();
+        for (K key : keys) {
+            V value = (nearCache != null) ? nearCache.get(key) : localCache.get(key);
+            if (value != null) {
+                values.put(key, value);
+            } else {
+                misses.add(key);
+            }
+        }
+
+        // in mirror mode a local miss means the key is not in the cluster map either
+        if (nearCache != null && !misses.isEmpty()) {
+            long[] versions = new long[LOCK_STRIPES];
+            for (int i = 0; i < LOCK_STRIPES; i++) {
+                versions[i] = invalidations.get(i);
+            }
+            Map<K, V> loaded = delegate.getAll(misses);
+            for (Map.Entry<K, V> entry : loaded.entrySet()) {
+                if (entry.getValue() != null) {
+                    int stripe = stripeFor(entry.getKey());
+                    cacheIfValid(entry.getKey(), entry.getValue(), stripe, versions[stripe]);
+                    values.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+
+        return values;
     }
 
+
     @Override
     public void putAndUnlock(K arg0, V arg1) {
         throw new UnsupportedOperationException("putAndUnlock");
@@ -0,0 +1,210 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.kaazing.gateway.server;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.kaazing.gateway.server.context.resolve.DefaultGatewayContext;
+import org.kaazing.gateway.server.context.resolve.DefaultSchemeContext;
+import org.kaazing.gateway.server.context.resolve.DefaultTransportContext;
+import org.kaazing.gateway.server.service.ServiceRegistry;
+import org.kaazing.gateway.service.AcceptOptionsContext;
+import org.kaazing.gateway.service.ServiceContext;
+import static org.junit.Assert.*;
+
+public class LauncherTest {
+
+    private static final URI ECHO_URI = URI.create("ws://localhost:8001/echo");
+    private static final URI OLD_URI = URI.create("ws://localhost:8002/old");
+    private static final URI BACKEND_URI = URI.create("tcp://localhost:9000");
+    private static final URI PROXY_URI = URI.create("ws://localhost:8003/proxy");
+
+    private static final AcceptOptionsContext ACCEPT_OPTIONS = (AcceptOptionsContext) Proxy.newProxyInstance(
+            AcceptOptionsContext.class.getClassLoader(), new Class<?>[] {AcceptOptionsContext.class},
+            new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    String methodName = method.getName();
+                    if ("hashCode".equals(methodName)) {
+                        return System.identityHashCode(proxy);
+                    } else if ("equals".equals(methodName)) {
+                        return proxy == args[0];
+                    }
+                    // accepts are not mapped to internal URIs
+                    return null;
+                }
+            });
+
+    private final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+
+    private ServiceContext echo;
+    private ServiceContext old;
+    private ServiceRegistry serviceRegistry;
+    private DefaultGatewayContext context;
+    private Launcher launcher;
+
+    @Before
+    public void setUp() throws Exception {
+        echo = service("echo", ECHO_URI, null, null);
+        old = service("old", OLD_URI, null, null);
+        serviceRegistry = new ServiceRegistry();
+        serviceRegistry.register(ECHO_URI, echo);
+        serviceRegistry.register(OLD_URI, old);
+        context = new DefaultGatewayContext(new HashMap<String, DefaultSchemeContext>(),
+                new HashMap<String, DefaultTransportContext>(), null, null,
+                new ArrayList<ServiceContext>(Arrays.asList(echo, old)), serviceRegistry, null, null, null, null);
+
+        launcher = new Launcher();
+        launcher.init(context);
+        events.clear();
+    }
+
+    @Test
+    public void shouldStopStartedServicesWhenReloadFailsToStart() throws Exception {
+        ServiceContext backend = service("backend", BACKEND_URI, null, "start");
+        ServiceContext proxy = service("proxy", PROXY_URI, BACKEND_URI, null);
+        ServiceRegistry reloadRegistry = new ServiceRegistry();
+        ServiceContext sameEcho = register(reloadRegistry, service("echo", ECHO_URI, null, null), ECHO_URI);
+        register(reloadRegistry, backend, BACKEND_URI);
+        register(reloadRegistry, proxy, PROXY_URI);
+
+        try {
+            launcher.reload(Arrays.asList(sameEcho, backend, proxy), reloadRegistry);
+            fail("Expected the failure of the backend service");
+        } catch (IllegalStateException e) {
+            assertEquals("start backend", e.getMessage());
+        }
+
+        // proxy depends on backend, so it was inited but never started
+        assertEquals(Arrays.asList("stop old", "destroy old", "init backend", "init proxy", "start backend",
+                "stop proxy", "destroy proxy", "stop backend", "destroy backend"), events);
+        assertServices(echo);
+    }
+
+    @Test
+    public void shouldNotStopServicesThatNeverInited() throws Exception {
+        ServiceContext backend = service("backend", BACKEND_URI, null, "init");
+        ServiceContext proxy = service("proxy", PROXY_URI, BACKEND_URI, null);
+        ServiceRegistry reloadRegistry = new ServiceRegistry();
+        ServiceContext sameEcho = register(reloadRegistry, service("echo", ECHO_URI, null, null), ECHO_URI);
+        register(reloadRegistry, backend, BACKEND_URI);
+        register(reloadRegistry, proxy, PROXY_URI);
+
+        try {
+            launcher.reload(Arrays.asList(sameEcho, backend, proxy), reloadRegistry);
+            fail("Expected the failure of the backend service");
+        } catch (IllegalStateException e) {
+            assertEquals("init backend", e.getMessage());
+        }
+
+        // the backend service began to init, the proxy service was never scheduled
+        assertEquals(Arrays.asList("stop old", "destroy old", "init backend", "stop backend", "destroy backend"),
+                events);
+        assertServices(echo);
+    }
+
+    @Test
+    public void shouldRejectAcceptOfUnchangedServiceBeforeStopping() throws Exception {
+        ServiceContext other = service("other", ECHO_URI, null, null);
+        ServiceRegistry reloadRegistry = new ServiceRegistry();
+        ServiceContext sameEcho = service("echo", ECHO_URI, null, null);
+        register(reloadRegistry, other, ECHO_URI);
+
+        try {
+            launcher.reload(Arrays.asList(sameEcho, other), reloadRegistry);
+            fail("Expected the accept of the other service to be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        assertTrue(events.isEmpty());
+        assertServices(echo, old);
+        assertSame(echo, serviceRegistry.lookup(ECHO_URI).getServiceContext());
+    }
+
+    private void assertServices(ServiceContext... services) {
+        assertEquals(Arrays.asList(services), new ArrayList<ServiceContext>(context.getServices()));
+        for (ServiceContext serviceContext : services) {
+            URI accept = serviceContext.getAccepts().iterator().next();
+            assertSame(serviceContext, serviceRegistry.lookup(accept).getServiceContext());
+        }
+        assertNull(serviceRegistry.lookup(BACKEND_URI));
+        assertNull(serviceRegistry.lookup(PROXY_URI));
+    }
+
+    private static ServiceContext register(ServiceRegistry registry, ServiceContext serviceContext, URI accept) {
+        registry.register(accept, serviceContext);
+        return serviceContext;
+    }
+
+    private ServiceContext service(final String name,
+                                   final URI accept,
+                                   final URI connect,
+                                   final String failingPhase) {
+        final Collection<URI> accepts = Arrays.asList(accept);
+        final Collection<URI> connects = (connect != null) ? Arrays.asList(connect) : Collections.<URI>emptyList();
+        return (ServiceContext) Proxy.newProxyInstance(ServiceContext.class.getClassLoader(),
+                new Class<?>[] {ServiceContext.class}, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        String methodName = method.getName();
+                        if ("getServiceName".equals(methodName) || "toString".equals(methodName)) {
+                            return name;
+                        } else if ("getServiceType".equals(methodName)) {
+                            return "test";
+                        } else if ("getAccepts".equals(methodName)) {
+                            return accepts;
+                        } else if ("getBalances".equals(methodName)) {
+                            return Collections.<URI>emptyList();
+                        } else if ("getConnects".equals(methodName)) {
+                            return connects;
+                        } else if ("getAcceptOptionsContext".equals(methodName)) {
+                            return ACCEPT_OPTIONS;
+                        } else if ("init".equals(methodName) || "start".equals(methodName) ||
+                                "stop".equals(methodName) || "destroy".equals(methodName)) {
+                            events.add(methodName + " " + name);
+                            if (methodName.equals(failingPhase)) {
+                                throw new IllegalStateException(methodName + " " + name);
+                            }
+                            return null;
+                        } else if ("hashCode".equals(methodName)) {
+                            return System.identityHashCode(proxy);
+                        } else if ("equals".equals(methodName)) {
+                            return proxy == args[0];
+                        }
+                        // other options, realm, roles, mime mappings and cross-site constraints are not configured
+                        return null;
+                    }
+                });
+    }
+
+}
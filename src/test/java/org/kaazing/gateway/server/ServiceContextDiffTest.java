@@ -0,0 +1,147 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.kaazing.gateway.server;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import org.junit.Test;
+import org.kaazing.gateway.server.context.resolve.DefaultServiceProperties;
+import org.kaazing.gateway.service.ServiceContext;
+import org.kaazing.gateway.service.ServiceProperties;
+import static org.junit.Assert.*;
+
+public class ServiceContextDiffTest {
+
+    private static final URI ECHO_URI = URI.create("ws://localhost:8001/echo");
+    private static final URI ECHO_SSL_URI = URI.create("wss://localhost:9001/echo");
+    private static final URI PROXY_URI = URI.create("ws://localhost:8002/proxy");
+
+    @Test
+    public void shouldKeepServicesWithSameConfiguration() throws Exception {
+        ServiceContext running = service("echo", "echo", Arrays.asList(ECHO_URI, ECHO_SSL_URI), properties("a", "1"));
+        ServiceContext resolved = service("echo", "echo", Arrays.asList(ECHO_SSL_URI, ECHO_URI), properties("a", "1"));
+
+        ServiceContextDiff diff = new ServiceContextDiff(Arrays.asList(running), Arrays.asList(resolved));
+        assertTrue(diff.isEmpty());
+        assertEquals(Arrays.asList(running), diff.getUnchanged());
+        assertTrue(diff.getStopped().isEmpty());
+        assertTrue(diff.getStarted().isEmpty());
+    }
+
+    @Test
+    public void shouldReplaceServicesWithChangedConfiguration() throws Exception {
+        ServiceContext echo = service("echo", "echo", Arrays.asList(ECHO_URI), properties("a", "1"));
+        ServiceContext proxy = service("proxy", "proxy", Arrays.asList(PROXY_URI), properties("b", "2"));
+        ServiceContext changedEcho = service("echo", "echo", Arrays.asList(ECHO_URI), properties("a", "2"));
+        ServiceContext sameProxy = service("proxy", "proxy", Arrays.asList(PROXY_URI), properties("b", "2"));
+
+        ServiceContextDiff diff =
+                new ServiceContextDiff(Arrays.asList(echo, proxy), Arrays.asList(changedEcho, sameProxy));
+        assertFalse(diff.isEmpty());
+        assertEquals(Arrays.asList(echo), diff.getChangedRunning());
+        assertEquals(Arrays.asList(changedEcho), diff.getChangedResolved());
+        assertEquals(Arrays.asList(proxy), diff.getUnchanged());
+        assertEquals(Arrays.asList(echo), diff.getStopped());
+        assertEquals(Arrays.asList(changedEcho), diff.getStarted());
+    }
+
+    @Test
+    public void shouldStopRemovedServicesAndStartAddedServices() throws Exception {
+        ServiceContext echo = service("echo", "echo", Arrays.asList(ECHO_URI), properties("a", "1"));
+        ServiceContext proxy = service("proxy", "proxy", Arrays.asList(PROXY_URI), properties("b", "2"));
+
+        ServiceContextDiff diff = new ServiceContextDiff(Arrays.asList(echo), Arrays.asList(proxy));
+        assertEquals(Arrays.asList(echo), diff.getRemoved());
+        assertEquals(Arrays.asList(proxy), diff.getAdded());
+        assertEquals(Arrays.asList(echo), diff.getStopped());
+        assertEquals(Arrays.asList(proxy), diff.getStarted());
+        assertTrue(diff.getUnchanged().isEmpty());
+    }
+
+    @Test
+    public void shouldReplaceServiceWhenTypeChanges() throws Exception {
+        ServiceContext echo = service("echo", "service", Arrays.asList(ECHO_URI), properties("a", "1"));
+        ServiceContext proxy = service("proxy", "service", Arrays.asList(ECHO_URI), properties("a", "1"));
+
+        ServiceContextDiff diff = new ServiceContextDiff(Arrays.asList(echo), Arrays.asList(proxy));
+        assertEquals(Arrays.asList(echo), diff.getStopped());
+        assertEquals(Arrays.asList(proxy), diff.getStarted());
+    }
+
+    @Test
+    public void shouldMatchUnnamedServicesByTypeAndAccepts() throws Exception {
+        ServiceContext echo = service("echo", null, Arrays.asList(ECHO_URI), properties("a", "1"));
+        ServiceContext sameEcho = service("echo", null, Arrays.asList(ECHO_URI), properties("a", "1"));
+        ServiceContext movedEcho = service("echo", null, Arrays.asList(ECHO_SSL_URI), properties("a", "1"));
+
+        assertTrue(new ServiceContextDiff(Arrays.asList(echo), Arrays.asList(sameEcho)).isEmpty());
+
+        ServiceContextDiff diff = new ServiceContextDiff(Arrays.asList(echo), Arrays.asList(movedEcho));
+        assertEquals(Arrays.asList(echo), diff.getRemoved());
+        assertEquals(Arrays.asList(movedEcho), diff.getAdded());
+    }
+
+    private static ServiceProperties properties(String name, String value) {
+        DefaultServiceProperties properties = new DefaultServiceProperties();
+        properties.put(name, value);
+        return properties;
+    }
+
+    private static ServiceContext service(final String type,
+                                          final String name,
+                                          final Collection<URI> accepts,
+                                          final ServiceProperties properties) {
+        return (ServiceContext) Proxy.newProxyInstance(ServiceContext.class.getClassLoader(),
+                new Class<?>[] {ServiceContext.class}, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        String methodName = method.getName();
+                        if ("getServiceType".equals(methodName)) {
+                            return type;
+                        } else if ("getServiceName".equals(methodName)) {
+                            return name;
+                        } else if ("toString".equals(methodName)) {
+                            return type + " " + name;
+                        } else if ("getAccepts".equals(methodName)) {
+                            return accepts;
+                        } else if ("getBalances".equals(methodName) || "getConnects".equals(methodName)) {
+                            return Collections.<URI>emptyList();
+                        } else if ("getProperties".equals(methodName)) {
+                            return properties;
+                        } else if ("hashCode".equals(methodName)) {
+                            return System.identityHashCode(proxy);
+                        } else if ("equals".equals(methodName)) {
+                            return proxy == args[0];
+                        }
+                        // options, realm, roles, mime mappings and cross-site constraints are not configured
+                        return null;
+                    }
+                });
+    }
+
+}
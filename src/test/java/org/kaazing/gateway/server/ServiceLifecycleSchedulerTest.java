@@ -0,0 +1,178 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+
+package org.kaazing.gateway.server;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.kaazing.gateway.service.ServiceContext;
+import static org.junit.Assert.*;
+
+public class ServiceLifecycleSchedulerTest {
+
+    private static final URI BALANCE_URI = URI.create("ws://www.example.com:8080/path");
+    private static final URI BACKEND_URI = URI.create("tcp://localhost:9000");
+
+    private final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+
+    @Test
+    public void shouldRunDependenciesFirst() throws Exception {
+        ServiceContext balancer = service("balancer", Arrays.asList(BALANCE_URI), null, null);
+        ServiceContext balanced = service("balanced", Arrays.asList(URI.create("ws://node1.example.com:8080/path")),
+                Arrays.asList(BALANCE_URI), null);
+        ServiceContext backend = service("backend", Arrays.asList(BACKEND_URI), null, null);
+        ServiceContext proxy = service("proxy", Arrays.asList(URI.create("ws://localhost:8000/proxy")), null,
+                Arrays.asList(BACKEND_URI));
+
+        // dependents are declared first, so that the configuration order alone would not do
+        ServiceLifecycleScheduler scheduler =
+                new ServiceLifecycleScheduler(Arrays.asList(balanced, proxy, balancer, backend), 4);
+        assertEquals(Arrays.asList(balancer), scheduler.getDependencies(balanced));
+        assertEquals(Arrays.asList(backend), scheduler.getDependencies(proxy));
+        assertTrue(scheduler.getDependencies(balancer).isEmpty());
+
+        Map<ServiceContext, Long> durations = scheduler.runInDependencyOrder(recordingPhase("start", null));
+        assertEquals(Arrays.asList(balanced, proxy, balancer, backend),
+                new ArrayList<ServiceContext>(durations.keySet()));
+        assertTrue(events.indexOf("start balancer done") < events.indexOf("start balanced"));
+        assertTrue(events.indexOf("start backend done") < events.indexOf("start proxy"));
+
+        events.clear();
+        scheduler.runInReverseDependencyOrder(recordingPhase("stop", null));
+        assertTrue(events.indexOf("stop balanced done") < events.indexOf("stop balancer"));
+        assertTrue(events.indexOf("stop proxy done") < events.indexOf("stop backend"));
+    }
+
+    @Test
+    public void shouldRunIndependentServicesConcurrently() throws Exception {
+        List<ServiceContext> services = new ArrayList<ServiceContext>();
+        for (int i = 0; i < 3; i++) {
+            services.add(service("service" + i, Arrays.asList(URI.create("ws://localhost:800" + i + "/")), null, null));
+        }
+
+        // every service waits for the others, which only completes if they all run at once
+        final CyclicBarrier barrier = new CyclicBarrier(services.size());
+        Map<ServiceContext, Long> durations = new ServiceLifecycleScheduler(services, services.size())
+                .runInDependencyOrder(new ServiceLifecycleScheduler.Phase() {
+                    @Override
+                    public void run(ServiceContext serviceContext) throws Exception {
+                        barrier.await(5, TimeUnit.SECONDS);
+                    }
+                });
+        assertEquals(services.size(), durations.size());
+    }
+
+    @Test
+    public void shouldRunOneAfterAnotherWithOneThread() throws Exception {
+        ServiceContext service1 = service("service1", Arrays.asList(URI.create("ws://localhost:8001/")), null, null);
+        ServiceContext service2 = service("service2", Arrays.asList(URI.create("ws://localhost:8002/")), null, null);
+
+        ServiceLifecycleScheduler scheduler = new ServiceLifecycleScheduler(Arrays.asList(service1, service2), 1);
+        scheduler.runInDependencyOrder(recordingPhase("init", null));
+        assertEquals(Arrays.asList("init service1", "init service1 done", "init service2", "init service2 done"),
+                events);
+    }
+
+    @Test
+    public void shouldNotScheduleDependentsAfterFailure() throws Exception {
+        ServiceContext backend = service("backend", Arrays.asList(BACKEND_URI), null, null);
+        ServiceContext proxy = service("proxy", Arrays.asList(URI.create("ws://localhost:8000/proxy")), null,
+                Arrays.asList(BACKEND_URI));
+
+        ServiceLifecycleScheduler scheduler = new ServiceLifecycleScheduler(Arrays.asList(backend, proxy), 2);
+        try {
+            scheduler.runInDependencyOrder(recordingPhase("start", "backend"));
+            fail("Expected the failure of the backend service");
+        } catch (IllegalStateException e) {
+            assertEquals("backend", e.getMessage());
+        }
+        assertEquals(Arrays.asList("start backend"), events);
+    }
+
+    @Test
+    public void shouldKeepEarlierDependenciesOfCycle() throws Exception {
+        URI uri1 = URI.create("tcp://localhost:9001");
+        URI uri2 = URI.create("tcp://localhost:9002");
+        ServiceContext service1 = service("service1", Arrays.asList(uri1), null, Arrays.asList(uri2));
+        ServiceContext service2 = service("service2", Arrays.asList(uri2), null, Arrays.asList(uri1));
+
+        ServiceLifecycleScheduler scheduler = new ServiceLifecycleScheduler(Arrays.asList(service1, service2), 2);
+        assertTrue(scheduler.getDependencies(service1).isEmpty());
+        assertEquals(Arrays.asList(service1), scheduler.getDependencies(service2));
+        assertEquals(2, scheduler.runInDependencyOrder(recordingPhase("start", null)).size());
+    }
+
+    private ServiceLifecycleScheduler.Phase recordingPhase(final String phase, final String failingService) {
+        return new ServiceLifecycleScheduler.Phase() {
+            @Override
+            public void run(ServiceContext serviceContext) throws Exception {
+                String serviceName = serviceContext.getServiceName();
+                events.add(phase + " " + serviceName);
+                if (serviceName.equals(failingService)) {
+                    throw new IllegalStateException(serviceName);
+                }
+                Thread.sleep(20);
+                events.add(phase + " " + serviceName + " done");
+            }
+        };
+    }
+
+    private static ServiceContext service(final String name,
+                                          final Collection<URI> accepts,
+                                          final Collection<URI> balances,
+                                          final Collection<URI> connects) {
+        return (ServiceContext) Proxy.newProxyInstance(ServiceContext.class.getClassLoader(),
+                new Class<?>[] {ServiceContext.class}, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        String methodName = method.getName();
+                        if ("getServiceName".equals(methodName) || "toString".equals(methodName)) {
+                            return name;
+                        } else if ("getAccepts".equals(methodName)) {
+                            return accepts;
+                        } else if ("getBalances".equals(methodName)) {
+                            return balances;
+                        } else if ("getConnects".equals(methodName)) {
+                            return connects;
+                        } else if ("hashCode".equals(methodName)) {
+                            return System.identityHashCode(proxy);
+                        } else if ("equals".equals(methodName)) {
+                            return proxy == args[0];
+                        }
+                        throw new UnsupportedOperationException(methodName);
+                    }
+                });
+    }
+
+}
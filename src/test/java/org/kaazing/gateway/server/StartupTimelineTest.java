@@ -0,0 +1,130 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.kaazing.gateway.server;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import javax.management.openmbean.TabularData;
+import org.junit.Test;
+import org.kaazing.gateway.service.ServiceContext;
+import static org.junit.Assert.*;
+
+public class StartupTimelineTest {
+
+    @Test
+    public void shouldRecordPhasesInStartOrder() throws Exception {
+        StartupTimeline timeline = new StartupTimeline();
+        ServiceContext service = service("echo");
+
+        timeline.startingPhase(StartupTimeline.CONFIG_PARSE);
+        timeline.completedPhase(StartupTimeline.CONFIG_PARSE);
+        timeline.startingPhase(StartupTimeline.CLUSTER_JOIN);
+        timeline.startingService(service);
+        timeline.startingPhase(StartupTimeline.TRANSPORT_BIND + "tcp://localhost:8000");
+        timeline.completedPhase(StartupTimeline.TRANSPORT_BIND + "tcp://localhost:8000");
+        timeline.startedService(service);
+        assertEquals(-1, timeline.getStartupTime());
+        timeline.startedGateway();
+
+        Map<String, Long> durations = timeline.getPhaseDurations();
+        assertEquals(Arrays.asList(StartupTimeline.CONFIG_PARSE, "service.start echo",
+                "transport.bind tcp://localhost:8000"), new ArrayList<String>(durations.keySet()));
+        assertTrue(timeline.getStartupTime() >= 0);
+
+        // the phase that did not complete is reported without a duration
+        String report = timeline.getReport();
+        assertTrue(report, report.startsWith("{\"launchTime\":"));
+        int clusterJoin = report.indexOf("{\"name\":\"cluster.join\"");
+        assertTrue(report, clusterJoin != -1);
+        assertFalse(report, report.substring(clusterJoin, report.indexOf('}', clusterJoin)).contains("duration"));
+        assertTrue(report, report.contains("\"name\":\"config.parse\""));
+    }
+
+    @Test
+    public void shouldStopRecordingOnceStarted() throws Exception {
+        StartupTimeline timeline = new StartupTimeline();
+        ServiceContext service = service("echo");
+        timeline.initingService(service);
+        timeline.initedService(service);
+        timeline.startingPhase(StartupTimeline.TRANSPORT_BIND + "tcp://localhost:8000");
+        timeline.startedGateway();
+        long startupTime = timeline.getStartupTime();
+        String report = timeline.getReport();
+
+        // a reloaded configuration inits the service again and binds another accept
+        timeline.initingService(service);
+        timeline.initedService(service);
+        timeline.completedPhase(StartupTimeline.TRANSPORT_BIND + "tcp://localhost:8000");
+        timeline.startingPhase(StartupTimeline.TRANSPORT_BIND + "tcp://localhost:8001");
+        timeline.startedGateway();
+
+        assertEquals(startupTime, timeline.getStartupTime());
+        assertEquals(report, timeline.getReport());
+        assertEquals(Arrays.asList("service.init echo"), new ArrayList<String>(timeline.getPhaseDurations().keySet()));
+    }
+
+    @Test
+    public void shouldEscapeReportStrings() {
+        StartupTimeline timeline = new StartupTimeline();
+        timeline.startingPhase("service.start \"quoted\\name\"");
+        assertTrue(timeline.getReport(), timeline.getReport().contains("\"service.start \\\"quoted\\\\name\\\"\""));
+    }
+
+    @Test
+    public void shouldExposeAttributesOverJmx() throws Exception {
+        StartupTimeline timeline = new StartupTimeline();
+        timeline.startingPhase(StartupTimeline.CONTEXT_RESOLVE);
+        timeline.completedPhase(StartupTimeline.CONTEXT_RESOLVE);
+        timeline.startedGateway();
+
+        MBeanServer mbeanServer = MBeanServerFactory.newMBeanServer();
+        ObjectName name = new ObjectName("org.kaazing.gateway.server:type=StartupTimeline");
+        mbeanServer.registerMBean(timeline, name);
+
+        assertEquals(timeline.getStartupTime(), mbeanServer.getAttribute(name, "StartupTime"));
+        assertEquals(timeline.getReport(), mbeanServer.getAttribute(name, "Report"));
+        TabularData durations = (TabularData) mbeanServer.getAttribute(name, "PhaseDurations");
+        assertEquals(1, durations.size());
+    }
+
+    private static ServiceContext service(final String name) {
+        return (ServiceContext) Proxy.newProxyInstance(ServiceContext.class.getClassLoader(),
+                new Class<?>[] {ServiceContext.class}, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if ("getServiceName".equals(method.getName())) {
+                            return name;
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+}
@@ -0,0 +1,281 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.kaazing.gateway.server.cluster;
+
+import com.hazelcast.core.EntryEvent;
+import com.hazelcast.core.EntryListener;
+import com.hazelcast.core.IMap;
+import com.hazelcast.core.ITopic;
+import com.hazelcast.core.MessageListener;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import org.junit.After;
+import org.junit.Test;
+import org.kaazing.gateway.service.cluster.MemberId;
+import static org.junit.Assert.*;
+
+public class InProcessClusterTest {
+
+    private final InProcessCluster cluster = new InProcessCluster("test");
+    private final List<InProcessClusterBackend> members = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        for (InProcessClusterBackend member : members) {
+            member.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldNotifyMembersOfJoinsAndLeavesInJoinOrder() throws Exception {
+        InProcessClusterBackend member1 = start();
+        RecordingMembershipListener listener = new RecordingMembershipListener();
+        member1.addMembershipListener(listener);
+        InProcessClusterBackend member2 = start();
+        InProcessClusterBackend member3 = start();
+
+        assertEquals(ids(member1, member2, member3), member3.getMembers());
+
+        member2.shutdown();
+        awaitEvents();
+
+        assertEquals(ids(member1, member3), member1.getMembers());
+        assertEquals(Arrays.asList("+" + member2.getLocalMember(), "+" + member3.getLocalMember(),
+                "-" + member2.getLocalMember()), listener.events);
+    }
+
+    @Test
+    public void shouldDeliverEntryEventsToAllMembers() throws Exception {
+        InProcessClusterBackend member1 = start();
+        InProcessClusterBackend member2 = start();
+        RecordingEntryListener listener = new RecordingEntryListener();
+        member2.<String, String>getMap("map").addEntryListener(listener, true);
+
+        IMap<String, String> map = member1.getMap("map");
+        map.put("key", "value1");
+        map.put("key", "value2");
+        assertTrue(map.replace("key", "value2", "value3"));
+        assertFalse(map.replace("key", "value2", "value4"));
+        assertEquals("value3", map.remove("key"));
+        awaitEvents();
+
+        assertEquals(Arrays.asList("added key=value1", "updated key=value2", "updated key=value3", "removed key=value3"),
+                listener.events);
+        assertTrue(member2.getMap("map").isEmpty());
+    }
+
+    @Test
+    public void shouldGiveEachMemberItsOwnCopyOfValues() throws Exception {
+        InProcessClusterBackend member1 = start();
+        InProcessClusterBackend member2 = start();
+
+        Holder holder = new Holder(member1);
+        member1.<String, Holder>getMap("map").put("key", holder);
+        Holder copy = member2.<String, Holder>getMap("map").get("key");
+
+        assertNotSame(holder, copy);
+        assertSame(member2, copy.backend);
+
+        cluster.setCopyValues(false);
+        member1.<String, Holder>getMap("map").put("key", holder);
+        assertSame(holder, member2.<String, Holder>getMap("map").get("key"));
+    }
+
+    @Test
+    public void shouldDeliverTopicMessagesToAllMembers() throws Exception {
+        InProcessClusterBackend member1 = start();
+        InProcessClusterBackend member2 = start();
+        RecordingMessageListener listener1 = new RecordingMessageListener();
+        RecordingMessageListener listener2 = new RecordingMessageListener();
+        member1.<String>getTopic("topic").addMessageListener(listener1);
+        member2.<String>getTopic("topic").addMessageListener(listener2);
+
+        ITopic<String> topic = member1.getTopic("topic");
+        topic.publish("message1");
+        topic.publish("message2");
+        awaitEvents();
+
+        assertEquals(Arrays.asList("message1", "message2"), listener1.messages);
+        assertEquals(Arrays.asList("message1", "message2"), listener2.messages);
+    }
+
+    @Test
+    public void shouldDelayDeliveryToOtherMembersByLatency() throws Exception {
+        cluster.setLatency(50, TimeUnit.MILLISECONDS);
+        InProcessClusterBackend member1 = start();
+        InProcessClusterBackend member2 = start();
+        RecordingMessageListener listener1 = new RecordingMessageListener();
+        RecordingMessageListener listener2 = new RecordingMessageListener();
+        member1.<String>getTopic("topic").addMessageListener(listener1);
+        member2.<String>getTopic("topic").addMessageListener(listener2);
+
+        member1.<String>getTopic("topic").publish("message");
+        Thread.sleep(20);
+
+        assertEquals(Collections.singletonList("message"), listener1.messages);
+        assertTrue(listener2.messages.isEmpty());
+        awaitEvents();
+        assertEquals(Collections.singletonList("message"), listener2.messages);
+    }
+
+    @Test
+    public void shouldSplitAndMergeDataOnPartitionAndHeal() throws Exception {
+        InProcessClusterBackend member1 = start();
+        InProcessClusterBackend member2 = start();
+        InProcessClusterBackend member3 = start();
+        RecordingMembershipListener listener = new RecordingMembershipListener();
+        member1.addMembershipListener(listener);
+        member1.<String, String>getMap("map").put("shared", "value");
+
+        cluster.partition(Collections.singleton(member3.getLocalMember()));
+        awaitEvents();
+
+        assertEquals(ids(member1, member2), member1.getMembers());
+        assertEquals(ids(member3), member3.getMembers());
+        member3.<String, String>getMap("map").put("isolated", "value3");
+        member3.<String, String>getMap("map").put("shared", "value3");
+        member1.<String, String>getMap("map").put("majority", "value1");
+        assertNull(member1.<String, String>getMap("map").get("isolated"));
+        assertNull(member3.<String, String>getMap("map").get("majority"));
+
+        cluster.heal();
+        awaitEvents();
+
+        assertEquals(ids(member1, member2, member3), member3.getMembers());
+        IMap<String, String> map = member3.getMap("map");
+        assertEquals("value", map.get("shared"));
+        assertEquals("value3", map.get("isolated"));
+        assertEquals("value1", map.get("majority"));
+        assertEquals(Arrays.asList("-" + member3.getLocalMember(), "+" + member3.getLocalMember()), listener.events);
+    }
+
+    @Test
+    public void shouldShareCountersLocksAndIdGenerators() throws Exception {
+        InProcessClusterBackend member1 = start();
+        InProcessClusterBackend member2 = start();
+
+        assertEquals(1, member1.getAtomicNumber("counter").incrementAndGet());
+        assertEquals(2, member2.getAtomicNumber("counter").incrementAndGet());
+        assertEquals(member1.getIdGenerator("ids").newId() + 1, member2.getIdGenerator("ids").newId());
+
+        final Lock lock = member2.getLock("lock");
+        final AtomicBoolean locked = new AtomicBoolean(true);
+        Thread otherThread = new Thread() {
+            @Override
+            public void run() {
+                locked.set(lock.tryLock());
+            }
+        };
+        member1.getLock("lock").lock();
+        try {
+            otherThread.start();
+            otherThread.join();
+        } finally {
+            member1.getLock("lock").unlock();
+        }
+        assertFalse(locked.get());
+    }
+
+    private InProcessClusterBackend start() {
+        InProcessClusterBackend member = cluster.newMember();
+        member.start();
+        members.add(member);
+        return member;
+    }
+
+    private void awaitEvents() throws InterruptedException {
+        assertTrue(cluster.awaitEvents(5, TimeUnit.SECONDS));
+    }
+
+    private static List<MemberId> ids(InProcessClusterBackend... members) {
+        List<MemberId> ids = new ArrayList<>();
+        for (InProcessClusterBackend member : members) {
+            ids.add(member.getLocalMember());
+        }
+        return ids;
+    }
+
+    private static final class Holder implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final ClusterBackend backend;
+
+        Holder(ClusterBackend backend) {
+            this.backend = backend;
+        }
+    }
+
+    private static final class RecordingMembershipListener implements ClusterBackendListener {
+        private final List<String> events = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void memberAdded(MemberId member) {
+            events.add("+" + member);
+        }
+
+        @Override
+        public void memberRemoved(MemberId member) {
+            events.add("-" + member);
+        }
+    }
+
+    private static final class RecordingEntryListener implements EntryListener<String, String> {
+        private final List<String> events = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void entryAdded(EntryEvent<String, String> event) {
+            events.add("added " + event.getKey() + "=" + event.getValue());
+        }
+
+        @Override
+        public void entryRemoved(EntryEvent<String, String> event) {
+            events.add("removed " + event.getKey() + "=" + event.getValue());
+        }
+
+        @Override
+        public void entryUpdated(EntryEvent<String, String> event) {
+            events.add("updated " + event.getKey() + "=" + event.getValue());
+        }
+
+        @Override
+        public void entryEvicted(EntryEvent<String, String> event) {
+            events.add("evicted " + event.getKey() + "=" + event.getValue());
+        }
+    }
+
+    private static final class RecordingMessageListener implements MessageListener<String> {
+        private final List<String> messages = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void onMessage(String message) {
+            messages.add(message);
+        }
+    }
+
+}
@@ -24,9 +24,16 @@ package org.kaazing.gateway.server.cluster;
 import com.hazelcast.core.EntryEvent;
 import com.hazelcast.core.EntryListener;
 import com.hazelcast.core.IMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
 import org.junit.Test;
 import org.kaazing.gateway.server.context.resolve.StandaloneClusterContext;
+import org.kaazing.gateway.server.messaging.collections.BulkCollectionsFactory;
+import org.kaazing.gateway.server.messaging.collections.EntryUpdater;
+import static java.util.Arrays.asList;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 public class StandaloneClusterContextTest {
@@ -189,6 +196,55 @@ public class StandaloneClusterContextTest {
         imap.remove("test1");
     }
 
+    @Test
+    public void testBulkGetAndPut() throws Exception {
+        StandaloneClusterContext context = new StandaloneClusterContext();
+        BulkCollectionsFactory factory = context.getCollectionsFactory();
+        Map<String, String> entries = new HashMap<String, String>();
+        entries.put("test1", "value1");
+        entries.put("test2", "value2");
+        factory.putAll("test", entries);
+
+        Map<String, String> values = factory.getAll("test", new HashSet<String>(asList("test1", "test2", "test3")));
+        assertEquals(entries, values);
+
+        assertEquals("value1", factory.putAsync("test", "test1", "value3").get());
+        assertEquals("value3", factory.<String, String>getAsync("test", "test1").get());
+        assertEquals("value2", factory.<String, String>removeAsync("test", "test2").get());
+        assertNull(factory.getMap("test").get("test2"));
+    }
+
+    @Test
+    public void testUpdateAll() {
+        StandaloneClusterContext context = new StandaloneClusterContext();
+        BulkCollectionsFactory factory = context.getCollectionsFactory();
+        IMap<String, Integer> imap = factory.getMap("test");
+        imap.put("test1", 1);
+        imap.put("test2", 2);
+
+        EntryUpdater<String, Integer> increment = new EntryUpdater<String, Integer>() {
+            @Override
+            public Integer update(String key, Integer value) {
+                if (value == null) {
+                    return 1;
+                }
+                return (value == 2) ? null : Integer.valueOf(value + 1);
+            }
+        };
+        Map<String, Integer> values = factory.updateAll("test", new HashSet<String>(asList("test1", "test2", "test3")),
+                increment);
+
+        assertEquals(2, values.size());
+        assertEquals(Integer.valueOf(2), values.get("test1"));
+        assertEquals(Integer.valueOf(1), values.get("test3"));
+        assertEquals(Integer.valueOf(2), imap.get("test1"));
+        assertNull(imap.get("test2"));
+        assertEquals(Integer.valueOf(1), imap.get("test3"));
+
+        assertNull(factory.update("test", "test1", increment));
+        assertNull(imap.get("test1"));
+    }
+
     class EntryListenerImpl<K, V> implements EntryListener<K, V> {
 
         private int addedCount;
@@ -25,15 +25,23 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
+import org.kaazing.gateway.server.Gateway;
 import org.kaazing.gateway.server.config.sep2014.GatewayConfigDocument;
 import org.kaazing.gateway.util.http.DefaultUtilityHttpClient;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.junit.Assume.assumeTrue;
 
@@ -419,4 +427,100 @@ public class GatewayConfigParserTest {
         assumeTrue("accept equals localhost", "localhost".equals(accept));
     }
 
+    @Test
+    public void shouldInjectPropertiesInEveryParse() throws Exception {
+        File configFile = null;
+        try {
+            configFile =
+                    createTempFileFromResource("org/kaazing/gateway/server/config/parse/data/gateway-config-variable-comments" +
+                            ".xml");
+            // the second parse reuses the compiled pre-parse stylesheet
+            for (int i = 0; i < 2; i++) {
+                GatewayConfigDocument doc = parser.parse(configFile);
+                String accept = doc.getGatewayConfig().getServiceArray(0).getAcceptArray(0);
+                Assert.assertEquals("ws://localhost:8001/echo", accept);
+            }
+
+        } finally {
+            if (configFile != null) {
+                configFile.delete();
+            }
+        }
+    }
+
+    @Test
+    public void shouldInjectParametersSplitAcrossCharacterEvents() throws Exception {
+        GatewayConfigDocument doc = parseResource("gateway-config-parameter-split.xml");
+        Assert.assertEquals("ws://localhost:8001/echo", doc.getGatewayConfig().getServiceArray(0).getAcceptArray(0));
+    }
+
+    @Test
+    public void shouldAllowPropertiesReferringToPropertiesDeclaredLater() throws Exception {
+        GatewayConfigDocument doc = parseResource("gateway-config-parameter-forward-reference.xml");
+        Assert.assertEquals("ws://localhost:8001/echo", doc.getGatewayConfig().getServiceArray(0).getAcceptArray(0));
+    }
+
+    @Test(expected = GatewayConfigParserException.class)
+    public void shouldRejectPropertiesReferringToUndeclaredProperties() throws Exception {
+        parseResource("gateway-config-parameter-undeclared-reference.xml");
+    }
+
+    @Test
+    public void shouldInjectParametersInCdataButNotInComments() throws Exception {
+        GatewayConfigDocument doc = parseResource("gateway-config-parameter-cdata.xml");
+        GatewayConfigDocument.GatewayConfig config = doc.getGatewayConfig();
+        Assert.assertEquals("ws://localhost:8001/echo", config.getServiceArray(0).getAcceptArray(0));
+        Assert.assertEquals("http://localhost:8000",
+                config.getServiceArray(0).getCrossSiteConstraintArray(0).getAllowOrigin());
+    }
+
+    @Test
+    public void shouldReportConfigFileLineNumbersInValidationErrors() throws Exception {
+        final List<String> messages = Collections.synchronizedList(new ArrayList<String>());
+        AppenderSkeleton appender = new AppenderSkeleton() {
+            @Override
+            protected void append(LoggingEvent event) {
+                messages.add(event.getRenderedMessage());
+            }
+
+            @Override
+            public void close() {
+            }
+
+            @Override
+            public boolean requiresLayout() {
+                return false;
+            }
+        };
+        Logger logger = Logger.getLogger(Gateway.class);
+        logger.addAppender(appender);
+        try {
+            parseResource("gateway-config-parameter-line-numbers.xml");
+            fail("Expected the invalid element to be reported");
+        } catch (GatewayConfigParserException e) {
+            // expected
+        } finally {
+            logger.removeAppender(appender);
+        }
+
+        // the invalid element is on line 46 of the config file, after multi-line parameters, comments and CDATA
+        boolean reported = false;
+        for (String message : messages) {
+            reported |= message.equals("  Line: 46") || message.startsWith("  Line: 46 ");
+        }
+        assertTrue(messages.toString(), reported);
+    }
+
+    private GatewayConfigDocument parseResource(String resourceName) throws Exception {
+        File configFile = null;
+        try {
+            configFile = createTempFileFromResource("org/kaazing/gateway/server/config/parse/data/" + resourceName);
+            return parser.parse(configFile);
+        } finally {
+            if (configFile != null) {
+                configFile.delete();
+            }
+        }
+    }
+
 }
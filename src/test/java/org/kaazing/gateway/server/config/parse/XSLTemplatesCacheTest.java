@@ -0,0 +1,82 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.kaazing.gateway.server.config.parse;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import javax.xml.transform.Templates;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+import org.junit.After;
+import org.junit.Test;
+
+public class XSLTemplatesCacheTest {
+
+    private static final String ANNOTATE_TYPES_XSL = "META-INF/gateway-config-annotate-types.xsl";
+
+    @After
+    public void clearCache() {
+        XSLTemplatesCache.clear();
+    }
+
+    @Test
+    public void shouldReuseCompiledStylesheet() throws Exception {
+        Templates templates = XSLTemplatesCache.getTemplates(ANNOTATE_TYPES_XSL, GatewayConfigNamespace.SEPTEMBER_2014);
+        assertSame(templates, XSLTemplatesCache.getTemplates(ANNOTATE_TYPES_XSL, GatewayConfigNamespace.SEPTEMBER_2014));
+    }
+
+    @Test
+    public void shouldCompileStylesheetPerNamespace() throws Exception {
+        Templates templates = XSLTemplatesCache.getTemplates(ANNOTATE_TYPES_XSL, GatewayConfigNamespace.SEPTEMBER_2014);
+        assertNotSame(templates, XSLTemplatesCache.getTemplates(ANNOTATE_TYPES_XSL, GatewayConfigNamespace.SEPTEMBER_2012));
+    }
+
+    @Test
+    public void shouldCompileStylesheetAgainAfterClear() throws Exception {
+        Templates templates = XSLTemplatesCache.getTemplates(ANNOTATE_TYPES_XSL, GatewayConfigNamespace.SEPTEMBER_2014);
+        XSLTemplatesCache.clear();
+        assertNotSame(templates, XSLTemplatesCache.getTemplates(ANNOTATE_TYPES_XSL, GatewayConfigNamespace.SEPTEMBER_2014));
+    }
+
+    @Test
+    public void shouldTransformWithCachedStylesheet() throws Exception {
+        String config = "<gateway-config xmlns=\"http://xmlns.kaazing.org/2014/09/gateway\">" +
+                "<service><name>echo</name><type>echo</type></service></gateway-config>";
+        for (int i = 0; i < 2; i++) {
+            StringWriter transformed = new StringWriter();
+            XSLTemplatesCache.getTemplates(ANNOTATE_TYPES_XSL, GatewayConfigNamespace.SEPTEMBER_2014).newTransformer()
+                    .transform(new StreamSource(new StringReader(config)), new StreamResult(transformed));
+            assertTrue(transformed.toString(), transformed.toString().contains("type=\"echoServiceType"));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldFailOnMissingStylesheet() throws Exception {
+        XSLTemplatesCache.getTemplates("META-INF/no-such-stylesheet.xsl", GatewayConfigNamespace.SEPTEMBER_2014);
+    }
+}
@@ -0,0 +1,181 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.kaazing.gateway.server.context.resolve;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.Test;
+import org.kaazing.gateway.service.cluster.MemberId;
+import static org.junit.Assert.*;
+
+public class BalancerMapViewTest {
+
+    private static final URI BALANCE_URI = URI.create("ws://www.example.com:8080/path");
+    private static final URI TARGET1 = URI.create("ws://node1.example.com:8080/path");
+    private static final URI TARGET2 = URI.create("ws://node2.example.com:8080/path");
+
+    private final MemberId member1 = new MemberId("tcp", "node1", 5941);
+    private final MemberId member2 = new MemberId("tcp", "node2", 5941);
+
+    @Test
+    public void shouldMergeTargetsOfAllMembers() {
+        BalancerMapView view = new BalancerMapView();
+        RecordingListener listener = new RecordingListener();
+        view.addListener(listener);
+
+        assertTrue(view.apply(member1, state("instance1", TARGET1)));
+        assertTrue(view.apply(member2, state("instance2", TARGET2)));
+
+        assertEquals(set(TARGET1, TARGET2), view.getTargets(BALANCE_URI));
+        assertEquals(Collections.singleton(BALANCE_URI), view.getBalanceURIs());
+        assertEquals(Arrays.asList(set(), set(TARGET1)), listener.changes.get(0));
+        assertEquals(Arrays.asList(set(TARGET1), set(TARGET1, TARGET2)), listener.changes.get(1));
+    }
+
+    @Test
+    public void shouldIgnoreStaleState() {
+        BalancerMapView view = new BalancerMapView();
+        BalancerMemberState bound = state("instance1", TARGET1);
+        BalancerMemberState unbound = bound.removeTargets(Collections.singleton(BALANCE_URI), Collections.singleton(TARGET1));
+        assertTrue(unbound.isNewerThan(bound));
+
+        assertTrue(view.apply(member1, unbound));
+        assertFalse(view.apply(member1, bound));
+        assertTrue(view.getTargets(BALANCE_URI).isEmpty());
+    }
+
+    @Test
+    public void shouldNotNotifyWhenMergedTargetsAreUnchanged() {
+        BalancerMapView view = new BalancerMapView();
+        RecordingListener listener = new RecordingListener();
+        view.addListener(listener);
+
+        view.apply(member1, state("instance1", TARGET1));
+        view.apply(member2, state("instance2", TARGET1));
+        assertEquals(1, listener.changes.size());
+
+        view.remove(member1);
+        assertEquals(1, listener.changes.size());
+        assertEquals(set(TARGET1), view.getTargets(BALANCE_URI));
+    }
+
+    @Test
+    public void shouldNotResurrectRemovedState() {
+        BalancerMapView view = new BalancerMapView();
+        RecordingListener listener = new RecordingListener();
+        view.addListener(listener);
+        BalancerMemberState state = state("instance1", TARGET1);
+
+        view.apply(member1, state);
+        assertTrue(view.remove(member1));
+        assertFalse(view.apply(member1, state));
+        assertTrue(view.getBalanceURIs().isEmpty());
+        assertEquals(Arrays.asList(set(TARGET1), set()), listener.changes.get(1));
+
+        // a restarted member starts a new epoch, which supersedes the removed state
+        BalancerMemberState restarted = BalancerMemberState.forInstance(state, "instance2")
+                .addTargets(Collections.singleton(BALANCE_URI), Collections.singleton(TARGET2));
+        assertTrue(view.apply(member1, restarted));
+        assertEquals(set(TARGET2), view.getTargets(BALANCE_URI));
+    }
+
+    @Test
+    public void shouldForgetOldestRemovedStates() {
+        BalancerMapView view = new BalancerMapView();
+        List<BalancerMemberState> states = new ArrayList<BalancerMemberState>();
+        for (int i = 0; i <= BalancerMapView.MAX_REMOVED_STATES; i++) {
+            MemberId member = new MemberId("tcp", "node" + i, 5941);
+            BalancerMemberState state = state("instance" + i, TARGET1);
+            states.add(state);
+            view.apply(member, state);
+            view.remove(member);
+        }
+
+        assertTrue(view.apply(new MemberId("tcp", "node0", 5941), states.get(0)));
+        assertFalse(view.apply(new MemberId("tcp", "node1", 5941), states.get(1)));
+    }
+
+    @Test
+    public void shouldRemoveSeveralMembersWithOneNotification() {
+        BalancerMapView view = new BalancerMapView();
+        RecordingListener listener = new RecordingListener();
+        view.addListener(listener);
+
+        view.apply(member1, state("instance1", TARGET1));
+        view.apply(member2, state("instance2", TARGET2));
+        assertEquals(2, listener.changes.size());
+
+        assertTrue(view.removeAll(Arrays.asList(member1, member2)));
+        assertTrue(view.getBalanceURIs().isEmpty());
+        assertEquals(3, listener.changes.size());
+        assertEquals(Arrays.asList(set(TARGET1, TARGET2), set()), listener.changes.get(2));
+        assertFalse(view.removeAll(Arrays.asList(member1, member2)));
+    }
+
+    @Test
+    public void shouldOnlyRemoveStateThatIsNotNewer() {
+        BalancerMapView view = new BalancerMapView();
+        BalancerMemberState state = state("instance1", TARGET1);
+        BalancerMemberState newerState = state.addTargets(Collections.singleton(BALANCE_URI), Collections.singleton(TARGET2));
+
+        view.apply(member1, newerState);
+        assertFalse(view.remove(member1, state));
+        assertEquals(set(TARGET1, TARGET2), view.getTargets(BALANCE_URI));
+        assertTrue(view.remove(member1, newerState));
+        assertTrue(view.getTargets(BALANCE_URI).isEmpty());
+    }
+
+    @Test
+    public void unchangedStateShouldKeepItsVersion() {
+        BalancerMemberState state = state("instance1", TARGET1);
+        assertSame(state, state.addTargets(Collections.singleton(BALANCE_URI), Collections.singleton(TARGET1)));
+        assertSame(state, state.removeTargets(Collections.singleton(BALANCE_URI), Collections.singleton(TARGET2)));
+        assertSame(state, BalancerMemberState.forInstance(state, "instance1"));
+        assertEquals(1L, state.getVersion());
+    }
+
+    private static BalancerMemberState state(String instanceKey, URI target) {
+        return BalancerMemberState.forInstance(null, instanceKey)
+                .addTargets(Collections.singleton(BALANCE_URI), Collections.singleton(target));
+    }
+
+    private static Set<URI> set(URI... uris) {
+        return new HashSet<URI>(Arrays.asList(uris));
+    }
+
+    private static final class RecordingListener implements BalancerMapView.Listener {
+        private final List<List<Set<URI>>> changes = new ArrayList<List<Set<URI>>>();
+
+        @Override
+        public void balanceTargetsChanged(URI balanceURI, Set<URI> oldTargets, Set<URI> newTargets) {
+            assertEquals(BALANCE_URI, balanceURI);
+            changes.add(Arrays.asList(oldTargets, newTargets));
+        }
+    }
+
+}
@@ -0,0 +1,51 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.kaazing.gateway.server.context.resolve;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class MemberLoadTest {
+
+    @Test
+    public void scoreShouldCountSessionsAndQueuedMessages() {
+        assertEquals(0L, new MemberLoad(0, 0.0, 0).getScore());
+        assertEquals(15L, new MemberLoad(10, 0.0, 5).getScore());
+        assertEquals(15L, new MemberLoad(10, -1.0, 5).getScore());
+    }
+
+    @Test
+    public void scoreShouldGrowWithCpuLoad() {
+        assertEquals(15L, new MemberLoad(10, 0.5, 0).getScore());
+        assertEquals(20L, new MemberLoad(10, 1.0, 0).getScore());
+        assertEquals(20L, new MemberLoad(10, 3.0, 0).getScore());
+    }
+
+    @Test
+    public void equalRecordsShouldBeEqual() {
+        assertEquals(new MemberLoad(3, 0.25, 1), new MemberLoad(3, 0.25, 1));
+        assertEquals(new MemberLoad(3, 0.25, 1).hashCode(), new MemberLoad(3, 0.25, 1).hashCode());
+        assertFalse(new MemberLoad(3, 0.25, 1).equals(new MemberLoad(3, 0.5, 1)));
+    }
+
+}
@@ -0,0 +1,167 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+
+package org.kaazing.gateway.server.context.resolve;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+import org.kaazing.gateway.service.cluster.MemberId;
+import static org.junit.Assert.*;
+
+public class MembershipChangeWorkerTest {
+
+    private final MemberId member1 = new MemberId("tcp", "node1", 5941);
+    private final MemberId member2 = new MemberId("tcp", "node2", 5941);
+    private final MemberId member3 = new MemberId("tcp", "node3", 5941);
+
+    private MembershipChangeWorker worker;
+
+    @After
+    public void tearDown() {
+        if (worker != null) {
+            worker.dispose();
+        }
+    }
+
+    @Test
+    public void shouldBatchRemovalsQueuedWhileBusy() throws Exception {
+        RecordingHandler handler = new RecordingHandler(2);
+        worker = new MembershipChangeWorker(handler, 0);
+
+        worker.memberRemoved(member1);
+        assertTrue(handler.started.await(5, TimeUnit.SECONDS));
+        worker.memberRemoved(member2);
+        worker.memberRemoved(member3);
+        worker.memberRemoved(member2);
+        assertEquals(3, worker.getPendingCount());
+        handler.release.countDown();
+
+        assertTrue(handler.done.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("removed " + Collections.singletonList(member1),
+                "removed " + Arrays.asList(member2, member3)), handler.changes);
+        awaitRemovalBatches(2);
+        assertEquals(0, worker.getPendingCount());
+        assertEquals(3, worker.getRemovedMemberCount());
+        assertEquals(2, worker.getRemovalBatchCount());
+        assertEquals(2, worker.getLargestRemovalBatch());
+        assertTrue(worker.getMaxRemovalLatency() >= worker.getLastRemovalLatency());
+    }
+
+    @Test
+    public void shouldBatchRemovalsWithinDelay() throws Exception {
+        RecordingHandler handler = new RecordingHandler(1);
+        handler.release.countDown();
+        worker = new MembershipChangeWorker(handler, 200);
+
+        worker.memberRemoved(member1);
+        worker.memberRemoved(member2);
+
+        assertTrue(handler.done.await(5, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList("removed " + Arrays.asList(member1, member2)), handler.changes);
+        awaitRemovalBatches(1);
+        assertTrue(worker.getLastRemovalLatency() >= 200);
+    }
+
+    @Test
+    public void shouldKeepArrivalsInOrder() throws Exception {
+        RecordingHandler handler = new RecordingHandler(4);
+        worker = new MembershipChangeWorker(handler, 0);
+
+        worker.memberRemoved(member1);
+        assertTrue(handler.started.await(5, TimeUnit.SECONDS));
+        worker.memberRemoved(member2);
+        worker.memberAdded(member1);
+        worker.memberRemoved(member3);
+        handler.release.countDown();
+
+        assertTrue(handler.done.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("removed " + Collections.singletonList(member1),
+                "removed " + Collections.singletonList(member2),
+                "added " + member1,
+                "removed " + Collections.singletonList(member3)), handler.changes);
+    }
+
+    @Test
+    public void shouldSurviveHandlerFailure() throws Exception {
+        RecordingHandler handler = new RecordingHandler(2) {
+            @Override
+            public void memberAdded(MemberId member) {
+                super.memberAdded(member);
+                throw new IllegalStateException("expected");
+            }
+        };
+        handler.release.countDown();
+        worker = new MembershipChangeWorker(handler, 0);
+
+        worker.memberAdded(member1);
+        worker.memberRemoved(member1);
+
+        assertTrue(handler.done.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("added " + member1, "removed " + Collections.singletonList(member1)), handler.changes);
+    }
+
+    // the statistics of a batch are recorded once the handler returns
+    private void awaitRemovalBatches(long count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (worker.getRemovalBatchCount() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, worker.getRemovalBatchCount());
+    }
+
+    private static class RecordingHandler implements MembershipChangeWorker.Handler {
+        final List<String> changes = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done;
+
+        RecordingHandler(int expectedChanges) {
+            done = new CountDownLatch(expectedChanges);
+        }
+
+        @Override
+        public void memberAdded(MemberId member) {
+            changes.add("added " + member);
+            done.countDown();
+        }
+
+        @Override
+        public void membersRemoved(List<MemberId> members) {
+            changes.add("removed " + members);
+            started.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            done.countDown();
+        }
+    }
+
+}
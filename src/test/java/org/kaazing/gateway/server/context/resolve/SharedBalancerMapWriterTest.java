@@ -0,0 +1,194 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.kaazing.gateway.server.context.resolve;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.kaazing.gateway.server.cluster.InProcessCluster;
+import org.kaazing.gateway.server.cluster.InProcessClusterBackend;
+import org.kaazing.gateway.server.messaging.collections.ClusterCollectionsFactory;
+import org.kaazing.gateway.service.cluster.MemberId;
+import static org.junit.Assert.*;
+import static org.kaazing.gateway.server.context.resolve.DefaultServiceContext.BALANCER_MAP_NAME;
+
+public class SharedBalancerMapWriterTest {
+
+    private static final URI BALANCE_URI1 = URI.create("ws://www.example.com:8080/path1");
+    private static final URI BALANCE_URI2 = URI.create("ws://www.example.com:8080/path2");
+    private static final URI TARGET1 = URI.create("ws://node1.example.com:8080/path");
+    private static final URI TARGET2 = URI.create("ws://node2.example.com:8080/path");
+    private static final URI TARGET3 = URI.create("ws://node3.example.com:8080/path");
+
+    private final MemberId member1 = new MemberId("tcp", "node1", 5941);
+    private final MemberId member2 = new MemberId("tcp", "node2", 5941);
+
+    private InProcessClusterBackend backend;
+    private ClusterCollectionsFactory factory;
+    private Map<URI, Set<URI>> sharedMap;
+    private BalancerMapView view;
+    private SharedBalancerMapWriter writer;
+
+    @Before
+    public void setUp() {
+        backend = new InProcessCluster("test").newMember();
+        backend.start();
+        factory = new ClusterCollectionsFactory(backend);
+        sharedMap = factory.getMap(BALANCER_MAP_NAME);
+        view = new BalancerMapView();
+        writer = new SharedBalancerMapWriter(factory, SharedBalancerMapWriter.SYNCHRONOUS);
+        view.addListener(writer);
+    }
+
+    @After
+    public void tearDown() {
+        backend.shutdown();
+    }
+
+    @Test
+    public void shouldOnlyWriteWhileActive() {
+        view.apply(member1, state("instance1", BALANCE_URI1, TARGET1));
+        assertTrue(sharedMap.isEmpty());
+
+        writer.setActive(true, view);
+        view.apply(member2, state("instance2", BALANCE_URI1, TARGET2));
+        assertEquals(set(TARGET1, TARGET2), sharedMap.get(BALANCE_URI1));
+
+        writer.setActive(false, view);
+        view.remove(member2);
+        assertEquals(set(TARGET1, TARGET2), sharedMap.get(BALANCE_URI1));
+    }
+
+    @Test
+    public void shouldReplaceSharedEntriesWithViewOnTakeover() {
+        // left behind by a previous writer that went away before applying its last changes
+        sharedMap.put(BALANCE_URI1, set(TARGET1, TARGET3));
+        sharedMap.put(BALANCE_URI2, set(TARGET3));
+        view.apply(member1, state("instance1", BALANCE_URI1, TARGET1));
+        view.apply(member2, state("instance2", BALANCE_URI1, TARGET2));
+
+        writer.setActive(true, view);
+
+        assertEquals(Collections.singleton(BALANCE_URI1), sharedMap.keySet());
+        assertEquals(set(TARGET1, TARGET2), sharedMap.get(BALANCE_URI1));
+    }
+
+    @Test
+    public void shouldSetSharedEntriesToViewTargets() {
+        writer.setActive(true, view);
+        view.apply(member1, state("instance1", BALANCE_URI1, TARGET1));
+        sharedMap.put(BALANCE_URI1, set(TARGET1, TARGET3));
+
+        view.apply(member2, state("instance2", BALANCE_URI1, TARGET2));
+        assertEquals(set(TARGET1, TARGET2), sharedMap.get(BALANCE_URI1));
+
+        view.removeAll(Arrays.asList(member1, member2));
+        assertFalse(sharedMap.containsKey(BALANCE_URI1));
+    }
+
+    @Test
+    public void shouldNotLoseChangesMadeDuringTakeover() throws Exception {
+        view.apply(member1, state("instance1", BALANCE_URI1, TARGET1));
+        final BalancerMemberState state2 = state("instance2", BALANCE_URI1, TARGET2);
+        Thread changer = new Thread() {
+            @Override
+            public void run() {
+                view.apply(member2, state2);
+            }
+        };
+
+        synchronized (view) {
+            changer.start();
+            writer.setActive(true, view);
+            assertEquals(set(TARGET1), sharedMap.get(BALANCE_URI1));
+        }
+        changer.join();
+
+        assertEquals(set(TARGET1, TARGET2), sharedMap.get(BALANCE_URI1));
+    }
+
+    @Test
+    public void shouldWriteOutsideTheViewLock() {
+        QueuedExecutor executor = new QueuedExecutor();
+        view.removeListener(writer);
+        writer = new SharedBalancerMapWriter(factory, executor);
+        view.addListener(writer);
+
+        writer.setActive(true, view);
+        view.apply(member1, state("instance1", BALANCE_URI1, TARGET1));
+        view.apply(member2, state("instance2", BALANCE_URI1, TARGET2));
+        assertTrue(sharedMap.isEmpty());
+
+        executor.runAll();
+        assertEquals(set(TARGET1, TARGET2), sharedMap.get(BALANCE_URI1));
+    }
+
+    @Test
+    public void shouldDropQueuedWritesWhenNoLongerActive() {
+        QueuedExecutor executor = new QueuedExecutor();
+        view.removeListener(writer);
+        writer = new SharedBalancerMapWriter(factory, executor);
+        view.addListener(writer);
+
+        writer.setActive(true, view);
+        view.apply(member1, state("instance1", BALANCE_URI1, TARGET1));
+        writer.setActive(false, view);
+
+        executor.runAll();
+        assertTrue(sharedMap.isEmpty());
+    }
+
+    private static BalancerMemberState state(String instanceKey, URI balanceURI, URI target) {
+        return BalancerMemberState.forInstance(null, instanceKey)
+                .addTargets(Collections.singleton(balanceURI), Collections.singleton(target));
+    }
+
+    private static Set<URI> set(URI... uris) {
+        return new HashSet<URI>(Arrays.asList(uris));
+    }
+
+    private static final class QueuedExecutor implements Executor {
+        private final List<Runnable> tasks = new CopyOnWriteArrayList<Runnable>();
+
+        @Override
+        public void execute(Runnable task) {
+            tasks.add(task);
+        }
+
+        void runAll() {
+            for (Runnable task : tasks) {
+                task.run();
+            }
+            tasks.clear();
+        }
+    }
+
+}
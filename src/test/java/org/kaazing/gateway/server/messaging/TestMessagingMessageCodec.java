@@ -0,0 +1,112 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.kaazing.gateway.server.messaging;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Date;
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestMessagingMessageCodec {
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        Date date = new Date();
+        DefaultMessagingMessage message = new DefaultMessagingMessage();
+        message.setId("message-1");
+        message.setPayload(ByteBuffer.wrap(new byte[] { 1, 2, 3 }));
+        message.setAttribute("string", "value");
+        message.setAttribute("int", -42);
+        message.setAttribute("long", Long.MAX_VALUE);
+        message.setAttribute("boolean", true);
+        message.setAttribute("double", 1.5);
+        message.setAttribute("bytes", new byte[] { 4, 5 });
+        message.setAttribute("date", date);
+        message.setAttribute("null", null);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new MessagingMessageCodec().writeMessage(new DataOutputStream(bytes), message);
+        DefaultMessagingMessage copy = new MessagingMessageCodec().readMessage(
+                new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals("message-1", copy.getId());
+        assertEquals(ByteBuffer.wrap(new byte[] { 1, 2, 3 }), copy.getPayload());
+        assertEquals("value", copy.getAttribute("string"));
+        assertEquals(-42, copy.getAttribute("int"));
+        assertEquals(Long.MAX_VALUE, copy.getAttribute("long"));
+        assertEquals(true, copy.getAttribute("boolean"));
+        assertEquals(1.5, copy.getAttribute("double"));
+        assertArrayEquals(new byte[] { 4, 5 }, (byte[]) copy.getAttribute("bytes"));
+        assertEquals(date, copy.getAttribute("date"));
+        assertNull(copy.getAttribute("null"));
+    }
+
+    @Test
+    public void testAttributeNamesWrittenOnce() throws Exception {
+        DefaultMessagingMessage message = new DefaultMessagingMessage();
+        message.setAttribute("a-rather-long-attribute-name", "x");
+
+        MessagingMessageCodec codec = new MessagingMessageCodec();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        codec.writeMessage(out, message);
+        int first = bytes.size();
+        codec.writeMessage(out, message);
+        int second = bytes.size() - first;
+        assertTrue(second < first - "a-rather-long-attribute-name".length());
+
+        MessagingMessageCodec reader = new MessagingMessageCodec();
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals("x", reader.readMessage(in).getAttribute("a-rather-long-attribute-name"));
+        assertEquals("x", reader.readMessage(in).getAttribute("a-rather-long-attribute-name"));
+    }
+
+    @Test
+    public void testJavaSerialization() throws Exception {
+        DefaultMessagingMessage message = new DefaultMessagingMessage();
+        message.setId("message-2");
+        message.setPayload("payload");
+        message.setAttribute("key", "value");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(message);
+        out.close();
+
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        DefaultMessagingMessage copy = (DefaultMessagingMessage) in.readObject();
+        assertEquals("message-2", copy.getId());
+        assertEquals("payload", copy.getPayload());
+        assertEquals("value", copy.getAttribute("key"));
+    }
+
+}
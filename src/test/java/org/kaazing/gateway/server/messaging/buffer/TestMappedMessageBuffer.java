@@ -0,0 +1,185 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.kaazing.gateway.server.messaging.buffer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.kaazing.gateway.server.messaging.DefaultMessagingMessage;
+import org.kaazing.gateway.service.messaging.MessagingMessage;
+import org.kaazing.gateway.service.messaging.buffer.MessageBufferEntry;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestMappedMessageBuffer {
+
+    private File file;
+    private File directory;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("mapped-message-buffer", ".buf");
+        file.delete();
+        directory = new File(file.getPath() + ".d");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        file.delete();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File bufferFile : files) {
+                bufferFile.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testBufferWraps() throws Exception {
+        MappedMessageBuffer buffer = new MappedMessageBuffer(file, 10);
+        for (int i = 1; i <= 25; i++) {
+            buffer.add(newMessage("message " + i));
+        }
+
+        assertEquals(16, buffer.getOldestId());
+        assertEquals(25, buffer.getYoungestId());
+        assertNull(buffer.get(15));
+        assertNull(buffer.get(26));
+
+        MessageBufferEntry entry = buffer.get(20);
+        assertEquals(20, entry.getId());
+        assertEquals("message 20", entry.getMessage().getPayload());
+        assertEquals("message 20", entry.getMessage().getAttribute("text"));
+
+        MessageBufferEntry[] entries = new MessageBufferEntry[20];
+        assertEquals(10, buffer.get(1, entries, 0, entries.length));
+        assertEquals(16, entries[0].getId());
+        assertEquals("message 25", entries[9].getMessage().getPayload());
+    }
+
+    @Test
+    public void testRecoveryAfterRestart() throws Exception {
+        MappedMessageBuffer buffer = new MappedMessageBuffer(file, 10);
+        for (int i = 1; i <= 12; i++) {
+            buffer.add(newMessage("message " + i));
+        }
+        buffer.flush();
+
+        MappedMessageBuffer recovered = new MappedMessageBuffer(file, 10);
+        assertEquals(3, recovered.getOldestId());
+        assertEquals(12, recovered.getYoungestId());
+        assertEquals("message 3", recovered.get(3).getMessage().getPayload());
+        assertEquals("message 12", recovered.get(12).getMessage().getPayload());
+
+        assertEquals(13, recovered.add(newMessage("message 13")).getId());
+    }
+
+    @Test
+    public void testChangedLayoutStartsEmpty() throws Exception {
+        MappedMessageBuffer buffer = new MappedMessageBuffer(file, 10);
+        buffer.add(newMessage("message 1"));
+
+        MappedMessageBuffer resized = new MappedMessageBuffer(file, 20);
+        assertEquals(0, resized.getYoungestId());
+        assertNull(resized.get(1));
+    }
+
+    @Test
+    public void testLargeMessageKeptOnHeap() throws Exception {
+        MappedMessageBuffer buffer = new MappedMessageBuffer(file, 10, 64, MessageBufferDispatch.SYNCHRONOUS);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            text.append("large message ");
+        }
+        MessagingMessage large = newMessage(text.toString());
+        buffer.add(large);
+
+        assertEquals(large, buffer.get(1).getMessage());
+
+        // spilled messages are not recovered
+        MappedMessageBuffer recovered = new MappedMessageBuffer(file, 10, 64, MessageBufferDispatch.SYNCHRONOUS);
+        assertEquals(1, recovered.getYoungestId());
+        assertNull(recovered.get(1));
+    }
+
+    @Test
+    public void testClosedBufferKeepsFile() throws Exception {
+        MappedMessageBuffer buffer = new MappedMessageBuffer(file, 10);
+        buffer.add(newMessage("message 1"));
+        buffer.close();
+
+        assertTrue(buffer.isClosed());
+        assertNull(buffer.get(1));
+        try {
+            buffer.add(newMessage("message 2"));
+            fail("Expected closed buffer to reject messages");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        MappedMessageBuffer recovered = new MappedMessageBuffer(file, 10);
+        assertEquals("message 1", recovered.get(1).getMessage().getPayload());
+    }
+
+    @Test
+    public void testFactoryKeepsUnnamedBuffersApart() throws Exception {
+        MappedMessageBufferFactory factory = new MappedMessageBufferFactory(directory);
+        MappedMessageBuffer buffer = factory.createMessageBuffer(10);
+        buffer.add(newMessage("message 1"));
+
+        // a copy of the factory, as deserialized with a cluster buffer, must not map the same file
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(factory);
+        out.close();
+        MappedMessageBufferFactory copy = (MappedMessageBufferFactory)
+                new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+        MappedMessageBuffer other = copy.createMessageBuffer(10);
+
+        assertFalse(buffer.getFile().equals(other.getFile()));
+        assertEquals(0, other.getYoungestId());
+
+        factory.close();
+        assertTrue(buffer.isClosed());
+        assertFalse(buffer.getFile().exists());
+        other.close();
+        assertFalse(other.getFile().exists());
+    }
+
+    private static MessagingMessage newMessage(String text) {
+        DefaultMessagingMessage message = new DefaultMessagingMessage();
+        message.setPayload(text);
+        message.setAttribute("text", text);
+        return message;
+    }
+
+}
@@ -21,9 +21,15 @@
 
 package org.kaazing.gateway.server.messaging.buffer;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import org.junit.Test;
 import org.kaazing.gateway.server.messaging.DefaultMessagingMessage;
 import org.kaazing.gateway.service.messaging.buffer.MessageBuffer;
+import org.kaazing.gateway.service.messaging.buffer.MessageBufferEntry;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
@@ -126,4 +132,43 @@ public class TestMemoryMessageBuffer {
 
     }
 
+    @Test
+    public void testRangeReads() throws Exception {
+        RangeMessageBuffer buffer = new MemoryMessageBuffer(10);
+        for (int i = 0; i < 25; i++) {
+            buffer.add(new DefaultMessagingMessage());
+        }
+
+        // ids older than the oldest retained id are skipped
+        MessageBufferEntry[] entries = new MessageBufferEntry[20];
+        assertEquals(10, buffer.get(1, entries, 0, entries.length));
+        assertEquals(16, entries[0].getId());
+        assertEquals(25, entries[9].getId());
+
+        assertEquals(3, buffer.get(20, entries, 5, 3));
+        assertEquals(20, entries[5].getId());
+        assertEquals(22, entries[7].getId());
+
+        final List<Integer> visited = new ArrayList<Integer>();
+        assertEquals(4, buffer.visit(18, 21, new MessageBufferVisitor<MessageBufferEntry>() {
+            @Override
+            public boolean visit(MessageBufferEntry entry) {
+                visited.add(entry.getId());
+                return true;
+            }
+        }));
+        assertEquals(Arrays.asList(18, 19, 20, 21), visited);
+
+        MessageBufferCursor<MessageBufferEntry> cursor = buffer.cursor(23);
+        assertEquals(23, cursor.next().getId());
+        assertEquals(24, cursor.next().getId());
+        assertEquals(25, cursor.next().getId());
+        assertFalse(cursor.hasNext());
+
+        buffer.add(new DefaultMessagingMessage());
+        assertTrue(cursor.hasNext());
+        assertEquals(26, cursor.next().getId());
+        assertEquals(27, cursor.getNextId());
+    }
+
 }
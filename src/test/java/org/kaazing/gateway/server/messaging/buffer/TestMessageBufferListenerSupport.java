@@ -0,0 +1,218 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.kaazing.gateway.server.messaging.buffer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.kaazing.gateway.server.messaging.DefaultMessagingMessage;
+import org.kaazing.gateway.service.messaging.buffer.MessageBufferEntry;
+import org.kaazing.gateway.service.messaging.buffer.MessageBufferListener;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestMessageBufferListenerSupport {
+
+    @Test
+    public void testSynchronousDispatch() throws Exception {
+        MessageBufferListenerSupport support = new MessageBufferListenerSupport();
+        RecordingListener listener = new RecordingListener();
+        support.addMessageBufferListener(listener);
+
+        support.messageAdded(newEntry(1));
+        assertEquals(1, listener.ids.size());
+        assertNull(support.getListenerMetrics(listener));
+    }
+
+    @Test
+    public void testDropOldest() throws Exception {
+        ManualExecutor executor = new ManualExecutor();
+        MessageBufferListenerSupport support =
+                new MessageBufferListenerSupport(executor, 3, MessageBufferOverflowPolicy.DROP_OLDEST);
+        RecordingListener listener = new RecordingListener();
+        support.addMessageBufferListener(listener);
+
+        for (int id = 1; id <= 5; id++) {
+            support.messageAdded(newEntry(id));
+        }
+        assertTrue(listener.ids.isEmpty());
+
+        MessageBufferListenerMetrics metrics = support.getListenerMetrics(listener);
+        assertEquals(3, metrics.getPendingCount());
+        assertEquals(2, metrics.getDroppedCount());
+        assertEquals(5, metrics.getLag());
+
+        executor.runAll();
+        assertEquals(listOf(3, 4, 5), listener.ids);
+        assertEquals(3, metrics.getDeliveredCount());
+        assertEquals(0, metrics.getLag());
+    }
+
+    @Test
+    public void testDisconnect() throws Exception {
+        ManualExecutor executor = new ManualExecutor();
+        MessageBufferListenerSupport support =
+                new MessageBufferListenerSupport(executor, 2, MessageBufferOverflowPolicy.DISCONNECT);
+        DisconnectRecordingListener slow = new DisconnectRecordingListener();
+        support.addMessageBufferListener(slow);
+
+        support.messageAdded(newEntry(1));
+        support.messageAdded(newEntry(2));
+        MessageBufferListenerMetrics metrics = support.getListenerMetrics(slow);
+        assertFalse(metrics.isDisconnected());
+
+        support.messageAdded(newEntry(3));
+        assertTrue(metrics.isDisconnected());
+        assertEquals(2, metrics.getDroppedCount());
+        assertNull(support.getListenerMetrics(slow));
+
+        RecordingListener other = new RecordingListener();
+        support.addMessageBufferListener(other);
+        support.messageAdded(newEntry(4));
+
+        executor.runAll();
+        assertTrue(slow.ids.isEmpty());
+        assertEquals(1, slow.disconnections.size());
+        assertTrue(slow.disconnections.get(0).isDisconnected());
+        assertEquals(listOf(4), other.ids);
+    }
+
+    @Test
+    public void testSlowListenerDoesNotBlockPublisher() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch delivered = new CountDownLatch(10);
+        MemoryMessageBuffer buffer =
+                new MemoryMessageBuffer(16, new MessageBufferDispatch(16, MessageBufferOverflowPolicy.DROP_OLDEST));
+        final List<Integer> ids = new ArrayList<Integer>();
+        MessageBufferListener listener = new MessageBufferListener() {
+            @Override
+            public void messageAdded(MessageBufferEntry newMessage) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                ids.add(newMessage.getId());
+                delivered.countDown();
+            }
+        };
+        buffer.addMessageBufferListener(listener);
+
+        for (int i = 0; i < 10; i++) {
+            buffer.add(new DefaultMessagingMessage());
+        }
+        assertEquals(10, buffer.getYoungestId());
+        assertTrue(ids.isEmpty());
+
+        release.countDown();
+        assertTrue(delivered.await(10, TimeUnit.SECONDS));
+        assertEquals(listOf(1, 2, 3, 4, 5, 6, 7, 8, 9, 10), ids);
+        assertFalse(buffer.getListenerMetrics(listener).isDisconnected());
+    }
+
+    @Test
+    public void testDispatchThreadsAreBounded() throws Exception {
+        final CountDownLatch delivered = new CountDownLatch(20);
+        final Set<String> threadNames = Collections.synchronizedSet(new HashSet<String>());
+        MemoryMessageBuffer buffer = new MemoryMessageBuffer(16,
+                new MessageBufferDispatch(16, MessageBufferOverflowPolicy.DROP_OLDEST, 2));
+        for (int i = 0; i < 10; i++) {
+            buffer.addMessageBufferListener(new MessageBufferListener() {
+                @Override
+                public void messageAdded(MessageBufferEntry newMessage) {
+                    threadNames.add(Thread.currentThread().getName());
+                    try {
+                        Thread.sleep(5);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    delivered.countDown();
+                }
+            });
+        }
+
+        buffer.add(new DefaultMessagingMessage());
+        buffer.add(new DefaultMessagingMessage());
+        assertTrue(delivered.await(10, TimeUnit.SECONDS));
+        assertTrue(threadNames.toString(), threadNames.size() <= 2);
+    }
+
+    private static MessageBufferEntry newEntry(int id) {
+        return new MessageBufferEntry(id, new DefaultMessagingMessage());
+    }
+
+    private static List<Integer> listOf(int... ids) {
+        List<Integer> list = new ArrayList<Integer>();
+        for (int id : ids) {
+            list.add(id);
+        }
+        return list;
+    }
+
+    private static class RecordingListener implements MessageBufferListener {
+        final List<Integer> ids = new ArrayList<Integer>();
+
+        @Override
+        public void messageAdded(MessageBufferEntry newMessage) {
+            ids.add(newMessage.getId());
+        }
+    }
+
+    private static class DisconnectRecordingListener extends RecordingListener
+            implements MessageBufferDisconnectListener {
+        final List<MessageBufferListenerMetrics> disconnections = new ArrayList<MessageBufferListenerMetrics>();
+
+        @Override
+        public void listenerDisconnected(MessageBufferListenerMetrics metrics) {
+            disconnections.add(metrics);
+        }
+    }
+
+    // runs tasks only when asked, so the tests control exactly when listeners catch up
+    private static class ManualExecutor implements Executor {
+        private final Queue<Runnable> tasks = new LinkedList<Runnable>();
+
+        @Override
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+
+        void runAll() {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                task.run();
+            }
+        }
+    }
+
+}
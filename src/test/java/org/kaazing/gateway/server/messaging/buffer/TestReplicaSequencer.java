@@ -0,0 +1,185 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.kaazing.gateway.server.messaging.buffer;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.kaazing.gateway.server.messaging.DefaultMessagingMessage;
+import static org.junit.Assert.assertEquals;
+
+public class TestReplicaSequencer {
+
+    @Test
+    public void testInOrderEntriesApplied() throws Exception {
+        RecordingSequencer sequencer = new RecordingSequencer(60000, 10);
+        sequencer.receive(newEntry(1));
+        sequencer.receive(newEntry(2));
+        sequencer.receive(newEntry(2));
+
+        assertEquals(ids(1, 2), sequencer.applied);
+        assertEquals(0, sequencer.requests.size());
+    }
+
+    @Test
+    public void testGapResynced() throws Exception {
+        RecordingSequencer sequencer = new RecordingSequencer(60000, 10);
+        sequencer.receive(newEntry(1));
+        sequencer.receive(newEntry(4));
+        sequencer.receive(newEntry(5));
+
+        assertEquals(ids(1), sequencer.applied);
+        assertEquals(1, sequencer.requests.size());
+        assertEquals(2, sequencer.requests.get(0)[0]);
+        assertEquals(3, sequencer.requests.get(0)[1]);
+        assertEquals(2, sequencer.getPendingCount());
+
+        sequencer.resync(new MessageBufferResync(2, 3, new LongMessageBufferEntry[] { newEntry(2), newEntry(3) }));
+        assertEquals(ids(1, 2, 3, 4, 5), sequencer.applied);
+        assertEquals(0, sequencer.getPendingCount());
+    }
+
+    @Test
+    public void testResyncOfExpiredIds() throws Exception {
+        RecordingSequencer sequencer = new RecordingSequencer(60000, 10);
+        sequencer.receive(newEntry(10));
+        assertEquals(1, sequencer.requests.size());
+        assertEquals(1, sequencer.requests.get(0)[0]);
+        assertEquals(9, sequencer.requests.get(0)[1]);
+
+        // the master only retains ids 8 and 9
+        sequencer.resync(new MessageBufferResync(1, 9, new LongMessageBufferEntry[] { newEntry(8), newEntry(9) }));
+        assertEquals(ids(8, 9, 10), sequencer.applied);
+    }
+
+    @Test
+    public void testGapSkippedAfterTimeout() throws Exception {
+        RecordingSequencer sequencer = new RecordingSequencer(1, 10);
+        sequencer.receive(newEntry(1));
+        sequencer.receive(newEntry(3));
+        Thread.sleep(20);
+        sequencer.checkResync();
+
+        assertEquals(ids(1, 3), sequencer.applied);
+        assertEquals(0, sequencer.getPendingCount());
+
+        // a late resync for the skipped gap is ignored
+        sequencer.resync(new MessageBufferResync(2, 2, new LongMessageBufferEntry[] { newEntry(2) }));
+        assertEquals(ids(1, 3), sequencer.applied);
+    }
+
+    @Test
+    public void testGapSkippedWhenTooManyPending() throws Exception {
+        RecordingSequencer sequencer = new RecordingSequencer(60000, 2);
+        sequencer.receive(newEntry(1));
+        sequencer.receive(newEntry(3));
+        sequencer.receive(newEntry(4));
+        sequencer.receive(newEntry(5));
+
+        assertEquals(ids(1, 3, 4, 5), sequencer.applied);
+    }
+
+    @Test
+    public void testGapFilledByLateEntryRequestsNextGap() throws Exception {
+        RecordingSequencer sequencer = new RecordingSequencer(60000, 10);
+        sequencer.receive(newEntry(1));
+        sequencer.receive(newEntry(3));
+        sequencer.receive(newEntry(2));
+        assertEquals(ids(1, 2, 3), sequencer.applied);
+        assertEquals(1, sequencer.requests.size());
+
+        sequencer.receive(newEntry(5));
+        assertEquals(2, sequencer.requests.size());
+        assertEquals(4, sequencer.requests.get(1)[0]);
+        assertEquals(4, sequencer.requests.get(1)[1]);
+    }
+
+    @Test
+    public void testPartialResyncKeepsWaitingForRest() throws Exception {
+        RecordingSequencer sequencer = new RecordingSequencer(60000, 10);
+        sequencer.receive(newEntry(1));
+        sequencer.receive(newEntry(5));
+
+        // answer to another replica's smaller request
+        sequencer.resync(new MessageBufferResync(2, 3, new LongMessageBufferEntry[] { newEntry(2), newEntry(3) }));
+        assertEquals(ids(1, 2, 3), sequencer.applied);
+        assertEquals(1, sequencer.requests.size());
+
+        sequencer.receive(newEntry(4));
+        assertEquals(ids(1, 2, 3, 4, 5), sequencer.applied);
+
+        sequencer.receive(newEntry(7));
+        assertEquals(2, sequencer.requests.size());
+        assertEquals(6, sequencer.requests.get(1)[0]);
+    }
+
+    @Test
+    public void testTimeoutAfterGapFilledIsIgnored() throws Exception {
+        RecordingSequencer sequencer = new RecordingSequencer(1, 10);
+        sequencer.receive(newEntry(1));
+        sequencer.receive(newEntry(3));
+        sequencer.receive(newEntry(2));
+        Thread.sleep(20);
+        sequencer.checkResync();
+
+        assertEquals(ids(1, 2, 3), sequencer.applied);
+        assertEquals(0, sequencer.getPendingCount());
+    }
+
+    private static LongMessageBufferEntry newEntry(long id) {
+        return new LongMessageBufferEntry(id, new DefaultMessagingMessage());
+    }
+
+    private static List<Long> ids(long... ids) {
+        List<Long> list = new ArrayList<Long>();
+        for (long id : ids) {
+            list.add(id);
+        }
+        return list;
+    }
+
+    private static class RecordingSequencer extends ReplicaSequencer {
+        final List<Long> applied = new ArrayList<Long>();
+        final List<long[]> requests = new ArrayList<long[]>();
+
+        RecordingSequencer(long resyncTimeout, int maxPending) {
+            super(resyncTimeout, maxPending);
+        }
+
+        @Override
+        protected long youngestId() {
+            return applied.isEmpty() ? 0 : applied.get(applied.size() - 1);
+        }
+
+        @Override
+        protected void apply(LongMessageBufferEntry entry) {
+            applied.add(entry.getId());
+        }
+
+        @Override
+        protected void requestResync(long fromId, long toId) {
+            requests.add(new long[] { fromId, toId });
+        }
+    }
+
+}
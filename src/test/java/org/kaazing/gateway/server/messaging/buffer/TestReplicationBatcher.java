@@ -0,0 +1,133 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.kaazing.gateway.server.messaging.buffer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.kaazing.gateway.server.messaging.DefaultMessagingMessage;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestReplicationBatcher {
+
+    @Test
+    public void testFlushWhenFull() throws Exception {
+        RecordingBatcher batcher = new RecordingBatcher(new ClusterReplication(3, 60000));
+        batcher.add(newEntry(2));
+        batcher.add(newEntry(1));
+        assertTrue(batcher.records.isEmpty());
+
+        batcher.add(newEntry(3));
+        assertEquals(1, batcher.records.size());
+        LongMessageBufferEntry[] entries = ((LongMessageBufferBatch) batcher.records.get(0)).getEntries();
+        assertEquals(3, entries.length);
+        assertEquals(1, entries[0].getId());
+        assertEquals(2, entries[1].getId());
+        assertEquals(3, entries[2].getId());
+    }
+
+    @Test
+    public void testFlushAfterDelay() throws Exception {
+        RecordingBatcher batcher = new RecordingBatcher(new ClusterReplication(100, 10));
+        batcher.add(newEntry(1));
+        batcher.add(newEntry(2));
+
+        assertTrue(batcher.published.await(10, TimeUnit.SECONDS));
+        assertEquals(1, batcher.records.size());
+        assertEquals(2, ((LongMessageBufferBatch) batcher.records.get(0)).getEntries().length);
+    }
+
+    @Test
+    public void testSingleEntryPublishedUnwrapped() throws Exception {
+        RecordingBatcher batcher = new RecordingBatcher(new ClusterReplication(100, 60000));
+        batcher.add(newEntry(7));
+        batcher.flush();
+        batcher.flush();
+
+        assertEquals(1, batcher.records.size());
+        assertEquals(7, ((LongMessageBufferEntry) batcher.records.get(0)).getId());
+    }
+
+    @Test
+    public void testAddDoesNotWaitForPublish() throws Exception {
+        final CountDownLatch publishing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final RecordingBatcher batcher = new RecordingBatcher(new ClusterReplication(2, 60000)) {
+            @Override
+            protected void publish(Object record) {
+                publishing.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.publish(record);
+            }
+        };
+
+        batcher.add(newEntry(1));
+        Thread flusher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                batcher.add(newEntry(2));
+            }
+        });
+        flusher.start();
+        assertTrue(publishing.await(10, TimeUnit.SECONDS));
+
+        // the first batch is still being published
+        batcher.add(newEntry(3));
+        assertTrue(batcher.records.isEmpty());
+
+        release.countDown();
+        flusher.join(10000);
+        batcher.flush();
+        assertEquals(2, batcher.records.size());
+        assertEquals(2, ((LongMessageBufferBatch) batcher.records.get(0)).getEntries().length);
+        assertEquals(3, ((LongMessageBufferEntry) batcher.records.get(1)).getId());
+    }
+
+    private static LongMessageBufferEntry newEntry(long id) {
+        return new LongMessageBufferEntry(id, new DefaultMessagingMessage());
+    }
+
+    private static class RecordingBatcher extends ReplicationBatcher {
+        final List<Object> records = Collections.synchronizedList(new ArrayList<Object>());
+        final CountDownLatch published = new CountDownLatch(1);
+
+        RecordingBatcher(ClusterReplication replication) {
+            super(replication);
+        }
+
+        @Override
+        protected void publish(Object record) {
+            records.add(record);
+            published.countDown();
+        }
+    }
+
+}
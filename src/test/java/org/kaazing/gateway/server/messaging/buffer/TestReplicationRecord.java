@@ -0,0 +1,78 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.kaazing.gateway.server.messaging.buffer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import org.junit.Test;
+import org.kaazing.gateway.server.messaging.DefaultMessagingMessage;
+import static org.junit.Assert.assertEquals;
+
+public class TestReplicationRecord {
+
+    @Test
+    public void testEntry() throws Exception {
+        LongMessageBufferEntry entry = (LongMessageBufferEntry) roundTrip(newEntry(Long.MAX_VALUE));
+        assertEquals(Long.MAX_VALUE, entry.getId());
+        assertEquals("message " + Long.MAX_VALUE, entry.getMessage().getPayload());
+    }
+
+    @Test
+    public void testBatch() throws Exception {
+        LongMessageBufferBatch batch = new LongMessageBufferBatch(new LongMessageBufferEntry[] {
+            newEntry(100), newEntry(101), newEntry(105)
+        });
+        LongMessageBufferEntry[] entries = ((LongMessageBufferBatch) roundTrip(batch)).getEntries();
+        assertEquals(3, entries.length);
+        assertEquals(105, entries[2].getId());
+        assertEquals("message 105", entries[2].getMessage().getPayload());
+        assertEquals("message 105", entries[2].getMessage().getAttribute("text"));
+    }
+
+    @Test
+    public void testResync() throws Exception {
+        MessageBufferResync resync = new MessageBufferResync(1, 10, new LongMessageBufferEntry[] { newEntry(9) });
+        MessageBufferResync copy = (MessageBufferResync) roundTrip(resync);
+        assertEquals(1, copy.getFromId());
+        assertEquals(10, copy.getToId());
+        assertEquals(9, copy.getEntries()[0].getId());
+    }
+
+    private static LongMessageBufferEntry newEntry(long id) {
+        DefaultMessagingMessage message = new DefaultMessagingMessage();
+        message.setPayload("message " + id);
+        message.setAttribute("text", "message " + id);
+        return new LongMessageBufferEntry(id, message);
+    }
+
+    private static Object roundTrip(Object record) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(record);
+        out.close();
+        return new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+    }
+
+}
@@ -0,0 +1,253 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.kaazing.gateway.server.messaging.buffer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+import org.kaazing.gateway.server.messaging.DefaultMessagingMessage;
+import org.kaazing.gateway.service.messaging.buffer.MessageBuffer;
+import org.kaazing.gateway.service.messaging.buffer.MessageBufferEntry;
+import org.kaazing.gateway.service.messaging.buffer.MessageBufferListener;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestRingMessageBuffer {
+
+    @Test
+    public void testBufferSmallData() throws Exception {
+        MessageBuffer buffer = new RingMessageBuffer(10);
+        for (int i = 0; i < 5; i++) {
+            buffer.add(new DefaultMessagingMessage());
+        }
+
+        assertNull(buffer.get(-1));
+        assertNull(buffer.get(0));
+        assertNull(buffer.get(6));
+        assertNull(buffer.get(1000));
+
+        assertEquals(1, buffer.get(1).getId());
+        assertEquals(5, buffer.get(5).getId());
+        assertEquals(1, buffer.getOldestId());
+        assertEquals(5, buffer.getYoungestId());
+    }
+
+    @Test
+    public void testBufferWraps() throws Exception {
+        MessageBuffer buffer = new RingMessageBuffer(10);
+        for (int i = 0; i < 20; i++) {
+            buffer.add(new DefaultMessagingMessage());
+        }
+
+        assertNull(buffer.get(10));
+        assertNull(buffer.get(21));
+
+        assertNotNull(buffer.get(11));
+        assertEquals(11, buffer.get(11).getId());
+        assertEquals(20, buffer.get(20).getId());
+        assertEquals(11, buffer.getOldestId());
+        assertEquals(20, buffer.getYoungestId());
+    }
+
+    @Test
+    public void testSetSkipsMissingIds() throws Exception {
+        MessageBuffer buffer = new RingMessageBuffer(10);
+        buffer.add(new DefaultMessagingMessage());
+        buffer.set(5, new DefaultMessagingMessage());
+
+        assertEquals(5, buffer.getYoungestId());
+        assertEquals(1, buffer.get(1).getId());
+        assertNull(buffer.get(3));
+        assertEquals(5, buffer.get(5).getId());
+
+        assertEquals(6, buffer.add(new DefaultMessagingMessage()).getId());
+    }
+
+    @Test
+    public void testSetIgnoresIdsOutsideWindow() throws Exception {
+        MessageBuffer buffer = new RingMessageBuffer(10);
+        for (int i = 0; i < 15; i++) {
+            buffer.add(new DefaultMessagingMessage());
+        }
+
+        // id 3 shares its slot with id 13, which must not be overwritten
+        buffer.set(3, new DefaultMessagingMessage());
+        assertNull(buffer.get(3));
+        assertEquals(13, buffer.get(13).getId());
+
+        buffer.set(12, new DefaultMessagingMessage());
+        assertEquals(12, buffer.get(12).getId());
+    }
+
+    @Test
+    public void testListenerSeesNotifiedMessage() throws Exception {
+        final MessageBuffer buffer = new RingMessageBuffer(10);
+        final List<Integer> youngestIds = new ArrayList<Integer>();
+        buffer.addMessageBufferListener(new MessageBufferListener() {
+            @Override
+            public void messageAdded(MessageBufferEntry newMessage) {
+                youngestIds.add(buffer.getYoungestId());
+                assertNotNull(buffer.get(newMessage.getId()));
+            }
+        });
+
+        buffer.add(new DefaultMessagingMessage());
+        buffer.add(new DefaultMessagingMessage());
+        assertEquals(Arrays.asList(1, 2), youngestIds);
+    }
+
+    @Test
+    public void testFailingListenerDoesNotBlockWriters() throws Exception {
+        MessageBuffer buffer = new RingMessageBuffer(10);
+        buffer.addMessageBufferListener(new MessageBufferListener() {
+            @Override
+            public void messageAdded(MessageBufferEntry newMessage) {
+                if (newMessage.getId() == 1) {
+                    // errors are not caught by the listener support
+                    throw new AssertionError("listener failure");
+                }
+            }
+        });
+
+        try {
+            buffer.add(new DefaultMessagingMessage());
+            fail("Expected the listener failure");
+        } catch (AssertionError e) {
+            assertEquals("listener failure", e.getMessage());
+        }
+        assertEquals(1, buffer.getYoungestId());
+        assertEquals(2, buffer.add(new DefaultMessagingMessage()).getId());
+        assertEquals(2, buffer.getYoungestId());
+    }
+
+    @Test
+    public void testListenerMustNotAddToNotifyingBuffer() throws Exception {
+        final MessageBuffer buffer = new RingMessageBuffer(10);
+        final List<Throwable> failures = new ArrayList<Throwable>();
+        buffer.addMessageBufferListener(new MessageBufferListener() {
+            @Override
+            public void messageAdded(MessageBufferEntry newMessage) {
+                try {
+                    buffer.add(new DefaultMessagingMessage());
+                } catch (IllegalStateException e) {
+                    failures.add(e);
+                }
+            }
+        });
+
+        assertEquals(1, buffer.add(new DefaultMessagingMessage()).getId());
+        assertEquals(1, failures.size());
+        assertEquals(1, buffer.getYoungestId());
+
+        // the rejected write claimed no id, so later writers are not blocked
+        assertEquals(2, buffer.add(new DefaultMessagingMessage()).getId());
+        assertEquals(2, failures.size());
+    }
+
+    @Test
+    public void testConcurrentWritersPublishInOrder() throws Exception {
+        final MessageBuffer buffer = new RingMessageBuffer(1024);
+        final List<Integer> notified = Collections.synchronizedList(new ArrayList<Integer>());
+        buffer.addMessageBufferListener(new MessageBufferListener() {
+            @Override
+            public void messageAdded(MessageBufferEntry newMessage) {
+                notified.add(newMessage.getId());
+            }
+        });
+
+        final int writers = 4;
+        final int messagesPerWriter = 5000;
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < writers; i++) {
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < messagesPerWriter; j++) {
+                        buffer.add(new DefaultMessagingMessage());
+                    }
+                }
+            };
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        int total = writers * messagesPerWriter;
+        assertEquals(total, buffer.getYoungestId());
+        assertEquals(total, notified.size());
+        for (int i = 0; i < total; i++) {
+            assertTrue(notified.get(i) == i + 1);
+        }
+        for (int id = buffer.getOldestId(); id <= buffer.getYoungestId(); id++) {
+            assertEquals(id, buffer.get(id).getId());
+        }
+    }
+
+    @Test
+    public void testRangeReads() throws Exception {
+        RangeMessageBuffer buffer = new RingMessageBuffer(10);
+        for (int i = 0; i < 25; i++) {
+            buffer.add(new DefaultMessagingMessage());
+        }
+
+        // ids older than the oldest retained id are skipped
+        MessageBufferEntry[] entries = new MessageBufferEntry[20];
+        assertEquals(10, buffer.get(1, entries, 0, entries.length));
+        assertEquals(16, entries[0].getId());
+        assertEquals(25, entries[9].getId());
+
+        assertEquals(3, buffer.get(20, entries, 5, 3));
+        assertEquals(20, entries[5].getId());
+        assertEquals(22, entries[7].getId());
+
+        final List<Integer> visited = new ArrayList<Integer>();
+        assertEquals(4, buffer.visit(18, 21, new MessageBufferVisitor<MessageBufferEntry>() {
+            @Override
+            public boolean visit(MessageBufferEntry entry) {
+                visited.add(entry.getId());
+                return true;
+            }
+        }));
+        assertEquals(Arrays.asList(18, 19, 20, 21), visited);
+
+        MessageBufferCursor<MessageBufferEntry> cursor = buffer.cursor(23);
+        assertEquals(23, cursor.next().getId());
+        assertEquals(24, cursor.next().getId());
+        assertEquals(25, cursor.next().getId());
+        assertFalse(cursor.hasNext());
+
+        buffer.add(new DefaultMessagingMessage());
+        assertTrue(cursor.hasNext());
+        assertEquals(26, cursor.next().getId());
+        assertEquals(27, cursor.getNextId());
+    }
+
+}
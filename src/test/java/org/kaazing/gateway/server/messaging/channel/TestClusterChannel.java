@@ -0,0 +1,250 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+
+package org.kaazing.gateway.server.messaging.channel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Test;
+import org.kaazing.gateway.service.cluster.MemberId;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestClusterChannel {
+
+    private final MemberId member1 = new MemberId("tcp", "node1", 5941);
+    private final MemberId member2 = new MemberId("tcp", "node2", 5941);
+    private final MemberId member3 = new MemberId("tcp", "node3", 5941);
+    private final Map<MemberId, ClusterChannelTransport.Receiver> receivers =
+            new ConcurrentHashMap<MemberId, ClusterChannelTransport.Receiver>();
+    private final AtomicInteger batches = new AtomicInteger();
+    private final AtomicInteger messages = new AtomicInteger();
+    private final List<ClusterChannel> channels = new ArrayList<ClusterChannel>();
+
+    // sends to the slow member block until released
+    private volatile MemberId slowMember;
+    private final CountDownLatch slowMemberRelease = new CountDownLatch(1);
+
+    @After
+    public void disposeChannels() {
+        slowMemberRelease.countDown();
+        for (ClusterChannel channel : channels) {
+            channel.dispose();
+        }
+    }
+
+    @Test
+    public void testRequestCompletesWithResponse() throws Exception {
+        ClusterChannel channel1 = newChannel(member1, ClusterChannelSettings.DEFAULT);
+        ClusterChannel channel2 = newChannel(member2, ClusterChannelSettings.DEFAULT);
+        channel2.setHandler(String.class, new ClusterChannelHandler<String>() {
+            @Override
+            public Object handle(MemberId sender, String message) {
+                return sender + " said " + message;
+            }
+        });
+
+        ClusterFuture<String> future = channel1.request(member2, "hello");
+        assertEquals(member1 + " said hello", future.get(5, TimeUnit.SECONDS));
+        assertEquals(0, channel1.getPendingRequestCount());
+        assertEquals(0, channel2.getPendingRequestCount());
+    }
+
+    @Test
+    public void testRequestFailsWithHandlerException() throws Exception {
+        ClusterChannel channel1 = newChannel(member1, ClusterChannelSettings.DEFAULT);
+        ClusterChannel channel2 = newChannel(member2, ClusterChannelSettings.DEFAULT);
+        channel2.setHandler(Object.class, new ClusterChannelHandler<Object>() {
+            @Override
+            public Object handle(MemberId sender, Object message) {
+                throw new IllegalArgumentException("unexpected " + message);
+            }
+        });
+
+        ClusterFuture<Object> future = channel1.request(member2, 42);
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("Expected the handler exception");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+    }
+
+    @Test
+    public void testRequestTimesOutWithoutResponse() throws Exception {
+        ClusterChannel channel1 = newChannel(member1, new ClusterChannelSettings(4, 8, 50));
+
+        final CountDownLatch failed = new CountDownLatch(1);
+        ClusterFuture<Object> future = channel1.request(member2, "nobody listens");
+        future.addListener(new ClusterFutureListener<Object>() {
+            @Override
+            public void operationComplete(ClusterFuture<Object> future) {
+                if (future.getCause() instanceof TimeoutException) {
+                    failed.countDown();
+                }
+            }
+        });
+        assertTrue(failed.await(5, TimeUnit.SECONDS));
+        assertEquals(0, channel1.getPendingRequestCount());
+    }
+
+    @Test
+    public void testInFlightLimitQueuesRequestsAndBatchesMessages() throws Exception {
+        ClusterChannel channel1 = newChannel(member1, new ClusterChannelSettings(2, 16, 5000));
+        ClusterChannel channel2 = newChannel(member2, ClusterChannelSettings.DEFAULT);
+        final CountDownLatch release = new CountDownLatch(1);
+        channel2.setHandler(Integer.class, new ClusterChannelHandler<Integer>() {
+            @Override
+            public Object handle(MemberId sender, Integer message) throws Exception {
+                release.await(5, TimeUnit.SECONDS);
+                return message * 2;
+            }
+        });
+
+        List<ClusterFuture<Integer>> futures = new ArrayList<ClusterFuture<Integer>>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(channel1.<Integer>request(member2, i));
+        }
+        Thread.sleep(100);
+        assertEquals(10, channel1.getPendingRequestCount());
+        assertEquals(2, messages.get());
+        release.countDown();
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(Integer.valueOf(i * 2), futures.get(i).get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(20, messages.get());
+        assertTrue("Expected fewer batches than messages, got " + batches.get(), batches.get() < messages.get());
+    }
+
+    @Test
+    public void testMemberRemovedFailsPendingRequests() throws Exception {
+        ClusterChannel channel1 = newChannel(member1, ClusterChannelSettings.DEFAULT);
+
+        ClusterFuture<Object> future = channel1.request(member2, "going away");
+        channel1.memberRemoved(member2);
+        assertTrue(future.isDone());
+        assertTrue(future.getCause() instanceof IllegalStateException);
+    }
+
+    @Test
+    public void testCancelledRequestReleasesInFlightSlot() throws Exception {
+        ClusterChannel channel1 = newChannel(member1, new ClusterChannelSettings(1, 16, 5000));
+        ClusterChannel channel2 = newChannel(member2, ClusterChannelSettings.DEFAULT);
+        final CountDownLatch release = new CountDownLatch(1);
+        channel2.setHandler(String.class, new ClusterChannelHandler<String>() {
+            @Override
+            public Object handle(MemberId sender, String message) throws Exception {
+                if (message.equals("stuck")) {
+                    release.await(5, TimeUnit.SECONDS);
+                }
+                return message;
+            }
+        });
+
+        ClusterFuture<String> stuck = channel1.request(member2, "stuck");
+        ClusterFuture<String> queued = channel1.request(member2, "queued");
+        ClusterFuture<String> next = channel1.request(member2, "next");
+        Thread.sleep(100);
+        assertEquals(1, messages.get());
+        assertTrue(queued.cancel(false));
+        assertTrue(stuck.cancel(false));
+        assertEquals(1, channel1.getPendingRequestCount());
+
+        // the freed slot goes to the next request, the cancelled queued one is never sent
+        Thread.sleep(100);
+        assertEquals(2, messages.get());
+        release.countDown();
+        assertEquals("next", next.get(5, TimeUnit.SECONDS));
+        assertEquals(0, channel1.getPendingRequestCount());
+    }
+
+    @Test
+    public void testSlowMemberDoesNotBlockOtherMembers() throws Exception {
+        ClusterChannel channel1 = newChannel(member1, ClusterChannelSettings.DEFAULT);
+        ClusterChannel channel3 = newChannel(member3, ClusterChannelSettings.DEFAULT);
+        channel3.setHandler(String.class, new ClusterChannelHandler<String>() {
+            @Override
+            public Object handle(MemberId sender, String message) {
+                return message;
+            }
+        });
+        slowMember = member2;
+
+        ClusterFuture<String> slow = channel1.request(member2, "slow");
+        assertEquals("fast", channel1.<String>request(member3, "fast").get(5, TimeUnit.SECONDS));
+        assertFalse(slow.isDone());
+    }
+
+    @Test
+    public void testChannelBindsOnFirstUse() throws Exception {
+        ClusterChannel channel1 = newChannel(member1, ClusterChannelSettings.DEFAULT);
+        assertFalse(receivers.containsKey(member1));
+
+        channel1.post(member2, "hello");
+        assertTrue(receivers.containsKey(member1));
+    }
+
+    private ClusterChannel newChannel(MemberId member, ClusterChannelSettings settings) {
+        ClusterChannel channel = new ClusterChannel(member, new ClusterChannelTransport() {
+            private MemberId localMember;
+
+            @Override
+            public void bind(MemberId localMember, Receiver receiver) {
+                this.localMember = localMember;
+                receivers.put(localMember, receiver);
+            }
+
+            @Override
+            public void send(MemberId member, Object batch) throws Exception {
+                if (member.equals(slowMember)) {
+                    slowMemberRelease.await();
+                }
+                batches.incrementAndGet();
+                messages.addAndGet(((ChannelBatch) batch).messages.length);
+                Receiver receiver = receivers.get(member);
+                if (receiver != null) {
+                    receiver.receive(batch);
+                }
+            }
+
+            @Override
+            public void unbind() {
+                receivers.remove(localMember);
+            }
+        }, settings);
+        channels.add(channel);
+        return channel;
+    }
+
+}
@@ -77,4 +77,34 @@ public class FixedArrayQueueTest {
         assertNull(queue.peek());
     }
 
+    @Test
+    public void iteratorAndToArrayShouldFollowHeadAfterWrap() {
+        Queue<Integer> queue = new FixedArrayQueue<Integer>(3);
+        for (int i = 0; i < 5; i++) {
+            queue.offer(i);
+            if (queue.size() == 3) {
+                queue.poll();
+            }
+        }
+        assertArrayEquals(new Object[] {3, 4}, queue.toArray());
+        assertArrayEquals(new Integer[] {3, 4}, queue.toArray(new Integer[0]));
+        int expected = 3;
+        for (Integer i : queue) {
+            assertEquals(new Integer(expected++), i);
+        }
+        assertEquals(5, expected);
+    }
+
+    @Test
+    public void clearShouldEmptyQueue() {
+        Queue<Integer> queue = new FixedArrayQueue<Integer>(4);
+        queue.add(1);
+        queue.add(2);
+        queue.clear();
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll());
+        assertTrue(queue.offer(3));
+        assertEquals(new Integer(3), queue.peek());
+    }
+
 }
@@ -0,0 +1,98 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.kaazing.gateway.server.util.collection;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ManyToOneConcurrentArrayQueueTest {
+
+    @Test
+    public void offerShouldEnforceCapacity() {
+        ManyToOneConcurrentArrayQueue<Integer> queue = new ManyToOneConcurrentArrayQueue<>(3);
+        assertEquals(3, queue.capacity());
+        assertTrue(queue.offer(1));
+        assertTrue(queue.offer(2));
+        assertTrue(queue.offer(3));
+        assertFalse(queue.offer(4));
+        assertEquals(new Integer(1), queue.poll());
+        assertTrue(queue.offer(4));
+        assertArrayEquals(new Object[] {2, 3, 4}, queue.toArray());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void addShouldThrowExceptionWhenFull() {
+        ManyToOneConcurrentArrayQueue<Integer> queue = new ManyToOneConcurrentArrayQueue<>(1);
+        queue.add(1);
+        queue.add(2);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void offerShouldRejectNull() {
+        new ManyToOneConcurrentArrayQueue<Integer>(1).offer(null);
+    }
+
+    @Test
+    public void shouldPreserveOrderPerProducer() throws Exception {
+        final int producers = 4;
+        final int count = 50000;
+        final ManyToOneConcurrentArrayQueue<int[]> queue = new ManyToOneConcurrentArrayQueue<>(128);
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            final int producer = p;
+            threads[p] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < count; i++) {
+                        int[] e = new int[] {producer, i};
+                        while (!queue.offer(e)) {
+                            Thread.yield();
+                        }
+                    }
+                }
+            };
+            threads[p].start();
+        }
+
+        final int[] next = new int[producers];
+        final int[] received = new int[1];
+        Consumer<int[]> consumer = new Consumer<int[]>() {
+            @Override
+            public void accept(int[] e) {
+                assertEquals(next[e[0]]++, e[1]);
+                received[0]++;
+            }
+        };
+        while (received[0] < producers * count) {
+            if (queue.drain(consumer, 32) == 0) {
+                Thread.yield();
+            }
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(queue.isEmpty());
+        assertEquals(0, queue.size());
+    }
+
+}
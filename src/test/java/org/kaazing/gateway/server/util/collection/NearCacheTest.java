@@ -0,0 +1,128 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.kaazing.gateway.server.util.collection;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class NearCacheTest {
+
+    @Test
+    public void getShouldReturnCachedValue() {
+        NearCache<String, String> cache = new NearCache<>(4, 0, NearCacheEvictionPolicy.LRU);
+        cache.put("a", "1");
+        assertEquals("1", cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void lruShouldEvictLeastRecentlyRead() throws Exception {
+        NearCache<Integer, String> cache = new NearCache<>(4, 0, NearCacheEvictionPolicy.LRU);
+        for (int i = 1; i <= 4; i++) {
+            cache.put(i, "value-" + i);
+        }
+        Thread.sleep(1);
+        cache.get(1);
+        cache.get(3);
+        cache.get(4);
+
+        cache.put(5, "value-5");
+        assertEquals(4, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        assertNull(cache.get(2));
+        assertEquals("value-1", cache.get(1));
+        assertEquals("value-5", cache.get(5));
+    }
+
+    @Test
+    public void lfuShouldEvictLeastFrequentlyRead() {
+        NearCache<Integer, String> cache = new NearCache<>(3, 0, NearCacheEvictionPolicy.LFU);
+        for (int i = 1; i <= 3; i++) {
+            cache.put(i, "value-" + i);
+        }
+        for (int i = 0; i < 3; i++) {
+            cache.get(1);
+            cache.get(3);
+        }
+
+        cache.put(4, "value-4");
+        assertEquals(3, cache.size());
+        assertNull(cache.get(2));
+        assertEquals("value-1", cache.get(1));
+        assertEquals("value-3", cache.get(3));
+    }
+
+    @Test
+    public void entriesShouldExpireAfterTimeToLive() throws Exception {
+        NearCache<String, String> cache = new NearCache<>(4, 0, NearCacheEvictionPolicy.LRU);
+        cache.put("short", "1", 20, TimeUnit.MILLISECONDS);
+        cache.put("forever", "2");
+        assertEquals("1", cache.get("short"));
+
+        Thread.sleep(50);
+        assertNull(cache.get("short"));
+        assertEquals("2", cache.get("forever"));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void cacheTimeToLiveShouldCapEntryTimeToLive() throws Exception {
+        NearCache<String, String> cache = new NearCache<>(4, 20, NearCacheEvictionPolicy.LRU);
+        cache.put("a", "1", 1, TimeUnit.HOURS);
+        cache.put("b", "2");
+
+        Thread.sleep(50);
+        assertNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void replaceShouldOnlyUpdateCachedKeys() {
+        NearCache<String, String> cache = new NearCache<>(4, 0, NearCacheEvictionPolicy.LRU);
+        assertFalse(cache.replace("a", "1"));
+        assertNull(cache.get("a"));
+
+        cache.put("a", "1");
+        assertTrue(cache.replace("a", "2"));
+        assertEquals("2", cache.get("a"));
+    }
+
+    @Test
+    public void invalidateAndClearShouldRemoveEntries() {
+        NearCache<String, String> cache = new NearCache<>(4, 0, NearCacheEvictionPolicy.LRU);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        assertTrue(cache.invalidate("a"));
+        assertFalse(cache.invalidate("a"));
+        assertNull(cache.get("a"));
+        assertEquals(1, cache.size());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertNull(cache.get("b"));
+    }
+
+}
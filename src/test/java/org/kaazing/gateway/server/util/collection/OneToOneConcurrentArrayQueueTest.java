@@ -0,0 +1,151 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.kaazing.gateway.server.util.collection;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class OneToOneConcurrentArrayQueueTest {
+
+    @Test
+    public void offerAndPollShouldReplayInOrder() {
+        OneToOneConcurrentArrayQueue<Integer> queue = new OneToOneConcurrentArrayQueue<>(5);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(queue.offer(i));
+        }
+        assertFalse(queue.offer(5));
+        assertEquals(5, queue.size());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(new Integer(i), queue.peek());
+            assertEquals(new Integer(i), queue.poll());
+        }
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void removeShouldThrowExceptionWhenEmpty() {
+        new OneToOneConcurrentArrayQueue<Integer>(2).remove();
+    }
+
+    @Test
+    public void drainShouldRespectLimit() {
+        OneToOneConcurrentArrayQueue<Integer> queue = new OneToOneConcurrentArrayQueue<>(8);
+        for (int i = 0; i < 6; i++) {
+            queue.add(i);
+        }
+        final List<Integer> drained = new ArrayList<>();
+        Consumer<Integer> consumer = new Consumer<Integer>() {
+            @Override
+            public void accept(Integer e) {
+                drained.add(e);
+            }
+        };
+        assertEquals(4, queue.drain(consumer, 4));
+        assertEquals(2, queue.size());
+        assertEquals(2, queue.drain(consumer, 4));
+        assertEquals(0, queue.drain(consumer, 4));
+        assertEquals(6, drained.size());
+        for (int i = 0; i < 6; i++) {
+            assertEquals(new Integer(i), drained.get(i));
+        }
+    }
+
+    @Test
+    public void drainShouldAdvanceHeadWhenConsumerThrows() {
+        OneToOneConcurrentArrayQueue<Integer> queue = new OneToOneConcurrentArrayQueue<>(4);
+        queue.add(1);
+        queue.add(2);
+        try {
+            queue.drain(new Consumer<Integer>() {
+                @Override
+                public void accept(Integer e) {
+                    throw new IllegalStateException();
+                }
+            }, 4);
+            fail();
+        }
+        catch (IllegalStateException e) {
+            // expected
+        }
+        assertEquals(1, queue.size());
+        assertEquals(new Integer(2), queue.poll());
+    }
+
+    @Test
+    public void iteratorToArrayAndClearShouldWork() {
+        OneToOneConcurrentArrayQueue<Integer> queue = new OneToOneConcurrentArrayQueue<>(3);
+        for (int i = 0; i < 5; i++) {
+            queue.offer(i);
+            if (queue.size() == 3) {
+                queue.poll();
+            }
+        }
+        assertArrayEquals(new Object[] {3, 4}, queue.toArray());
+        assertArrayEquals(new Integer[] {3, 4}, queue.toArray(new Integer[0]));
+        assertTrue(queue.contains(4));
+        assertFalse(queue.contains(2));
+        assertEquals("[3, 4]", queue.toString());
+
+        queue.clear();
+        assertTrue(queue.isEmpty());
+        assertFalse(queue.iterator().hasNext());
+        assertEquals(0, queue.toArray().length);
+    }
+
+    @Test
+    public void shouldTransferAcrossThreadsInOrder() throws Exception {
+        final int count = 200000;
+        final OneToOneConcurrentArrayQueue<Integer> queue = new OneToOneConcurrentArrayQueue<>(64);
+        Thread producer = new Thread() {
+            @Override
+            public void run() {
+                for (int i = 0; i < count; i++) {
+                    while (!queue.offer(i)) {
+                        Thread.yield();
+                    }
+                }
+            }
+        };
+        producer.start();
+
+        final int[] expected = new int[1];
+        Consumer<Integer> consumer = new Consumer<Integer>() {
+            @Override
+            public void accept(Integer e) {
+                assertEquals(expected[0]++, e.intValue());
+            }
+        };
+        while (expected[0] < count) {
+            if (queue.drain(consumer, 16) == 0) {
+                Thread.yield();
+            }
+        }
+        producer.join();
+        assertTrue(queue.isEmpty());
+    }
+
+}
@@ -0,0 +1,376 @@
+/**
+ * Copyright (c) 2007-2014 Kaazing Corporation. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.kaazing.gateway.server.util.collection;
+
+import com.hazelcast.core.EntryEvent;
+import com.hazelcast.core.EntryListener;
+import com.hazelcast.core.IMap;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.kaazing.gateway.server.cluster.InProcessCluster;
+import org.kaazing.gateway.server.cluster.InProcessClusterBackend;
+import static org.junit.Assert.*;
+
+public class ReplicatedIMapTest {
+
+    private final InProcessCluster cluster = new InProcessCluster("test");
+    private final List<InProcessClusterBackend> members = new ArrayList<>();
+
+    private IMap<String, String> remote;
+    private RecordingMap recording;
+
+    @Before
+    public void setUp() {
+        remote = start().getMap("map");
+        recording = new RecordingMap(start().<String, String>getMap("map"));
+    }
+
+    @After
+    public void tearDown() {
+        for (InProcessClusterBackend member : members) {
+            member.shutdown();
+        }
+    }
+
+    @Test
+    public void nearCacheShouldCacheValuesUntilChangedElsewhere() throws Exception {
+        ReplicatedIMap<String, String> map = newNearCacheMap();
+        remote.put("key", "value1");
+        awaitEvents();
+
+        assertEquals("value1", map.get("key"));
+        assertEquals("value1", map.get("key"));
+        assertEquals(1, recording.count("get"));
+
+        remote.put("key", "value2");
+        awaitEvents();
+        assertEquals("value2", map.get("key"));
+
+        remote.remove("key");
+        awaitEvents();
+        assertNull(map.get("key"));
+    }
+
+    @Test
+    public void nearCacheShouldNotCacheValueInvalidatedWhileLoading() throws Exception {
+        ReplicatedIMap<String, String> map = newNearCacheMap();
+        remote.put("key", "value1");
+        awaitEvents();
+
+        recording.onGet = new Runnable() {
+            @Override
+            public void run() {
+                recording.onGet = null;
+                remote.put("key", "value2");
+                awaitEvents();
+            }
+        };
+
+        assertEquals("value1", map.get("key"));
+        assertEquals("value2", map.get("key"));
+        assertEquals(2, recording.count("get"));
+    }
+
+    @Test
+    public void nearCacheGetAllShouldLoadOnlyMisses() throws Exception {
+        ReplicatedIMap<String, String> map = newNearCacheMap();
+        remote.put("key1", "value1");
+        remote.put("key2", "value2");
+        awaitEvents();
+        assertEquals("value1", map.get("key1"));
+
+        Map<String, String> values = map.getAll(new HashSet<>(Arrays.asList("key1", "key2", "key3")));
+        assertEquals(2, values.size());
+        assertEquals("value1", values.get("key1"));
+        assertEquals("value2", values.get("key2"));
+        assertEquals(Arrays.asList(Arrays.asList("key2", "key3")), recording.getAllKeys);
+
+        values = map.getAll(new HashSet<>(Arrays.asList("key1", "key2")));
+        assertEquals(2, values.size());
+        assertEquals(1, recording.count("getAll"));
+    }
+
+    @Test
+    public void nearCacheAsyncOperationsShouldUseAndInvalidateCachedValues() throws Exception {
+        ReplicatedIMap<String, String> map = newNearCacheMap();
+        remote.put("key", "value1");
+        awaitEvents();
+
+        assertEquals("value1", map.getAsync("key").get());
+        assertEquals(1, recording.count("getAsync"));
+        assertEquals("value1", map.get("key"));
+        assertEquals("value1", map.getAsync("key").get());
+        assertEquals(1, recording.count("getAsync"));
+
+        map.putAsync("key", "value2").get();
+        assertEquals("value2", map.getAsync("key").get());
+        assertEquals("value2", remote.get("key"));
+    }
+
+    @Test
+    public void nearCacheShouldDropTimeToLiveEntriesEvictedByTheCluster() throws Exception {
+        ReplicatedIMap<String, String> map = newNearCacheMap();
+        assertNull(map.put("key", "value", 1, TimeUnit.MINUTES));
+        awaitEvents();
+        assertEquals("value", map.get("key"));
+        assertEquals("value", map.putIfAbsent("key", "other", 1, TimeUnit.MINUTES));
+
+        remote.evict("key");
+        awaitEvents();
+        assertNull(map.get("key"));
+    }
+
+    @Test
+    public void nearCacheShouldExpireTimeToLiveEntries() throws Exception {
+        ReplicatedIMap<String, String> map = newNearCacheMap();
+        remote.put("key", "value");
+        awaitEvents();
+        int gets = recording.count("get");
+
+        // the event of the first put invalidates the cached entry, so cache it again
+        map.put("key", "value", 20, TimeUnit.MILLISECONDS);
+        awaitEvents();
+        map.put("key", "value", 20, TimeUnit.MILLISECONDS);
+        assertEquals("value", map.get("key"));
+        assertEquals(gets, recording.count("get"));
+
+        Thread.sleep(40);
+        assertEquals("value", map.get("key"));
+        assertEquals(gets + 1, recording.count("get"));
+    }
+
+    @Test
+    public void mirrorShouldStartWithClusterEntriesAndFollowChanges() throws Exception {
+        remote.put("key1", "value1");
+        remote.put("key2", "value2");
+        awaitEvents();
+        ReplicatedIMap<String, String> map = new ReplicatedIMap<>(recording.map);
+
+        assertEquals("value1", map.get("key1"));
+        assertSame(map.get("key1"), map.get("key1"));
+        assertEquals(new HashSet<>(Arrays.asList("key1", "key2")), map.keySet());
+        int gets = recording.count("get");
+
+        remote.put("key1", "value3");
+        remote.remove("key2");
+        remote.put("key4", "value4");
+        awaitEvents();
+        assertEquals("value3", map.get("key1"));
+        assertNull(map.get("key2"));
+        assertEquals("value4", map.putIfAbsent("key4", "other"));
+        assertNull(map.putIfAbsent("key5", "value5"));
+        assertEquals("value5", map.get("key5"));
+        assertEquals(gets, recording.count("get"));
+
+        assertTrue(map.evict("key1"));
+        assertNull(map.get("key1"));
+        assertEquals("value3", remote.get("key1"));
+    }
+
+    @Test
+    public void mirrorListenersShouldSeeConcurrentChangesInOrder() throws Exception {
+        final ReplicatedIMap<String, String> map = new ReplicatedIMap<>(recording.map);
+        final int threads = 4;
+        final int keysPerThread = 8;
+        final int rounds = 50;
+        final ConcurrentMap<String, List<String>> events = new ConcurrentHashMap<>();
+        final List<String> failures = new CopyOnWriteArrayList<>();
+
+        map.addEntryListener(new EntryListener<String, String>() {
+
+            @Override
+            public void entryAdded(EntryEvent<String, String> event) {
+                record(event, "added", event.getValue());
+            }
+
+            @Override
+            public void entryRemoved(EntryEvent<String, String> event) {
+                record(event, "removed", null);
+            }
+
+            @Override
+            public void entryUpdated(EntryEvent<String, String> event) {
+                record(event, "updated", event.getValue());
+            }
+
+            @Override
+            public void entryEvicted(EntryEvent<String, String> event) {
+                record(event, "evicted", null);
+            }
+
+            // the mirror must not change under a listener that is being notified of a change to the same key
+            private void record(EntryEvent<String, String> event, String type, String expected) {
+                String key = event.getKey();
+                String value = map.get(key);
+                if ((expected == null) ? value != null : !expected.equals(value)) {
+                    failures.add(type + " " + key + "=" + event.getValue() + " but mirror has " + value);
+                }
+                List<String> keyEvents = events.get(key);
+                if (keyEvents == null) {
+                    keyEvents = new CopyOnWriteArrayList<>();
+                    List<String> existing = events.putIfAbsent(key, keyEvents);
+                    keyEvents = (existing != null) ? existing : keyEvents;
+                }
+                keyEvents.add(type);
+            }
+
+        }, true);
+
+        List<Thread> writers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            final int thread = i;
+            writers.add(new Thread() {
+                @Override
+                public void run() {
+                    for (int round = 0; round < rounds; round++) {
+                        for (int key = 0; key < keysPerThread; key++) {
+                            map.putIfAbsent("key-" + thread + "-" + key, "value-" + round);
+                            remote.remove("key-" + thread + "-" + key);
+                        }
+                    }
+                }
+            });
+        }
+        for (Thread writer : writers) {
+            writer.start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        awaitEvents();
+
+        assertEquals(Collections.emptyList(), failures);
+        assertEquals(threads * keysPerThread, events.size());
+        for (List<String> keyEvents : events.values()) {
+            assertEquals(2 * rounds, keyEvents.size());
+            for (int i = 0; i < keyEvents.size(); i++) {
+                assertEquals((i % 2 == 0) ? "added" : "removed", keyEvents.get(i));
+            }
+        }
+        assertTrue(map.keySet().isEmpty());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void mirrorShouldRejectTimeToLivePuts() {
+        new ReplicatedIMap<>(recording.map).put("key", "value", 1, TimeUnit.MINUTES);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void mirrorShouldRejectTimeToLivePutIfAbsent() {
+        new ReplicatedIMap<>(recording.map).putIfAbsent("key", "value", 1, TimeUnit.MINUTES);
+    }
+
+    private ReplicatedIMap<String, String> newNearCacheMap() {
+        return new ReplicatedIMap<>(recording.map, new NearCacheConfig(16, 0, TimeUnit.MILLISECONDS,
+                NearCacheEvictionPolicy.LRU));
+    }
+
+    private InProcessClusterBackend start() {
+        InProcessClusterBackend member = cluster.newMember();
+        member.start();
+        members.add(member);
+        return member;
+    }
+
+    private void awaitEvents() {
+        try {
+            assertTrue(cluster.awaitEvents(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fail("interrupted");
+        }
+    }
+
+    /**
+     * Counts the calls made to a cluster map and stores entries put with a time to live as plain entries, since the
+     * in-process cluster does not support them.
+     */
+    private static final class RecordingMap implements InvocationHandler {
+        private final IMap<String, String> delegate;
+        private final IMap<String, String> map;
+        private final ConcurrentMap<String, AtomicInteger> counts = new ConcurrentHashMap<>();
+        private final List<List<String>> getAllKeys = new ArrayList<>();
+        private volatile Runnable onGet;
+
+        @SuppressWarnings("unchecked")
+        RecordingMap(IMap<String, String> delegate) {
+            this.delegate = delegate;
+            this.map = (IMap<String, String>) Proxy.newProxyInstance(IMap.class.getClassLoader(),
+                    new Class<?>[] { IMap.class }, this);
+        }
+
+        int count(String methodName) {
+            AtomicInteger count = counts.get(methodName);
+            return (count == null) ? 0 : count.get();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String methodName = method.getName();
+            AtomicInteger count = counts.putIfAbsent(methodName, new AtomicInteger(1));
+            if (count != null) {
+                count.incrementAndGet();
+            }
+
+            if ("getAll".equals(methodName)) {
+                List<String> keys = new ArrayList<>((Set<String>) args[0]);
+                Collections.sort(keys);
+                getAllKeys.add(keys);
+            } else if (args != null && args.length == 4 && "put".equals(methodName)) {
+                return delegate.put((String) args[0], (String) args[1]);
+            } else if (args != null && args.length == 4 && "putIfAbsent".equals(methodName)) {
+                return delegate.putIfAbsent((String) args[0], (String) args[1]);
+            }
+
+            Object result;
+            try {
+                result = method.invoke(delegate, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            Runnable onGet = this.onGet;
+            if (onGet != null && "get".equals(methodName)) {
+                onGet.run();
+            }
+            return result;
+        }
+    }
+
+}